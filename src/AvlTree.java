@@ -1,3 +1,5 @@
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Implementation of a self-balancing AVL Tree, an extension of the CleverSIDC framework.
@@ -9,7 +11,7 @@ public class AvlTree extends CleverSIDC {
      * A protected static inner class representing a node in an AVL tree.
      */
     protected static class AvlTreeNode {
-        private int height; private long key; private String value; private AvlTreeNode left, right;
+        private int height, size; private long key; private String value; private AvlTreeNode left, right;
 
         /**
          * Parameterized constructor.
@@ -20,6 +22,7 @@ public class AvlTree extends CleverSIDC {
             setKey(newKey);
             setValue(newValue);
             setHeight(1);
+            setSize(1);
         }
 
         /**
@@ -38,6 +41,22 @@ public class AvlTree extends CleverSIDC {
             height = newHeight;
         }
 
+        /**
+         * This method returns the number of nodes in the subtree rooted at a node.
+         * @return the size of the subtree
+         */
+        public int getSize() {
+            return this.size;
+        }
+
+        /**
+         * This method sets the number of nodes in the subtree rooted at a node.
+         * @param newSize the new subtree size
+         */
+        public void setSize(int newSize) {
+            size = newSize;
+        }
+
         /**
          * This method returns the key of a node.
          * @return the key of the node
@@ -87,7 +106,118 @@ public class AvlTree extends CleverSIDC {
         }
     }
 
-    AvlTreeNode root;
+    private static final int MAX_HEIGHT = 64;
+    AvlTreeNode root; private int sizeOfTree;
+    private final AvlTreeNode[] pathNodes = new AvlTreeNode[MAX_HEIGHT];
+
+    /**
+     * This method returns the number of nodes in the AVL tree.
+     * @return the size of the tree
+     */
+    public int getTreeSize() {
+        return this.sizeOfTree;
+    }
+
+    /**
+     * This method replaces the contents of the tree with a perfectly balanced tree built from entries that are already sorted by key.
+     * Each subtree is rooted at the middle entry of its range, so the build runs in linear time without any rotation.
+     * Large inputs are built on the common fork-join pool, the two subtrees of each node being built in parallel.
+     * @param sortedKeys the keys in ascending order, free of duplicates
+     * @param sortedValues the values associated with the keys
+     * @param count the number of entries to take from the given arrays
+     */
+    void buildTreeFromSortedArrays(long[] sortedKeys, String[] sortedValues, int count) {
+        if(count >= SIDCArraySort.PARALLEL_THRESHOLD && SIDCArraySort.isParallel()) {
+            root = new SubtreeBuilder(this, sortedKeys, sortedValues, 0, count - 1).invoke();
+        } else {
+            root = buildSubtree(sortedKeys, sortedValues, 0, count - 1);
+        }
+        sizeOfTree = count;
+    }
+
+    /**
+     * A private static inner class building a balanced subtree from sorted entries in parallel.
+     * Both child subtrees are built as separate tasks until the range is small enough to be built sequentially.
+     */
+    private static class SubtreeBuilder extends RecursiveTask<AvlTreeNode> {
+        private static final long serialVersionUID = 1L;
+        private final transient AvlTree tree; private final long[] sortedKeys; private final String[] sortedValues; private final int low, high;
+
+        /**
+         * Parameterized constructor.
+         * @param tree the tree being built
+         * @param sortedKeys the keys in ascending order
+         * @param sortedValues the values associated with the keys
+         * @param low the index of the first entry of the subtree
+         * @param high the index of the last entry of the subtree
+         */
+        SubtreeBuilder(AvlTree tree, long[] sortedKeys, String[] sortedValues, int low, int high) {
+            this.tree = tree; this.sortedKeys = sortedKeys; this.sortedValues = sortedValues; this.low = low; this.high = high;
+        }
+
+        /**
+         * This method builds the subtree, splitting the work between its two children.
+         * @return the root node of the subtree, or null if the range is empty.
+         */
+        @Override
+        protected AvlTreeNode compute() {
+            if(high - low < SIDCArraySort.PARALLEL_THRESHOLD / 8) return tree.buildSubtree(sortedKeys, sortedValues, low, high);
+            int mid = (low + high) >>> 1;
+            SubtreeBuilder leftBuilder = new SubtreeBuilder(tree, sortedKeys, sortedValues, low, mid - 1);
+            SubtreeBuilder rightBuilder = new SubtreeBuilder(tree, sortedKeys, sortedValues, mid + 1, high);
+            ForkJoinTask.invokeAll(leftBuilder, rightBuilder);
+            AvlTreeNode node = new AvlTreeNode(sortedKeys[mid], sortedValues[mid]);
+            node.left = leftBuilder.join();
+            node.right = rightBuilder.join();
+            node.setHeight(1 + tree.getMax(tree.getHeightOfNode(node.getLeft()), tree.getHeightOfNode(node.getRight())));
+            node.setSize(1 + tree.getSizeOfNode(node.getLeft()) + tree.getSizeOfNode(node.getRight()));
+            return node;
+        }
+    }
+
+    /**
+     * This method recursively builds a balanced subtree from the sorted entries between the given indices.
+     * @param sortedKeys the keys in ascending order
+     * @param sortedValues the values associated with the keys
+     * @param low the index of the first entry of the subtree
+     * @param high the index of the last entry of the subtree
+     * @return the root node of the subtree, or null if the range is empty.
+     */
+    private AvlTreeNode buildSubtree(long[] sortedKeys, String[] sortedValues, int low, int high) {
+        if(low > high) return null;
+        int mid = (low + high) >>> 1;
+        AvlTreeNode node = new AvlTreeNode(sortedKeys[mid], sortedValues[mid]);
+        node.left = buildSubtree(sortedKeys, sortedValues, low, mid - 1);
+        node.right = buildSubtree(sortedKeys, sortedValues, mid + 1, high);
+        node.setHeight(1 + getMax(getHeightOfNode(node.getLeft()), getHeightOfNode(node.getRight())));
+        node.setSize(1 + getSizeOfNode(node.getLeft()) + getSizeOfNode(node.getRight()));
+        return node;
+    }
+
+    /**
+     * This method copies the entries of the tree, in key order, into the given arrays.
+     * @param keysOut the array receiving the keys, at least as long as the size of the tree
+     * @param valuesOut the array receiving the values, at least as long as the size of the tree
+     */
+    void copyEntriesToArrays(long[] keysOut, String[] valuesOut) {
+        copySubtree(root, keysOut, valuesOut, 0);
+    }
+
+    /**
+     * This method copies the entries of a subtree, in key order, into the given arrays starting at the given index.
+     * @param node the root node of the current subtree
+     * @param keysOut the array receiving the keys
+     * @param valuesOut the array receiving the values
+     * @param index the position of the first entry of the subtree
+     * @return the position following the last entry of the subtree.
+     */
+    private int copySubtree(AvlTreeNode node, long[] keysOut, String[] valuesOut, int index) {
+        if(node == null) return index;
+        index = copySubtree(node.getLeft(), keysOut, valuesOut, index);
+        keysOut[index] = node.getKey();
+        valuesOut[index] = node.getValue();
+        return copySubtree(node.getRight(), keysOut, valuesOut, index + 1);
+    }
 
     /**
      * This method gets the height of the specified AVL tree node.
@@ -99,6 +229,16 @@ public class AvlTree extends CleverSIDC {
         return node.getHeight();
     }
 
+    /**
+     * This method gets the subtree size of the specified AVL tree node.
+     * @param node the AVL tree node for which to retrieve the subtree size
+     * @return the number of nodes in the subtree. If the node is null, returns 0.
+     */
+    private int getSizeOfNode(AvlTreeNode node) {
+        if(node == null) return 0;
+        return node.getSize();
+    }
+
     /**
      * This method calculates the balance factor of the specified AVL tree node.
      * @param node the AVL tree node for which to calculate the balance factor
@@ -137,13 +277,16 @@ public class AvlTree extends CleverSIDC {
      * @return the new root node after the left rotation.
      */
     private AvlTreeNode leftRotation(AvlTreeNode node) {
+        if(sidcMetrics != null) sidcMetrics.countRotation();
         AvlTreeNode x = node.right;
         AvlTreeNode y = x.left;
         x.left = node;
         node.right = y;
 
         node.setHeight(1 + getMax(getHeightOfNode(node.getLeft()), getHeightOfNode(node.getRight())));
+        node.setSize(1 + getSizeOfNode(node.getLeft()) + getSizeOfNode(node.getRight()));
         x.setHeight(1 + getMax(getHeightOfNode(x.getLeft()), getHeightOfNode(x.getRight())));
+        x.setSize(1 + getSizeOfNode(x.getLeft()) + getSizeOfNode(x.getRight()));
         return x;
     }
 
@@ -153,52 +296,91 @@ public class AvlTree extends CleverSIDC {
      * @return the new root node after the right rotation.
      */
     private AvlTreeNode rightRotation(AvlTreeNode node) {
+        if(sidcMetrics != null) sidcMetrics.countRotation();
         AvlTreeNode x = node.left;
         AvlTreeNode y = x.right;
         x.right = node;
         node.left = y;
 
         node.setHeight(1 + getMax(getHeightOfNode(node.getLeft()), getHeightOfNode(node.getRight())));
+        node.setSize(1 + getSizeOfNode(node.getLeft()) + getSizeOfNode(node.getRight()));
         x.setHeight(1 + getMax(getHeightOfNode(x.getLeft()), getHeightOfNode(x.getRight())));
+        x.setSize(1 + getSizeOfNode(x.getLeft()) + getSizeOfNode(x.getRight()));
         return x;
     }
 
     /**
-     * This method recursively searches for a key in the AVL tree starting from the given node.
+     * This method searches for a key in the AVL tree starting from the given node, in a single loop down the tree.
      * @param node the root node of the current subtree
      * @param keyToFind the key to search for in the AVL tree
      * @return the AVL tree node containing the specified key, or null if the key is not found.
      */
     @Override
     public AvlTreeNode findKeyInTree(AvlTreeNode node, long keyToFind) {
-        //key not found
-        if(node == null) return null;
-
-        //find the position of the key
-        if(keyToFind == node.getKey()) return node;
-        if(keyToFind < node.getKey()) {
-            return findKeyInTree(node.getLeft(), keyToFind);
-        } else if(keyToFind > node.getKey()) {
-            return findKeyInTree(node.getRight(), keyToFind);
-        } else return node;
+        while(node != null) {
+            long key = node.key;
+            if(keyToFind == key) return node;
+            node = (keyToFind < key) ? node.left : node.right;
+        }
+        return null;
     }
 
     /**
      * This method performs an in-order traversal of the AVL tree starting from the given node, printing the key-value pairs of each node.
+     * The nodes still to visit are kept on an explicit stack, which never holds more than the height of the tree.
      * @param node the root node of the current subtree
      */
     @Override
     public void inOrderTraversal(AvlTreeNode node) {
-        if(node != null) {
-            inOrderTraversal(node.getLeft());
+        AvlTreeNode[] stack = new AvlTreeNode[MAX_HEIGHT];
+        int top = 0;
+        while(node != null || top > 0) {
+            while(node != null) {
+                stack[top++] = node;
+                node = node.left;
+            }
+            node = stack[--top];
             System.out.println(node.getKey() + " -- " + node.getValue());
-            inOrderTraversal(node.getRight());
+            node = node.right;
         }
     }
 
+    /**
+     * This method passes the entries of the subtree whose keys are between low and high, both included, to the given consumer in key order.
+     * The descent to low pushes only the nodes not smaller than low, so the scan starts at the first key of the range
+     * without visiting the entries before it, and the explicit stack never holds more than the height of the tree.
+     * @param node the root node of the current subtree
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return the number of entries passed to the consumer.
+     */
+    @Override
+    public int forEachInTree(AvlTreeNode node, long low, long high, LongObjConsumer<String> consumer) {
+        AvlTreeNode[] stack = new AvlTreeNode[MAX_HEIGHT];
+        int top = 0, delivered = 0;
+        while(node != null) {
+            if(node.key >= low) {
+                stack[top++] = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        while(top > 0) {
+            node = stack[--top];
+            if(node.key > high) break;
+            delivered++;
+            if(!consumer.accept(node.key, node.value)) break;
+            for(node = node.right; node != null; node = node.left) stack[top++] = node;
+        }
+        return delivered;
+    }
+
     /**
      * This method adds a new node with the specified key and value to the AVL tree rooted at the given node.
-     * After insertion, updates the balance factor of each node and performs necessary rotations to maintain the AVL tree balance.
+     * The descent records the path in an explicit stack; after insertion, the nodes of the path are updated and balanced
+     * from the bottom up, performing the necessary rotations to maintain the AVL tree balance.
      * @param node the root node of the current subtree
      * @param newKey the key of the new node to be added
      * @param newValue the value associated with the new key
@@ -206,87 +388,96 @@ public class AvlTree extends CleverSIDC {
      */
     @Override
     public AvlTreeNode addNodeToTree(AvlTreeNode node, long newKey, String newValue) {
-
-        //find the position and insert the new node
-        if(node == null) return (new AvlTreeNode(newKey, newValue));
-        if(newKey < node.getKey()) {
-            node.left = addNodeToTree(node.getLeft(), newKey, newValue);
-        } else if(newKey > node.getKey()) {
-            node.right = addNodeToTree(node.getRight(), newKey, newValue);
-        } else return node;
-
-        //update the balance factor of each node, and balance the tree
-        node.setHeight(1 + getMax(getHeightOfNode(node.getLeft()), getHeightOfNode(node.getRight())));
-
-        int balanceFactor = getBalanceFactor(node);
-        if(balanceFactor > 1) {
-            if(newKey < node.getLeft().getKey()) {
-                return rightRotation(node);
-            } else if(newKey > node.getLeft().getKey()) {
-                node.left = leftRotation(node.getLeft());
-                return rightRotation(node);
-            }
+        AvlTreeNode subtreeRoot = node;
+        int depth = 0;
+        while(node != null) {
+            if(newKey == node.key) return subtreeRoot;
+            pathNodes[depth++] = node;
+            node = (newKey < node.key) ? node.left : node.right;
         }
-        if(balanceFactor < -1) {
-            if(newKey > node.getRight().getKey()) {
-                return leftRotation(node);
-            } else if(newKey < node.getRight().getKey()) {
-                node.right = rightRotation(node.getRight());
-                return leftRotation(node);
-            }
-        }
-        return node;
+        sizeOfTree++;
+        return rebalancePath(depth, newKey, new AvlTreeNode(newKey, newValue));
     }
 
     /**
      * This method deletes the node with the specified key from the AVL tree rooted at the given node.
-     * After deletion, updates the balance factor of each node and performs necessary rotations to maintain the AVL tree balance.
+     * A node with two children takes the entry of its successor, and the successor's node is the one unlinked.
+     * The path down to the unlinked node is recorded in an explicit stack, then updated and balanced from the bottom up.
      * @param node the root node of the current subtree
      * @param keyToRemove the key of the node to be removed from the AVL tree
      * @return the root node of the updated AVL tree.
      */
     @Override
     public AvlTreeNode deleteNodeFromTree(AvlTreeNode node, long keyToRemove) {
-        //find the node to be deleted and remove it
-        if(node == null) return null;
-        if(keyToRemove < node.getKey())
-            node.left = deleteNodeFromTree(node.getLeft(), keyToRemove);
-        else if(keyToRemove > node.getKey())
-            node.right = deleteNodeFromTree(node.getRight(), keyToRemove);
-        else {
-            if((node.getLeft() == null) || (node.getRight() == null)) {
-                AvlTreeNode temp = null;
-                if(temp == node.getLeft()) temp = node.getRight();
-                else temp = node.getLeft();
-                node = temp;
-            } else {
-                AvlTreeNode temp = nodeWithMinimumValue(node.getRight());
-                node.key = temp.getKey();
-                node.right = deleteNodeFromTree(node.getRight(), temp.getKey());
+        AvlTreeNode subtreeRoot = node;
+        int depth = 0;
+        while(node != null && node.key != keyToRemove) {
+            pathNodes[depth++] = node;
+            node = (keyToRemove < node.key) ? node.left : node.right;
+        }
+        if(node == null) return subtreeRoot;
+        sizeOfTree--;
+
+        long unlinkedKey = keyToRemove;
+        if(node.left != null && node.right != null) {
+            //descend to the successor, the smallest key of the right subtree, and move its entry up
+            AvlTreeNode target = node;
+            pathNodes[depth++] = node;
+            node = node.right;
+            while(node.left != null) {
+                pathNodes[depth++] = node;
+                node = node.left;
             }
+            target.key = node.key;
+            target.value = node.value;
+            unlinkedKey = node.key;
         }
-        if(node == null) return null;
+        return rebalancePath(depth, unlinkedKey, (node.left != null) ? node.left : node.right);
+    }
+
+    /**
+     * This method walks back up a recorded path, reattaching each changed subtree to its parent, then updating and balancing the parent.
+     * The side each subtree hangs from is found by comparing the key that was inserted or unlinked with the key of the parent.
+     * @param depth the number of nodes on the path
+     * @param key the key that was inserted or unlinked at the bottom of the path
+     * @param subtree the new root of the subtree below the last node of the path
+     * @return the root node of the updated AVL tree.
+     */
+    private AvlTreeNode rebalancePath(int depth, long key, AvlTreeNode subtree) {
+        for(int i = depth - 1; i >= 0; i--) {
+            AvlTreeNode parent = pathNodes[i];
+            pathNodes[i] = null;
+            //the successor of a deleted node lies right of the node it replaced, which already holds its key
+            if(key < parent.key) parent.left = subtree;
+            else parent.right = subtree;
+            subtree = balanceNode(parent);
+        }
+        return subtree;
+    }
 
-        //update the balance factor of each node, and balance the tree
+    /**
+     * This method updates the height and size of a node whose subtree changed, and rotates it if it is out of balance.
+     * @param node the AVL tree node to balance
+     * @return the root node of the balanced subtree.
+     */
+    private AvlTreeNode balanceNode(AvlTreeNode node) {
         node.setHeight(1 + getMax(getHeightOfNode(node.getLeft()), getHeightOfNode(node.getRight())));
+        node.setSize(1 + getSizeOfNode(node.getLeft()) + getSizeOfNode(node.getRight()));
         int balanceFactor = getBalanceFactor(node);
         if(balanceFactor > 1) {
-            if(getBalanceFactor(node.left) < 0) {
-                node.left = leftRotation(node.left);
-            }
+            if(getBalanceFactor(node.left) < 0) node.left = leftRotation(node.left);
             return rightRotation(node);
         }
         if(balanceFactor < -1) {
-            if(getBalanceFactor(node.right) > 0) {
-                node.right = rightRotation(node.right);
-            }
+            if(getBalanceFactor(node.right) > 0) node.right = rightRotation(node.right);
             return leftRotation(node);
         }
         return node;
     }
 
     /**
-     * This method counts the number of nodes in the AVL tree rooted at the given node whose keys fall within the specified range [key1, key2].
+     * This method counts the number of nodes in the AVL tree rooted at the given node whose keys fall strictly between key1 and key2.
+     * It takes two rank descents using the subtree sizes, so it runs in O(log n) whatever the width of the range.
      * @param node the root node of the current subtree
      * @param key1 the lower bound of the key range
      * @param key2 the upper bound of the key range
@@ -294,12 +485,91 @@ public class AvlTree extends CleverSIDC {
      */
     @Override
     public int rangeOfKeyInTree(AvlTreeNode node, long key1, long key2) {
-        if(node == null) return 0;
+        if(key1 >= key2) return 0;
+        //keys below key2, minus the keys up to and including key1
+        return rankOfKeyInTree(node, key2) - rankOfKeyInTree(node, key1 + 1);
+    }
+
+    /**
+     * This method counts the number of keys in the AVL tree rooted at the given node that are strictly smaller than the given key.
+     * @param node the root node of the current subtree
+     * @param key the key to rank
+     * @return the number of smaller keys, which is also the index the key has, or would have, in sorted order.
+     */
+    @Override
+    public int rankOfKeyInTree(AvlTreeNode node, long key) {
+        int rank = 0;
+        while(node != null) {
+            if(key <= node.getKey()) {
+                node = node.getLeft();
+            } else {
+                rank += getSizeOfNode(node.getLeft()) + 1;
+                node = node.getRight();
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * This method finds the node holding the key at the given index of the sorted sequence of the AVL tree rooted at the given node.
+     * @param node the root node of the current subtree
+     * @param index the zero-based position of the key in sorted order
+     * @return the AVL tree node at the given index, or null if the index is out of bounds.
+     */
+    @Override
+    public AvlTreeNode selectNodeInTree(AvlTreeNode node, int index) {
+        if(index < 0 || index >= getSizeOfNode(node)) return null;
+        while(node != null) {
+            int leftSize = getSizeOfNode(node.getLeft());
+            if(index < leftSize) {
+                node = node.getLeft();
+            } else if(index > leftSize) {
+                index -= leftSize + 1;
+                node = node.getRight();
+            } else return node;
+        }
+        return null;
+    }
+
+    /**
+     * This method finds the node holding the smallest key strictly greater than the given key, in the AVL tree rooted at the given node.
+     * The given key does not need to exist. The search is a single iterative descent remembering the last node passed on the left.
+     * @param node the root node of the current subtree
+     * @param key the key for which the successor is to be found
+     * @return the AVL tree node of the successor, or null if no key is greater than the given key.
+     */
+    @Override
+    public AvlTreeNode successorNodeInTree(AvlTreeNode node, long key) {
+        AvlTreeNode successor = null;
+        while(node != null) {
+            if(key < node.getKey()) {
+                successor = node;
+                node = node.getLeft();
+            } else {
+                node = node.getRight();
+            }
+        }
+        return successor;
+    }
 
-        int count = 0;
-        if(node.key > key1 && node.key < key2) count += 1; //count the current node
-        if(node.key > key1) count += rangeOfKeyInTree(node.getLeft(), key1, key2);
-        if(node.key < key2) count += rangeOfKeyInTree(node.getRight(), key1, key2);
-        return count;
+    /**
+     * This method finds the node holding the greatest key strictly smaller than the given key, in the AVL tree rooted at the given node.
+     * The given key does not need to exist. The search is a single iterative descent remembering the last node passed on the right.
+     * @param node the root node of the current subtree
+     * @param key the key for which the predecessor is to be found
+     * @return the AVL tree node of the predecessor, or null if no key is smaller than the given key.
+     */
+    @Override
+    public AvlTreeNode predecessorNodeInTree(AvlTreeNode node, long key) {
+        AvlTreeNode predecessor = null;
+        while(node != null) {
+            if(key > node.getKey()) {
+                predecessor = node;
+                node = node.getRight();
+            } else {
+                node = node.getLeft();
+            }
+        }
+        return predecessor;
     }
 }
@@ -0,0 +1,553 @@
+import java.util.Arrays;
+
+/**
+ * Implementation of a B+ tree, an extension of the CleverSIDC framework, meant for large registries.
+ * Every node packs up to 64 keys in a primitive long array, so a lookup visits only three or four nodes for millions of keys
+ * and searches each of them with a binary search over contiguous memory, instead of following one pointer per level
+ * as in the AVL tree. Entries live only in the leaves, which are linked in key order: listing the keys, or stepping to
+ * the next or previous key, walks the leaves sequentially. Inner nodes also keep the number of entries below each child,
+ * so range counts, rank and select take O(log n).
+ * @author Rania Maoukout & teammate
+ */
+public class BPlusTree extends CleverSIDC {
+    static final int LEAF_CAPACITY = 64, INNER_CAPACITY = 64;
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * A protected static inner class representing a node of a B+ tree, holding up to a fixed number of entries or children.
+     */
+    protected abstract static class BPlusTreeNode {
+        protected int count;
+    }
+
+    /**
+     * A protected static inner class representing a leaf of a B+ tree. The leaves hold the entries in key order
+     * and are linked to their neighbours. The arrays have room for one extra entry, held just before the leaf splits.
+     */
+    protected static class BPlusTreeLeaf extends BPlusTreeNode {
+        private final long[] keys = new long[LEAF_CAPACITY + 1];
+        private final String[] values = new String[LEAF_CAPACITY + 1];
+        private BPlusTreeLeaf previous, next;
+    }
+
+    /**
+     * A protected static inner class representing an inner node of a B+ tree. keys[i] is the smallest key that may be found
+     * under children[i + 1], and childSizes[i] is the number of entries under children[i].
+     * The arrays have room for one extra child, held just before the node splits.
+     */
+    protected static class BPlusTreeInnerNode extends BPlusTreeNode {
+        private final long[] keys = new long[INNER_CAPACITY];
+        private final BPlusTreeNode[] children = new BPlusTreeNode[INNER_CAPACITY + 1];
+        private final int[] childSizes = new int[INNER_CAPACITY + 1];
+    }
+
+    private BPlusTreeNode root = new BPlusTreeLeaf(); private BPlusTreeLeaf firstLeaf = (BPlusTreeLeaf) root;
+    private int sizeOfBPlusTree;
+    private final BPlusTreeInnerNode[] pathNodes = new BPlusTreeInnerNode[MAX_DEPTH]; private final int[] pathIndexes = new int[MAX_DEPTH];
+    private long promotedKey;
+
+    /**
+     * This method returns the size of the B+ tree.
+     * @return the number of entries in the B+ tree
+     */
+    public int getBPlusTreeSize() {
+        return this.sizeOfBPlusTree;
+    }
+
+    /**
+     * This method finds the index of the first of the given sorted keys that is greater than or equal to the given key.
+     * @param keys the sorted keys
+     * @param count the number of keys
+     * @param key the key to search for
+     * @return the index of the first key not less than the given key, or count if there is none.
+     */
+    private static int lowerBound(long[] keys, int count, long key) {
+        int low = 0, high = count;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(keys[mid] < key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * This method finds the index of the first of the given sorted keys that is strictly greater than the given key.
+     * @param keys the sorted keys
+     * @param count the number of keys
+     * @param key the key to search for
+     * @return the index of the first key greater than the given key, or count if there is none.
+     */
+    private static int upperBound(long[] keys, int count, long key) {
+        int low = 0, high = count;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(keys[mid] <= key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * This method finds the child of an inner node under which the given key belongs.
+     * @param node the inner node
+     * @param key the key to search for
+     * @return the index of the child.
+     */
+    private static int childIndex(BPlusTreeInnerNode node, long key) {
+        return upperBound(node.keys, node.count - 1, key);
+    }
+
+    /**
+     * This method finds the leaf under which the given key belongs, without recording the path.
+     * @param key the key to search for
+     * @return the leaf for the key.
+     */
+    private BPlusTreeLeaf findLeaf(long key) {
+        BPlusTreeNode node = root;
+        while(node instanceof BPlusTreeInnerNode) {
+            BPlusTreeInnerNode innerNode = (BPlusTreeInnerNode) node;
+            node = innerNode.children[childIndex(innerNode, key)];
+        }
+        return (BPlusTreeLeaf) node;
+    }
+
+    /**
+     * This method finds the leaf under which the given key belongs, recording the inner nodes and child indices on the way.
+     * @param key the key to search for
+     * @return the depth of the leaf, i.e. the number of inner nodes recorded.
+     */
+    private int recordPathToLeaf(long key) {
+        BPlusTreeNode node = root;
+        int depth = 0;
+        while(node instanceof BPlusTreeInnerNode) {
+            BPlusTreeInnerNode innerNode = (BPlusTreeInnerNode) node;
+            int index = childIndex(innerNode, key);
+            pathNodes[depth] = innerNode;
+            pathIndexes[depth++] = index;
+            node = innerNode.children[index];
+        }
+        return depth;
+    }
+
+    /**
+     * This method returns the node reached at the end of a recorded path.
+     * @param depth the depth of the path
+     * @return the root if the path is empty, or the child the last inner node of the path leads to.
+     */
+    private BPlusTreeNode nodeAtEndOfPath(int depth) {
+        if(depth == 0) return root;
+        return pathNodes[depth - 1].children[pathIndexes[depth - 1]];
+    }
+
+    /**
+     * This method counts the entries under an inner node.
+     * @param node the inner node
+     * @return the number of entries under the node.
+     */
+    private static int sizeOfInnerNode(BPlusTreeInnerNode node) {
+        int size = 0;
+        for(int i = 0; i < node.count; i++) size += node.childSizes[i];
+        return size;
+    }
+
+    /**
+     * This method moves the upper half of an overfull leaf to a new leaf linked right after it.
+     * @param leaf the overfull leaf
+     * @return the new right leaf.
+     */
+    private BPlusTreeLeaf splitLeaf(BPlusTreeLeaf leaf) {
+        if(sidcMetrics != null) sidcMetrics.countSplit();
+        BPlusTreeLeaf rightLeaf = new BPlusTreeLeaf();
+        int leftCount = leaf.count / 2;
+        rightLeaf.count = leaf.count - leftCount;
+        System.arraycopy(leaf.keys, leftCount, rightLeaf.keys, 0, rightLeaf.count);
+        System.arraycopy(leaf.values, leftCount, rightLeaf.values, 0, rightLeaf.count);
+        Arrays.fill(leaf.values, leftCount, leaf.count, null);
+        leaf.count = leftCount;
+
+        rightLeaf.next = leaf.next;
+        rightLeaf.previous = leaf;
+        if(leaf.next != null) leaf.next.previous = rightLeaf;
+        leaf.next = rightLeaf;
+        return rightLeaf;
+    }
+
+    /**
+     * This method moves the upper half of an overfull inner node to a new inner node. The key separating the two halves
+     * moves up to the parent and is left in promotedKey.
+     * @param node the overfull inner node
+     * @return the new right inner node.
+     */
+    private BPlusTreeInnerNode splitInnerNode(BPlusTreeInnerNode node) {
+        if(sidcMetrics != null) sidcMetrics.countSplit();
+        BPlusTreeInnerNode rightNode = new BPlusTreeInnerNode();
+        int leftCount = node.count / 2;
+        rightNode.count = node.count - leftCount;
+        promotedKey = node.keys[leftCount - 1];
+        System.arraycopy(node.keys, leftCount, rightNode.keys, 0, rightNode.count - 1);
+        System.arraycopy(node.children, leftCount, rightNode.children, 0, rightNode.count);
+        System.arraycopy(node.childSizes, leftCount, rightNode.childSizes, 0, rightNode.count);
+        Arrays.fill(node.children, leftCount, node.count, null);
+        node.count = leftCount;
+        return rightNode;
+    }
+
+    /**
+     * This method inserts a new child right after the given child of an inner node, separated from it by the given key.
+     * @param node the inner node
+     * @param index the index of the child that was split
+     * @param separator the smallest key that may be found under the new child
+     * @param child the new child
+     * @param leftSize the number of entries left under the split child
+     * @param rightSize the number of entries under the new child
+     */
+    private static void insertChild(BPlusTreeInnerNode node, int index, long separator, BPlusTreeNode child, int leftSize, int rightSize) {
+        System.arraycopy(node.keys, index, node.keys, index + 1, node.count - 1 - index);
+        System.arraycopy(node.children, index + 1, node.children, index + 2, node.count - 1 - index);
+        System.arraycopy(node.childSizes, index + 1, node.childSizes, index + 2, node.count - 1 - index);
+        node.keys[index] = separator;
+        node.children[index + 1] = child;
+        node.childSizes[index] = leftSize;
+        node.childSizes[index + 1] = rightSize;
+        node.count++;
+    }
+
+    /**
+     * This method removes a child from an inner node, along with the key separating it from its left neighbour,
+     * or from its right neighbour if it is the first child.
+     * @param node the inner node
+     * @param index the index of the child to remove
+     */
+    private static void removeChild(BPlusTreeInnerNode node, int index) {
+        int keyIndex = (index == 0) ? 0 : index - 1;
+        System.arraycopy(node.keys, keyIndex + 1, node.keys, keyIndex, node.count - 2 - keyIndex);
+        System.arraycopy(node.children, index + 1, node.children, index, node.count - 1 - index);
+        System.arraycopy(node.childSizes, index + 1, node.childSizes, index, node.count - 1 - index);
+        node.count--;
+        node.children[node.count] = null;
+    }
+
+    /**
+     * This method merges the child at the given index into its left neighbour, or its right neighbour into it
+     * if it is the first child, when the two fit in one node. An empty child always fits.
+     * @param parent the inner node holding the child
+     * @param index the index of the child
+     */
+    private void mergeWithNeighbour(BPlusTreeInnerNode parent, int index) {
+        if(parent.count < 2) return;
+        int leftIndex = (index == 0) ? 0 : index - 1, rightIndex = leftIndex + 1;
+        BPlusTreeNode leftNode = parent.children[leftIndex], rightNode = parent.children[rightIndex];
+
+        if(leftNode instanceof BPlusTreeLeaf) {
+            BPlusTreeLeaf leftLeaf = (BPlusTreeLeaf) leftNode, rightLeaf = (BPlusTreeLeaf) rightNode;
+            if(leftLeaf.count + rightLeaf.count > LEAF_CAPACITY) return;
+            System.arraycopy(rightLeaf.keys, 0, leftLeaf.keys, leftLeaf.count, rightLeaf.count);
+            System.arraycopy(rightLeaf.values, 0, leftLeaf.values, leftLeaf.count, rightLeaf.count);
+            leftLeaf.count += rightLeaf.count;
+            leftLeaf.next = rightLeaf.next;
+            if(rightLeaf.next != null) rightLeaf.next.previous = leftLeaf;
+        } else {
+            BPlusTreeInnerNode leftInner = (BPlusTreeInnerNode) leftNode, rightInner = (BPlusTreeInnerNode) rightNode;
+            if(leftInner.count + rightInner.count > INNER_CAPACITY) return;
+            //the separator of the two nodes in the parent now separates their children
+            leftInner.keys[leftInner.count - 1] = parent.keys[leftIndex];
+            System.arraycopy(rightInner.keys, 0, leftInner.keys, leftInner.count, rightInner.count - 1);
+            System.arraycopy(rightInner.children, 0, leftInner.children, leftInner.count, rightInner.count);
+            System.arraycopy(rightInner.childSizes, 0, leftInner.childSizes, leftInner.count, rightInner.count);
+            leftInner.count += rightInner.count;
+        }
+        parent.childSizes[leftIndex] += parent.childSizes[rightIndex];
+        removeChild(parent, rightIndex);
+    }
+
+    /**
+     * This method copies every entry, in key order, into the given arrays by walking the leaves.
+     * @param keysOut the array receiving the keys, at least getBPlusTreeSize() long
+     * @param valuesOut the array receiving the values, at least getBPlusTreeSize() long
+     */
+    void copyEntriesToArrays(long[] keysOut, String[] valuesOut) {
+        int index = 0;
+        for(BPlusTreeLeaf leaf = firstLeaf; leaf != null; leaf = leaf.next) {
+            System.arraycopy(leaf.keys, 0, keysOut, index, leaf.count);
+            System.arraycopy(leaf.values, 0, valuesOut, index, leaf.count);
+            index += leaf.count;
+        }
+    }
+
+    /**
+     * This method replaces the content of the B+ tree with the given sorted, duplicate-free entries, building it bottom-up:
+     * the entries are spread evenly over as few leaves as possible, and each inner level likewise over the level below.
+     * @param sortedKeys the keys in ascending order
+     * @param sortedValues the values associated with the keys
+     * @param count the number of entries to load
+     */
+    void loadSortedArrays(long[] sortedKeys, String[] sortedValues, int count) {
+        int leafCount = Math.max(1, (count + LEAF_CAPACITY - 1) / LEAF_CAPACITY);
+        BPlusTreeNode[] level = new BPlusTreeNode[leafCount];
+        long[] lowestKeys = new long[leafCount]; int[] levelSizes = new int[leafCount];
+        BPlusTreeLeaf previousLeaf = null;
+        for(int i = 0, start = 0; i < leafCount; i++) {
+            BPlusTreeLeaf leaf = new BPlusTreeLeaf();
+            leaf.count = count / leafCount + (i < count % leafCount ? 1 : 0);
+            System.arraycopy(sortedKeys, start, leaf.keys, 0, leaf.count);
+            System.arraycopy(sortedValues, start, leaf.values, 0, leaf.count);
+            if(leaf.count > 0) lowestKeys[i] = leaf.keys[0];
+            levelSizes[i] = leaf.count;
+            start += leaf.count;
+            leaf.previous = previousLeaf;
+            if(previousLeaf != null) previousLeaf.next = leaf;
+            previousLeaf = leaf;
+            level[i] = leaf;
+        }
+        firstLeaf = (BPlusTreeLeaf) level[0];
+
+        while(level.length > 1) {
+            int nodeCount = (level.length + INNER_CAPACITY - 1) / INNER_CAPACITY;
+            BPlusTreeNode[] upperLevel = new BPlusTreeNode[nodeCount];
+            long[] upperLowestKeys = new long[nodeCount]; int[] upperSizes = new int[nodeCount];
+            for(int i = 0, start = 0; i < nodeCount; i++) {
+                BPlusTreeInnerNode node = new BPlusTreeInnerNode();
+                node.count = level.length / nodeCount + (i < level.length % nodeCount ? 1 : 0);
+                System.arraycopy(level, start, node.children, 0, node.count);
+                System.arraycopy(levelSizes, start, node.childSizes, 0, node.count);
+                System.arraycopy(lowestKeys, start + 1, node.keys, 0, node.count - 1);
+                upperLowestKeys[i] = lowestKeys[start];
+                upperSizes[i] = sizeOfInnerNode(node);
+                start += node.count;
+                upperLevel[i] = node;
+            }
+            level = upperLevel;
+            lowestKeys = upperLowestKeys;
+            levelSizes = upperSizes;
+        }
+        root = level[0];
+        sizeOfBPlusTree = count;
+    }
+
+    // ---------------------------------------------------------------- //
+    //                        OVERRIDDEN METHODS                        //
+    // ---------------------------------------------------------------- //
+    /**
+     * This method tells whether the given key is present in the B+ tree.
+     * @param key the key to search for
+     * @return true if the key is present.
+     */
+    @Override
+    public boolean containsKeyInBPlusTree(long key) {
+        BPlusTreeLeaf leaf = findLeaf(key);
+        int position = lowerBound(leaf.keys, leaf.count, key);
+        return position < leaf.count && leaf.keys[position] == key;
+    }
+
+    /**
+     * This method retrieves the value associated with the given key in the B+ tree.
+     * @param key the key for which to retrieve the associated value
+     * @return the value associated with the key, or an empty string if the key does not exist.
+     */
+    @Override
+    public String getValueInBPlusTree(long key) {
+        BPlusTreeLeaf leaf = findLeaf(key);
+        int position = lowerBound(leaf.keys, leaf.count, key);
+        if(position < leaf.count && leaf.keys[position] == key) return leaf.values[position];
+        return "";
+    }
+
+    /**
+     * This method prints the key-value pairs of the B+ tree in key order by walking the leaves.
+     */
+    @Override
+    public void printBPlusTree() {
+        for(BPlusTreeLeaf leaf = firstLeaf; leaf != null; leaf = leaf.next) {
+            for(int i = 0; i < leaf.count; i++) {
+                System.out.println(leaf.keys[i] + " -- " + leaf.values[i]);
+            }
+        }
+    }
+
+    /**
+     * This method adds a key-value pair to the B+ tree if the key is not already present.
+     * A leaf that overflows is split in two and the split travels up the recorded path as long as the parents overflow too;
+     * when the root splits, the tree grows one level.
+     * @param keyToAdd the new key to add
+     * @param valueToAdd the value associated with the key
+     */
+    @Override
+    public void addKeyToBPlusTree(long keyToAdd, String valueToAdd) {
+        int depth = recordPathToLeaf(keyToAdd);
+        BPlusTreeLeaf leaf = (BPlusTreeLeaf) nodeAtEndOfPath(depth);
+        int position = lowerBound(leaf.keys, leaf.count, keyToAdd);
+        if(position < leaf.count && leaf.keys[position] == keyToAdd) return;
+
+        System.arraycopy(leaf.keys, position, leaf.keys, position + 1, leaf.count - position);
+        System.arraycopy(leaf.values, position, leaf.values, position + 1, leaf.count - position);
+        leaf.keys[position] = keyToAdd;
+        leaf.values[position] = valueToAdd;
+        leaf.count++;
+        sizeOfBPlusTree++;
+        for(int i = 0; i < depth; i++) pathNodes[i].childSizes[pathIndexes[i]]++;
+        if(leaf.count <= LEAF_CAPACITY) return;
+
+        BPlusTreeLeaf rightLeaf = splitLeaf(leaf);
+        BPlusTreeNode newChild = rightLeaf;
+        long separator = rightLeaf.keys[0];
+        int leftSize = leaf.count, rightSize = rightLeaf.count;
+        for(int i = depth - 1; i >= 0; i--) {
+            BPlusTreeInnerNode parent = pathNodes[i];
+            insertChild(parent, pathIndexes[i], separator, newChild, leftSize, rightSize);
+            if(parent.count <= INNER_CAPACITY) return;
+            BPlusTreeInnerNode rightNode = splitInnerNode(parent);
+            newChild = rightNode;
+            separator = promotedKey;
+            leftSize = sizeOfInnerNode(parent);
+            rightSize = sizeOfInnerNode(rightNode);
+        }
+        //the root itself was split
+        BPlusTreeInnerNode newRoot = new BPlusTreeInnerNode();
+        newRoot.count = 1;
+        newRoot.children[0] = root;
+        insertChild(newRoot, 0, separator, newChild, leftSize, rightSize);
+        root = newRoot;
+    }
+
+    /**
+     * This method removes the specified key from the B+ tree and returns the removed key.
+     * A node left under a quarter full is merged with a neighbour when the two fit in one node, so no node stays empty,
+     * and the root is dropped once it has a single child. Merges always keep the left node, so the first leaf never changes.
+     * @param keyToRemove the key to be removed from the B+ tree
+     * @return the removed key, or -1 if the key is not found in the B+ tree.
+     */
+    @Override
+    public long removeKeyFromBPlusTree(long keyToRemove) {
+        int depth = recordPathToLeaf(keyToRemove);
+        BPlusTreeLeaf leaf = (BPlusTreeLeaf) nodeAtEndOfPath(depth);
+        int position = lowerBound(leaf.keys, leaf.count, keyToRemove);
+        if(position == leaf.count || leaf.keys[position] != keyToRemove) return -1;
+
+        System.arraycopy(leaf.keys, position + 1, leaf.keys, position, leaf.count - position - 1);
+        System.arraycopy(leaf.values, position + 1, leaf.values, position, leaf.count - position - 1);
+        leaf.count--;
+        leaf.values[leaf.count] = null;
+        sizeOfBPlusTree--;
+        for(int i = 0; i < depth; i++) pathNodes[i].childSizes[pathIndexes[i]]--;
+
+        for(int i = depth - 1; i >= 0; i--) {
+            BPlusTreeNode node = nodeAtEndOfPath(i + 1);
+            int minimum = (node instanceof BPlusTreeLeaf) ? LEAF_CAPACITY / 4 : INNER_CAPACITY / 4;
+            if(node.count >= minimum) break;
+            mergeWithNeighbour(pathNodes[i], pathIndexes[i]);
+        }
+        while(root instanceof BPlusTreeInnerNode && root.count == 1) {
+            root = ((BPlusTreeInnerNode) root).children[0];
+        }
+        return keyToRemove;
+    }
+
+    /**
+     * This method passes the entries whose keys are between low and high, both included, to the given consumer in key order.
+     * A single descent finds the leaf of low, and the scan then follows the links between the leaves.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return the number of entries passed to the consumer.
+     */
+    @Override
+    public int forEachInBPlusTree(long low, long high, LongObjConsumer<String> consumer) {
+        BPlusTreeLeaf leaf = findLeaf(low);
+        int position = lowerBound(leaf.keys, leaf.count, low), delivered = 0;
+        while(leaf != null) {
+            for(; position < leaf.count; position++) {
+                if(leaf.keys[position] > high) return delivered;
+                delivered++;
+                if(!consumer.accept(leaf.keys[position], leaf.values[position])) return delivered;
+            }
+            leaf = leaf.next;
+            position = 0;
+        }
+        return delivered;
+    }
+
+    /**
+     * This method counts the number of keys in the B+ tree that are strictly between key1 and key2.
+     * @param key1 the lower bound of the key range
+     * @param key2 the upper bound of the key range
+     * @return the count of keys in the specified range.
+     */
+    @Override
+    public int rangeOfKeyInBPlusTree(long key1, long key2) {
+        if(key1 >= key2) return 0;
+        return rankOfKeyInBPlusTree(key2) - rankOfKeyInBPlusTree(key1 + 1);
+    }
+
+    /**
+     * This method counts the number of keys in the B+ tree that are strictly smaller than the given key,
+     * adding up the sizes of the children passed on the way down.
+     * @param key the key to rank
+     * @return the number of smaller keys, which is also the index the key has, or would have, in sorted order.
+     */
+    @Override
+    public int rankOfKeyInBPlusTree(long key) {
+        BPlusTreeNode node = root;
+        int rank = 0;
+        while(node instanceof BPlusTreeInnerNode) {
+            BPlusTreeInnerNode innerNode = (BPlusTreeInnerNode) node;
+            int index = childIndex(innerNode, key);
+            for(int i = 0; i < index; i++) rank += innerNode.childSizes[i];
+            node = innerNode.children[index];
+        }
+        BPlusTreeLeaf leaf = (BPlusTreeLeaf) node;
+        return rank + lowerBound(leaf.keys, leaf.count, key);
+    }
+
+    /**
+     * This method finds the key at the given index of the sorted sequence of the B+ tree.
+     * @param index the zero-based position of the key in sorted order
+     * @return the key at the given index, or NO_KEY if the index is out of bounds.
+     */
+    @Override
+    public long selectKeyInBPlusTree(int index) {
+        if(index < 0 || index >= sizeOfBPlusTree) return NO_KEY;
+        BPlusTreeNode node = root;
+        while(node instanceof BPlusTreeInnerNode) {
+            BPlusTreeInnerNode innerNode = (BPlusTreeInnerNode) node;
+            int child = 0;
+            while(index >= innerNode.childSizes[child]) index -= innerNode.childSizes[child++];
+            node = innerNode.children[child];
+        }
+        return ((BPlusTreeLeaf) node).keys[index];
+    }
+
+    /**
+     * This method finds the smallest key of the B+ tree strictly greater than the given key, moving to the next leaf if needed.
+     * @param key the key for which the successor is to be found
+     * @return the successor key, or NO_KEY if no key is greater than the given key.
+     */
+    @Override
+    public long successorKeyInBPlusTree(long key) {
+        BPlusTreeLeaf leaf = findLeaf(key);
+        int position = upperBound(leaf.keys, leaf.count, key);
+        while(position == leaf.count) {
+            leaf = leaf.next;
+            if(leaf == null) return NO_KEY;
+            position = 0;
+        }
+        return leaf.keys[position];
+    }
+
+    /**
+     * This method finds the greatest key of the B+ tree strictly smaller than the given key, moving to the previous leaf if needed.
+     * @param key the key for which the predecessor is to be found
+     * @return the predecessor key, or NO_KEY if no key is smaller than the given key.
+     */
+    @Override
+    public long predecessorKeyInBPlusTree(long key) {
+        BPlusTreeLeaf leaf = findLeaf(key);
+        int position = lowerBound(leaf.keys, leaf.count, key) - 1;
+        while(position < 0) {
+            leaf = leaf.previous;
+            if(leaf == null) return NO_KEY;
+            position = leaf.count - 1;
+        }
+        return leaf.keys[position];
+    }
+}
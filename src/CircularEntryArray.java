@@ -1,19 +1,24 @@
 
 /**
  * CircularEntryArray class represents a circular array data structure with key-value pairs.
+ * The entries are kept in ascending key order, so lookups and insertion positions are found by binary search.
+ * The array is a ring: the first entry sits at headOfArray and the following ones wrap around the end of the storage,
+ * so entries are added or removed at either end in O(1), and an interior insertion or removal shifts whichever side is shorter.
  * It extends the CleverSIDC class and provides methods for managing, sorting, and retrieving data in the array.
  * @author Rania Maoukout & teammate
  */
 public class CircularEntryArray extends CleverSIDC {
-    private int rearOfArray = 0, sizeOfArray; private long[] keys; private String[] values;
+    public static final double DEFAULT_GROWTH_FACTOR = 2.0;
+    private static final int MIN_CAPACITY = 10, SHRINK_RATIO = 4;
+    private int headOfArray = 0, sizeOfArray; private double growthFactor = DEFAULT_GROWTH_FACTOR; private long[] keys; private String[] values;
 
     /**
      * Parameterized constructor.
      */
     public CircularEntryArray() {
         //set initial capacity for both key and values
-        keys = new long[10];
-        values = new String[10];
+        keys = new long[MIN_CAPACITY];
+        values = new String[MIN_CAPACITY];
         sizeOfArray = 0;
     }
 
@@ -26,47 +31,160 @@ public class CircularEntryArray extends CleverSIDC {
     }
 
     /**
-     * This method resizes the circular array by doubling its capacity, and copying existing elements to the new array.
+     * This method returns the number of entries the array can hold before it has to grow.
+     * @return the capacity of the array
      */
-    private void resizeArray() {
-        long[] newKeys = new long[sizeOfArray * 2];
-        String[] newValues = new String[sizeOfArray * 2];
-        for(int i = 0; i < keys.length; i++) {
-            newKeys[i] = keys[i];
-            newValues[i] = values[i];
-        }
+    public int getArrayCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * This method sets the factor by which the capacity is multiplied when the array is full.
+     * @param factor the growth factor, greater than 1
+     * @throws IllegalArgumentException if the factor is not greater than 1.
+     */
+    public void setGrowthFactor(double factor) {
+        if(!(factor > 1.0)) throw new IllegalArgumentException("The growth factor must be greater than 1.");
+        growthFactor = factor;
+    }
+
+    /**
+     * This method maps a position in key order to its index in the storage.
+     * @param index the position of the entry in key order, between 0 and the capacity
+     * @return the index of the entry in the storage arrays.
+     */
+    private int physicalIndex(int index) {
+        int physical = headOfArray + index;
+        return (physical >= keys.length) ? physical - keys.length : physical;
+    }
+
+    /**
+     * This method copies the entries, in key order, into the given arrays.
+     * @param keysOut the array receiving the keys, at least as long as the size of the array
+     * @param valuesOut the array receiving the values, at least as long as the size of the array
+     */
+    void copyEntriesToArrays(long[] keysOut, String[] valuesOut) {
+        int firstPart = Math.min(sizeOfArray, keys.length - headOfArray);
+        System.arraycopy(keys, headOfArray, keysOut, 0, firstPart);
+        System.arraycopy(values, headOfArray, valuesOut, 0, firstPart);
+        //the entries that wrapped around the end of the storage
+        System.arraycopy(keys, 0, keysOut, firstPart, sizeOfArray - firstPart);
+        System.arraycopy(values, 0, valuesOut, firstPart, sizeOfArray - firstPart);
+    }
+
+    /**
+     * This method replaces the contents of the array with entries that are already sorted by key and free of duplicates.
+     * @param sortedKeys the keys in ascending order
+     * @param sortedValues the values associated with the keys
+     * @param count the number of entries to take from the given arrays
+     */
+    void loadSortedArrays(long[] sortedKeys, String[] sortedValues, int count) {
+        int capacity = Math.max(MIN_CAPACITY, count);
+        keys = new long[capacity];
+        values = new String[capacity];
+        System.arraycopy(sortedKeys, 0, keys, 0, count);
+        System.arraycopy(sortedValues, 0, values, 0, count);
+        sizeOfArray = count;
+        headOfArray = 0;
+    }
+
+    /**
+     * This method moves the entries to new storage of the given capacity, unwrapping them so the first entry lands at index 0.
+     * @param capacity the new capacity, at least the size of the array
+     */
+    private void resizeArray(int capacity) {
+        if(sidcMetrics != null) sidcMetrics.countResize();
+        long[] newKeys = new long[capacity];
+        String[] newValues = new String[capacity];
+        copyEntriesToArrays(newKeys, newValues);
         keys = newKeys;
         values = newValues;
+        headOfArray = 0;
+    }
+
+    /**
+     * This method grows the storage by the growth factor, and by at least one entry.
+     */
+    private void growArray() {
+        resizeArray((int) Math.min(Integer.MAX_VALUE - 8, Math.max(keys.length + 1L, (long) (keys.length * growthFactor))));
+    }
+
+    /**
+     * This method shrinks the storage to the number of entries, so the memory of removed entries is given back.
+     */
+    @Override
+    public void trimArray() {
+        int capacity = Math.max(MIN_CAPACITY, sizeOfArray);
+        if(capacity < keys.length) resizeArray(capacity);
     }
 
     /**
      * This method retrieves the key at the specified index in the circular array.
      * @param index the index of the key to retrieve
-     * @return the key at the specified index.
-     * @throws IndexOutOfBoundsException if the provided index is out of bounds.
+     * @return the key at the specified index, or NO_KEY if the index is out of bounds.
      */
     @Override
     public long getKeyAtIndex(int index) {
-        try {
-            if (index < 0 || index >= sizeOfArray) throw new IndexOutOfBoundsException("The provided index is out of bounds, therefore, the key doesn't exist.");
-        } catch (IndexOutOfBoundsException exception) {
-            System.out.println(exception.getMessage());
-            return 0;
-        }
-        return keys[index];
+        if(index < 0 || index >= sizeOfArray) return NO_KEY;
+        return keys[physicalIndex(index)];
     }
 
     /**
-     * This method finds the index of the specified key in the circular array.
+     * This method finds the index of the specified key in the circular array using binary search.
      * @param key the key to search for in the array
      * @return the index of the key if found, or -1 if the key is not present in the array.
      */
     @Override
     public int findKeyInArray(long key) {
-       for(int i = 0; i < sizeOfArray; i++) {
-           if(keys[i] == key) return i;
-       }
-       return -1;
+        int index = lowerBoundOfKey(key);
+        if(index < sizeOfArray && keys[physicalIndex(index)] == key) return index;
+        return -1;
+    }
+
+    /**
+     * This method counts the number of keys in the array that are strictly smaller than the specified key.
+     * @param key the key to rank
+     * @return the number of smaller keys, which is also the index the key has, or would have, in the array.
+     */
+    @Override
+    public int rankOfKeyInArray(long key) {
+        return lowerBoundOfKey(key);
+    }
+
+    /**
+     * This method finds the position of the first key that is greater than or equal to the specified key.
+     * It is both the index of the key when present and the position where the key would be inserted otherwise.
+     * @param key the key to search for in the array
+     * @return the index of the first key not less than the given key, or the size of the array if there is none.
+     */
+    private int lowerBoundOfKey(long key) {
+        int low = 0, high = sizeOfArray;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(keys[physicalIndex(mid)] < key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * This method passes the entries whose keys are between low and high, both included, to the given consumer.
+     * The first key is found by binary search and the following ones are read in place.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return the number of entries passed to the consumer.
+     */
+    @Override
+    public int forEachInArray(long low, long high, LongObjConsumer<String> consumer) {
+        int delivered = 0;
+        for(int i = lowerBoundOfKey(low); i < sizeOfArray; i++) {
+            int physical = physicalIndex(i);
+            if(keys[physical] > high) break;
+            delivered++;
+            if(!consumer.accept(keys[physical], values[physical])) break;
+        }
+        return delivered;
     }
 
     /**
@@ -77,8 +195,8 @@ public class CircularEntryArray extends CleverSIDC {
     @Override
     public String getValueInArray(long key) {
         int keyValue = findKeyInArray(key);
-        if(keyValue == -1) return "";
-        return values[keyValue];
+        if(keyValue == -1) return NO_VALUE;
+        return values[physicalIndex(keyValue)];
     }
 
     /**
@@ -114,24 +232,24 @@ public class CircularEntryArray extends CleverSIDC {
 
         //copy data to temporary arrays
         for (int i = 0; i < sizeLeft; ++i) {
-            leftKeys[i] = keys[(left + i) % sizeOfArray];
-            leftValues[i] = values[(left + i) % sizeOfArray];
+            leftKeys[i] = keys[physicalIndex(left + i)];
+            leftValues[i] = values[physicalIndex(left + i)];
         }
         for (int j = 0; j < sizeRight; ++j) {
-            rightKeys[j] = keys[(mid + 1 + j) % sizeOfArray];
-            rightValues[j] = values[(mid + 1 + j) % sizeOfArray];
+            rightKeys[j] = keys[physicalIndex(mid + 1 + j)];
+            rightValues[j] = values[physicalIndex(mid + 1 + j)];
         }
 
         //merge the temporary arrays back into the original circular array
         int i = 0, j = 0, k = left;
         while (i < sizeLeft && j < sizeRight) {
             if (leftKeys[i] <= rightKeys[j]) {
-                keys[k % sizeOfArray] = leftKeys[i];
-                values[k % sizeOfArray] = leftValues[i];
+                keys[physicalIndex(k)] = leftKeys[i];
+                values[physicalIndex(k)] = leftValues[i];
                 i++;
             } else {
-                keys[k % sizeOfArray] = rightKeys[j];
-                values[k % sizeOfArray] = rightValues[j];
+                keys[physicalIndex(k)] = rightKeys[j];
+                values[physicalIndex(k)] = rightValues[j];
                 j++;
             }
             k++;
@@ -139,15 +257,15 @@ public class CircularEntryArray extends CleverSIDC {
 
         //copy the remaining elements of leftKeys[], leftValues[], if there are any
         while (i < sizeLeft) {
-            keys[k % sizeOfArray] = leftKeys[i];
-            values[k % sizeOfArray] = leftValues[i];
+            keys[physicalIndex(k)] = leftKeys[i];
+            values[physicalIndex(k)] = leftValues[i];
             i++;
             k++;
         }
         //copy the remaining elements of rightKeys[], rightValues[], if there are any
         while (j < sizeRight) {
-            keys[k % sizeOfArray] = rightKeys[j];
-            values[k % sizeOfArray] = rightValues[j];
+            keys[physicalIndex(k)] = rightKeys[j];
+            values[physicalIndex(k)] = rightValues[j];
             j++;
             k++;
         }
@@ -159,73 +277,116 @@ public class CircularEntryArray extends CleverSIDC {
     @Override
     public void printCircularArray() {
         for(int i = 0; i < sizeOfArray; i++) {
-            System.out.printf("%d -- %s%n", keys[i], values[i]);
+            int physical = physicalIndex(i);
+            System.out.printf("%d -- %s%n", keys[physical], values[physical]);
         }
     }
 
     /**
-     * This method adds a key-value pair to the array if the key is not already present.
+     * This method adds a key-value pair to the array if the key is not already present, keeping the keys in ascending order.
+     * The entries on the shorter side of the insertion position move by one slot, so adding at either end moves nothing.
      * @param keyToAdd the new key to add
      * @param valueToAdd the value associated with the key
      */
     @Override
     public void addKeyToArray(long keyToAdd, String valueToAdd) {
-        if(findKeyInArray(keyToAdd) == -1) {
-            if(sizeOfArray == keys.length) resizeArray();
-            keys[sizeOfArray] = keyToAdd;
-            values[sizeOfArray] = valueToAdd;
-            sizeOfArray++;
-            rearOfArray++;
+        int insertionIndex = lowerBoundOfKey(keyToAdd);
+        if(insertionIndex < sizeOfArray && keys[physicalIndex(insertionIndex)] == keyToAdd) return;
+
+        if(sizeOfArray == keys.length) growArray();
+        if(insertionIndex < sizeOfArray - insertionIndex) {
+            //open a slot before the head and shift the smaller keys one position to the left
+            headOfArray = (headOfArray == 0) ? keys.length - 1 : headOfArray - 1;
+            moveDown(1, insertionIndex);
+        } else {
+            //shift the greater keys one position to the right
+            moveUp(insertionIndex, sizeOfArray - insertionIndex);
         }
+        int slot = physicalIndex(insertionIndex);
+        keys[slot] = keyToAdd;
+        values[slot] = valueToAdd;
+        sizeOfArray++;
     }
 
     /**
      * This method removes the specified key from the array and returns the removed key.
+     * The entries on the shorter side of the removed one move by one slot to close the gap, so removing at either end moves nothing.
+     * Once the array is a quarter full, its storage is halved.
      * @param keyToRemove the key to be removed from the array
      * @return the removed key, or -1 if the key is not found in the array.
      */
     @Override
     public long removeKeyFromArray(long keyToRemove) {
-        long removedKey = -1; int removedKeyIndex = -1;
+        int removedKeyIndex = findKeyInArray(keyToRemove);
+        if(removedKeyIndex == -1) return -1;
 
-        for(int i = 0; i < sizeOfArray; i++) {
-            if(keys[i] == keyToRemove) {
-                removedKey = keys[i];
-                removedKeyIndex = i;
-                break;
-            }
+        if(removedKeyIndex < sizeOfArray - 1 - removedKeyIndex) {
+            //shift the smaller keys one position to the right and advance the head
+            moveUp(0, removedKeyIndex);
+            values[headOfArray] = null;
+            headOfArray = physicalIndex(1);
+        } else {
+            //shift the greater keys one position to the left
+            moveDown(removedKeyIndex + 1, sizeOfArray - removedKeyIndex - 1);
+            values[physicalIndex(sizeOfArray - 1)] = null;
         }
-        if(!(removedKeyIndex == -1)) {
-            for(int j = removedKeyIndex; j < sizeOfArray - 1; j++) {
-                keys[j] = keys[j + 1];
-                values[j] = values[j + 1];
-            }
-            sizeOfArray--;
-            rearOfArray--;
+        sizeOfArray--;
+        if(keys.length > MIN_CAPACITY && sizeOfArray <= keys.length / SHRINK_RATIO) resizeArray(Math.max(MIN_CAPACITY, keys.length / 2));
+        return keyToRemove;
+    }
+
+    /**
+     * This method moves the entries at the given positions one position down, i.e. towards the head, wrapping around the storage.
+     * The entries are copied in ascending order, in contiguous runs of the storage.
+     * @param from the position of the first entry to move
+     * @param length the number of entries to move
+     */
+    private void moveDown(int from, int length) {
+        int source = physicalIndex(from), target = (source == 0) ? keys.length - 1 : source - 1;
+        while(length > 0) {
+            int run = Math.min(length, keys.length - Math.max(source, target));
+            System.arraycopy(keys, source, keys, target, run);
+            System.arraycopy(values, source, values, target, run);
+            source += run;
+            target += run;
+            if(source == keys.length) source = 0;
+            if(target == keys.length) target = 0;
+            length -= run;
         }
-        return removedKey;
     }
 
     /**
-     * This method finds the range of indices in the array for keys falling within the specified range (key1, key2).
+     * This method moves the entries at the given positions one position up, i.e. away from the head, wrapping around the storage.
+     * The entries are copied in descending order, in contiguous runs of the storage. The array must have a free slot.
+     * @param from the position of the first entry to move
+     * @param length the number of entries to move
+     */
+    private void moveUp(int from, int length) {
+        if(length == 0) return;
+        //exclusive ends of the runs, between 1 and the capacity
+        int sourceEnd = physicalIndex(from + length - 1) + 1, targetEnd = (sourceEnd == keys.length) ? 1 : sourceEnd + 1;
+        while(length > 0) {
+            int run = Math.min(length, Math.min(sourceEnd, targetEnd));
+            System.arraycopy(keys, sourceEnd - run, keys, targetEnd - run, run);
+            System.arraycopy(values, sourceEnd - run, values, targetEnd - run, run);
+            sourceEnd -= run;
+            targetEnd -= run;
+            if(sourceEnd == 0) sourceEnd = keys.length;
+            if(targetEnd == 0) targetEnd = keys.length;
+            length -= run;
+        }
+    }
+
+    /**
+     * This method counts the keys in the array that fall strictly between key1 and key2, like the trees do.
+     * The keys do not need to exist: the count is the difference of their two lower bounds.
      * @param key1 the lower bound of the key range
      * @param key2 the upper bound of the key range
-     * @return the number of elements in the array with keys in the specified range.
-     * Returns -1 if one of the keys does not exist in the array, or 0 if the index of key1 is after that of key2.
+     * @return the number of elements in the array with keys in the specified range, or 0 if key1 is not below key2.
      */
     @Override
     public int rangeOfKeyInArray(long key1, long key2) {
-        int startRange = findKeyInArray(key1);
-        int endRange = findKeyInArray(key2);
-
-        if(startRange == -1 || endRange == -1) {
-            System.out.println("One of the keys do not exist.");
-            return -1;
-        }
-        if(startRange > endRange) {
-            System.out.println("Index of key1 is after that of key2.");
-            return -1;
-        }
-        return ((endRange - startRange) - 1);
+        if(key1 >= key2) return 0;
+        return lowerBoundOfKey(key2) - lowerBoundOfKey(key1 + 1);
     }
 }
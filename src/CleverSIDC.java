@@ -1,4 +1,6 @@
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * CleverSIDC class represents a data structure that can be either a CircularArray or an AVLTree based on a specified threshold.
@@ -10,60 +12,495 @@ import java.util.Random;
  * @author Rania Maoukout & teammate
  */
 public class CleverSIDC {
-    private CircularEntryArray sidcArray; private AvlTree sidcTree; private AvlTree.AvlTreeNode sidcNode;
-    private int sizeOfThreshold; Random random = new Random();
-    private final String[] firstNames = {"Alice", "Bob", "Charlie", "David", "Eva", "Frank", "Grace", "Harry"};
-    private final String[] lastNames = {"Smith", "Johnson", "Williams", "Jones", "Brown", "Davis", "Miller", "Gill"};
+    public static final int DEFAULT_LOW_WATERMARK = 250, DEFAULT_HIGH_WATERMARK = 1000, BPLUS_TREE_THRESHOLD = 100000;
+    //in adaptive mode the BPlusTree only moves back to the AVLTree below this size, so a size near the threshold does not flip them
+    public static final int BPLUS_TREE_LOW_WATERMARK = BPLUS_TREE_THRESHOLD / 2;
+    //results of the queries that find nothing: keys are 8-digit, so 0 is never a key
+    public static final long NO_KEY = 0; public static final String NO_VALUE = "";
+    static final int BATCH_REBUILD_RATIO = 4, BATCH_SCAN_MIN_SIZE = 1 << 16;
+    private CircularEntryArray sidcArray; private AvlTree sidcTree; private BPlusTree sidcBPlusTree;
+    private int sizeOfThreshold, lowWatermark, highWatermark; private boolean adaptiveBackend; Random random = new Random();
+    private LongIntHashIndex sidcIndex; private String[] indexedValues; private int[] freeValueSlots;
+    private int usedValueSlots, freeValueSlotCount; private SIDCKeyBitset sidcKeyBitset;
+    private double arrayGrowthFactor = CircularEntryArray.DEFAULT_GROWTH_FACTOR; private LongValueCache valueCache;
+    private SIDCValueInterner valueInterner;
+    SIDCMetrics sidcMetrics;
+    private static final String[] firstNames = {"Alice", "Bob", "Charlie", "David", "Eva", "Frank", "Grace", "Harry"};
+    private static final String[] lastNames = {"Smith", "Johnson", "Williams", "Jones", "Brown", "Davis", "Miller", "Gill"};
+    private static final String[] studentNames = buildStudentNames();
 
     /**
      * This method defines the size of the list.
      * @param size the size to be set for the CleverSIDC list
      */
     public void setSIDCThreshold(int size) {
+        createBackend(size);
+    }
+
+    /**
+     * This method creates the backend selected by the given size threshold: the CircularArray up to 500 records,
+     * the AVLTree up to BPLUS_TREE_THRESHOLD records, and the BPlusTree above.
+     * @param size the size to be set for the CleverSIDC list
+     */
+    private void createBackend(int size) {
         sizeOfThreshold = size;
+        sidcArray = null; sidcTree = null; sidcBPlusTree = null;
+        if(valueCache != null) valueCache.clear();
         if(sizeOfThreshold <= 500) {
-            sidcArray = new CircularEntryArray();
+            sidcArray = newCircularArray();
+        } else if(sizeOfThreshold <= BPLUS_TREE_THRESHOLD) {
+            sidcTree = new AvlTree();
+        } else {
+            sidcBPlusTree = new BPlusTree();
+        }
+        attachMetrics();
+    }
+
+    /**
+     * This method creates an empty CircularArray that grows by the configured growth factor.
+     * @return the new CircularArray.
+     */
+    private CircularEntryArray newCircularArray() {
+        CircularEntryArray circularArray = new CircularEntryArray();
+        circularArray.setGrowthFactor(arrayGrowthFactor);
+        return circularArray;
+    }
+
+    /**
+     * This method sets the factor by which the capacity of the CircularArray is multiplied when it is full, now and after any migration.
+     * A smaller factor wastes less memory, a larger one copies the entries less often.
+     * @param growthFactor the growth factor, greater than 1
+     * @throws IllegalArgumentException if the factor is not greater than 1.
+     */
+    public void setSIDCArrayGrowth(double growthFactor) {
+        if(!(growthFactor > 1.0)) throw new IllegalArgumentException("The growth factor must be greater than 1.");
+        arrayGrowthFactor = growthFactor;
+        if(sidcArray != null) sidcArray.setGrowthFactor(growthFactor);
+    }
+
+    /**
+     * This method gives back the memory of removed entries by shrinking the storage of the CircularArray to its number of entries.
+     * The CircularArray already halves its storage once it is a quarter full; this trims the rest, e.g. after a mass withdrawal.
+     * The trees allocate one node per entry and have nothing to trim.
+     */
+    public void trimToSize() {
+        if(isArrayBackend()) sidcArray.trimArray();
+    }
+
+    /**
+     * This method lets CleverSIDC switch between the CircularArray, the AVLTree and the BPlusTree as the number of records changes.
+     * The records migrate in bulk to a tree once the size grows above the high watermark, and back to the CircularArray
+     * once it falls below the low watermark. As in setSIDCThreshold, the tree is the AVLTree up to BPLUS_TREE_THRESHOLD records
+     * and the BPlusTree above; a BPlusTree only moves back to the AVLTree below BPLUS_TREE_LOW_WATERMARK records.
+     * The gaps between the watermarks keep the backend from flipping back and forth.
+     * @param low the size under which the records move to the CircularArray
+     * @param high the size over which the records move to a tree
+     * @throws IllegalArgumentException if the watermarks are negative or low is not below high.
+     */
+    public void setSIDCAdaptive(int low, int high) {
+        if(low < 0 || low >= high) throw new IllegalArgumentException("The low watermark must be non-negative and below the high watermark.");
+        if(!hasBackend()) createBackend(0);
+        lowWatermark = low;
+        highWatermark = high;
+        adaptiveBackend = true;
+        adaptBackend();
+    }
+
+    /**
+     * This method turns on or off a hash index that mirrors every entry next to the CircularArray or AVLTree.
+     * The index maps each key to a slot of a value table, so membership tests and value lookups take O(1),
+     * while the ordered structure keeps serving the ordered queries.
+     * @param enabled true to build the index from the current entries, false to drop it
+     */
+    public void setSIDCHashIndex(boolean enabled) {
+        sidcIndex = null; indexedValues = null; freeValueSlots = null;
+        if(!enabled) return;
+        if(!hasBackend()) createBackend(0);
+        buildHashIndex();
+    }
+
+    /**
+     * This method builds the hash index from the current entries.
+     */
+    private void buildHashIndex() {
+        int size = sizeOfBackend();
+        long[] keys = new long[size]; String[] values = new String[size];
+        copyEntriesToArrays(keys, values);
+        sidcIndex = new LongIntHashIndex(size);
+        indexedValues = new String[Math.max(16, size)];
+        freeValueSlots = new int[16];
+        usedValueSlots = 0; freeValueSlotCount = 0;
+        for(int i = 0; i < size; i++) indexEntry(keys[i], values[i]);
+    }
+
+    /**
+     * This method turns on or off the bitset key generator, which tracks every used 8-digit ID in a bitset of the whole ID space.
+     * With it, generate() scans for a free bit from a random offset instead of retrying random IDs until one is unused.
+     * @param enabled true to build the bitset from the current entries, false to drop it
+     */
+    public void setSIDCBitsetGenerator(boolean enabled) {
+        sidcKeyBitset = null;
+        if(!enabled) return;
+        if(!hasBackend()) createBackend(0);
+        buildKeyBitset();
+    }
+
+    /**
+     * This method turns on or off a read-through cache of the values returned by getValues, bounded by a number of entries and,
+     * optionally, by an estimate of their size in bytes. The cache evicts by W-TinyLFU, so it keeps the small set of keys that
+     * serve most of the lookups. It pays off in front of storage where reading a value is costly, such as a MappedSIDCSnapshot;
+     * the PersistentAvlTree and the SlabAvlTree do not consult it. Removed keys are dropped from the cache, and keys that were
+     * not found are not cached, so the cache never returns a stale value.
+     * @param maxEntries the maximum number of cached values, or 0 to drop the cache
+     * @param maxBytes the maximum estimated size of the cached values in bytes, or 0 for no byte limit
+     * @throws IllegalArgumentException if maxEntries or maxBytes is negative.
+     */
+    public void setSIDCValueCache(int maxEntries, long maxBytes) {
+        if(maxEntries < 0) throw new IllegalArgumentException("The cache size cannot be negative.");
+        valueCache = (maxEntries == 0) ? null : new LongValueCache(maxEntries, maxBytes);
+    }
+
+    /**
+     * This method returns the value cache, whose counters tell how many lookups it answered.
+     * @return the value cache, or null if there is none.
+     */
+    public LongValueCache getValueCache() {
+        return valueCache;
+    }
+
+    /**
+     * This method turns on or off the collection of metrics: a latency histogram for every public operation, and counters of
+     * AVLTree rotations, BPlusTree splits, CircularArray resizes, backend migrations and generate retries.
+     * The metrics are read through getSIDCMetrics and can be written to a file or registered with JMX.
+     * When they are off, each operation only pays for a null check.
+     * @param enabled true to start collecting from zero, false to stop and drop the metrics
+     */
+    public void setSIDCMetrics(boolean enabled) {
+        sidcMetrics = enabled ? new SIDCMetrics(this) : null;
+        attachMetrics();
+    }
+
+    /**
+     * This method returns the metrics collected since they were turned on.
+     * @return the metrics, or null if they are off.
+     */
+    public SIDCMetrics getSIDCMetrics() {
+        return sidcMetrics;
+    }
+
+    /**
+     * This method hands the metrics to the active backend, so it can count its rotations, splits or resizes.
+     */
+    private void attachMetrics() {
+        if(sidcArray != null) sidcArray.sidcMetrics = sidcMetrics;
+        if(sidcTree != null) sidcTree.sidcMetrics = sidcMetrics;
+        if(sidcBPlusTree != null) sidcBPlusTree.sidcMetrics = sidcMetrics;
+    }
+
+    /**
+     * This method reads the clock at the start of a timed operation. Subclasses that override an operation call it too,
+     * so their metrics count the same operations as the built-in backends.
+     * @return the current time in nanoseconds, or 0 if the metrics are off.
+     */
+    protected long startTimer() {
+        return (sidcMetrics == null) ? 0 : System.nanoTime();
+    }
+
+    /**
+     * This method records the latency of a timed operation.
+     * @param operation the operation that ran
+     * @param start the time returned by startTimer
+     */
+    protected void stopTimer(SIDCMetrics.Operation operation, long start) {
+        if(sidcMetrics != null) sidcMetrics.record(operation, start);
+    }
+
+    /**
+     * This method names the active backend. Subclasses that are their own backend override it with their own name.
+     * @return "array", "tree", "bplus", or "none" before a backend is created.
+     */
+    protected String activeBackendName() {
+        if(isArrayBackend()) return "array";
+        if(isBPlusTreeBackend()) return "bplus";
+        return (sidcTree != null) ? "tree" : "none";
+    }
+
+    /**
+     * This method returns the height of the AVLTree backend. Subclasses that are an AVL tree themselves override it.
+     * @return the height, or 0 if the active backend is not an AVLTree.
+     */
+    protected int treeHeight() {
+        if(sidcTree == null || sidcTree.root == null) return 0;
+        return sidcTree.root.getHeight();
+    }
+
+    /**
+     * This method builds the key bitset from the current entries.
+     */
+    private void buildKeyBitset() {
+        int size = sizeOfBackend();
+        long[] keys = new long[size]; String[] values = new String[size];
+        copyEntriesToArrays(keys, values);
+        sidcKeyBitset = new SIDCKeyBitset();
+        for(int i = 0; i < size; i++) sidcKeyBitset.set(keys[i]);
+    }
+
+    /**
+     * This method tells whether point lookups are served by the hash index.
+     * @return true if the hash index is on.
+     */
+    protected boolean isHashIndexed() {
+        return sidcIndex != null;
+    }
+
+    /**
+     * This method records an entry in the hash index, reusing a freed value slot when there is one.
+     * @param key the key of the entry
+     * @param value the value associated with the key
+     */
+    private void indexEntry(long key, String value) {
+        int slot;
+        if(freeValueSlotCount > 0) {
+            slot = freeValueSlots[--freeValueSlotCount];
         } else {
+            if(usedValueSlots == indexedValues.length) indexedValues = Arrays.copyOf(indexedValues, usedValueSlots * 2);
+            slot = usedValueSlots++;
+        }
+        indexedValues[slot] = value;
+        sidcIndex.put(key, slot);
+    }
+
+    /**
+     * This method removes an entry from the hash index and frees its value slot.
+     * @param key the key of the entry
+     */
+    private void unindexEntry(long key) {
+        int slot = sidcIndex.remove(key);
+        if(slot == LongIntHashIndex.NO_VALUE) return;
+        indexedValues[slot] = null;
+        if(freeValueSlotCount == freeValueSlots.length) freeValueSlots = Arrays.copyOf(freeValueSlots, freeValueSlotCount * 2);
+        freeValueSlots[freeValueSlotCount++] = slot;
+    }
+
+    /**
+     * This method tells whether the given key exists, using the hash index when there is one.
+     * @param key the key to search for
+     * @return true if the key exists in CleverSIDC.
+     */
+    protected boolean keyExists(long key) {
+        if(sidcKeyBitset != null && key >= SIDCKeyBitset.MIN_KEY && key <= SIDCKeyBitset.MAX_KEY) return sidcKeyBitset.contains(key);
+        if(sidcIndex != null) return sidcIndex.containsKey(key);
+        if(isArrayBackend()) return sidcArray.findKeyInArray(key) != -1;
+        if(isBPlusTreeBackend()) return sidcBPlusTree.containsKeyInBPlusTree(key);
+        return sidcTree.findKeyInTree(sidcTree.root, key) != null;
+    }
+
+    /**
+     * This method copies every entry, in key order, into the given arrays.
+     * @param keysOut the array receiving the keys, at least as long as the size of CleverSIDC
+     * @param valuesOut the array receiving the values, at least as long as the size of CleverSIDC
+     */
+    private void copyEntriesToArrays(long[] keysOut, String[] valuesOut) {
+        if(isArrayBackend()) sidcArray.copyEntriesToArrays(keysOut, valuesOut);
+        else if(isBPlusTreeBackend()) sidcBPlusTree.copyEntriesToArrays(keysOut, valuesOut);
+        else sidcTree.copyEntriesToArrays(keysOut, valuesOut);
+    }
+
+    /**
+     * This method returns the number of entries in CleverSIDC.
+     * @return the number of entries.
+     */
+    public int size() {
+        return sizeOfBackend();
+    }
+
+    /**
+     * This method returns the number of entries held by the active backend.
+     * @return the number of entries.
+     */
+    private int sizeOfBackend() {
+        if(isArrayBackend()) return sidcArray.getArraySize();
+        if(isBPlusTreeBackend()) return sidcBPlusTree.getBPlusTreeSize();
+        return sidcTree.getTreeSize();
+    }
+
+    /**
+     * This method tells whether a backend has been created yet.
+     * @return true if one of the backends is active.
+     */
+    private boolean hasBackend() {
+        return sidcArray != null || sidcTree != null || sidcBPlusTree != null;
+    }
+
+    /**
+     * This method tells whether the entries currently live in the BPlusTree.
+     * @return true if the BPlusTree is the active backend.
+     */
+    private boolean isBPlusTreeBackend() {
+        return sidcBPlusTree != null;
+    }
+
+    /**
+     * This method tells whether the entries currently live in the CircularArray rather than one of the trees.
+     * @return true if the CircularArray is the active backend.
+     */
+    private boolean isArrayBackend() {
+        return sidcArray != null;
+    }
+
+    /**
+     * This method migrates the entries to another backend when adaptive mode is on and the size crossed a watermark:
+     * below the low watermark to the CircularArray, above the high watermark from the CircularArray to the tree that suits the size,
+     * above BPLUS_TREE_THRESHOLD from the AVLTree to the BPlusTree, and below BPLUS_TREE_LOW_WATERMARK from the BPlusTree to the AVLTree.
+     */
+    private void adaptBackend() {
+        if(!adaptiveBackend) return;
+        int size = sizeOfBackend();
+
+        if(size < lowWatermark) {
+            if(!isArrayBackend()) migrateBackend(Backend.CIRCULAR_ARRAY);
+        } else if(isArrayBackend()) {
+            if(size > highWatermark) migrateBackend(size > BPLUS_TREE_THRESHOLD ? Backend.BPLUS_TREE : Backend.AVL_TREE);
+        } else if(isBPlusTreeBackend()) {
+            if(size < BPLUS_TREE_LOW_WATERMARK) migrateBackend(Backend.AVL_TREE);
+        } else if(size > BPLUS_TREE_THRESHOLD) {
+            migrateBackend(Backend.BPLUS_TREE);
+        }
+    }
+
+    /**
+     * This method moves every entry to a new, empty backend of the given kind.
+     * The entries are copied out in key order and the new structure is built from the sorted arrays in a single pass.
+     * @param target the backend to move the entries to
+     */
+    private void migrateBackend(Backend target) {
+        int size = sizeOfBackend();
+        long[] keys = new long[size]; String[] values = new String[size];
+        copyEntriesToArrays(keys, values);
+        sidcArray = null; sidcTree = null; sidcBPlusTree = null;
+        if(target == Backend.CIRCULAR_ARRAY) {
+            sidcArray = newCircularArray();
+            sidcArray.loadSortedArrays(keys, values, size);
+        } else if(target == Backend.AVL_TREE) {
             sidcTree = new AvlTree();
+            sidcTree.buildTreeFromSortedArrays(keys, values, size);
+        } else {
+            sidcBPlusTree = new BPlusTree();
+            sidcBPlusTree.loadSortedArrays(keys, values, size);
         }
+        attachMetrics();
+        if(sidcMetrics != null) sidcMetrics.countMigration();
     }
 
+    /**
+     * A private enum naming the backends that adaptive mode migrates between.
+     */
+    private enum Backend { CIRCULAR_ARRAY, AVL_TREE, BPLUS_TREE }
+
     /**
      * This method randomly generates new non-existing keys of 8 digits.
      * @return the generated key.
+     * @throws IllegalStateException if the bitset generator is on and every 8-digit key is used.
      */
     public long generate() {
-        long newKey;
+        long start = startTimer();
+        try {
+            return generateKey();
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE, start);
+        }
+    }
 
-        if(sizeOfThreshold <= 500) {
-            do {
-                newKey = 10000000L + (Math.abs(random.nextLong()) % 90000000L);
-            } while(sidcArray.findKeyInArray(newKey) != -1);
+    /**
+     * This method randomly generates a new non-existing key of 8 digits.
+     * @return the generated key.
+     */
+    private long generateKey() {
+        if(sidcKeyBitset != null) {
+            long newKey = sidcKeyBitset.randomFreeKey(random);
+            if(newKey == -1) throw new IllegalStateException("Every 8-digit key is already used.");
             return newKey;
         }
-        if(sidcTree.root == null) return (10000000L + (Math.abs(random.nextLong()) % 90000000L));
-        do {
+        long newKey = 10000000L + (Math.abs(random.nextLong()) % 90000000L);
+        while(keyExists(newKey)) {
+            if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
             newKey = 10000000L + (Math.abs(random.nextLong()) % 90000000L);
-        } while(sidcTree.findKeyInTree(sidcTree.root, newKey) != null);
+        }
         return newKey;
     }
 
+    /**
+     * This method randomly generates the given number of distinct non-existing keys of 8 digits in one call.
+     * None of the keys are added to CleverSIDC.
+     * @param count the number of keys to generate
+     * @return the generated keys.
+     * @throws IllegalArgumentException if there are not that many unused 8-digit keys left.
+     */
+    public long[] generate(int count) {
+        long start = startTimer();
+        try {
+            if(count < 0 || count > 90000000L - sizeOfBackend()) throw new IllegalArgumentException("Cannot generate " + count + " unused 8-digit keys.");
+            long[] newKeys = new long[count];
+
+            if(sidcKeyBitset != null) {
+                //reserve each key in the bitset so the batch has no duplicates, then release the reservations
+                for(int i = 0; i < count; i++) {
+                    newKeys[i] = sidcKeyBitset.randomFreeKey(random);
+                    sidcKeyBitset.set(newKeys[i]);
+                }
+                for(long newKey : newKeys) sidcKeyBitset.clear(newKey);
+                return newKeys;
+            }
+            LongIntHashIndex batchKeys = new LongIntHashIndex(count);
+            for(int i = 0; i < count; i++) {
+                long newKey = generateKey();
+                while(batchKeys.containsKey(newKey)) {
+                    if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
+                    newKey = generateKey();
+                }
+                batchKeys.put(newKey, i);
+                newKeys[i] = newKey;
+            }
+            return newKeys;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE_BATCH, start);
+        }
+    }
+
     /**
      * This method randomly generates new student names as String values.
+     * The names are picked from a table built once, so every record with the same name shares a single String.
      * @return the generated student names.
      */
     public String generateValues() {
-        return firstNames[random.nextInt(firstNames.length)] + " " + lastNames[random.nextInt(lastNames.length)];
+        int first = random.nextInt(firstNames.length), last = random.nextInt(lastNames.length);
+        return studentNames[first * lastNames.length + last];
+    }
+
+    /**
+     * This method builds the table of every first and last name combination.
+     * @return the student names, indexed by first name index times the number of last names plus last name index.
+     */
+    private static String[] buildStudentNames() {
+        String[] names = new String[firstNames.length * lastNames.length];
+        for(int first = 0; first < firstNames.length; first++) {
+            for(int last = 0; last < lastNames.length; last++) {
+                names[first * lastNames.length + last] = firstNames[first] + " " + lastNames[last];
+            }
+        }
+        return names;
     }
 
     /**
      * This method returns all keys in CleverSIDC as a sorted sequence.
+     * The circular array is kept in key order, so it is printed as is.
      * @param cleverSidc the CleverSIDC object in context
      */
     public void allKeys(CleverSIDC cleverSidc) {
-        if(sizeOfThreshold <= 500) {
-            cleverSidc.sidcArray.mergeSortCircularArray(0, sidcArray.getArraySize() - 1);
+        if(isArrayBackend()) {
             cleverSidc.sidcArray.printCircularArray();
+        } else if(isBPlusTreeBackend()) {
+            cleverSidc.sidcBPlusTree.printBPlusTree();
         } else {
             cleverSidc.sidcTree.inOrderTraversal(sidcTree.root);
         }
@@ -76,90 +513,622 @@ public class CleverSIDC {
      * @param value the value associated with the key entry
      */
     public void add(CleverSIDC cleverSidc, long key, String value) {
-        if(sizeOfThreshold <= 500) {
-            cleverSidc.sidcArray.addKeyToArray(key, value);
+        long start = cleverSidc.startTimer();
+        try {
+            cleverSidc.addToBackend(key, value);
+            cleverSidc.adaptBackend();
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.ADD, start);
+        }
+    }
+
+    /**
+     * This method adds an entry to the active backend and to the hash index and key bitset, without migrating the backend.
+     * @param key the new key entry
+     * @param value the value associated with the key entry
+     */
+    private void addToBackend(long key, String value) {
+        //existing keys keep their value, so a key already in the index needs no work at all
+        if(sidcIndex != null && sidcIndex.containsKey(key)) return;
+        value = internValue(value);
+        if(isArrayBackend()) {
+            sidcArray.addKeyToArray(key, value);
+        } else if(isBPlusTreeBackend()) {
+            sidcBPlusTree.addKeyToBPlusTree(key, value);
+        } else {
+            sidcTree.root = sidcTree.addNodeToTree(sidcTree.root, key, value);
+        }
+        if(sidcIndex != null) indexEntry(key, value);
+        if(sidcKeyBitset != null) sidcKeyBitset.set(key);
+    }
+
+    /**
+     * This method returns the String already stored for a value equal to the given one, so that the String-valued backends keep
+     * one copy of a repeated value, whether it came from add, a replayed log or a loaded snapshot.
+     * @param value the value about to be stored
+     * @return a String equal to value.
+     */
+    private String internValue(String value) {
+        if(valueInterner == null) valueInterner = new SIDCValueInterner();
+        return valueInterner.intern(value);
+    }
+
+    /**
+     * This method adds a batch of entries and returns how many keys were new. The input is sorted and stripped of repeated keys first.
+     * A batch that is large next to the current size, or any batch on the CircularArray, is merged with the current entries in one
+     * linear pass and the backend is rebuilt from the result, as in bulkLoad. A smaller batch is inserted one entry at a time in key order,
+     * so consecutive descents run down the same, already cached, part of the tree, and the backend is migrated at most once at the end.
+     * As with add, a key that already exists keeps its value, and the first of repeated keys wins.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     * @return The number of entries added.
+     */
+    public int addAll(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long start = cleverSidc.startTimer();
+        try {
+            if(!cleverSidc.hasBackend()) cleverSidc.createBackend(count);
+            SIDCArraySort.sortPairs(keys, values, count);
+            count = SIDCArraySort.removeDuplicates(keys, values, count);
+
+            int sizeBefore = cleverSidc.sizeOfBackend();
+            if(cleverSidc.isArrayBackend() || count >= sizeBefore / BATCH_REBUILD_RATIO) {
+                cleverSidc.mergeSortedEntries(keys, values, count);
+            } else {
+                for(int i = 0; i < count; i++) cleverSidc.addToBackend(keys[i], values[i]);
+                cleverSidc.adaptBackend();
+            }
+            return cleverSidc.sizeOfBackend() - sizeBefore;
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.ADD_ALL, start);
+        }
+    }
+
+    /**
+     * This method copies every entry, in key order, into the given arrays.
+     * When the CleverSIDC is shared between threads, writers must be paused between size() and this call.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keysOut the array receiving the keys, at least size() long
+     * @param valuesOut the array receiving the values, at least size() long
+     * @return The number of entries copied.
+     */
+    public int copyEntries(CleverSIDC cleverSidc, long[] keysOut, String[] valuesOut) {
+        cleverSidc.copyEntriesToArrays(keysOut, valuesOut);
+        return cleverSidc.sizeOfBackend();
+    }
+
+    /**
+     * This method adds many entries at once. The input is sorted and stripped of repeated keys, merged with the current entries,
+     * and the backend is then built directly from the sorted result in linear time: a balanced AVLTree or a BPlusTree
+     * built bottom-up, or a presorted CircularArray. As with add, a key that already exists keeps its value, and the first of repeated keys wins.
+     * Large inputs are sorted, and AVLTrees built, on every core of the common fork-join pool.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     */
+    public void bulkLoad(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long start = cleverSidc.startTimer();
+        try {
+            if(!cleverSidc.hasBackend()) cleverSidc.createBackend(count);
+            SIDCArraySort.parallelSortPairs(keys, values, count);
+            count = SIDCArraySort.removeDuplicates(keys, values, count);
+            cleverSidc.mergeSortedEntries(keys, values, count);
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.BULK_LOAD, start);
+        }
+    }
+
+    /**
+     * This method merges sorted, duplicate-free entries with the current entries and rebuilds the backend from the result.
+     * An existing key keeps its value, and the new values are interned first.
+     * @param keys the new keys, in ascending order
+     * @param values the values associated with the keys
+     * @param count the number of entries to take from the given arrays
+     */
+    private void mergeSortedEntries(long[] keys, String[] values, int count) {
+        for(int i = 0; i < count; i++) values[i] = internValue(values[i]);
+        int size = sizeOfBackend();
+        if(size > 0) {
+            long[] currentKeys = new long[size]; String[] currentValues = new String[size];
+            copyEntriesToArrays(currentKeys, currentValues);
+            long[] mergedKeys = new long[size + count]; String[] mergedValues = new String[size + count];
+            count = SIDCArraySort.mergeDistinct(currentKeys, currentValues, size, keys, values, count, mergedKeys, mergedValues);
+            keys = mergedKeys;
+            values = mergedValues;
+        }
+        loadBackend(keys, values, count);
+    }
+
+    /**
+     * This method replaces the entries of the active backend with sorted, duplicate-free entries, then rebuilds the hash index
+     * and the key bitset and migrates the backend if needed.
+     * @param keys the keys, in ascending order
+     * @param values the values associated with the keys
+     * @param count the number of entries to take from the given arrays
+     */
+    private void loadBackend(long[] keys, String[] values, int count) {
+        if(isArrayBackend()) {
+            sidcArray.loadSortedArrays(keys, values, count);
+        } else if(isBPlusTreeBackend()) {
+            sidcBPlusTree.loadSortedArrays(keys, values, count);
         } else {
-            cleverSidc.sidcTree.root = cleverSidc.sidcTree.addNodeToTree(cleverSidc.sidcTree.root, key, value);
+            sidcTree.buildTreeFromSortedArrays(keys, values, count);
         }
+        if(sidcIndex != null) buildHashIndex();
+        if(sidcKeyBitset != null) buildKeyBitset();
+        adaptBackend();
     }
 
     /**
      * This method removes the entry for the given key.
      * @param cleverSidc the CleverSIDC object in context
      * @param key the key to be removed
-     * @return The removed key.
+     * @return The removed key, or NO_KEY if the key does not exist.
      */
     public long remove(CleverSIDC cleverSidc, long key) {
-        if(sizeOfThreshold <= 500) {
-            return cleverSidc.sidcArray.removeKeyFromArray(key);
+        long start = cleverSidc.startTimer();
+        try {
+            long removedKey = cleverSidc.removeFromBackend(key);
+            cleverSidc.adaptBackend();
+            return removedKey;
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.REMOVE, start);
+        }
+    }
+
+    /**
+     * This method removes an entry from the active backend and from the hash index and key bitset, without migrating the backend.
+     * @param key the key to be removed
+     * @return the removed key, or NO_KEY if the key does not exist.
+     */
+    private long removeFromBackend(long key) {
+        if(valueCache != null) valueCache.invalidate(key);
+        if(isArrayBackend()) {
+            if(sidcArray.removeKeyFromArray(key) != key) return NO_KEY;
+        } else if(isBPlusTreeBackend()) {
+            if(sidcBPlusTree.removeKeyFromBPlusTree(key) == -1) return NO_KEY;
+        } else {
+            AvlTree.AvlTreeNode sidcNode = sidcTree.findKeyInTree(sidcTree.root, key);
+            if(sidcNode == null) return NO_KEY;
+            sidcTree.root = sidcTree.deleteNodeFromTree(sidcTree.root, key);
+        }
+        if(sidcIndex != null) unindexEntry(key);
+        if(sidcKeyBitset != null) sidcKeyBitset.clear(key);
+        return key;
+    }
+
+    /**
+     * This method removes a batch of keys and returns how many of them existed. The keys are sorted first.
+     * When the batch is large next to the current size, or the entries live in the CircularArray, the current entries are filtered
+     * in one linear pass against the sorted keys and the backend is rebuilt from what is left; a smaller batch is removed one key at a time
+     * in key order. Either way the backend is migrated at most once, at the end.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys to remove, in any order; the array is reordered in place
+     * @param count the number of keys to take from the given array
+     * @return The number of entries removed.
+     */
+    public int removeAll(CleverSIDC cleverSidc, long[] keys, int count) {
+        long start = cleverSidc.startTimer();
+        try {
+            int sizeBefore = cleverSidc.sizeOfBackend();
+            if(sizeBefore == 0 || count == 0) return 0;
+            SIDCArraySort.sortPairs(keys, null, count);
+            if(cleverSidc.valueCache != null) {
+                for(int i = 0; i < count; i++) cleverSidc.valueCache.invalidate(keys[i]);
+            }
+
+            if(cleverSidc.isArrayBackend() || count >= sizeBefore / BATCH_REBUILD_RATIO) {
+                long[] currentKeys = new long[sizeBefore]; String[] currentValues = new String[sizeBefore];
+                cleverSidc.copyEntriesToArrays(currentKeys, currentValues);
+                int kept = 0;
+                for(int i = 0, j = 0; i < sizeBefore; i++) {
+                    //both sides are sorted, so the keys to remove are passed over once
+                    while(j < count && keys[j] < currentKeys[i]) j++;
+                    if(j < count && keys[j] == currentKeys[i]) continue;
+                    currentKeys[kept] = currentKeys[i];
+                    currentValues[kept++] = currentValues[i];
+                }
+                if(kept == sizeBefore) return 0;
+                cleverSidc.loadBackend(currentKeys, currentValues, kept);
+            } else {
+                for(int i = 0; i < count; i++) cleverSidc.removeFromBackend(keys[i]);
+                cleverSidc.adaptBackend();
+            }
+            return sizeBefore - cleverSidc.sizeOfBackend();
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.REMOVE_ALL, start);
         }
-        sidcNode = cleverSidc.sidcTree.deleteNodeFromTree(sidcTree.root, key);
-        if(sidcNode == null) return 0;
-        return sidcNode.getKey();
     }
 
     /**
      * This method returns the values of the given key.
      * @param cleverSidc the CleverSIDC object in context
      * @param key the key for which values are to be retrieved
-     * @return The value of the given key.
+     * @return The value of the given key, or NO_VALUE if the key does not exist.
      */
     public String getValues(CleverSIDC cleverSidc, long key) {
-        if(sizeOfThreshold <= 500) {
-            return cleverSidc.sidcArray.getValueInArray(key);
+        long start = cleverSidc.startTimer();
+        try {
+            LongValueCache cache = cleverSidc.valueCache;
+            if(cache == null) return cleverSidc.valueOfKey(key);
+            String value = cache.get(key);
+            if(value == null) {
+                value = cleverSidc.valueOfKey(key);
+                if(!value.isEmpty()) cache.put(key, value);
+            }
+            return value;
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.GET_VALUES, start);
+        }
+    }
+
+    /**
+     * This method looks up the value of the given key, in the hash index when there is one and in the active backend otherwise.
+     * @param key the key for which values are to be retrieved
+     * @return the value of the given key, or NO_VALUE if the key does not exist.
+     */
+    private String valueOfKey(long key) {
+        if(sidcIndex != null) {
+            int slot = sidcIndex.get(key);
+            if(slot == LongIntHashIndex.NO_VALUE) return NO_VALUE;
+            return indexedValues[slot];
+        }
+        if(isArrayBackend()) {
+            return sidcArray.getValueInArray(key);
+        }
+        if(isBPlusTreeBackend()) {
+            return sidcBPlusTree.getValueInBPlusTree(key);
         }
-        sidcNode = cleverSidc.sidcTree.findKeyInTree(sidcTree.root, key);
-        if(sidcNode == null) return "";
+        AvlTree.AvlTreeNode sidcNode = sidcTree.findKeyInTree(sidcTree.root, key);
+        if(sidcNode == null) return NO_VALUE;
         return sidcNode.getValue();
     }
 
     /**
-     * This method returns the predecessor key of the given key.
+     * This method looks up the values of a batch of keys. The given keys are left untouched and the value of keys[i] is written to
+     * valuesOut[i], or an empty string when the key does not exist. When the keys are dense enough in the key range they span,
+     * the entries of the range are streamed once and merged with the sorted keys, instead of descending from the root for every key;
+     * unsorted keys go through a sorted copy that remembers their positions. Sparser keys are looked up one at a time.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys for which values are to be retrieved, in any order
+     * @param valuesOut the array receiving the values, at least count long
+     * @param count the number of keys to take from the given array
+     * @return The number of keys found.
+     */
+    public int getAll(CleverSIDC cleverSidc, long[] keys, String[] valuesOut, int count) {
+        long start = cleverSidc.startTimer();
+        try {
+            if(count == 0) return 0;
+            if(!cleverSidc.hasBackend()) {
+                Arrays.fill(valuesOut, 0, count, "");
+                return 0;
+            }
+            long low = keys[0], high = keys[0];
+            for(int i = 1; i < count; i++) {
+                low = Math.min(low, keys[i]);
+                high = Math.max(high, keys[i]);
+            }
+            //the hash index answers each key in constant time, which no scan beats
+            int spanned = cleverSidc.rankInBackend(high) - cleverSidc.rankInBackend(low) + 1;
+            if(cleverSidc.sidcIndex != null || spanned > (long) count * scanRatio(cleverSidc.sizeOfBackend())) {
+                int found = 0;
+                for(int i = 0; i < count; i++) {
+                    valuesOut[i] = cleverSidc.valueOfKey(keys[i]);
+                    if(!valuesOut[i].isEmpty()) found++;
+                }
+                return found;
+            }
+            SortedBatchLookup lookup;
+            if(SIDCArraySort.isSorted(keys, count)) {
+                lookup = new SortedBatchLookup(keys, null, valuesOut, count);
+            } else {
+                long[] sortedKeys = Arrays.copyOf(keys, count); int[] positions = new int[count];
+                SIDCArraySort.sortWithPositions(sortedKeys, positions, count);
+                lookup = new SortedBatchLookup(sortedKeys, positions, valuesOut, count);
+            }
+            cleverSidc.forEachInBackend(low, high, lookup);
+            return lookup.finish();
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.GET_ALL, start);
+        }
+    }
+
+    /**
+     * This method returns how many streamed entries per key a batch lookup can afford before point lookups become cheaper.
+     * A lookup costs more once the structure outgrows the caches while a scan step does not, so larger structures afford more;
+     * below BATCH_SCAN_MIN_SIZE entries a lookup stays in cache and is always cheaper than sorting the keys and scanning.
+     * @param size the number of entries
+     * @return the number of entries per key, 0 for small structures, then from 9 at BATCH_SCAN_MIN_SIZE entries to 12 for a million.
+     */
+    private static int scanRatio(int size) {
+        if(size < BATCH_SCAN_MIN_SIZE) return 0;
+        return 31 - Integer.numberOfLeadingZeros(size) - 7;
+    }
+
+    /**
+     * A private static inner class merging the entries streamed from a key range with sorted keys, recording the value of each key
+     * at the position the key had in the caller's batch.
+     */
+    private static class SortedBatchLookup implements LongObjConsumer<String> {
+        private final long[] keys; private final int[] positions; private final String[] valuesOut; private final int count;
+        private int position, found;
+
+        /**
+         * Parameterized constructor.
+         * @param keys the keys to look up, in ascending order
+         * @param positions the position of each sorted key in the caller's batch, or null if the batch itself is sorted
+         * @param valuesOut the array receiving the values, in the order of the caller's batch
+         * @param count the number of keys
+         */
+        private SortedBatchLookup(long[] keys, int[] positions, String[] valuesOut, int count) {
+            this.keys = keys;
+            this.positions = positions;
+            this.valuesOut = valuesOut;
+            this.count = count;
+        }
+
+        /**
+         * This method records the value of the key at the given sorted position.
+         * @param sortedPosition the position of the key among the sorted keys
+         * @param value the value of the key
+         */
+        private void record(int sortedPosition, String value) {
+            valuesOut[(positions == null) ? sortedPosition : positions[sortedPosition]] = value;
+        }
+
+        /**
+         * This method records the value of the streamed entry for every key equal to it, and marks the smaller keys as missing.
+         * @param key the key of the streamed entry
+         * @param value the value of the streamed entry
+         * @return true while some keys are still waiting for their entry.
+         */
+        @Override
+        public boolean accept(long key, String value) {
+            while(position < count && keys[position] < key) record(position++, "");
+            while(position < count && keys[position] == key) {
+                record(position++, value);
+                found++;
+            }
+            return position < count;
+        }
+
+        /**
+         * This method marks the keys past the last streamed entry as missing.
+         * @return the number of keys found.
+         */
+        private int finish() {
+            while(position < count) record(position++, "");
+            return found;
+        }
+    }
+
+    /**
+     * A private static inner class evaluating a range of range count queries in parallel.
+     * The queries are split in two until a slice is small enough to be answered on one thread.
+     */
+    private static class RangeCountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private static final int QUERIES_PER_TASK = 1024;
+        private final transient CleverSIDC cleverSidc; private final long[] keys1, keys2; private final int[] countsOut; private final int from, to;
+
+        /**
+         * Parameterized constructor.
+         * @param cleverSidc the CleverSIDC answering the queries
+         * @param keys1 the starting key of each range
+         * @param keys2 the ending key of each range
+         * @param countsOut the array receiving the count of each range
+         * @param from the index of the first query of the slice
+         * @param to the index following the last query of the slice
+         */
+        private RangeCountTask(CleverSIDC cleverSidc, long[] keys1, long[] keys2, int[] countsOut, int from, int to) {
+            this.cleverSidc = cleverSidc;
+            this.keys1 = keys1;
+            this.keys2 = keys2;
+            this.countsOut = countsOut;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * This method answers the queries of the slice, splitting it between two tasks when it is large.
+         * @return the total number of keys over the ranges of the slice.
+         */
+        @Override
+        protected Long compute() {
+            if(to - from > QUERIES_PER_TASK && SIDCArraySort.isParallel()) {
+                int mid = (from + to) >>> 1;
+                RangeCountTask rightTask = new RangeCountTask(cleverSidc, keys1, keys2, countsOut, mid, to);
+                rightTask.fork();
+                long total = new RangeCountTask(cleverSidc, keys1, keys2, countsOut, from, mid).compute();
+                return total + rightTask.join();
+            }
+            long total = 0;
+            for(int i = from; i < to; i++) {
+                countsOut[i] = cleverSidc.rangeKey(keys1[i], keys2[i]);
+                total += countsOut[i];
+            }
+            return total;
+        }
+    }
+
+    /**
+     * This method returns the predecessor key of the given key, i.e. the greatest key smaller than it.
+     * The given key does not need to exist, in which case its floor among the smaller keys is returned.
      * @param cleverSidc the CleverSIDC object in context
      * @param key the key for which the predecessor is to be found
-     * @return The predecessor key.
+     * @return The predecessor key, or NO_KEY if there is none.
      */
     public long prevKey(CleverSIDC cleverSidc, long key) {
-        if(sizeOfThreshold <= 500) {
-            return cleverSidc.sidcArray.getKeyAtIndex(cleverSidc.sidcArray.findKeyInArray(key) - 1);
-        }
-        sidcNode = cleverSidc.sidcTree.findKeyInTree(sidcTree.root, key).getLeft();
-        if(sidcNode == null) {
-            System.out.println("The given key doesn't have a previous key i.e, there is no key to the left of the given key.\n");
-            return 0;
+        long start = cleverSidc.startTimer();
+        try {
+            if(isArrayBackend()) {
+                return cleverSidc.sidcArray.getKeyAtIndex(cleverSidc.sidcArray.rankOfKeyInArray(key) - 1);
+            }
+            if(isBPlusTreeBackend()) {
+                return cleverSidc.sidcBPlusTree.predecessorKeyInBPlusTree(key);
+            }
+            AvlTree.AvlTreeNode sidcNode = cleverSidc.sidcTree.predecessorNodeInTree(cleverSidc.sidcTree.root, key);
+            return (sidcNode == null) ? NO_KEY : sidcNode.getKey();
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.PREV_KEY, start);
         }
-        return sidcNode.getKey();
     }
 
     /**
-     * This method returns the successor key of the given key.
+     * This method returns the successor key of the given key, i.e. the smallest key greater than it.
+     * The given key does not need to exist, in which case its ceiling among the greater keys is returned.
      * @param cleverSidc the CleverSIDC object in context
      * @param key the key for which the successor is to be found
-     * @return The successor key.
+     * @return The successor key, or NO_KEY if there is none.
      */
     public long nextKey(CleverSIDC cleverSidc, long key) {
-        if(sizeOfThreshold <= 500) {
-            return cleverSidc.sidcArray.getKeyAtIndex(cleverSidc.sidcArray.findKeyInArray(key) + 1);
+        long start = cleverSidc.startTimer();
+        try {
+            if(isArrayBackend()) {
+                int successorIndex = cleverSidc.sidcArray.rankOfKeyInArray(key);
+                if(cleverSidc.sidcArray.findKeyInArray(key) != -1) successorIndex++;
+                return cleverSidc.sidcArray.getKeyAtIndex(successorIndex);
+            }
+            if(isBPlusTreeBackend()) {
+                return cleverSidc.sidcBPlusTree.successorKeyInBPlusTree(key);
+            }
+            AvlTree.AvlTreeNode sidcNode = cleverSidc.sidcTree.successorNodeInTree(cleverSidc.sidcTree.root, key);
+            return (sidcNode == null) ? NO_KEY : sidcNode.getKey();
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.NEXT_KEY, start);
         }
-        sidcNode = cleverSidc.sidcTree.findKeyInTree(sidcTree.root, key).getRight();
-        if(sidcNode == null) {
-            System.out.println("The given key doesn't have a next key i.e, there is no key to the right of the given key.\n");
-            return 0;
-        }
-        return sidcNode.getKey();
     }
 
     /**
      * This method returns the number of keys that are within the specified range of key1 and key2.
      * @param key1 the starting key of the range
      * @param key2 the ending key of the range
-     * @return The number of keys within the specified range.
+     * @return The number of keys strictly between key1 and key2, which need not exist; 0 if key1 is not below key2.
      */
     public int rangeKey(long key1, long key2) {
-        if(sizeOfThreshold <= 500) {
-            return sidcArray.rangeOfKeyInArray(key1, key2);
+        long start = startTimer();
+        try {
+            if(isArrayBackend()) {
+                return sidcArray.rangeOfKeyInArray(key1, key2);
+            }
+            if(isBPlusTreeBackend()) {
+                return sidcBPlusTree.rangeOfKeyInBPlusTree(key1, key2);
+            }
+            return sidcTree.rangeOfKeyInTree(sidcTree.root, key1, key2);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.RANGE_KEY, start);
+        }
+    }
+
+    /**
+     * This method evaluates many range counts at once, spreading them over every core of the common fork-join pool.
+     * Each query is answered by rangeKey of the given CleverSIDC, so the queries must run against a structure that does not change
+     * during the call: a PersistentAvlTree answers them all from one version, a MappedSIDCSnapshot never changes, and a
+     * ConcurrentCleverSIDC answers each query under its own read lock. A plain CleverSIDC must not be written to until the call returns.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys1 the starting key of each range
+     * @param keys2 the ending key of each range
+     * @param countsOut the array receiving the result of rangeKey for each range
+     * @param count the number of ranges
+     * @return The total number of keys over all the ranges.
+     */
+    public long rangeKeys(CleverSIDC cleverSidc, long[] keys1, long[] keys2, int[] countsOut, int count) {
+        long start = cleverSidc.startTimer();
+        try {
+            return new RangeCountTask(cleverSidc, keys1, keys2, countsOut, 0, count).invoke();
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.RANGE_KEYS, start);
+        }
+    }
+
+    /**
+     * This method streams the entries whose keys are between low and high, both included, to the given consumer in key order.
+     * Nothing is printed and no object is allocated per entry; the scan stops early as soon as the consumer returns false.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry
+     * @return The number of entries passed to the consumer.
+     */
+    public int forEachInRange(long low, long high, LongObjConsumer<String> consumer) {
+        long start = startTimer();
+        try {
+            if(!hasBackend() || low > high) return 0;
+            return forEachInBackend(low, high, consumer);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.FOR_EACH, start);
+        }
+    }
+
+    /**
+     * This method streams the entries of the active backend whose keys are between low and high, both included, to the given consumer.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry
+     * @return the number of entries passed to the consumer.
+     */
+    private int forEachInBackend(long low, long high, LongObjConsumer<String> consumer) {
+        if(isArrayBackend()) {
+            return sidcArray.forEachInArray(low, high, consumer);
+        }
+        if(isBPlusTreeBackend()) {
+            return sidcBPlusTree.forEachInBPlusTree(low, high, consumer);
+        }
+        return sidcTree.forEachInTree(sidcTree.root, low, high, consumer);
+    }
+
+    /**
+     * This method returns the rank of the given key, i.e. the number of keys in CleverSIDC that are smaller than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to rank, which does not need to exist
+     * @return The number of smaller keys.
+     */
+    public int rank(CleverSIDC cleverSidc, long key) {
+        long start = cleverSidc.startTimer();
+        try {
+            return cleverSidc.rankInBackend(key);
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.RANK, start);
+        }
+    }
+
+    /**
+     * This method counts the keys of the active backend that are smaller than the given key.
+     * @param key the key to rank, which does not need to exist
+     * @return the number of smaller keys.
+     */
+    private int rankInBackend(long key) {
+        if(isArrayBackend()) {
+            return sidcArray.rankOfKeyInArray(key);
+        }
+        if(isBPlusTreeBackend()) {
+            return sidcBPlusTree.rankOfKeyInBPlusTree(key);
+        }
+        return sidcTree.rankOfKeyInTree(sidcTree.root, key);
+    }
+
+    /**
+     * This method returns the key at the given position of the sorted sequence of keys.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param index the zero-based position of the key in sorted order
+     * @return The key at the given position, or NO_KEY if the position is out of bounds.
+     */
+    public long select(CleverSIDC cleverSidc, int index) {
+        long start = cleverSidc.startTimer();
+        try {
+            if(cleverSidc.isArrayBackend()) {
+                return cleverSidc.sidcArray.getKeyAtIndex(index);
+            }
+            if(cleverSidc.isBPlusTreeBackend()) {
+                return cleverSidc.sidcBPlusTree.selectKeyInBPlusTree(index);
+            }
+            AvlTree.AvlTreeNode selectedNode = cleverSidc.sidcTree.selectNodeInTree(cleverSidc.sidcTree.root, index);
+            if(selectedNode == null) return NO_KEY;
+            return selectedNode.getKey();
+        } finally {
+            cleverSidc.stopTimer(SIDCMetrics.Operation.SELECT, start);
         }
-        return sidcTree.rangeOfKeyInTree(sidcTree.root, key1, key2);
     }
 
     // ---------------------------------------------------------------- //
@@ -168,11 +1137,10 @@ public class CleverSIDC {
     /**
      * This method retrieves the key at the specified index in the circular array.
      * @param index the index of the key to retrieve
-     * @return the key at the specified index.
-     * @throws IndexOutOfBoundsException if the provided index is out of bounds.
+     * @return the key at the specified index, or NO_KEY if the index is out of bounds.
      */
     public long getKeyAtIndex(int index) {
-        return -1;
+        return NO_KEY;
     }
 
     /**
@@ -200,6 +1168,11 @@ public class CleverSIDC {
      */
     public void mergeSortCircularArray(int left, int right) {}
 
+    /**
+     * This method shrinks the storage of the circular array to its number of entries.
+     */
+    public void trimArray() {}
+
     /**
      * This method prints the key-value pairs in the circular array.
      */
@@ -227,21 +1200,42 @@ public class CleverSIDC {
     }
 
     /**
-     * This method finds the range of indices in the array for keys falling within the specified range (key1, key2).
+     * This method counts the keys in the array that fall strictly between key1 and key2. CircularEntryArray overrides it;
+     * CleverSIDC itself holds no array, so this version only returns -1.
      * @param key1 the lower bound of the key range
      * @param key2 the upper bound of the key range
-     * @return the number of elements in the array with keys in the specified range.
-     * Returns -1 if one of the keys does not exist in the array, or 0 if the index of key1 is after that of key2.
+     * @return -1, since there is no array to count in.
      */
     public int rangeOfKeyInArray(long key1, long key2) {
        return -1;
     }
 
     /**
-     * This method recursively searches for a key in the AVL tree starting from the given node.
+     * This method counts the number of keys in the array that are strictly smaller than the specified key.
+     * @param key the key to rank
+     * @return the number of smaller keys, which is also the index the key has, or would have, in the array.
+     */
+    public int rankOfKeyInArray(long key) {
+        return -1;
+    }
+
+    /**
+     * This method passes the entries of the array whose keys are between low and high, both included, to the given consumer.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return the number of entries passed to the consumer.
+     */
+    public int forEachInArray(long low, long high, LongObjConsumer<String> consumer) {
+        return 0;
+    }
+
+    /**
+     * This method searches for a key in the AVL tree starting from the given node. AvlTree overrides it with a single loop down
+     * the tree; CleverSIDC itself holds no tree, so this version only returns null.
      * @param node the root node of the current subtree
      * @param keyToFind the key to search for in the AVL tree
-     * @return the AVL tree node containing the specified key, or null if the key is not found.
+     * @return null, since there is no tree to search.
      */
     public AvlTree.AvlTreeNode findKeyInTree(AvlTree.AvlTreeNode node, long keyToFind) {
         return null;
@@ -277,13 +1271,163 @@ public class CleverSIDC {
     }
 
     /**
-     * This method counts the number of nodes in the AVL tree rooted at the given node whose keys fall within the specified range [key1, key2].
+     * This method counts the number of nodes in the AVL tree rooted at the given node whose keys fall strictly between key1 and key2.
+     * AvlTree overrides it; CleverSIDC itself holds no tree, so this version only returns -1.
      * @param node the root node of the current subtree
      * @param key1 the lower bound of the key range
      * @param key2 the upper bound of the key range
-     * @return the count of nodes with keys in the specified range.
+     * @return -1, since there is no tree to count in.
      */
     public int rangeOfKeyInTree(AvlTree.AvlTreeNode node, long key1, long key2) {
         return -1;
     }
+
+    /**
+     * This method counts the number of keys in the AVL tree rooted at the given node that are strictly smaller than the given key.
+     * @param node the root node of the current subtree
+     * @param key the key to rank
+     * @return the number of smaller keys, which is also the index the key has, or would have, in sorted order.
+     */
+    public int rankOfKeyInTree(AvlTree.AvlTreeNode node, long key) {
+        return -1;
+    }
+
+    /**
+     * This method finds the node holding the key at the given index of the sorted sequence of the AVL tree rooted at the given node.
+     * @param node the root node of the current subtree
+     * @param index the zero-based position of the key in sorted order
+     * @return the AVL tree node at the given index, or null if the index is out of bounds.
+     */
+    public AvlTree.AvlTreeNode selectNodeInTree(AvlTree.AvlTreeNode node, int index) {
+        return null;
+    }
+
+    /**
+     * This method finds the node holding the smallest key strictly greater than the given key, in the AVL tree rooted at the given node.
+     * @param node the root node of the current subtree
+     * @param key the key for which the successor is to be found
+     * @return the AVL tree node of the successor, or null if no key is greater than the given key.
+     */
+    public AvlTree.AvlTreeNode successorNodeInTree(AvlTree.AvlTreeNode node, long key) {
+        return null;
+    }
+
+    /**
+     * This method finds the node holding the greatest key strictly smaller than the given key, in the AVL tree rooted at the given node.
+     * @param node the root node of the current subtree
+     * @param key the key for which the predecessor is to be found
+     * @return the AVL tree node of the predecessor, or null if no key is smaller than the given key.
+     */
+    public AvlTree.AvlTreeNode predecessorNodeInTree(AvlTree.AvlTreeNode node, long key) {
+        return null;
+    }
+
+    /**
+     * This method passes the entries of the AVL tree rooted at the given node whose keys are between low and high, both included,
+     * to the given consumer in key order.
+     * @param node the root node of the current subtree
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return the number of entries passed to the consumer.
+     */
+    public int forEachInTree(AvlTree.AvlTreeNode node, long low, long high, LongObjConsumer<String> consumer) {
+        return 0;
+    }
+
+    /**
+     * This method tells whether the given key is present in the B+ tree.
+     * @param key the key to search for
+     * @return true if the key is present.
+     */
+    public boolean containsKeyInBPlusTree(long key) {
+        return false;
+    }
+
+    /**
+     * This method retrieves the value associated with the given key in the B+ tree.
+     * @param key the key for which to retrieve the associated value
+     * @return the value associated with the key, or an empty string if the key does not exist.
+     */
+    public String getValueInBPlusTree(long key) {
+        return "";
+    }
+
+    /**
+     * This method prints the key-value pairs of the B+ tree in key order.
+     */
+    public void printBPlusTree() {}
+
+    /**
+     * This method adds a key-value pair to the B+ tree if the key is not already present.
+     * @param keyToAdd the new key to add
+     * @param valueToAdd the value associated with the key
+     */
+    public void addKeyToBPlusTree(long keyToAdd, String valueToAdd) {}
+
+    /**
+     * This method removes the specified key from the B+ tree and returns the removed key.
+     * @param keyToRemove the key to be removed from the B+ tree
+     * @return the removed key, or -1 if the key is not found in the B+ tree.
+     */
+    public long removeKeyFromBPlusTree(long keyToRemove) {
+        return -1;
+    }
+
+    /**
+     * This method counts the number of keys in the B+ tree that are strictly between key1 and key2.
+     * @param key1 the lower bound of the key range
+     * @param key2 the upper bound of the key range
+     * @return the count of keys in the specified range.
+     */
+    public int rangeOfKeyInBPlusTree(long key1, long key2) {
+        return -1;
+    }
+
+    /**
+     * This method counts the number of keys in the B+ tree that are strictly smaller than the given key.
+     * @param key the key to rank
+     * @return the number of smaller keys, which is also the index the key has, or would have, in sorted order.
+     */
+    public int rankOfKeyInBPlusTree(long key) {
+        return -1;
+    }
+
+    /**
+     * This method finds the key at the given index of the sorted sequence of the B+ tree.
+     * @param index the zero-based position of the key in sorted order
+     * @return the key at the given index, or NO_KEY if the index is out of bounds.
+     */
+    public long selectKeyInBPlusTree(int index) {
+        return NO_KEY;
+    }
+
+    /**
+     * This method finds the smallest key of the B+ tree strictly greater than the given key.
+     * @param key the key for which the successor is to be found
+     * @return the successor key, or NO_KEY if no key is greater than the given key.
+     */
+    public long successorKeyInBPlusTree(long key) {
+        return NO_KEY;
+    }
+
+    /**
+     * This method finds the greatest key of the B+ tree strictly smaller than the given key.
+     * @param key the key for which the predecessor is to be found
+     * @return the predecessor key, or NO_KEY if no key is smaller than the given key.
+     */
+    public long predecessorKeyInBPlusTree(long key) {
+        return NO_KEY;
+    }
+
+    /**
+     * This method passes the entries of the B+ tree whose keys are between low and high, both included, to the given consumer in key order.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return the number of entries passed to the consumer.
+     */
+    public int forEachInBPlusTree(long low, long high, LongObjConsumer<String> consumer) {
+        return 0;
+    }
 }
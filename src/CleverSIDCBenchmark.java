@@ -0,0 +1,1013 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * CleverSIDCBenchmark is a self-contained micro-benchmark harness for the CleverSIDC operations.
+ * It sweeps record counts across the three backends (CircularEntryArray, AvlTree and BPlusTree), the adaptive mode that migrates
+ * between them at tunable watermarks, the PersistentAvlTree, the SlabAvlTree, the DurableCleverSIDC writing a temporary log,
+ * the read-only MappedSIDCSnapshot and the ShardedCleverSIDC, and reports, for every operation,
+ * the throughput, latency percentiles, allocated bytes per operation and the garbage collections observed.
+ * The load row also reports the heap retained per record once the records are loaded. With --value-cache, getValues goes through a
+ * value cache of that many entries, and getHot sends 95% of the lookups to 5% of the keys to show its hit rate.
+ * The miss ops (nextMiss, prevMiss, rangeMiss, selectMiss and removeMiss) ask only queries that find nothing, to time the cost of a miss.
+ * With --metrics, the structure collects its own SIDCMetrics during the run and their report is printed after each backend and size.
+ * The results are meant to show where the size threshold of CleverSIDC.setSIDCThreshold belongs, and to catch regressions.
+ * With --threads, it instead measures how the read throughput of ConcurrentCleverSIDC (or of the lock-free PersistentAvlTree,
+ * or of the ShardedCleverSIDC) scales with the number of reader threads,
+ * optionally while writer threads keep inserting and removing; --writers alone shows how the sharded writes scale across cores.
+ * With --avl-compare, it instead times the iterative AvlTree search, insertion, deletion and traversal against the recursive forms they replaced,
+ * which are kept here, on a tree of the same shape, rather than in AvlTree.
+ * <p>
+ * Usage: java -Xmx8g CleverSIDCBenchmark [--backends array,tree,bplus,adaptive,persistent,slab,durable,mapped,sharded] [--sizes 100,1000,...] [--ops add,remove,...]
+ * [--iterations n] [--warmup n] [--max-array-size n] [--adaptive-low n] [--adaptive-high n] [--hash-index true|false]
+ * [--bitset-generator true|false] [--generate-batch n] [--batch-size n] [--bulk-load true|false] [--wal-sync-ms n] [--wal-sync-bytes n]
+ * [--threads 1,2,4,...] [--writers n] [--duration-ms n] [--avl-compare true|false] [--value-cache n] [--metrics true|false] [--seed n]
+ * @author Rania Maoukout & teammate
+ */
+public class CleverSIDCBenchmark {
+    private static final long MIN_KEY = 10000000L, KEY_SPACE = 90000000L;
+    private static final String[] ALL_OPS = {"add", "remove", "getValues", "getHot", "nextKey", "prevKey", "rangeKey", "rank", "select", "nextMiss", "prevMiss", "rangeMiss", "selectMiss", "removeMiss", "generate", "generateBatch", "allKeys", "forEach", "cursor",
+            "addAll", "addLoop", "removeAll", "removeLoop", "getAll", "getLoop", "rangeKeys", "rangeLoop"};
+    private static final String[] AVL_OPS = {"find", "add", "remove", "traverse"};
+    private static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    private String[] backends = {"array", "tree", "bplus"};
+    private long[] sizes = {100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private String[] ops = ALL_OPS;
+    private int iterations = 20_000, warmup = 5_000, maxArraySize = 100_000;
+    private int adaptiveLow = CleverSIDC.DEFAULT_LOW_WATERMARK, adaptiveHigh = CleverSIDC.DEFAULT_HIGH_WATERMARK;
+    private boolean hashIndex, bitsetGenerator, bulkLoad; private int generateBatch = 1_000, batchSize = 10_000;
+    private int[] threads; private int writers, durationMillis = 2_000; private boolean avlCompare;
+    private long walSyncMillis = DurableCleverSIDC.DEFAULT_SYNC_INTERVAL_MILLIS; private int walSyncBytes = DurableCleverSIDC.DEFAULT_SYNC_BYTES;
+    private long seed = 42L; private int valueCache; private boolean metrics;
+    private final PrintStream out = System.out;
+    private final KeyCursor keyCursor = new KeyCursor(); private long scanSink;
+    private final LongObjConsumer<String> scanConsumer = (key, value) -> {
+        scanSink += key + value.length();
+        return true;
+    };
+
+    /**
+     * This method parses the command line options and runs the benchmark sweep.
+     * @param args the command line options
+     */
+    public static void main(String[] args) {
+        CleverSIDCBenchmark benchmark = new CleverSIDCBenchmark();
+        for(int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for option " + option);
+            String value = args[++i];
+            switch(option) {
+                case "--backends": benchmark.backends = value.split(","); break;
+                case "--sizes": benchmark.sizes = Arrays.stream(value.split(",")).mapToLong(Long::parseLong).toArray(); break;
+                case "--ops": benchmark.ops = value.split(","); break;
+                case "--iterations": benchmark.iterations = Integer.parseInt(value); break;
+                case "--warmup": benchmark.warmup = Integer.parseInt(value); break;
+                case "--max-array-size": benchmark.maxArraySize = Integer.parseInt(value); break;
+                case "--adaptive-low": benchmark.adaptiveLow = Integer.parseInt(value); break;
+                case "--adaptive-high": benchmark.adaptiveHigh = Integer.parseInt(value); break;
+                case "--hash-index": benchmark.hashIndex = Boolean.parseBoolean(value); break;
+                case "--bitset-generator": benchmark.bitsetGenerator = Boolean.parseBoolean(value); break;
+                case "--generate-batch": benchmark.generateBatch = Integer.parseInt(value); break;
+                case "--batch-size": benchmark.batchSize = Integer.parseInt(value); break;
+                case "--bulk-load": benchmark.bulkLoad = Boolean.parseBoolean(value); break;
+                case "--wal-sync-ms": benchmark.walSyncMillis = Long.parseLong(value); break;
+                case "--wal-sync-bytes": benchmark.walSyncBytes = Integer.parseInt(value); break;
+                case "--threads": benchmark.threads = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "--writers": benchmark.writers = Integer.parseInt(value); break;
+                case "--duration-ms": benchmark.durationMillis = Integer.parseInt(value); break;
+                case "--avl-compare": benchmark.avlCompare = Boolean.parseBoolean(value); break;
+                case "--seed": benchmark.seed = Long.parseLong(value); break;
+                case "--value-cache": benchmark.valueCache = Integer.parseInt(value); break;
+                case "--metrics": benchmark.metrics = Boolean.parseBoolean(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        benchmark.run();
+    }
+
+    /**
+     * This method runs every selected operation for every backend and size, printing one result row per combination.
+     */
+    private void run() {
+        if(threads != null) {
+            runConcurrent();
+            return;
+        }
+        if(avlCompare) {
+            runAvlComparison();
+            return;
+        }
+        out.printf("%-8s %10s %-10s %14s %9s %9s %9s %9s %11s %10s %6s %8s%n",
+                "backend", "size", "op", "ops/s", "p50(ns)", "p90(ns)", "p99(ns)", "p99.9(ns)", "max(ns)", "B/op", "gc", "gc(ms)");
+        for(String backend : backends) {
+            for(long size : sizes) {
+                if(backend.equals("array") && size > maxArraySize) {
+                    out.printf("%-8s %10d skipped, above --max-array-size %d%n", backend, size, maxArraySize);
+                    continue;
+                }
+                runBackend(backend, (int) size);
+            }
+        }
+    }
+
+    /**
+     * This method loads a fresh CleverSIDC of the given backend and size, then measures each selected operation against it.
+     * @param backend the backend name, one of "array", "tree", "bplus", "adaptive", "persistent", "slab", "durable", "mapped" or "sharded"
+     * @param size the number of records to load
+     */
+    private void runBackend(String backend, int size) {
+        Random random = new Random(seed);
+        long[] present = distinctKeys(size, random);
+        long[] absent = absentKeys(present, size, random);
+
+        CleverSIDC cleverSidc;
+        if(backend.equals("persistent")) {
+            cleverSidc = new PersistentAvlTree();
+        } else if(backend.equals("slab")) {
+            cleverSidc = new SlabAvlTree();
+        } else if(backend.equals("durable")) {
+            cleverSidc = new DurableCleverSIDC(temporaryDirectory(), walSyncMillis, walSyncBytes, DurableCleverSIDC.DEFAULT_COMPACTION_BYTES);
+        } else if(backend.equals("mapped")) {
+            cleverSidc = mappedSnapshot(present);
+        } else if(backend.equals("sharded")) {
+            cleverSidc = new ShardedCleverSIDC();
+        } else {
+            cleverSidc = new CleverSIDC();
+        }
+        if(!backend.equals("mapped")) load(cleverSidc, backend, present);
+        if(valueCache > 0) cleverSidc.setSIDCValueCache(valueCache, 0);
+        //the shards run on their own and have no metrics
+        if(metrics && !backend.equals("sharded")) cleverSidc.setSIDCMetrics(true);
+
+        for(String op : ops) {
+            if(backend.equals("mapped") && !isReadOnlyOp(op)) continue;
+            boolean bulkOp = op.equals("allKeys") || op.equals("generateBatch") || op.equals("forEach") || op.equals("cursor") || isBatchOp(op);
+            int opIterations = bulkOp ? Math.max(3, Math.min(iterations, 1_000_000 / Math.max(size, generateBatch))) : iterations;
+            int opWarmup = bulkOp ? 1 : warmup;
+            measure(cleverSidc, op, present, absent, random, opWarmup);
+            Result result = measure(cleverSidc, op, present, absent, random, opIterations);
+            out.printf("%-8s %10d %-10s %14.0f %9d %9d %9d %9d %11d %10.1f %6d %8d%n",
+                    backend, size, op, result.throughput(), result.percentile(0.50), result.percentile(0.90),
+                    result.percentile(0.99), result.percentile(0.999), result.percentile(1.0),
+                    result.bytesPerOp(), result.gcCount, result.gcMillis);
+        }
+        if(cleverSidc.getSIDCMetrics() != null) out.print(cleverSidc.getSIDCMetrics().getReport());
+        LongValueCache cache = cleverSidc.getValueCache();
+        if(cache != null) {
+            out.printf("%-8s %10d value cache of %d entries: %d hits, %d misses, %.1f%% hit rate, %d evictions%n", backend, size,
+                    valueCache, cache.getHitCount(), cache.getMissCount(), 100 * cache.getHitRate(), cache.getEvictionCount());
+        }
+        if(cleverSidc instanceof DurableCleverSIDC) closeDurable((DurableCleverSIDC) cleverSidc);
+    }
+
+    /**
+     * This method loads the given keys into a BPlusTree, writes it to a snapshot file and maps that file.
+     * The file is deleted right away; the mapping stays valid until it is garbage collected.
+     * @param present the keys to load
+     * @return the MappedSIDCSnapshot serving the keys.
+     */
+    private MappedSIDCSnapshot mappedSnapshot(long[] present) {
+        CleverSIDC source = new CleverSIDC();
+        load(source, "bplus", present);
+        try {
+            Path file = temporaryDirectory().resolve("sidc.snapshot");
+            SIDCSnapshotFile.write(source, file);
+            MappedSIDCSnapshot snapshot = MappedSIDCSnapshot.open(file);
+            Files.delete(file);
+            Files.delete(file.getParent());
+            return snapshot;
+        } catch(IOException exception) {
+            throw new IllegalStateException("Cannot write the snapshot to map.", exception);
+        }
+    }
+
+    /**
+     * This method tells whether the given operation leaves the structure unchanged, so it can run against a read-only snapshot.
+     * @param op the operation name
+     * @return true for the lookups, range queries and scans.
+     */
+    private static boolean isReadOnlyOp(String op) {
+        return !(op.equals("add") || op.startsWith("remove") || op.startsWith("generate") || op.equals("addAll") || op.equals("addLoop"));
+    }
+
+    /**
+     * This method configures the given CleverSIDC for the given backend and loads the given keys into it,
+     * one add at a time or, with --bulk-load, through a single bulkLoad call.
+     * @param cleverSidc the empty CleverSIDC to load
+     * @param backend the backend name, one of "array", "tree", "bplus", "adaptive", "persistent", "slab", "durable" or "sharded"
+     * @param present the keys to load
+     */
+    private void load(CleverSIDC cleverSidc, String backend, long[] present) {
+        //the threshold only selects the backend, the loaded record count is independent of it
+        if(backend.equals("bplus")) cleverSidc.setSIDCThreshold(Integer.MAX_VALUE);
+        else if(backend.equals("tree") || backend.equals("durable") || backend.equals("sharded")) cleverSidc.setSIDCThreshold(CleverSIDC.BPLUS_TREE_THRESHOLD);
+        else cleverSidc.setSIDCThreshold(1);
+        if(backend.equals("adaptive")) cleverSidc.setSIDCAdaptive(adaptiveLow, adaptiveHigh);
+        cleverSidc.setSIDCHashIndex(hashIndex);
+        cleverSidc.setSIDCBitsetGenerator(bitsetGenerator);
+        if(cleverSidc instanceof DurableCleverSIDC) {
+            try {
+                ((DurableCleverSIDC) cleverSidc).recover();
+            } catch(IOException exception) {
+                throw new IllegalStateException("Cannot start the write-ahead log.", exception);
+            }
+        }
+
+        long[] keys = present.clone(); String[] values = new String[keys.length];
+        for(int i = 0; i < values.length; i++) values[i] = cleverSidc.generateValues();
+        //the names already exist before the load, so the difference is what the structure itself retains
+        long heapBefore = usedHeap();
+        long loadStart = System.nanoTime();
+        if(bulkLoad) {
+            cleverSidc.bulkLoad(cleverSidc, keys, values, keys.length);
+        } else {
+            for(int i = 0; i < keys.length; i++) cleverSidc.add(cleverSidc, keys[i], values[i]);
+        }
+        long loadNanos = System.nanoTime() - loadStart;
+        long retainedBytes = usedHeap() - heapBefore;
+        out.printf("%-8s %10d %-10s %14.0f (bulk load of %d records took %.1f ms, retains %.1f B/record)%n",
+                backend, present.length, "load", present.length * 1e9 / loadNanos, values.length, loadNanos / 1e6,
+                (double) retainedBytes / Math.max(1, present.length));
+    }
+
+    /**
+     * This method returns the heap in use once the garbage collector has run, so that only reachable objects are counted.
+     * @return the used heap in bytes.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * This method measures, for every backend and size, the aggregate read throughput of a shared thread-safe CleverSIDC
+     * for each selected number of reader threads. Readers cycle through the read-only operations among the selected ones.
+     */
+    private void runConcurrent() {
+        String[] readOps = Arrays.stream(ops).filter(op -> op.equals("getValues") || op.equals("nextKey") || op.equals("prevKey")
+                || op.equals("rangeKey") || op.equals("rank") || op.equals("select")).toArray(String[]::new);
+        if(readOps.length == 0) throw new IllegalArgumentException("--threads needs at least one read-only operation in --ops");
+        out.printf("%-8s %10s %-10s %8s %8s %14s %16s %14s%n",
+                "backend", "size", "op", "readers", "writers", "reads/s", "reads/s/thread", "writes/s");
+
+        System.setOut(NULL_OUT);
+        try {
+            for(String backend : backends) {
+                for(long size : sizes) {
+                    if(backend.equals("array") && size > maxArraySize) continue;
+                    Random random = new Random(seed);
+                    long[] present = distinctKeys((int) size, random);
+                    long[] absent = absentKeys(present, (int) size, random);
+                    //the persistent tree is thread-safe on its own, with lock-free readers, and the sharded one locks each shard on its own
+                    CleverSIDC cleverSidc = backend.equals("persistent") ? new PersistentAvlTree()
+                            : backend.equals("sharded") ? new ShardedCleverSIDC() : new ConcurrentCleverSIDC();
+                    System.setOut(out);
+                    load(cleverSidc, backend, present);
+                    System.setOut(NULL_OUT);
+
+                    for(int threadCount : threads) {
+                        long[] counts = runThreads(cleverSidc, readOps, present, absent, threadCount);
+                        long reads = 0, writes = 0;
+                        for(int i = 0; i < threadCount; i++) reads += counts[i];
+                        for(int i = threadCount; i < counts.length; i++) writes += counts[i];
+                        double seconds = durationMillis / 1000.0;
+                        out.printf("%-8s %10d %-10s %8d %8d %14.0f %16.0f %14.0f%n", backend, size, String.join("+", readOps),
+                                threadCount, writers, reads / seconds, reads / seconds / threadCount, writes / seconds);
+                    }
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * This method runs the given number of reader threads, and the configured number of writer threads, for the configured duration.
+     * Writers alternately add an absent key and remove it again, so the population stays the same.
+     * @param cleverSidc the shared CleverSIDC under test
+     * @param readOps the read-only operations the readers cycle through
+     * @param present keys currently stored in cleverSidc
+     * @param absent keys guaranteed not to be stored in cleverSidc
+     * @param readerCount the number of reader threads
+     * @return the number of completed operations of each thread, readers first.
+     */
+    private long[] runThreads(CleverSIDC cleverSidc, String[] readOps, long[] present, long[] absent, int readerCount) {
+        long[] counts = new long[readerCount + writers];
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] workers = new Thread[counts.length];
+        String value = cleverSidc.generateValues();
+
+        for(int t = 0; t < workers.length; t++) {
+            final int id = t;
+            final boolean writer = t >= readerCount;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed + id);
+                long count = 0, sink = 0;
+                while(running.get()) {
+                    int pick = random.nextInt(present.length);
+                    if(writer) {
+                        cleverSidc.add(cleverSidc, absent[pick], value);
+                        cleverSidc.remove(cleverSidc, absent[pick]);
+                        count += 2;
+                        continue;
+                    }
+                    long key = present[pick];
+                    switch(readOps[(int) (count % readOps.length)]) {
+                        case "getValues": sink += cleverSidc.getValues(cleverSidc, key).length(); break;
+                        case "nextKey": sink += cleverSidc.nextKey(cleverSidc, key); break;
+                        case "prevKey": sink += cleverSidc.prevKey(cleverSidc, key); break;
+                        case "rangeKey": sink += cleverSidc.rangeKey(key, key + KEY_SPACE / 100); break;
+                        case "rank": sink += cleverSidc.rank(cleverSidc, key); break;
+                        default: sink += cleverSidc.select(cleverSidc, pick); break;
+                    }
+                    count++;
+                }
+                counts[id] = count + (sink == 42 ? 1 : 0);
+            });
+        }
+        for(Thread worker : workers) worker.start();
+        try {
+            Thread.sleep(durationMillis);
+            running.set(false);
+            for(Thread worker : workers) worker.join();
+        } catch(InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        return counts;
+    }
+
+    /**
+     * This method times the given operation individually for the given number of iterations.
+     * Operations that change the population (add, remove and their batch forms) are paired with an untimed inverse step so the size stays constant;
+     * the allocation figure covers both steps. The batch operations and their loop counterparts handle --batch-size random keys per timed operation.
+     * @param cleverSidc the loaded CleverSIDC under test
+     * @param op the operation name
+     * @param present keys currently stored in cleverSidc
+     * @param absent keys guaranteed not to be stored in cleverSidc
+     * @param random the source of randomness used to pick keys
+     * @param count the number of timed operations
+     * @return the measured result.
+     */
+    private Result measure(CleverSIDC cleverSidc, String op, long[] present, long[] absent, Random random, int count) {
+        Result result = new Result(count);
+        String value = cleverSidc.generateValues();
+        long sink = 0;
+        int batch = isBatchOp(op) ? Math.min(batchSize, present.length) : 0;
+        long[] batchKeys = new long[batch], batchHighs = new long[batch]; String[] batchValues = new String[batch], batchOut = new String[batch];
+        int[] batchCounts = new int[batch];
+        Arrays.fill(batchValues, value);
+        long gcCountBefore = gcCount(), gcMillisBefore = gcMillis(), allocatedBefore = allocatedBytes();
+
+        //allKeys prints every entry; keep that out of the measurement
+        System.setOut(NULL_OUT);
+        try {
+            for(int i = 0; i < count; i++) {
+                int pick = random.nextInt(present.length);
+                long key = present[pick];
+                long start, end;
+                switch(op) {
+                    case "add":
+                        start = System.nanoTime();
+                        cleverSidc.add(cleverSidc, absent[pick], value);
+                        end = System.nanoTime();
+                        cleverSidc.remove(cleverSidc, absent[pick]);
+                        break;
+                    case "remove":
+                        start = System.nanoTime();
+                        sink += cleverSidc.remove(cleverSidc, key);
+                        end = System.nanoTime();
+                        cleverSidc.add(cleverSidc, key, value);
+                        break;
+                    case "getValues":
+                        start = System.nanoTime();
+                        sink += cleverSidc.getValues(cleverSidc, key).length();
+                        end = System.nanoTime();
+                        break;
+                    case "getHot":
+                        //95% of the lookups go to the first 5% of the keys
+                        if(random.nextInt(100) < 95) key = present[random.nextInt(Math.max(1, present.length / 20))];
+                        start = System.nanoTime();
+                        sink += cleverSidc.getValues(cleverSidc, key).length();
+                        end = System.nanoTime();
+                        break;
+                    case "nextKey":
+                        start = System.nanoTime();
+                        sink += cleverSidc.nextKey(cleverSidc, key);
+                        end = System.nanoTime();
+                        break;
+                    case "prevKey":
+                        start = System.nanoTime();
+                        sink += cleverSidc.prevKey(cleverSidc, key);
+                        end = System.nanoTime();
+                        break;
+                    case "rangeKey":
+                        long other = present[random.nextInt(present.length)];
+                        start = System.nanoTime();
+                        sink += cleverSidc.rangeKey(Math.min(key, other), Math.max(key, other));
+                        end = System.nanoTime();
+                        break;
+                    case "rank":
+                        start = System.nanoTime();
+                        sink += cleverSidc.rank(cleverSidc, key);
+                        end = System.nanoTime();
+                        break;
+                    case "select":
+                        start = System.nanoTime();
+                        sink += cleverSidc.select(cleverSidc, pick);
+                        end = System.nanoTime();
+                        break;
+                    case "nextMiss":
+                        start = System.nanoTime();
+                        sink += cleverSidc.nextKey(cleverSidc, MIN_KEY + KEY_SPACE);
+                        end = System.nanoTime();
+                        break;
+                    case "prevMiss":
+                        start = System.nanoTime();
+                        sink += cleverSidc.prevKey(cleverSidc, MIN_KEY - 1);
+                        end = System.nanoTime();
+                        break;
+                    case "rangeMiss":
+                        long low = absent[random.nextInt(absent.length)];
+                        start = System.nanoTime();
+                        sink += cleverSidc.rangeKey(Math.min(low, absent[pick]), Math.max(low, absent[pick]));
+                        end = System.nanoTime();
+                        break;
+                    case "selectMiss":
+                        start = System.nanoTime();
+                        sink += cleverSidc.select(cleverSidc, present.length + pick);
+                        end = System.nanoTime();
+                        break;
+                    case "removeMiss":
+                        start = System.nanoTime();
+                        sink += cleverSidc.remove(cleverSidc, absent[pick]);
+                        end = System.nanoTime();
+                        break;
+                    case "generate":
+                        start = System.nanoTime();
+                        sink += cleverSidc.generate();
+                        end = System.nanoTime();
+                        break;
+                    case "generateBatch":
+                        start = System.nanoTime();
+                        sink += cleverSidc.generate(generateBatch).length;
+                        end = System.nanoTime();
+                        break;
+                    case "allKeys":
+                        start = System.nanoTime();
+                        cleverSidc.allKeys(cleverSidc);
+                        end = System.nanoTime();
+                        break;
+                    case "addAll":
+                        fillBatch(batchKeys, absent, random);
+                        start = System.nanoTime();
+                        sink += cleverSidc.addAll(cleverSidc, batchKeys, batchValues, batch);
+                        end = System.nanoTime();
+                        cleverSidc.removeAll(cleverSidc, batchKeys, batch);
+                        break;
+                    case "addLoop":
+                        fillBatch(batchKeys, absent, random);
+                        start = System.nanoTime();
+                        for(int j = 0; j < batch; j++) cleverSidc.add(cleverSidc, batchKeys[j], value);
+                        end = System.nanoTime();
+                        cleverSidc.removeAll(cleverSidc, batchKeys, batch);
+                        break;
+                    case "removeAll":
+                        fillBatch(batchKeys, present, random);
+                        start = System.nanoTime();
+                        sink += cleverSidc.removeAll(cleverSidc, batchKeys, batch);
+                        end = System.nanoTime();
+                        cleverSidc.addAll(cleverSidc, batchKeys, batchValues, batch);
+                        break;
+                    case "removeLoop":
+                        fillBatch(batchKeys, present, random);
+                        start = System.nanoTime();
+                        for(int j = 0; j < batch; j++) sink += cleverSidc.remove(cleverSidc, batchKeys[j]);
+                        end = System.nanoTime();
+                        cleverSidc.addAll(cleverSidc, batchKeys, batchValues, batch);
+                        break;
+                    case "getAll":
+                        fillBatch(batchKeys, present, random);
+                        start = System.nanoTime();
+                        sink += cleverSidc.getAll(cleverSidc, batchKeys, batchOut, batch);
+                        end = System.nanoTime();
+                        break;
+                    case "getLoop":
+                        fillBatch(batchKeys, present, random);
+                        start = System.nanoTime();
+                        for(int j = 0; j < batch; j++) sink += cleverSidc.getValues(cleverSidc, batchKeys[j]).length();
+                        end = System.nanoTime();
+                        break;
+                    case "rangeKeys":
+                        fillBatch(batchKeys, present, random);
+                        for(int j = 0; j < batch; j++) batchHighs[j] = batchKeys[j] + KEY_SPACE / 100;
+                        start = System.nanoTime();
+                        sink += cleverSidc.rangeKeys(cleverSidc, batchKeys, batchHighs, batchCounts, batch);
+                        end = System.nanoTime();
+                        break;
+                    case "rangeLoop":
+                        fillBatch(batchKeys, present, random);
+                        start = System.nanoTime();
+                        for(int j = 0; j < batch; j++) sink += cleverSidc.rangeKey(batchKeys[j], batchKeys[j] + KEY_SPACE / 100);
+                        end = System.nanoTime();
+                        break;
+                    case "forEach":
+                        start = System.nanoTime();
+                        sink += cleverSidc.forEachInRange(Long.MIN_VALUE, Long.MAX_VALUE, scanConsumer);
+                        end = System.nanoTime();
+                        break;
+                    case "cursor":
+                        start = System.nanoTime();
+                        keyCursor.open(cleverSidc, Long.MIN_VALUE, Long.MAX_VALUE);
+                        while(keyCursor.next()) sink += keyCursor.getKey();
+                        end = System.nanoTime();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown operation " + op);
+                }
+                result.latencies[i] = end - start;
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        result.allocatedBytes = allocatedBytes() - allocatedBefore;
+        result.gcCount = gcCount() - gcCountBefore;
+        result.gcMillis = gcMillis() - gcMillisBefore;
+        if(sink + scanSink == 42) out.print("");  //keep the results alive
+        return result;
+    }
+
+    /**
+     * This method tells whether the given operation handles a batch of keys per timed operation.
+     * @param op the operation name
+     * @return true for the batch operations and their loop counterparts.
+     */
+    private static boolean isBatchOp(String op) {
+        return op.equals("addAll") || op.equals("addLoop") || op.equals("removeAll") || op.equals("removeLoop")
+                || op.equals("getAll") || op.equals("getLoop") || op.equals("rangeKeys") || op.equals("rangeLoop");
+    }
+
+    /**
+     * This method fills the given batch with distinct keys taken from a random position of the given keys.
+     * @param batchKeys the batch to fill
+     * @param keys the keys to take from, at least as many as the batch
+     * @param random the source of randomness used to pick the position
+     */
+    private static void fillBatch(long[] batchKeys, long[] keys, Random random) {
+        int from = random.nextInt(keys.length - batchKeys.length + 1);
+        System.arraycopy(keys, from, batchKeys, 0, batchKeys.length);
+    }
+
+    /**
+     * This method compares, for every size, the iterative AvlTree operations with the recursive forms they replaced.
+     * Both trees are built from the same keys in the same order, so they have the same shape and the rows differ only by the code path.
+     */
+    private void runAvlComparison() {
+        out.printf("%-8s %10s %-10s %14s %9s %9s %9s %9s %11s %10s %6s %8s%n",
+                "avl", "size", "op", "ops/s", "p50(ns)", "p90(ns)", "p99(ns)", "p99.9(ns)", "max(ns)", "B/op", "gc", "gc(ms)");
+        for(long size : sizes) {
+            Random random = new Random(seed);
+            long[] present = distinctKeys((int) size, random);
+            long[] absent = absentKeys(present, (int) size, random);
+            AvlTree sidcTree = new AvlTree(); RecursiveAvlTree recursiveTree = new RecursiveAvlTree();
+            for(long key : present) {
+                sidcTree.root = sidcTree.addNodeToTree(sidcTree.root, key, "");
+                recursiveTree.root = recursiveTree.add(recursiveTree.root, key, "");
+            }
+
+            for(String op : AVL_OPS) {
+                int opIterations = op.equals("traverse") ? Math.max(3, Math.min(iterations, 1_000_000 / (int) size)) : iterations;
+                int opWarmup = op.equals("traverse") ? 1 : warmup;
+                for(boolean recursive : new boolean[] {false, true}) {
+                    measureAvl(sidcTree, recursive ? recursiveTree : null, op, present, absent, random, opWarmup);
+                    Result result = measureAvl(sidcTree, recursive ? recursiveTree : null, op, present, absent, random, opIterations);
+                    out.printf("%-8s %10d %-10s %14.0f %9d %9d %9d %9d %11d %10.1f %6d %8d%n",
+                            recursive ? "avl-rec" : "avl-iter", size, op, result.throughput(), result.percentile(0.50), result.percentile(0.90),
+                            result.percentile(0.99), result.percentile(0.999), result.percentile(1.0),
+                            result.bytesPerOp(), result.gcCount, result.gcMillis);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method times one AvlTree operation, in its iterative or recursive form, for the given number of iterations.
+     * As in measure, add and remove are paired with an untimed inverse step so the size stays constant.
+     * @param sidcTree the loaded AvlTree under test
+     * @param recursiveTree the loaded tree whose recursive form is timed instead, or null to time sidcTree
+     * @param op the operation name, one of "find", "add", "remove" or "traverse"
+     * @param present keys currently stored in sidcTree
+     * @param absent keys guaranteed not to be stored in sidcTree
+     * @param random the source of randomness used to pick keys
+     * @param count the number of timed operations
+     * @return the measured result.
+     */
+    private Result measureAvl(AvlTree sidcTree, RecursiveAvlTree recursiveTree, String op, long[] present, long[] absent, Random random,
+                              int count) {
+        Result result = new Result(count);
+        boolean recursive = recursiveTree != null;
+        long sink = 0;
+        long gcCountBefore = gcCount(), gcMillisBefore = gcMillis(), allocatedBefore = allocatedBytes();
+
+        System.setOut(NULL_OUT);
+        try {
+            for(int i = 0; i < count; i++) {
+                int pick = random.nextInt(present.length);
+                long key = present[pick];
+                long start, end;
+                switch(op) {
+                    case "find":
+                        start = System.nanoTime();
+                        if(recursive) {
+                            RecursiveAvlTree.Node node = recursiveTree.find(recursiveTree.root, key);
+                            end = System.nanoTime();
+                            sink += node.key;
+                        } else {
+                            AvlTree.AvlTreeNode sidcNode = sidcTree.findKeyInTree(sidcTree.root, key);
+                            end = System.nanoTime();
+                            sink += sidcNode.getKey();
+                        }
+                        break;
+                    case "add":
+                        start = System.nanoTime();
+                        if(recursive) {
+                            recursiveTree.root = recursiveTree.add(recursiveTree.root, absent[pick], "");
+                            end = System.nanoTime();
+                            recursiveTree.root = recursiveTree.delete(recursiveTree.root, absent[pick]);
+                        } else {
+                            sidcTree.root = sidcTree.addNodeToTree(sidcTree.root, absent[pick], "");
+                            end = System.nanoTime();
+                            sidcTree.root = sidcTree.deleteNodeFromTree(sidcTree.root, absent[pick]);
+                        }
+                        break;
+                    case "remove":
+                        start = System.nanoTime();
+                        if(recursive) {
+                            recursiveTree.root = recursiveTree.delete(recursiveTree.root, key);
+                            end = System.nanoTime();
+                            recursiveTree.root = recursiveTree.add(recursiveTree.root, key, "");
+                        } else {
+                            sidcTree.root = sidcTree.deleteNodeFromTree(sidcTree.root, key);
+                            end = System.nanoTime();
+                            sidcTree.root = sidcTree.addNodeToTree(sidcTree.root, key, "");
+                        }
+                        break;
+                    case "traverse":
+                        start = System.nanoTime();
+                        if(recursive) recursiveTree.inOrderTraversal(recursiveTree.root);
+                        else sidcTree.inOrderTraversal(sidcTree.root);
+                        end = System.nanoTime();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown operation " + op);
+                }
+                result.latencies[i] = end - start;
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        result.allocatedBytes = allocatedBytes() - allocatedBefore;
+        result.gcCount = gcCount() - gcCountBefore;
+        result.gcMillis = gcMillis() - gcMillisBefore;
+        if(sink == 42) out.print("");  //keep the results alive
+        return result;
+    }
+
+    /**
+     * This method creates an empty temporary directory for the log of a durable backend.
+     * @return the directory.
+     */
+    private static Path temporaryDirectory() {
+        try {
+            return Files.createTempDirectory("sidc-benchmark");
+        } catch(IOException exception) {
+            throw new IllegalStateException("Cannot create a directory for the write-ahead log.", exception);
+        }
+    }
+
+    /**
+     * This method closes a durable backend and deletes its snapshots and logs.
+     * @param durableSidc the durable backend to discard
+     */
+    private static void closeDurable(DurableCleverSIDC durableSidc) {
+        try {
+            durableSidc.close();
+            Path directory = durableSidc.getDirectory();
+            try(Stream<Path> files = Files.list(directory)) {
+                for(Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+            }
+            Files.delete(directory);
+        } catch(IOException exception) {
+            throw new IllegalStateException("Cannot delete the write-ahead log.", exception);
+        }
+    }
+
+    /**
+     * This method generates distinct 8-digit keys in random order by placing one key in each of size equal strides of the key space.
+     * @param size the number of keys to generate
+     * @param random the source of randomness
+     * @return the generated keys.
+     */
+    private static long[] distinctKeys(int size, Random random) {
+        long stride = KEY_SPACE / size;
+        long[] keys = new long[size];
+        for(int i = 0; i < size; i++) {
+            keys[i] = MIN_KEY + i * stride + (long) (random.nextDouble() * stride);
+        }
+        //shuffle so insertion order is not sorted
+        for(int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long temp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = temp;
+        }
+        return keys;
+    }
+
+    /**
+     * This method derives, for every present key, a key from the same stride that is guaranteed to be absent.
+     * @param present the keys that will be stored
+     * @param size the number of stored keys
+     * @param random the source of randomness
+     * @return the absent keys, parallel to present.
+     */
+    private static long[] absentKeys(long[] present, int size, Random random) {
+        long stride = KEY_SPACE / size;
+        if(stride < 2) throw new IllegalArgumentException("Too many records for the 8-digit key space: " + size);
+        long[] absent = new long[size];
+        for(int i = 0; i < size; i++) {
+            long base = MIN_KEY + ((present[i] - MIN_KEY) / stride) * stride;
+            long offset = (present[i] - base + 1 + (long) (random.nextDouble() * (stride - 1))) % stride;
+            absent[i] = base + offset;
+        }
+        return absent;
+    }
+
+    /**
+     * This method returns the bytes allocated so far by the current thread, or 0 when the JVM does not support it.
+     * @return the allocated bytes of the current thread
+     */
+    private static long allocatedBytes() {
+        if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadBean) {
+            return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * This method returns the total number of garbage collections performed by the JVM.
+     * @return the collection count
+     */
+    private static long gcCount() {
+        long count = 0;
+        for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, bean.getCollectionCount());
+        return count;
+    }
+
+    /**
+     * This method returns the total time spent in garbage collection by the JVM.
+     * @return the collection time in milliseconds
+     */
+    private static long gcMillis() {
+        long millis = 0;
+        for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) millis += Math.max(0, bean.getCollectionTime());
+        return millis;
+    }
+
+    /**
+     * A private static inner class holding the measurements of one operation.
+     */
+    private static class Result {
+        private final long[] latencies; private long allocatedBytes, gcCount, gcMillis;
+        private boolean sorted;
+
+        /**
+         * Parameterized constructor.
+         * @param count the number of timed operations
+         */
+        private Result(int count) {
+            latencies = new long[count];
+        }
+
+        /**
+         * This method returns the number of operations per second, based on the summed latencies.
+         * @return the throughput
+         */
+        private double throughput() {
+            long total = 0;
+            for(long latency : latencies) total += latency;
+            return total == 0 ? 0 : latencies.length * 1e9 / total;
+        }
+
+        /**
+         * This method returns the latency at the given percentile.
+         * @param fraction the percentile as a fraction between 0 and 1
+         * @return the latency in nanoseconds
+         */
+        private long percentile(double fraction) {
+            if(!sorted) {
+                Arrays.sort(latencies);
+                sorted = true;
+            }
+            int index = (int) Math.ceil(fraction * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+
+        /**
+         * This method returns the average number of bytes allocated per operation.
+         * @return the bytes per operation
+         */
+        private double bytesPerOp() {
+            return (double) allocatedBytes / latencies.length;
+        }
+    }
+
+    /**
+     * A private static inner class holding the original recursive AvlTree search, insertion, deletion and traversal,
+     * which AvlTree replaced with iterative forms. It only serves the --avl-compare rows and keeps its own nodes,
+     * so AvlTree does not have to expose its rotations.
+     */
+    private static class RecursiveAvlTree {
+        private Node root;
+
+        /**
+         * A private static inner class representing a node of the recursive AVL tree.
+         */
+        private static class Node {
+            private long key; private String value; private int height = 1, size = 1; private Node left, right;
+
+            /**
+             * Parameterized constructor.
+             * @param key the key of the node
+             * @param value the value associated with the key
+             */
+            private Node(long key, String value) {
+                this.key = key;
+                this.value = value;
+            }
+        }
+
+        /**
+         * This method returns the height of the given node.
+         * @param node the node, which may be null
+         * @return the height, or 0 for null.
+         */
+        private static int height(Node node) {
+            return (node == null) ? 0 : node.height;
+        }
+
+        /**
+         * This method returns the number of nodes in the subtree of the given node.
+         * @param node the node, which may be null
+         * @return the subtree size, or 0 for null.
+         */
+        private static int size(Node node) {
+            return (node == null) ? 0 : node.size;
+        }
+
+        /**
+         * This method recomputes the height and subtree size of the given node from its children.
+         * @param node the node to update
+         */
+        private static void update(Node node) {
+            node.height = 1 + Math.max(height(node.left), height(node.right));
+            node.size = 1 + size(node.left) + size(node.right);
+        }
+
+        /**
+         * This method returns the balance factor of the given node.
+         * @param node the node, which may be null
+         * @return the height of the left subtree minus the height of the right one.
+         */
+        private static int balanceFactor(Node node) {
+            return (node == null) ? 0 : height(node.left) - height(node.right);
+        }
+
+        /**
+         * This method rotates the subtree of the given node to the left.
+         * @param node the root of the subtree
+         * @return the new root of the subtree.
+         */
+        private static Node leftRotation(Node node) {
+            Node x = node.right;
+            node.right = x.left;
+            x.left = node;
+            update(node);
+            update(x);
+            return x;
+        }
+
+        /**
+         * This method rotates the subtree of the given node to the right.
+         * @param node the root of the subtree
+         * @return the new root of the subtree.
+         */
+        private static Node rightRotation(Node node) {
+            Node x = node.left;
+            node.left = x.right;
+            x.right = node;
+            update(node);
+            update(x);
+            return x;
+        }
+
+        /**
+         * This method recursively searches for a key starting from the given node.
+         * @param node the root node of the current subtree
+         * @param keyToFind the key to search for
+         * @return the node containing the key, or null if the key is not found.
+         */
+        private Node find(Node node, long keyToFind) {
+            if(node == null || keyToFind == node.key) return node;
+            return (keyToFind < node.key) ? find(node.left, keyToFind) : find(node.right, keyToFind);
+        }
+
+        /**
+         * This method recursively traverses the subtree of the given node in order, printing the key-value pair of each node.
+         * @param node the root node of the current subtree
+         */
+        private void inOrderTraversal(Node node) {
+            if(node != null) {
+                inOrderTraversal(node.left);
+                System.out.println(node.key + " -- " + node.value);
+                inOrderTraversal(node.right);
+            }
+        }
+
+        /**
+         * This method recursively adds a node with the given key and value, then balances each node on the way back up.
+         * @param node the root node of the current subtree
+         * @param newKey the key of the new node
+         * @param newValue the value associated with the new key
+         * @return the root node of the updated subtree.
+         */
+        private Node add(Node node, long newKey, String newValue) {
+            if(node == null) return new Node(newKey, newValue);
+            if(newKey < node.key) {
+                node.left = add(node.left, newKey, newValue);
+            } else if(newKey > node.key) {
+                node.right = add(node.right, newKey, newValue);
+            } else return node;
+
+            update(node);
+            int balanceFactor = balanceFactor(node);
+            if(balanceFactor > 1) {
+                if(newKey > node.left.key) node.left = leftRotation(node.left);
+                return rightRotation(node);
+            }
+            if(balanceFactor < -1) {
+                if(newKey < node.right.key) node.right = rightRotation(node.right);
+                return leftRotation(node);
+            }
+            return node;
+        }
+
+        /**
+         * This method recursively deletes the node with the given key, then balances each node on the way back up.
+         * @param node the root node of the current subtree
+         * @param keyToRemove the key of the node to remove
+         * @return the root node of the updated subtree.
+         */
+        private Node delete(Node node, long keyToRemove) {
+            if(node == null) return null;
+            if(keyToRemove < node.key) {
+                node.left = delete(node.left, keyToRemove);
+            } else if(keyToRemove > node.key) {
+                node.right = delete(node.right, keyToRemove);
+            } else if(node.left == null || node.right == null) {
+                node = (node.left == null) ? node.right : node.left;
+            } else {
+                Node successor = node.right;
+                while(successor.left != null) successor = successor.left;
+                node.key = successor.key;
+                node.value = successor.value;
+                node.right = delete(node.right, successor.key);
+            }
+            if(node == null) return null;
+
+            update(node);
+            int balanceFactor = balanceFactor(node);
+            if(balanceFactor > 1) {
+                if(balanceFactor(node.left) < 0) node.left = leftRotation(node.left);
+                return rightRotation(node);
+            }
+            if(balanceFactor < -1) {
+                if(balanceFactor(node.right) > 0) node.right = rightRotation(node.right);
+                return leftRotation(node);
+            }
+            return node;
+        }
+    }
+}
@@ -1,4 +1,6 @@
 import java.io.*;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 /**
@@ -11,7 +13,7 @@ public class CleverSIDCDriver {
     public static void main(String[] args) {
         Scanner scan = new Scanner(System.in);
             //variables
-            int counter = 0, sizeOfStudents; String fileName; Scanner myReader; long studentID; String studentName;
+            int sizeOfStudents; String fileName; long studentID; String studentName;
 
             System.out.println("\n~~~~~~~~~~~~~~~~~~~~~~~~ Welcome to Rania and Barbara's NASTA CleverSIDC Project ~~~~~~~~~~~~~~~~~~~~~~~~");
             CleverSIDC cleverSIDC = new CleverSIDC();
@@ -28,17 +30,14 @@ public class CleverSIDCDriver {
                 System.out.print("-> Please enter the name of the file you would like to read from (add .txt extension): ");
                 fileName = scan.next();
 
-                myReader = new Scanner(new File("test_files/"+fileName));
-                while(myReader.hasNextLine() && counter != sizeOfStudents) {
-                    studentID = myReader.nextLong();
-                    studentName = cleverSIDC.generateValues();
-
-                    cleverSIDC.add(cleverSIDC, studentID, studentName);
-                    counter++;
-                }
-            } catch (FileNotFoundException exception) {
+                //bulk load up to sizeOfStudents IDs from the file
+                SIDCBulkLoader.loadFile(cleverSIDC, Path.of("test_files", fileName), sizeOfStudents);
+            } catch (NoSuchFileException exception) {
                 System.out.print("File does not exist. Exiting...");
                 System.exit(1);
+            } catch (IOException exception) {
+                System.out.printf("File could not be read: %s. Exiting...", exception.getMessage());
+                System.exit(1);
             }
 
             //initial display of NASTA CleverSIDC
@@ -104,7 +103,7 @@ public class CleverSIDCDriver {
                     studentID = scan.nextLong();
 
                     long removedKey = cleverSIDC.remove(cleverSIDC, studentID);
-                    if(removedKey == -1 || removedKey == 0) {
+                    if(removedKey == CleverSIDC.NO_KEY) {
                         System.out.println("Key does not exist in NASTA CleverSIDC.");
                     } else {
                         System.out.printf("Successfully removed the key: %d from NASTA CleverSIDC.%n", removedKey);
@@ -117,7 +116,7 @@ public class CleverSIDCDriver {
                     studentID = scan.nextLong();
 
                     String keyValue = cleverSIDC.getValues(cleverSIDC, studentID);
-                    if(keyValue.isEmpty()) {
+                    if(keyValue.equals(CleverSIDC.NO_VALUE)) {
                         System.out.println("Key doesn't exist in NASTA CleverSIDC, therefore has no value.");
                     } else {
                         System.out.printf("The value of the given key is: %s%n", keyValue);
@@ -130,7 +129,9 @@ public class CleverSIDCDriver {
                     studentID = scan.nextLong();
 
                     long successorKey = cleverSIDC.nextKey(cleverSIDC, studentID);
-                    if(successorKey != 0) {
+                    if(successorKey == CleverSIDC.NO_KEY) {
+                        System.out.println("The given key doesn't have a next key i.e, there is no key to the right of the given key.");
+                    } else {
                         System.out.printf("The successor of the given key is: %d%n", successorKey);
                     }
                 }
@@ -141,7 +142,9 @@ public class CleverSIDCDriver {
                     studentID = scan.nextLong();
 
                     long predecessorKey = cleverSIDC.prevKey(cleverSIDC, studentID);
-                    if(predecessorKey != 0) {
+                    if(predecessorKey == CleverSIDC.NO_KEY) {
+                        System.out.println("The given key doesn't have a previous key i.e, there is no key to the left of the given key.");
+                    } else {
                         System.out.printf("The predecessor of the given key is: %d%n", predecessorKey);
                     }
                 }
@@ -153,8 +156,10 @@ public class CleverSIDCDriver {
                     System.out.print("~~~ Enter the the second key for the ending range(exclusive): ");
                     long key2 = scan.nextLong();
 
-                    int rangeOfKeys = cleverSIDC.rangeKey(key1, key2);
-                    if(rangeOfKeys != -1) {
+                    if(key1 >= key2) {
+                        System.out.println("key1 must be smaller than key2.");
+                    } else {
+                        int rangeOfKeys = cleverSIDC.rangeKey(key1, key2);
                         System.out.printf("The number of elements between key1: %d, and key2: %d is: %d.%n", key1, key2, rangeOfKeys);
                     }
                 }
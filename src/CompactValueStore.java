@@ -0,0 +1,159 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * CompactValueStore class stores the values of CleverSIDC as int codes instead of one String object per record.
+ * A value made of two words separated by a single space, such as a student name, is dictionary-encoded: each word is
+ * interned once in a token table and the value becomes the pair of token numbers, so a roster of repeated first and last
+ * names costs four bytes per record. Any other value is copied as UTF-8 into a packed byte arena and referred to by
+ * its entry number. Values are rebuilt as Strings only when they are read, and the most recently read names are kept in a
+ * small direct-mapped cache, as are the most recently stored ones, so that storing or looking up a common name does not
+ * allocate. The store is not thread-safe. When its owner collects metrics, every compaction of the arena is counted.
+ * @author Rania Maoukout & teammate
+ */
+public class CompactValueStore {
+    public static final int NULL_CODE = Integer.MIN_VALUE;
+    private static final int TOKEN_BITS = 15, MAX_TOKENS = 1 << TOKEN_BITS, TOKEN_MASK = MAX_TOKENS - 1;
+    private static final int MIN_COMPACTION_BYTES = 1 << 12, PAIR_CACHE_BITS = 10, PAIR_CACHE_SIZE = 1 << PAIR_CACHE_BITS;
+    private String[] tokens = new String[16]; private int tokenCount; private final HashMap<String, Integer> tokenCodes = new HashMap<>();
+    private byte[] arena = new byte[256]; private int arenaEnd; private long wastedBytes;
+    private int[] entryOffsets = new int[16], entryLengths = new int[16], freeEntries = new int[16];
+    private int entryCount, freeEntryCount;
+    private final int[] cachedPairCodes = new int[PAIR_CACHE_SIZE]; private final String[] cachedPairs = new String[PAIR_CACHE_SIZE];
+    private final int[] encodedPairCodes = new int[PAIR_CACHE_SIZE]; private final String[] encodedPairs = new String[PAIR_CACHE_SIZE];
+    SIDCMetrics sidcMetrics;
+
+    /**
+     * This method stores the given value and returns its code. Codes of dictionary-encoded values are non-negative,
+     * codes of arena entries are negative, and null has a code of its own.
+     * @param value the value to store, which may be null
+     * @return the code of the value.
+     */
+    public int encode(String value) {
+        if(value == null) return NULL_CODE;
+        int cacheSlot = (value.hashCode() * 0x9E3779B9) >>> (32 - PAIR_CACHE_BITS);
+        if(value.equals(encodedPairs[cacheSlot])) return encodedPairCodes[cacheSlot];
+        int space = value.indexOf(' ');
+        if(space > 0 && space < value.length() - 1 && value.indexOf(' ', space + 1) == -1) {
+            int first = tokenCode(value.substring(0, space)), last = tokenCode(value.substring(space + 1));
+            if(first != -1 && last != -1) {
+                int code = (first << TOKEN_BITS) | last;
+                encodedPairs[cacheSlot] = value;
+                encodedPairCodes[cacheSlot] = code;
+                return code;
+            }
+        }
+        return ~addArenaEntry(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This method rebuilds the value of the given code.
+     * @param code the code returned by encode
+     * @return the value, or null if null was stored.
+     */
+    public String decode(int code) {
+        if(code == NULL_CODE) return null;
+        if(code >= 0) {
+            int cacheSlot = (code * 0x9E3779B9) >>> (32 - PAIR_CACHE_BITS);
+            if(cachedPairs[cacheSlot] != null && cachedPairCodes[cacheSlot] == code) return cachedPairs[cacheSlot];
+            String pair = tokens[code >>> TOKEN_BITS] + " " + tokens[code & TOKEN_MASK];
+            cachedPairCodes[cacheSlot] = code;
+            cachedPairs[cacheSlot] = pair;
+            return pair;
+        }
+        int entry = ~code;
+        return new String(arena, entryOffsets[entry], entryLengths[entry], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method frees the storage of a value that is no longer referenced. Tokens are kept, since other records may share them.
+     * @param code the code returned by encode
+     */
+    public void release(int code) {
+        if(code >= 0 || code == NULL_CODE) return;
+        int entry = ~code;
+        wastedBytes += entryLengths[entry];
+        entryLengths[entry] = -1;
+        if(freeEntryCount == freeEntries.length) freeEntries = Arrays.copyOf(freeEntries, freeEntryCount * 2);
+        freeEntries[freeEntryCount++] = entry;
+        //once half of the arena is garbage, pack the live entries together again
+        if(wastedBytes > MIN_COMPACTION_BYTES && wastedBytes * 2 > arenaEnd) compactArena();
+    }
+
+    /**
+     * This method returns the number of distinct words in the dictionary.
+     * @return the number of tokens.
+     */
+    public int getTokenCount() {
+        return this.tokenCount;
+    }
+
+    /**
+     * This method returns the number of arena bytes in use, including the bytes of released entries not yet compacted.
+     * @return the used size of the arena.
+     */
+    public int getArenaSize() {
+        return this.arenaEnd;
+    }
+
+    /**
+     * This method finds the number of a word in the dictionary, adding the word if it is new and the dictionary is not full.
+     * @param token the word to look up
+     * @return the number of the word, or -1 if the dictionary is full.
+     */
+    private int tokenCode(String token) {
+        Integer code = tokenCodes.get(token);
+        if(code != null) return code;
+        if(tokenCount == MAX_TOKENS) return -1;
+        if(tokenCount == tokens.length) tokens = Arrays.copyOf(tokens, tokenCount * 2);
+        tokens[tokenCount] = token;
+        tokenCodes.put(token, tokenCount);
+        return tokenCount++;
+    }
+
+    /**
+     * This method copies the given bytes to the end of the arena, into a freed entry number when there is one.
+     * @param bytes the UTF-8 bytes of the value
+     * @return the entry number.
+     */
+    private int addArenaEntry(byte[] bytes) {
+        if(arenaEnd + bytes.length > arena.length) {
+            if((long) arenaEnd + bytes.length > Integer.MAX_VALUE - 8) throw new IllegalStateException("The value arena is full.");
+            arena = Arrays.copyOf(arena, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(arena.length * 2L, arenaEnd + bytes.length)));
+        }
+        int entry;
+        if(freeEntryCount > 0) {
+            entry = freeEntries[--freeEntryCount];
+        } else {
+            if(entryCount == entryOffsets.length) {
+                entryOffsets = Arrays.copyOf(entryOffsets, entryCount * 2);
+                entryLengths = Arrays.copyOf(entryLengths, entryCount * 2);
+            }
+            entry = entryCount++;
+        }
+        System.arraycopy(bytes, 0, arena, arenaEnd, bytes.length);
+        entryOffsets[entry] = arenaEnd;
+        entryLengths[entry] = bytes.length;
+        arenaEnd += bytes.length;
+        return entry;
+    }
+
+    /**
+     * This method moves the live entries to the front of a new arena. Entry numbers, and so the codes, do not change.
+     */
+    private void compactArena() {
+        byte[] packedArena = new byte[Math.max(256, (int) (arenaEnd - wastedBytes) * 2)];
+        int packedEnd = 0;
+        for(int entry = 0; entry < entryCount; entry++) {
+            if(entryLengths[entry] < 0) continue;
+            System.arraycopy(arena, entryOffsets[entry], packedArena, packedEnd, entryLengths[entry]);
+            entryOffsets[entry] = packedEnd;
+            packedEnd += entryLengths[entry];
+        }
+        arena = packedArena;
+        arenaEnd = packedEnd;
+        wastedBytes = 0;
+        if(sidcMetrics != null) sidcMetrics.countCompaction();
+    }
+}
@@ -0,0 +1,444 @@
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ConcurrentCleverSIDC class is a thread-safe CleverSIDC that can be shared between reader and writer threads.
+ * Every operation runs under a StampedLock: lookups, range counts and key generation take the read lock, so any number of
+ * readers proceed in parallel, while insertions, removals, backend migrations and configuration changes take the write lock.
+ * When the hash index is on and the value cache is off, getValues first tries an optimistic read that takes no lock at all
+ * and only falls back to the read lock if a writer interfered. Tree and array reads always take the read lock, because a descent racing
+ * with a rotation could follow a transient cycle, and so do cached reads, because a miss fills the cache.
+ * @author Rania Maoukout & teammate
+ */
+public class ConcurrentCleverSIDC extends CleverSIDC {
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * This method defines the size of the list.
+     * @param size the size to be set for the CleverSIDC list
+     */
+    @Override
+    public void setSIDCThreshold(int size) {
+        long stamp = lock.writeLock();
+        try {
+            super.setSIDCThreshold(size);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method turns on or off the collection of metrics. Readers record their latencies concurrently under the read lock.
+     * @param enabled true to start collecting from zero, false to stop and drop the metrics
+     */
+    @Override
+    public void setSIDCMetrics(boolean enabled) {
+        long stamp = lock.writeLock();
+        try {
+            super.setSIDCMetrics(enabled);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method turns on or off a read-through cache of the values returned by getValues.
+     * The cache is synchronized on its own, so concurrent readers share it under the read lock.
+     * @param maxEntries the maximum number of cached values, or 0 to drop the cache
+     * @param maxBytes the maximum estimated size of the cached values in bytes, or 0 for no byte limit
+     */
+    @Override
+    public void setSIDCValueCache(int maxEntries, long maxBytes) {
+        long stamp = lock.writeLock();
+        try {
+            super.setSIDCValueCache(maxEntries, maxBytes);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method sets the factor by which the capacity of the CircularArray is multiplied when it is full.
+     * @param growthFactor the growth factor, greater than 1
+     */
+    @Override
+    public void setSIDCArrayGrowth(double growthFactor) {
+        long stamp = lock.writeLock();
+        try {
+            super.setSIDCArrayGrowth(growthFactor);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method shrinks the storage of the CircularArray to its number of entries.
+     */
+    @Override
+    public void trimToSize() {
+        long stamp = lock.writeLock();
+        try {
+            super.trimToSize();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method lets CleverSIDC switch between the CircularArray and the AVLTree as the number of records changes.
+     * @param low the size under which the records move to the CircularArray
+     * @param high the size over which the records move to the AVLTree
+     */
+    @Override
+    public void setSIDCAdaptive(int low, int high) {
+        long stamp = lock.writeLock();
+        try {
+            super.setSIDCAdaptive(low, high);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method turns on or off the hash index that mirrors every entry.
+     * @param enabled true to build the index from the current entries, false to drop it
+     */
+    @Override
+    public void setSIDCHashIndex(boolean enabled) {
+        long stamp = lock.writeLock();
+        try {
+            super.setSIDCHashIndex(enabled);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method turns on or off the bitset key generator.
+     * @param enabled true to build the bitset from the current entries, false to drop it
+     */
+    @Override
+    public void setSIDCBitsetGenerator(boolean enabled) {
+        long stamp = lock.writeLock();
+        try {
+            super.setSIDCBitsetGenerator(enabled);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method returns the number of entries in CleverSIDC.
+     * @return the number of entries.
+     */
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return super.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method randomly generates new non-existing keys of 8 digits.
+     * @return the generated key.
+     */
+    @Override
+    public long generate() {
+        long stamp = lock.readLock();
+        try {
+            return super.generate();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method randomly generates the given number of distinct non-existing keys of 8 digits in one call.
+     * It takes the write lock because the bitset generator reserves the keys of the batch while picking them.
+     * @param count the number of keys to generate
+     * @return the generated keys.
+     */
+    @Override
+    public long[] generate(int count) {
+        long stamp = lock.writeLock();
+        try {
+            return super.generate(count);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method returns all keys in CleverSIDC as a sorted sequence.
+     * @param cleverSidc the CleverSIDC object in context
+     */
+    @Override
+    public void allKeys(CleverSIDC cleverSidc) {
+        long stamp = lock.readLock();
+        try {
+            super.allKeys(cleverSidc);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method adds an entry for the given key and value.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the new key entry
+     * @param value the value associated with the key entry
+     */
+    @Override
+    public void add(CleverSIDC cleverSidc, long key, String value) {
+        long stamp = lock.writeLock();
+        try {
+            super.add(cleverSidc, key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method copies every entry, in key order, into the given arrays.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keysOut the array receiving the keys, at least size() long
+     * @param valuesOut the array receiving the values, at least size() long
+     * @return The number of entries copied.
+     */
+    @Override
+    public int copyEntries(CleverSIDC cleverSidc, long[] keysOut, String[] valuesOut) {
+        long stamp = lock.readLock();
+        try {
+            return super.copyEntries(cleverSidc, keysOut, valuesOut);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method adds many entries at once, building the backend from the sorted input.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     */
+    @Override
+    public void bulkLoad(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long stamp = lock.writeLock();
+        try {
+            super.bulkLoad(cleverSidc, keys, values, count);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method removes the entry for the given key.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to be removed
+     * @return The removed key.
+     */
+    @Override
+    public long remove(CleverSIDC cleverSidc, long key) {
+        long stamp = lock.writeLock();
+        try {
+            return super.remove(cleverSidc, key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method adds a batch of entries under a single write lock and returns how many keys were new.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     * @return The number of entries added.
+     */
+    @Override
+    public int addAll(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long stamp = lock.writeLock();
+        try {
+            return super.addAll(cleverSidc, keys, values, count);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method removes a batch of keys under a single write lock and returns how many of them existed.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys to remove, in any order; the array is reordered in place
+     * @param count the number of keys to take from the given array
+     * @return The number of entries removed.
+     */
+    @Override
+    public int removeAll(CleverSIDC cleverSidc, long[] keys, int count) {
+        long stamp = lock.writeLock();
+        try {
+            return super.removeAll(cleverSidc, keys, count);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method looks up the values of a batch of keys under a single read lock.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys for which values are to be retrieved, in any order
+     * @param valuesOut the array receiving the values, at least count long
+     * @param count the number of keys to take from the given array
+     * @return The number of keys found.
+     */
+    @Override
+    public int getAll(CleverSIDC cleverSidc, long[] keys, String[] valuesOut, int count) {
+        long stamp = lock.readLock();
+        try {
+            return super.getAll(cleverSidc, keys, valuesOut, count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method returns the values of the given key.
+     * With the hash index on and no value cache, the lookup is first attempted optimistically without locking.
+     * A cached lookup always takes the read lock: a miss puts the value in the cache, and doing that from an optimistic read
+     * could cache a value that a concurrent remove has just invalidated, where it would stay.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which values are to be retrieved
+     * @return The value of the given key.
+     */
+    @Override
+    public String getValues(CleverSIDC cleverSidc, long key) {
+        long stamp = lock.tryOptimisticRead();
+        if(stamp != 0 && isHashIndexed() && getValueCache() == null) {
+            try {
+                String value = super.getValues(cleverSidc, key);
+                if(lock.validate(stamp)) return value;
+            } catch(RuntimeException exception) {
+                //a writer resized the index under us, the read lock below gives a consistent answer
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return super.getValues(cleverSidc, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method returns the predecessor key of the given key.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the predecessor is to be found
+     * @return The predecessor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long prevKey(CleverSIDC cleverSidc, long key) {
+        long stamp = lock.readLock();
+        try {
+            return super.prevKey(cleverSidc, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method returns the successor key of the given key.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the successor is to be found
+     * @return The successor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long nextKey(CleverSIDC cleverSidc, long key) {
+        long stamp = lock.readLock();
+        try {
+            return super.nextKey(cleverSidc, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method returns the number of keys that are within the specified range of key1 and key2.
+     * @param key1 the starting key of the range
+     * @param key2 the ending key of the range
+     * @return The number of keys within the specified range.
+     */
+    @Override
+    public int rangeKey(long key1, long key2) {
+        long stamp = lock.readLock();
+        try {
+            return super.rangeKey(key1, key2);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method streams the entries whose keys are between low and high, both included, to the given consumer in key order.
+     * The whole scan holds the read lock, so the consumer must not write to this CleverSIDC; a KeyCursor only holds it one batch at a time.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return The number of entries passed to the consumer.
+     */
+    @Override
+    public int forEachInRange(long low, long high, LongObjConsumer<String> consumer) {
+        long stamp = lock.readLock();
+        try {
+            return super.forEachInRange(low, high, consumer);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method returns the rank of the given key.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to rank
+     * @return The number of smaller keys.
+     */
+    @Override
+    public int rank(CleverSIDC cleverSidc, long key) {
+        long stamp = lock.readLock();
+        try {
+            return super.rank(cleverSidc, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method returns the key at the given position of the sorted sequence of keys.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param index the zero-based position of the key in sorted order
+     * @return The key at the given position, or NO_KEY if the position is out of bounds.
+     */
+    @Override
+    public long select(CleverSIDC cleverSidc, int index) {
+        long stamp = lock.readLock();
+        try {
+            return super.select(cleverSidc, index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method prints the key-value pairs in the circular array.
+     */
+    @Override
+    public void printCircularArray() {
+        long stamp = lock.readLock();
+        try {
+            super.printCircularArray();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * DurableCleverSIDC class is a CleverSIDC whose additions and removals survive a crash.
+ * Its directory holds one snapshot and one write-ahead log per generation: sidc-N.snapshot has every entry as of the start
+ * of generation N, and sidc-N.wal every change made since. On recovery, the newest snapshot is loaded and its log replayed
+ * on top of it. A checkpoint writes the next snapshot, starts the next log and deletes the previous generation, which keeps
+ * the log short; it runs on its own once the log grows past the compaction size. The previous generation is only deleted once
+ * the new snapshot and log are forced to the disk and the directory is synced, so a crash at any point leaves a complete generation.
+ * Changes reach the disk in batches (see SIDCWriteAheadLog), so a crash loses at most the last sync interval of changes.
+ * @author Rania Maoukout & teammate
+ */
+public class DurableCleverSIDC extends CleverSIDC implements AutoCloseable {
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10, DEFAULT_COMPACTION_BYTES = 64L << 20;
+    public static final int DEFAULT_SYNC_BYTES = 1 << 16;
+    private final Path directory; private final long syncIntervalMillis, compactionBytes; private final int syncBytes;
+    private long generation; private SIDCWriteAheadLog writeAheadLog; private boolean replaying;
+
+    /**
+     * Parameterized constructor, with the default group commit and compaction settings.
+     * @param directory the directory holding the snapshots and logs
+     */
+    public DurableCleverSIDC(Path directory) {
+        this(directory, DEFAULT_SYNC_INTERVAL_MILLIS, DEFAULT_SYNC_BYTES, DEFAULT_COMPACTION_BYTES);
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param directory the directory holding the snapshots and logs
+     * @param syncIntervalMillis the longest time a change waits before being synced, or 0 to sync every change
+     * @param syncBytes the number of pending log bytes that triggers a sync right away
+     * @param compactionBytes the log length that triggers a checkpoint
+     */
+    public DurableCleverSIDC(Path directory, long syncIntervalMillis, int syncBytes, long compactionBytes) {
+        this.directory = directory;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.syncBytes = syncBytes;
+        this.compactionBytes = compactionBytes;
+    }
+
+    /**
+     * This method returns the directory holding the snapshots and logs.
+     * @return the directory.
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * This method loads the newest snapshot of the directory, replays its log and starts logging the changes.
+     * It must be called once, after the backend is configured and before any change is made.
+     * @return the number of entries recovered.
+     * @throws IOException if the directory cannot be read or the snapshot is corrupted.
+     */
+    public int recover() throws IOException {
+        if(writeAheadLog != null) throw new IllegalStateException("DurableCleverSIDC has already been recovered.");
+        Files.createDirectories(directory);
+        generation = newestSnapshotGeneration();
+
+        Path snapshotFile = snapshotFile(generation);
+        //neither the snapshot nor the replayed changes are logged again
+        replaying = true;
+        try {
+            //the snapshot is read rather than mapped, so no mapping keeps it open when a later compaction deletes it
+            if(Files.exists(snapshotFile)) SIDCSnapshotFile.load(this, snapshotFile);
+            SIDCWriteAheadLog.replay(this, logFile(generation));
+        } finally {
+            replaying = false;
+        }
+        writeAheadLog = new SIDCWriteAheadLog(logFile(generation), syncIntervalMillis, syncBytes);
+        SIDCSnapshotFile.syncDirectory(directory);
+        deleteOtherGenerations();
+        return size();
+    }
+
+    /**
+     * This method writes a snapshot of every entry as the next generation, starts its log and deletes the previous generation.
+     * The snapshot is forced and its rename synced by SIDCSnapshotFile; the directory is synced again once the new log exists,
+     * and only then is the previous generation deleted.
+     * @throws IOException if the snapshot or the new log cannot be written.
+     */
+    public void checkpoint() throws IOException {
+        requireRecovered();
+        writeAheadLog.sync();
+        SIDCSnapshotFile.write(this, snapshotFile(generation + 1));
+        SIDCWriteAheadLog nextLog = null;
+        try {
+            nextLog = new SIDCWriteAheadLog(logFile(generation + 1), syncIntervalMillis, syncBytes);
+            SIDCSnapshotFile.syncDirectory(directory);
+        } catch(IOException exception) {
+            //the current generation stays in use, so the next recovery must not pick up the unfinished one
+            if(nextLog != null) nextLog.close();
+            Files.deleteIfExists(logFile(generation + 1));
+            Files.deleteIfExists(snapshotFile(generation + 1));
+            throw exception;
+        }
+        writeAheadLog.close();
+        writeAheadLog = nextLog;
+        generation++;
+        deleteOtherGenerations();
+    }
+
+    /**
+     * This method forces every logged change to the disk, without waiting for the next group commit.
+     */
+    public void sync() {
+        requireRecovered();
+        writeAheadLog.sync();
+    }
+
+    /**
+     * This method syncs the pending changes and closes the log.
+     * @throws IOException if the changes cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if(writeAheadLog == null) return;
+        writeAheadLog.close();
+        writeAheadLog = null;
+    }
+
+    /**
+     * This method finds the generation of the newest snapshot in the directory.
+     * @return the newest generation, or 0 if there is no snapshot.
+     * @throws IOException if the directory cannot be read.
+     */
+    private long newestSnapshotGeneration() throws IOException {
+        long newest = 0;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "sidc-*.snapshot")) {
+            for(Path file : files) newest = Math.max(newest, generationOf(file));
+        }
+        return newest;
+    }
+
+    /**
+     * This method deletes the snapshots and logs of every generation other than the current one, along with unfinished snapshots.
+     * @throws IOException if a file cannot be deleted.
+     */
+    private void deleteOtherGenerations() throws IOException {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "sidc-*")) {
+            for(Path file : files) {
+                if(generationOf(file) != generation || file.toString().endsWith(".tmp")) Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * This method reads the generation from the name of a snapshot or log file.
+     * @param file the file named sidc-N.snapshot or sidc-N.wal
+     * @return the generation N, or -1 if the name does not follow the pattern.
+     */
+    private static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        int end = name.indexOf('.');
+        try {
+            return Long.parseLong(name.substring(5, end < 0 ? name.length() : end));
+        } catch(NumberFormatException | IndexOutOfBoundsException exception) {
+            return -1;
+        }
+    }
+
+    /**
+     * This method returns the snapshot file of the given generation.
+     * @param generation the generation of the snapshot
+     * @return the path of the snapshot.
+     */
+    private Path snapshotFile(long generation) {
+        return directory.resolve("sidc-" + generation + ".snapshot");
+    }
+
+    /**
+     * This method returns the log file of the given generation.
+     * @param generation the generation of the log
+     * @return the path of the log.
+     */
+    private Path logFile(long generation) {
+        return directory.resolve("sidc-" + generation + ".wal");
+    }
+
+    /**
+     * This method checks that recover() was called, since changes made before it would not be logged.
+     * @throws IllegalStateException if DurableCleverSIDC has not been recovered, or has been closed.
+     */
+    private void requireRecovered() {
+        if(writeAheadLog == null) throw new IllegalStateException("DurableCleverSIDC must be recovered before it is used.");
+    }
+
+    /**
+     * This method runs a checkpoint once the log has grown past the compaction size.
+     * @throws UncheckedIOException if the checkpoint fails.
+     */
+    private void compactIfNeeded() {
+        if(writeAheadLog.length() < compactionBytes) return;
+        try {
+            checkpoint();
+        } catch(IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    // ---------------------------------------------------------------- //
+    //                        OVERRIDDEN METHODS                        //
+    // ---------------------------------------------------------------- //
+    /**
+     * This method defines the size of the list. Since a new backend starts empty, it can only be called before recover().
+     * @param size the size to be set for the CleverSIDC list
+     * @throws IllegalStateException if DurableCleverSIDC has already been recovered.
+     */
+    @Override
+    public void setSIDCThreshold(int size) {
+        if(writeAheadLog != null) throw new IllegalStateException("The backend of a recovered DurableCleverSIDC cannot be replaced.");
+        super.setSIDCThreshold(size);
+    }
+
+    /**
+     * This method logs and then adds an entry for the given key and value, if the key is new.
+     * The change is logged first, so a failure to log it leaves the entries as they were.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the new key entry
+     * @param value the value associated with the key entry
+     */
+    @Override
+    public void add(CleverSIDC cleverSidc, long key, String value) {
+        if(replaying) {
+            super.add(cleverSidc, key, value);
+            return;
+        }
+        requireRecovered();
+        //an existing key keeps its value, so there is nothing to log
+        if(keyExists(key)) return;
+        writeAheadLog.logAdd(key, value);
+        super.add(cleverSidc, key, value);
+        compactIfNeeded();
+    }
+
+    /**
+     * This method adds many entries at once, logging each of them in input order, which replays to the same result.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     */
+    @Override
+    public void bulkLoad(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        if(replaying) {
+            super.bulkLoad(cleverSidc, keys, values, count);
+            return;
+        }
+        requireRecovered();
+        for(int i = 0; i < count; i++) writeAheadLog.logAdd(keys[i], values[i]);
+        super.bulkLoad(cleverSidc, keys, values, count);
+        compactIfNeeded();
+    }
+
+    /**
+     * This method logs and then removes the entry for the given key, if the key exists.
+     * The removal is logged first, so a failure to log it leaves the entry in place.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to be removed
+     * @return The removed key, or NO_KEY if the key does not exist.
+     */
+    @Override
+    public long remove(CleverSIDC cleverSidc, long key) {
+        if(replaying) return super.remove(cleverSidc, key);
+        requireRecovered();
+        if(!keyExists(key)) return NO_KEY;
+        writeAheadLog.logRemove(key);
+        long removedKey = super.remove(cleverSidc, key);
+        compactIfNeeded();
+        return removedKey;
+    }
+
+    /**
+     * This method adds a batch of entries, logging each of them in input order, which replays to the same result.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     * @return The number of entries added.
+     */
+    @Override
+    public int addAll(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        requireRecovered();
+        for(int i = 0; i < count; i++) writeAheadLog.logAdd(keys[i], values[i]);
+        int added = super.addAll(cleverSidc, keys, values, count);
+        compactIfNeeded();
+        return added;
+    }
+
+    /**
+     * This method removes a batch of keys, logging the removal of each of them; replaying the removal of a missing key changes nothing.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys to remove, in any order; the array is reordered in place
+     * @param count the number of keys to take from the given array
+     * @return The number of entries removed.
+     */
+    @Override
+    public int removeAll(CleverSIDC cleverSidc, long[] keys, int count) {
+        requireRecovered();
+        for(int i = 0; i < count; i++) writeAheadLog.logRemove(keys[i]);
+        int removed = super.removeAll(cleverSidc, keys, count);
+        compactIfNeeded();
+        return removed;
+    }
+}
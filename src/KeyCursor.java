@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+/**
+ * KeyCursor class streams the entries of a CleverSIDC in key order, one entry at a time, within an inclusive key range.
+ * The cursor pulls the entries in batches through CleverSIDC.forEachInRange into arrays it owns, and each batch
+ * resumes after the last key of the previous one, so a cursor can be opened again and again without allocating per entry.
+ * It works with every CleverSIDC and never locks it between batches: entries added or removed while the cursor is open
+ * show up, or not, depending on whether the cursor has passed their key yet.
+ * A cursor is not thread-safe and must be used by one thread at a time.
+ * @author Rania Maoukout & teammate
+ */
+public class KeyCursor {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    private final long[] keys; private final String[] values; private final LongObjConsumer<String> batchFiller;
+    private CleverSIDC cleverSidc; private long nextLow, high; private boolean lastBatch;
+    private int batchCount, position = -1;
+
+    /**
+     * Default constructor.
+     */
+    public KeyCursor() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param batchSize the number of entries fetched at a time
+     */
+    public KeyCursor(int batchSize) {
+        if(batchSize < 1) throw new IllegalArgumentException("The batch size must be at least 1.");
+        keys = new long[batchSize];
+        values = new String[batchSize];
+        batchFiller = this::addToBatch;
+        lastBatch = true;
+    }
+
+    /**
+     * This method positions the cursor before the first entry of the given range, dropping whatever it was reading before.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param low the smallest key of the range, inclusive
+     * @param high the greatest key of the range, inclusive
+     * @return this cursor.
+     */
+    public KeyCursor open(CleverSIDC cleverSidc, long low, long high) {
+        this.cleverSidc = cleverSidc;
+        this.nextLow = low;
+        this.high = high;
+        lastBatch = low > high;
+        batchCount = 0;
+        position = -1;
+        return this;
+    }
+
+    /**
+     * This method moves the cursor to the next entry, fetching a new batch when the current one is used up.
+     * @return true if the cursor is on an entry, false once the range is exhausted.
+     */
+    public boolean next() {
+        if(position + 1 < batchCount) {
+            position++;
+            return true;
+        }
+        if(lastBatch) {
+            close();
+            return false;
+        }
+        batchCount = 0;
+        position = -1;
+        cleverSidc.forEachInRange(nextLow, high, batchFiller);
+        //a batch that is not full means the range has no more entries
+        lastBatch = batchCount < keys.length || keys[batchCount - 1] == high;
+        if(!lastBatch) nextLow = keys[batchCount - 1] + 1;
+        return next();
+    }
+
+    /**
+     * This method returns the key of the current entry.
+     * @return the key, only meaningful after next() returned true.
+     */
+    public long getKey() {
+        return keys[position];
+    }
+
+    /**
+     * This method returns the value of the current entry.
+     * @return the value, only meaningful after next() returned true.
+     */
+    public String getValue() {
+        return values[position];
+    }
+
+    /**
+     * This method ends the scan early and releases the values held by the current batch.
+     */
+    public void close() {
+        Arrays.fill(values, 0, batchCount, null);
+        batchCount = 0;
+        position = -1;
+        lastBatch = true;
+        cleverSidc = null;
+    }
+
+    /**
+     * This method receives one entry from forEachInRange and appends it to the batch.
+     * @param key the key of the entry
+     * @param value the value associated with the key
+     * @return true while the batch still has room.
+     */
+    private boolean addToBatch(long key, String value) {
+        keys[batchCount] = key;
+        values[batchCount++] = value;
+        return batchCount < keys.length;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram class records latencies in nanoseconds into log-linear buckets, in the manner of HdrHistogram.
+ * Values below 128 ns get a bucket each; above that, every power of two is split into 64 buckets, so any recorded value
+ * is known to within 1.6% whatever its magnitude, and the whole range up to about 36 minutes fits in a fixed table of counters.
+ * Recording takes a few shifts and a handful of atomic updates, so it can run on every operation from many threads at once.
+ * @author Rania Maoukout & teammate
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6, SUB_BUCKETS = 1 << SUB_BUCKET_BITS, MAX_EXPONENT = 34;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + SUB_BUCKET_BITS + 1)) - 1;
+    private final AtomicLongArray counts = new AtomicLongArray(2 * SUB_BUCKETS + MAX_EXPONENT * SUB_BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong(), totalNanos = new AtomicLong(), maxNanos = new AtomicLong();
+
+    /**
+     * This method records one latency. Negative values count as 0, and values above the range as the largest value.
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketOf(value));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(value);
+        if(value > maxNanos.get()) maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * This method returns the number of recorded latencies.
+     * @return the count
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * This method returns the largest recorded latency.
+     * @return the maximum in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return maxNanos.get();
+    }
+
+    /**
+     * This method returns the average recorded latency.
+     * @return the mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return (count == 0) ? 0 : (double) totalNanos.get() / count;
+    }
+
+    /**
+     * This method returns the latency under which the given share of the recorded latencies fall.
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, as the middle of its bucket, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if(count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count)), seen = 0;
+        for(int bucket = 0; bucket < counts.length(); bucket++) {
+            seen += counts.get(bucket);
+            if(seen >= rank) return Math.min(middleOf(bucket), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * This method forgets every recorded latency.
+     */
+    public void reset() {
+        for(int bucket = 0; bucket < counts.length(); bucket++) counts.set(bucket, 0);
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * This method finds the bucket of the given value.
+     * @param value the value, between 0 and MAX_VALUE
+     * @return the index of the bucket.
+     */
+    private static int bucketOf(long value) {
+        if(value < 2 * SUB_BUCKETS) return (int) value;
+        //value >> exponent falls in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + exponent * SUB_BUCKETS + (int) ((value >>> exponent) - SUB_BUCKETS);
+    }
+
+    /**
+     * This method returns the value in the middle of the given bucket.
+     * @param bucket the index of the bucket
+     * @return the middle value of the bucket.
+     */
+    private static long middleOf(int bucket) {
+        if(bucket < 2 * SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << exponent;
+        return lowest + (1L << exponent) / 2;
+    }
+}
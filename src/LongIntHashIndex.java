@@ -0,0 +1,175 @@
+import java.util.Arrays;
+
+/**
+ * LongIntHashIndex class represents a hash map from primitive long keys to primitive int values.
+ * It uses open addressing with linear probing in parallel long and int arrays, so neither keys nor values are ever boxed.
+ * Removals shift the following entries of the probe run backwards instead of leaving tombstones, which keeps probe runs short.
+ * @author Rania Maoukout & teammate
+ */
+public class LongIntHashIndex {
+    public static final int NO_VALUE = -1;
+    private static final long FREE_KEY = 0L;
+    private long[] keys; private int[] values;
+    private int sizeOfIndex, mask; private boolean hasFreeKey; private int freeKeyValue;
+
+    /**
+     * Default constructor.
+     */
+    public LongIntHashIndex() {
+        this(16);
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param expectedSize the number of entries the index should hold without resizing
+     */
+    public LongIntHashIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * This method returns the number of entries in the index.
+     * @return the size of the index
+     */
+    public int size() {
+        return this.sizeOfIndex;
+    }
+
+    /**
+     * This method tells whether the given key is present in the index.
+     * @param key the key to search for
+     * @return true if the key is present.
+     */
+    public boolean containsKey(long key) {
+        if(key == FREE_KEY) return hasFreeKey;
+        return findSlot(key) >= 0;
+    }
+
+    /**
+     * This method returns the value associated with the given key.
+     * @param key the key to search for
+     * @return the value of the key, or NO_VALUE if the key is not present.
+     */
+    public int get(long key) {
+        if(key == FREE_KEY) return hasFreeKey ? freeKeyValue : NO_VALUE;
+        int slot = findSlot(key);
+        return slot < 0 ? NO_VALUE : values[slot];
+    }
+
+    /**
+     * This method associates the given value with the given key, replacing any previous value.
+     * @param key the key to insert
+     * @param value the value associated with the key
+     * @return the previous value of the key, or NO_VALUE if the key was not present.
+     */
+    public int put(long key, int value) {
+        if(key == FREE_KEY) {
+            int previous = hasFreeKey ? freeKeyValue : NO_VALUE;
+            if(!hasFreeKey) sizeOfIndex++;
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return previous;
+        }
+        int slot = slotOf(key);
+        while(keys[slot] != FREE_KEY) {
+            if(keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        //keep the load factor at one half so probe runs stay short
+        if(++sizeOfIndex * 2 > keys.length) resizeIndex();
+        return NO_VALUE;
+    }
+
+    /**
+     * This method removes the given key from the index.
+     * @param key the key to remove
+     * @return the value of the removed key, or NO_VALUE if the key was not present.
+     */
+    public int remove(long key) {
+        if(key == FREE_KEY) {
+            if(!hasFreeKey) return NO_VALUE;
+            hasFreeKey = false;
+            sizeOfIndex--;
+            return freeKeyValue;
+        }
+        int slot = findSlot(key);
+        if(slot < 0) return NO_VALUE;
+        int removedValue = values[slot];
+
+        //shift back the entries of the probe run that would no longer be reachable across the emptied slot
+        int gap = slot, next = (slot + 1) & mask;
+        while(keys[next] != FREE_KEY) {
+            int home = slotOf(keys[next]);
+            if(((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE_KEY;
+        sizeOfIndex--;
+        return removedValue;
+    }
+
+    /**
+     * This method removes every entry from the index, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        hasFreeKey = false;
+        sizeOfIndex = 0;
+    }
+
+    /**
+     * This method finds the slot holding the given key.
+     * @param key the key to search for, which must not be the free key
+     * @return the slot of the key, or -1 if the key is not present.
+     */
+    private int findSlot(long key) {
+        int slot = slotOf(key);
+        while(keys[slot] != FREE_KEY) {
+            if(keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * This method computes the home slot of the given key by mixing its bits, so consecutive student IDs spread over the table.
+     * @param key the key to hash
+     * @return the home slot of the key.
+     */
+    private int slotOf(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    /**
+     * This method doubles the capacity of the index and reinserts every entry.
+     */
+    private void resizeIndex() {
+        long[] oldKeys = keys; int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] == FREE_KEY) continue;
+            int slot = slotOf(oldKeys[i]);
+            while(keys[slot] != FREE_KEY) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * LongObjConsumer interface represents an operation that receives the entries of CleverSIDC one at a time,
+ * as a primitive long key and its value, so streaming the entries never boxes the keys.
+ * @param <T> the type of the values
+ * @author Rania Maoukout & teammate
+ */
+@FunctionalInterface
+public interface LongObjConsumer<T> {
+    /**
+     * This method receives one entry.
+     * @param key the key of the entry
+     * @param value the value associated with the key
+     * @return true to keep receiving entries, false to stop the scan after this one.
+     */
+    boolean accept(long key, T value);
+}
@@ -0,0 +1,376 @@
+import java.util.Arrays;
+
+/**
+ * LongValueCache class represents a bounded cache of values keyed by primitive long keys, placed in front of a slower value store.
+ * Eviction follows W-TinyLFU: new entries enter a small LRU window, and an entry leaving the window only takes the place of the
+ * least recently used entry of the main area when a frequency sketch says it was requested more often. The main area is a
+ * segmented LRU, in which an entry hit a second time moves from the probation segment to the protected one, so a burst of
+ * one-off lookups cannot flush the small set of keys that serve most of the requests.
+ * The cache is bounded by a number of entries and, optionally, by an estimate of the bytes held by its values.
+ * Every method is synchronized, so the cache can be shared by concurrent readers.
+ * @author Rania Maoukout & teammate
+ */
+public class LongValueCache {
+    private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2, NIL = -1;
+    private static final int WINDOW_PERCENT = 1, PROTECTED_PERCENT = 80;
+    private final int maxEntries, maxWindow, maxProtected; private final long maxBytes;
+    private final LongIntHashIndex nodeOfKey; private final FrequencySketch sketch;
+    private final long[] keys; private final String[] values; private final int[] previous, next; private final byte[] segmentOfNode;
+    //head is the least recently used node of a segment, tail the most recently used
+    private final int[] head = {NIL, NIL, NIL}, tail = {NIL, NIL, NIL}, countOfSegment = new int[3];
+    private int freeNode = NIL, usedNodes; private long weightedSize, hitCount, missCount, evictionCount;
+
+    /**
+     * Parameterized constructor.
+     * @param maxEntries the maximum number of cached values
+     * @throws IllegalArgumentException if maxEntries is not positive.
+     */
+    public LongValueCache(int maxEntries) {
+        this(maxEntries, 0);
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param maxEntries the maximum number of cached values
+     * @param maxBytes the maximum estimated size of the cached values in bytes, or 0 for no byte limit
+     * @throws IllegalArgumentException if maxEntries is not positive or maxBytes is negative.
+     */
+    public LongValueCache(int maxEntries, long maxBytes) {
+        if(maxEntries <= 0) throw new IllegalArgumentException("The cache must hold at least one entry.");
+        if(maxBytes < 0) throw new IllegalArgumentException("The byte limit of the cache cannot be negative.");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        maxWindow = Math.max(1, (int) ((long) maxEntries * WINDOW_PERCENT / 100));
+        maxProtected = (int) ((long) (maxEntries - maxWindow) * PROTECTED_PERCENT / 100);
+        nodeOfKey = new LongIntHashIndex(maxEntries);
+        sketch = new FrequencySketch(maxEntries);
+        //one spare node holds a new entry while it competes for admission
+        keys = new long[maxEntries + 1];
+        values = new String[maxEntries + 1];
+        previous = new int[maxEntries + 1];
+        next = new int[maxEntries + 1];
+        segmentOfNode = new byte[maxEntries + 1];
+    }
+
+    /**
+     * This method returns the cached value of the given key and records the request, whether it hits or misses.
+     * @param key the key to look up
+     * @return the cached value, or null if the key is not cached.
+     */
+    public synchronized String get(long key) {
+        sketch.increment(key);
+        int node = nodeOfKey.get(key);
+        if(node == LongIntHashIndex.NO_VALUE) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        onAccess(node);
+        return values[node];
+    }
+
+    /**
+     * This method caches the value of the given key, replacing the value cached for it if there is one.
+     * The request that missed was already counted by get, so putting a value does not count as a request.
+     * @param key the key of the value
+     * @param value the value to cache
+     */
+    public synchronized void put(long key, String value) {
+        int node = nodeOfKey.get(key);
+        if(node != LongIntHashIndex.NO_VALUE) {
+            weightedSize += weightOf(value) - weightOf(values[node]);
+            values[node] = value;
+            onAccess(node);
+        } else {
+            node = allocateNode();
+            keys[node] = key;
+            values[node] = value;
+            weightedSize += weightOf(value);
+            nodeOfKey.put(key, node);
+            linkLast(WINDOW, node);
+            drainWindow();
+        }
+        while(maxBytes > 0 && weightedSize > maxBytes && nodeOfKey.size() > 1) evictNode(victimOfMain());
+    }
+
+    /**
+     * This method drops the cached value of the given key, if there is one.
+     * @param key the key whose value is no longer valid
+     */
+    public synchronized void invalidate(long key) {
+        int node = nodeOfKey.remove(key);
+        if(node != LongIntHashIndex.NO_VALUE) releaseNode(node);
+    }
+
+    /**
+     * This method drops every cached value. The counters and the request frequencies are kept.
+     */
+    public synchronized void clear() {
+        nodeOfKey.clear();
+        Arrays.fill(values, null);
+        for(int segment = WINDOW; segment <= PROTECTED; segment++) {
+            head[segment] = NIL;
+            tail[segment] = NIL;
+            countOfSegment[segment] = 0;
+        }
+        freeNode = NIL;
+        usedNodes = 0;
+        weightedSize = 0;
+    }
+
+    /**
+     * This method returns the number of cached values.
+     * @return the size of the cache
+     */
+    public synchronized int size() {
+        return nodeOfKey.size();
+    }
+
+    /**
+     * This method returns the estimated number of bytes held by the cached values.
+     * @return the weighted size of the cache
+     */
+    public synchronized long getWeightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * This method returns the number of requests answered from the cache.
+     * @return the hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * This method returns the number of requests that did not find their key in the cache.
+     * @return the miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * This method returns the number of values dropped to make room for others. Invalidated values are not counted.
+     * @return the eviction count
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * This method returns the share of the requests answered from the cache.
+     * @return the hit rate, between 0 and 1, or 0 if there was no request.
+     */
+    public synchronized double getHitRate() {
+        long requests = hitCount + missCount;
+        return (requests == 0) ? 0 : (double) hitCount / requests;
+    }
+
+    /**
+     * This method estimates the bytes held by a cached value: the String and its array headers and two bytes per character.
+     * @param value the value to weigh
+     * @return the estimated size of the value in bytes.
+     */
+    private static long weightOf(String value) {
+        return 56 + 2L * value.length();
+    }
+
+    /**
+     * This method moves a node that was just requested to the most recently used end of its segment,
+     * promoting it from probation to protected on its second hit.
+     * @param node the requested node
+     */
+    private void onAccess(int node) {
+        int segment = segmentOfNode[node];
+        unlink(node);
+        if(segment == PROBATION) {
+            linkLast(PROTECTED, node);
+            //the least recently used protected nodes go back on probation
+            while(countOfSegment[PROTECTED] > maxProtected) {
+                int demoted = head[PROTECTED];
+                unlink(demoted);
+                linkLast(PROBATION, demoted);
+            }
+        } else {
+            linkLast(segment, node);
+        }
+    }
+
+    /**
+     * This method moves the nodes that overflow the window to the main area, each one taking the place of the main area's victim
+     * only if it was requested more often than the victim; the loser of the comparison is evicted.
+     */
+    private void drainWindow() {
+        while(countOfSegment[WINDOW] > maxWindow) {
+            int candidate = head[WINDOW];
+            unlink(candidate);
+            if(countOfSegment[PROBATION] + countOfSegment[PROTECTED] < maxEntries - maxWindow) {
+                linkLast(PROBATION, candidate);
+                continue;
+            }
+            int victim = victimOfMain();
+            if(sketch.frequency(keys[candidate]) > sketch.frequency(keys[victim])) {
+                evictNode(victim);
+                linkLast(PROBATION, candidate);
+            } else {
+                linkLast(PROBATION, candidate);
+                evictNode(candidate);
+            }
+        }
+    }
+
+    /**
+     * This method picks the node to evict next: the least recently used node on probation, then in the protected segment, then in the window.
+     * @return the victim node.
+     */
+    private int victimOfMain() {
+        if(head[PROBATION] != NIL) return head[PROBATION];
+        if(head[PROTECTED] != NIL) return head[PROTECTED];
+        return head[WINDOW];
+    }
+
+    /**
+     * This method evicts the given node from the cache.
+     * @param node the node to evict
+     */
+    private void evictNode(int node) {
+        nodeOfKey.remove(keys[node]);
+        releaseNode(node);
+        evictionCount++;
+    }
+
+    /**
+     * This method takes a node from the free list, or the next node never used.
+     * @return the allocated node.
+     */
+    private int allocateNode() {
+        if(freeNode == NIL) return usedNodes++;
+        int node = freeNode;
+        freeNode = next[node];
+        return node;
+    }
+
+    /**
+     * This method unlinks the given node from its segment and puts it on the free list. The key must already be removed from the map.
+     * @param node the node to release
+     */
+    private void releaseNode(int node) {
+        unlink(node);
+        weightedSize -= weightOf(values[node]);
+        values[node] = null;
+        next[node] = freeNode;
+        freeNode = node;
+    }
+
+    /**
+     * This method appends the given node at the most recently used end of a segment.
+     * @param segment the segment receiving the node
+     * @param node the node to append
+     */
+    private void linkLast(int segment, int node) {
+        segmentOfNode[node] = (byte) segment;
+        previous[node] = tail[segment];
+        next[node] = NIL;
+        if(tail[segment] == NIL) head[segment] = node;
+        else next[tail[segment]] = node;
+        tail[segment] = node;
+        countOfSegment[segment]++;
+    }
+
+    /**
+     * This method removes the given node from the list of its segment.
+     * @param node the node to remove
+     */
+    private void unlink(int node) {
+        int segment = segmentOfNode[node];
+        if(previous[node] == NIL) head[segment] = next[node];
+        else next[previous[node]] = next[node];
+        if(next[node] == NIL) tail[segment] = previous[node];
+        else previous[next[node]] = previous[node];
+        countOfSegment[segment]--;
+    }
+
+    /**
+     * A private static inner class estimating how often each key was requested recently, in a count-min sketch of 4-bit counters.
+     * Each key increments one counter in each of four rows and its frequency is the smallest of them. Once the sketch has counted
+     * ten requests per cache entry, every counter is halved, so old popularity fades and newly popular keys can get in.
+     */
+    private static class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private final long[] table; private final int tableMask, sampleSize; private int additions;
+
+        /**
+         * Parameterized constructor.
+         * @param maxEntries the maximum number of entries of the cache
+         */
+        private FrequencySketch(int maxEntries) {
+            int length = Integer.highestOneBit(Math.max(2, Math.min(maxEntries, 1 << 30)) - 1) << 1;
+            table = new long[length];
+            tableMask = length - 1;
+            sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * maxEntries);
+        }
+
+        /**
+         * This method counts one more request for the given key.
+         * @param key the requested key
+         */
+        private void increment(long key) {
+            boolean added = false;
+            for(int row = 0; row < 4; row++) {
+                int index = indexOf(key, row), offset = offsetOf(key, row);
+                if(((table[index] >>> offset) & 0xfL) != 0xfL) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if(added && ++additions == sampleSize) reset();
+        }
+
+        /**
+         * This method estimates how often the given key was requested recently.
+         * @param key the key to estimate
+         * @return the estimated number of requests, at most 15.
+         */
+        private int frequency(long key) {
+            int frequency = 15;
+            for(int row = 0; row < 4; row++) {
+                frequency = Math.min(frequency, (int) ((table[indexOf(key, row)] >>> offsetOf(key, row)) & 0xfL));
+            }
+            return frequency;
+        }
+
+        /**
+         * This method halves every counter.
+         */
+        private void reset() {
+            for(int i = 0; i < table.length; i++) table[i] = (table[i] >>> 1) & RESET_MASK;
+            additions /= 2;
+        }
+
+        /**
+         * This method selects the word holding the counter of the given key in the given row.
+         * @param key the key
+         * @param row the row of the sketch, between 0 and 3
+         * @return the index of the word in the table.
+         */
+        private int indexOf(long key, int row) {
+            long hash = (key + SEEDS[row]) * SEEDS[row];
+            hash += hash >>> 32;
+            return (int) hash & tableMask;
+        }
+
+        /**
+         * This method selects the counter of the given key in the given row among the 16 counters of its word.
+         * @param key the key
+         * @param row the row of the sketch, between 0 and 3
+         * @return the bit offset of the counter in its word.
+         */
+        private int offsetOf(long key, int row) {
+            long hash = key * 0x9e3779b97f4a7c15L;
+            int start = (int) (hash >>> 60) & 3;
+            return ((start << 2) + row) << 2;
+        }
+    }
+}
@@ -0,0 +1,490 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedSIDCSnapshot class is a read-only CleverSIDC served straight from a snapshot file written by SIDCSnapshotFile.
+ * The key, offset and value regions are mapped into memory with FileChannel.map and read in place: opening costs
+ * a header read whatever the number of records, nothing is deserialized up front, and the OS page cache does the caching.
+ * Lookups are binary searches over the mapped keys; only the value strings that are asked for get decoded.
+ * With metrics on, every query is timed; a snapshot has no structure that changes, so there are no events to count.
+ * @author Rania Maoukout & teammate
+ */
+public class MappedSIDCSnapshot extends CleverSIDC {
+    private final ByteBuffer keyRegion, offsetRegion, valueRegion; private final int count;
+
+    /**
+     * Parameterized constructor.
+     * @param keys the mapped key region
+     * @param offsets the mapped offset table
+     * @param values the mapped value region
+     * @param entries the number of entries
+     */
+    private MappedSIDCSnapshot(ByteBuffer keys, ByteBuffer offsets, ByteBuffer values, int entries) {
+        keyRegion = keys;
+        offsetRegion = offsets;
+        valueRegion = values;
+        count = entries;
+    }
+
+    /**
+     * This method maps the given snapshot file. The mapping stays valid after the file channel is closed.
+     * @param file the snapshot file to open
+     * @return the CleverSIDC serving the snapshot.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public static MappedSIDCSnapshot open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SIDCSnapshotFile.HEADER_SIZE);
+            while(header.hasRemaining() && channel.read(header, header.position()) != -1);
+            header.flip();
+            if(header.remaining() < SIDCSnapshotFile.HEADER_SIZE || header.getInt() != SIDCSnapshotFile.MAGIC) {
+                throw new IOException("Not a CleverSIDC snapshot: " + file);
+            }
+            int version = header.getInt();
+            if(version != SIDCSnapshotFile.VERSION) throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            long entries = header.getLong(), valueBytes = header.getLong();
+
+            long keysStart = SIDCSnapshotFile.HEADER_SIZE, offsetsStart = keysStart + entries * 8;
+            long valuesStart = offsetsStart + (entries + 1) * 4;
+            if(entries > Integer.MAX_VALUE / 8 || valueBytes > Integer.MAX_VALUE || valuesStart + valueBytes != channel.size()) {
+                throw new IOException("Corrupted CleverSIDC snapshot: " + file);
+            }
+            MappedByteBuffer keys = channel.map(FileChannel.MapMode.READ_ONLY, keysStart, entries * 8);
+            MappedByteBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, offsetsStart, (entries + 1) * 4);
+            MappedByteBuffer values = channel.map(FileChannel.MapMode.READ_ONLY, valuesStart, valueBytes);
+            return new MappedSIDCSnapshot(keys, offsets, values, (int) entries);
+        }
+    }
+
+    /**
+     * This method reads the key at the given index of the mapped key region.
+     * @param index the index of the key
+     * @return the key at the index.
+     */
+    private long keyAt(int index) {
+        return keyRegion.getLong(index << 3);
+    }
+
+    /**
+     * This method decodes the value at the given index of the mapped value region.
+     * @param index the index of the entry
+     * @return the value of the entry.
+     */
+    private String valueAt(int index) {
+        int start = offsetRegion.getInt(index << 2), end = offsetRegion.getInt((index + 1) << 2);
+        byte[] bytes = new byte[end - start];
+        valueRegion.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method finds the index of the first key that is greater than or equal to the given key.
+     * @param key the key to search for
+     * @return the index of the first key not less than the given key, or the number of entries if there is none.
+     */
+    private int lowerBoundOfKey(long key) {
+        return lowerBoundOfKey(key, 0);
+    }
+
+    /**
+     * This method finds the index of the first key that is greater than or equal to the given key, searching from the given index on.
+     * @param key the key to search for
+     * @param from the index to start searching from, at most the index of the answer
+     * @return the index of the first key not less than the given key, or the number of entries if there is none.
+     */
+    private int lowerBoundOfKey(long key, int from) {
+        int low = from, high = count;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(keyAt(mid) < key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * This method finds the index of the given key.
+     * @param key the key to search for
+     * @return the index of the key, or -1 if the key is not present.
+     */
+    private int indexOfKey(long key) {
+        int index = lowerBoundOfKey(key);
+        return (index < count && keyAt(index) == key) ? index : -1;
+    }
+
+    /**
+     * This method throws, since a snapshot is never modified.
+     */
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("A mapped CleverSIDC snapshot is read-only.");
+    }
+
+    // ---------------------------------------------------------------- //
+    //                        OVERRIDDEN METHODS                        //
+    // ---------------------------------------------------------------- //
+    /**
+     * This method keeps the mapped file as the backend, whatever the size; the threshold has no effect here.
+     * @param size the size to be set for the CleverSIDC list
+     */
+    @Override
+    public void setSIDCThreshold(int size) {}
+
+    /**
+     * A mapped snapshot cannot migrate.
+     * @param low the size under which the records move to the CircularArray
+     * @param high the size over which the records move to the AVLTree
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void setSIDCAdaptive(int low, int high) {
+        throw readOnly();
+    }
+
+    /**
+     * A mapped snapshot does not maintain a hash index.
+     * @param enabled true to build the index from the current entries, false to drop it
+     * @throws UnsupportedOperationException if enabled is true.
+     */
+    @Override
+    public void setSIDCHashIndex(boolean enabled) {
+        if(enabled) throw readOnly();
+    }
+
+    /**
+     * A mapped snapshot does not maintain a key bitset.
+     * @param enabled true to build the bitset from the current entries, false to drop it
+     * @throws UnsupportedOperationException if enabled is true.
+     */
+    @Override
+    public void setSIDCBitsetGenerator(boolean enabled) {
+        if(enabled) throw readOnly();
+    }
+
+    /**
+     * This method names the backend for the metrics.
+     * @return "mapped".
+     */
+    @Override
+    protected String activeBackendName() {
+        return "mapped";
+    }
+
+    /**
+     * This method returns the number of entries in the snapshot.
+     * @return the number of entries.
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * This method randomly generates new keys of 8 digits that do not exist in the snapshot.
+     * @return the generated key.
+     */
+    @Override
+    public long generate() {
+        long start = startTimer();
+        try {
+            return generateKey();
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE, start);
+        }
+    }
+
+    /**
+     * This method randomly generates a new key of 8 digits that does not exist in the snapshot.
+     * @return the generated key.
+     */
+    private long generateKey() {
+        long newKey = 10000000L + (Math.abs(random.nextLong()) % 90000000L);
+        while(indexOfKey(newKey) != -1) {
+            if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
+            newKey = 10000000L + (Math.abs(random.nextLong()) % 90000000L);
+        }
+        return newKey;
+    }
+
+    /**
+     * This method randomly generates the given number of distinct keys of 8 digits that do not exist in the snapshot.
+     * @param count the number of keys to generate
+     * @return the generated keys.
+     * @throws IllegalArgumentException if there are not that many unused 8-digit keys left.
+     */
+    @Override
+    public long[] generate(int count) {
+        long start = startTimer();
+        try {
+            if(count < 0 || count > 90000000L - this.count) throw new IllegalArgumentException("Cannot generate " + count + " unused 8-digit keys.");
+            long[] newKeys = new long[count];
+            LongIntHashIndex batchKeys = new LongIntHashIndex(count);
+            for(int i = 0; i < count; i++) {
+                long newKey = generateKey();
+                while(batchKeys.containsKey(newKey)) {
+                    if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
+                    newKey = generateKey();
+                }
+                batchKeys.put(newKey, i);
+                newKeys[i] = newKey;
+            }
+            return newKeys;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE_BATCH, start);
+        }
+    }
+
+    /**
+     * This method prints all keys of the snapshot as a sorted sequence.
+     * @param cleverSidc the CleverSIDC object in context
+     */
+    @Override
+    public void allKeys(CleverSIDC cleverSidc) {
+        for(int i = 0; i < count; i++) {
+            System.out.println(keyAt(i) + " -- " + valueAt(i));
+        }
+    }
+
+    /**
+     * A mapped snapshot is never modified.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the new key entry
+     * @param value the value associated with the key entry
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void add(CleverSIDC cleverSidc, long key, String value) {
+        throw readOnly();
+    }
+
+    /**
+     * A mapped snapshot is never modified.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys
+     * @param values the values associated with the keys
+     * @param count the number of entries to take from the given arrays
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void bulkLoad(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        throw readOnly();
+    }
+
+    /**
+     * A mapped snapshot is never modified.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to be removed
+     * @return nothing, the method always throws.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public long remove(CleverSIDC cleverSidc, long key) {
+        throw readOnly();
+    }
+
+    /**
+     * A mapped snapshot is never modified.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys
+     * @param values the values associated with the keys
+     * @param count the number of entries to take from the given arrays
+     * @return nothing, the method always throws.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public int addAll(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        throw readOnly();
+    }
+
+    /**
+     * A mapped snapshot is never modified.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys to remove
+     * @param count the number of keys to take from the given array
+     * @return nothing, the method always throws.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public int removeAll(CleverSIDC cleverSidc, long[] keys, int count) {
+        throw readOnly();
+    }
+
+    /**
+     * This method looks up the values of a batch of keys. While the keys come in ascending order,
+     * each binary search starts at the position of the previous key instead of at the first entry.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys for which values are to be retrieved, in any order
+     * @param valuesOut the array receiving the values, at least count long
+     * @param count the number of keys to take from the given array
+     * @return The number of keys found.
+     */
+    @Override
+    public int getAll(CleverSIDC cleverSidc, long[] keys, String[] valuesOut, int count) {
+        long start = startTimer();
+        try {
+            int found = 0, from = 0;
+            for(int i = 0; i < count; i++) {
+                if(i > 0 && keys[i] < keys[i - 1]) from = 0;
+                from = lowerBoundOfKey(keys[i], from);
+                boolean present = from < this.count && keyAt(from) == keys[i];
+                valuesOut[i] = present ? valueAt(from) : "";
+                if(present) found++;
+            }
+            return found;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GET_ALL, start);
+        }
+    }
+
+    /**
+     * This method copies every entry of the snapshot, in key order, into the given arrays.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keysOut the array receiving the keys, at least size() long
+     * @param valuesOut the array receiving the values, at least size() long
+     * @return The number of entries copied.
+     */
+    @Override
+    public int copyEntries(CleverSIDC cleverSidc, long[] keysOut, String[] valuesOut) {
+        for(int i = 0; i < count; i++) {
+            keysOut[i] = keyAt(i);
+            valuesOut[i] = valueAt(i);
+        }
+        return count;
+    }
+
+    /**
+     * This method returns the values of the given key, decoded from the mapped value region, or taken from the value cache when one is set.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which values are to be retrieved
+     * @return The value of the given key, or NO_VALUE if the key does not exist.
+     */
+    @Override
+    public String getValues(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            LongValueCache cache = getValueCache();
+            String value = (cache == null) ? null : cache.get(key);
+            if(value != null) return value;
+            int index = indexOfKey(key);
+            if(index == -1) return NO_VALUE;
+            value = valueAt(index);
+            if(cache != null) cache.put(key, value);
+            return value;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GET_VALUES, start);
+        }
+    }
+
+    /**
+     * This method returns the predecessor key of the given key, i.e. the greatest key smaller than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the predecessor is to be found
+     * @return The predecessor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long prevKey(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            int index = lowerBoundOfKey(key) - 1;
+            return (index < 0) ? NO_KEY : keyAt(index);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.PREV_KEY, start);
+        }
+    }
+
+    /**
+     * This method returns the successor key of the given key, i.e. the smallest key greater than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the successor is to be found
+     * @return The successor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long nextKey(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            int index = lowerBoundOfKey(key);
+            if(index < count && keyAt(index) == key) index++;
+            return (index >= count) ? NO_KEY : keyAt(index);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.NEXT_KEY, start);
+        }
+    }
+
+    /**
+     * This method streams the entries whose keys are between low and high, both included, to the given consumer in key order.
+     * The keys are read in place from the mapped key region; each value is decoded from the value region as it is passed on.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return The number of entries passed to the consumer.
+     */
+    @Override
+    public int forEachInRange(long low, long high, LongObjConsumer<String> consumer) {
+        long start = startTimer();
+        try {
+            if(low > high) return 0;
+            int delivered = 0;
+            for(int i = lowerBoundOfKey(low); i < count && keyAt(i) <= high; i++) {
+                delivered++;
+                if(!consumer.accept(keyAt(i), valueAt(i))) break;
+            }
+            return delivered;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.FOR_EACH, start);
+        }
+    }
+
+    /**
+     * This method returns the number of keys strictly between key1 and key2, using two binary searches.
+     * @param key1 the starting key of the range
+     * @param key2 the ending key of the range
+     * @return The number of keys within the specified range.
+     */
+    @Override
+    public int rangeKey(long key1, long key2) {
+        long start = startTimer();
+        try {
+            if(key1 >= key2) return 0;
+            return lowerBoundOfKey(key2) - lowerBoundOfKey(key1 + 1);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.RANGE_KEY, start);
+        }
+    }
+
+    /**
+     * This method returns the rank of the given key, i.e. the number of keys smaller than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to rank, which does not need to exist
+     * @return The number of smaller keys.
+     */
+    @Override
+    public int rank(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            return lowerBoundOfKey(key);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.RANK, start);
+        }
+    }
+
+    /**
+     * This method returns the key at the given position of the sorted sequence of keys.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param index the zero-based position of the key in sorted order
+     * @return The key at the given position, or NO_KEY if the position is out of bounds.
+     */
+    @Override
+    public long select(CleverSIDC cleverSidc, int index) {
+        long start = startTimer();
+        try {
+            if(index < 0 || index >= count) return NO_KEY;
+            return keyAt(index);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.SELECT, start);
+        }
+    }
+}
@@ -0,0 +1,831 @@
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Implementation of a persistent (immutable) AVL Tree, an extension of the CleverSIDC framework.
+ * Nodes are never modified once built: an insertion or deletion copies only the nodes on the path from the root to the
+ * changed leaf, shares every other subtree with the previous version, and then publishes the new root atomically.
+ * Readers therefore never lock: each operation reads the root once and works on that version of the whole registry,
+ * and snapshot() hands out a frozen version that long-running reports can scan while writes keep going.
+ * Writers are serialized among themselves. Each node also stores its subtree size, so range counts, rank and select take O(log n).
+ * With metrics on, every operation is timed and each rotation made while copying a path is counted.
+ * @author Rania Maoukout & teammate
+ */
+public class PersistentAvlTree extends CleverSIDC {
+    /**
+     * A protected static inner class representing an immutable node in a persistent AVL tree.
+     */
+    protected static class PersistentAvlTreeNode {
+        private final int height, size; private final long key; private final String value;
+        private final PersistentAvlTreeNode left, right;
+
+        /**
+         * Parameterized constructor.
+         * @param newKey the key of new node
+         * @param newValue the value associated with the key
+         * @param newLeft the left subtree of the new node
+         * @param newRight the right subtree of the new node
+         */
+        public PersistentAvlTreeNode(long newKey, String newValue, PersistentAvlTreeNode newLeft, PersistentAvlTreeNode newRight) {
+            key = newKey;
+            value = newValue;
+            left = newLeft;
+            right = newRight;
+            height = 1 + Math.max(getHeightOfNode(newLeft), getHeightOfNode(newRight));
+            size = 1 + getSizeOfNode(newLeft) + getSizeOfNode(newRight);
+        }
+
+        /**
+         * This method returns the key of a node.
+         * @return the key of the node
+         */
+        public long getKey() {
+            return this.key;
+        }
+
+        /**
+         * This method returns the value of a node.
+         * @return the value of the node
+         */
+        public String getValue() {
+            return this.value;
+        }
+
+        /**
+         * This method returns the left node of the current node.
+         * @return the left node of the current node
+         */
+        public PersistentAvlTreeNode getLeft() {
+            return this.left;
+        }
+
+        /**
+         * This method returns the right node of the current node.
+         * @return the right node of the current node
+         */
+        public PersistentAvlTreeNode getRight() {
+            return this.right;
+        }
+    }
+
+    private static final int MAX_HEIGHT = 64;
+    private volatile PersistentAvlTreeNode root; private final boolean frozen; private final Object writeLock = new Object();
+
+    /**
+     * Default constructor.
+     */
+    public PersistentAvlTree() {
+        this(null, false);
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param snapshotRoot the root of the version to serve
+     * @param isFrozen true if the tree is a read-only snapshot
+     */
+    private PersistentAvlTree(PersistentAvlTreeNode snapshotRoot, boolean isFrozen) {
+        root = snapshotRoot;
+        frozen = isFrozen;
+    }
+
+    /**
+     * This method returns a read-only view of the current version of the tree.
+     * The snapshot shares all of its nodes with the live tree and costs O(1); later writes to the live tree never affect it.
+     * It also shares the metrics of the live tree, so that the reads served by snapshots are counted with the others.
+     * @return the snapshot.
+     */
+    public PersistentAvlTree snapshot() {
+        PersistentAvlTree snapshot = new PersistentAvlTree(root, true);
+        snapshot.sidcMetrics = sidcMetrics;
+        return snapshot;
+    }
+
+    /**
+     * This method gets the height of the specified node.
+     * @param node the node for which to retrieve the height
+     * @return the height of the node. If the node is null, returns 0.
+     */
+    private static int getHeightOfNode(PersistentAvlTreeNode node) {
+        if(node == null) return 0;
+        return node.height;
+    }
+
+    /**
+     * This method gets the subtree size of the specified node.
+     * @param node the node for which to retrieve the subtree size
+     * @return the number of nodes in the subtree. If the node is null, returns 0.
+     */
+    private static int getSizeOfNode(PersistentAvlTreeNode node) {
+        if(node == null) return 0;
+        return node.size;
+    }
+
+    // ---------------------------------------------------------------- //
+    //                          PATH COPYING                            //
+    // ---------------------------------------------------------------- //
+    /**
+     * This method returns a copy of the given node with new children, rebalanced by rotations if needed.
+     * @param node the node to copy
+     * @param newLeft the new left subtree
+     * @param newRight the new right subtree
+     * @return the root of the rebalanced copy.
+     */
+    private PersistentAvlTreeNode rebuildNode(PersistentAvlTreeNode node, PersistentAvlTreeNode newLeft, PersistentAvlTreeNode newRight) {
+        int balanceFactor = getHeightOfNode(newLeft) - getHeightOfNode(newRight);
+        if(balanceFactor > 1) {
+            if(getHeightOfNode(newLeft.left) < getHeightOfNode(newLeft.right)) newLeft = leftRotation(newLeft.key, newLeft.value, newLeft.left, newLeft.right);
+            return rightRotation(node.key, node.value, newLeft, newRight);
+        }
+        if(balanceFactor < -1) {
+            if(getHeightOfNode(newRight.right) < getHeightOfNode(newRight.left)) newRight = rightRotation(newRight.key, newRight.value, newRight.left, newRight.right);
+            return leftRotation(node.key, node.value, newLeft, newRight);
+        }
+        return new PersistentAvlTreeNode(node.key, node.value, newLeft, newRight);
+    }
+
+    /**
+     * This method builds the result of a left rotation of a node with the given contents, creating new nodes only.
+     * @param key the key of the node to rotate
+     * @param value the value of the node to rotate
+     * @param left the left subtree of the node to rotate
+     * @param right the right subtree of the node to rotate, which must not be null
+     * @return the new root node after the left rotation.
+     */
+    private PersistentAvlTreeNode leftRotation(long key, String value, PersistentAvlTreeNode left, PersistentAvlTreeNode right) {
+        if(sidcMetrics != null) sidcMetrics.countRotation();
+        return new PersistentAvlTreeNode(right.key, right.value, new PersistentAvlTreeNode(key, value, left, right.left), right.right);
+    }
+
+    /**
+     * This method builds the result of a right rotation of a node with the given contents, creating new nodes only.
+     * @param key the key of the node to rotate
+     * @param value the value of the node to rotate
+     * @param left the left subtree of the node to rotate, which must not be null
+     * @param right the right subtree of the node to rotate
+     * @return the new root node after the right rotation.
+     */
+    private PersistentAvlTreeNode rightRotation(long key, String value, PersistentAvlTreeNode left, PersistentAvlTreeNode right) {
+        if(sidcMetrics != null) sidcMetrics.countRotation();
+        return new PersistentAvlTreeNode(left.key, left.value, left.left, new PersistentAvlTreeNode(key, value, left.right, right));
+    }
+
+    /**
+     * This method returns a version of the given subtree that also holds the new key, copying only the nodes on the insertion path.
+     * @param node the root node of the current subtree
+     * @param newKey the key of the new node to be added
+     * @param newValue the value associated with the new key
+     * @return the root node of the new version, or the given node itself if the key already exists.
+     */
+    private PersistentAvlTreeNode addNodeToPath(PersistentAvlTreeNode node, long newKey, String newValue) {
+        if(node == null) return new PersistentAvlTreeNode(newKey, newValue, null, null);
+        if(newKey < node.key) {
+            PersistentAvlTreeNode newLeft = addNodeToPath(node.left, newKey, newValue);
+            return (newLeft == node.left) ? node : rebuildNode(node, newLeft, node.right);
+        } else if(newKey > node.key) {
+            PersistentAvlTreeNode newRight = addNodeToPath(node.right, newKey, newValue);
+            return (newRight == node.right) ? node : rebuildNode(node, node.left, newRight);
+        }
+        return node;
+    }
+
+    /**
+     * This method returns a version of the given subtree without the given key, copying only the nodes on the deletion path.
+     * @param node the root node of the current subtree
+     * @param keyToRemove the key of the node to be removed
+     * @return the root node of the new version, or the given node itself if the key does not exist.
+     */
+    private PersistentAvlTreeNode deleteNodeFromPath(PersistentAvlTreeNode node, long keyToRemove) {
+        if(node == null) return null;
+        if(keyToRemove < node.key) {
+            PersistentAvlTreeNode newLeft = deleteNodeFromPath(node.left, keyToRemove);
+            return (newLeft == node.left) ? node : rebuildNode(node, newLeft, node.right);
+        } else if(keyToRemove > node.key) {
+            PersistentAvlTreeNode newRight = deleteNodeFromPath(node.right, keyToRemove);
+            return (newRight == node.right) ? node : rebuildNode(node, node.left, newRight);
+        }
+        if(node.left == null) return node.right;
+        if(node.right == null) return node.left;
+
+        //replace the node by its in-order successor, taken out of the right subtree
+        PersistentAvlTreeNode successor = node.right;
+        while(successor.left != null) successor = successor.left;
+        return rebuildNode(successor, node.left, deleteNodeFromPath(node.right, successor.key));
+    }
+
+    /**
+     * This method searches for a key in the given version of the tree.
+     * @param node the root node of the version
+     * @param keyToFind the key to search for
+     * @return the node containing the key, or null if the key is not found.
+     */
+    private static PersistentAvlTreeNode findKeyInPath(PersistentAvlTreeNode node, long keyToFind) {
+        while(node != null && node.key != keyToFind) {
+            node = (keyToFind < node.key) ? node.left : node.right;
+        }
+        return node;
+    }
+
+    /**
+     * This method counts the keys of the given version that are strictly smaller than the given key.
+     * @param node the root node of the version
+     * @param key the key to rank
+     * @return the number of smaller keys.
+     */
+    private static int rankOfKeyInPath(PersistentAvlTreeNode node, long key) {
+        int rank = 0;
+        while(node != null) {
+            if(key <= node.key) {
+                node = node.left;
+            } else {
+                rank += getSizeOfNode(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * This method throws if the tree is a read-only snapshot.
+     */
+    private void checkWritable() {
+        if(frozen) throw new UnsupportedOperationException("A snapshot of the persistent AVL tree is read-only.");
+    }
+
+    // ---------------------------------------------------------------- //
+    //                        OVERRIDDEN METHODS                        //
+    // ---------------------------------------------------------------- //
+    /**
+     * This method keeps the persistent AVL tree as the backend, whatever the size; the threshold has no effect here.
+     * @param size the size to be set for the CleverSIDC list
+     */
+    @Override
+    public void setSIDCThreshold(int size) {}
+
+    /**
+     * The persistent AVL tree is its own backend and cannot migrate.
+     * @param low the size under which the records move to the CircularArray
+     * @param high the size over which the records move to the AVLTree
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void setSIDCAdaptive(int low, int high) {
+        throw new UnsupportedOperationException("The persistent AVL tree does not migrate between backends.");
+    }
+
+    /**
+     * The persistent AVL tree does not maintain a hash index.
+     * @param enabled true to build the index from the current entries, false to drop it
+     * @throws UnsupportedOperationException if enabled is true.
+     */
+    @Override
+    public void setSIDCHashIndex(boolean enabled) {
+        if(enabled) throw new UnsupportedOperationException("The persistent AVL tree does not maintain a hash index.");
+    }
+
+    /**
+     * The persistent AVL tree does not maintain a key bitset.
+     * @param enabled true to build the bitset from the current entries, false to drop it
+     * @throws UnsupportedOperationException if enabled is true.
+     */
+    @Override
+    public void setSIDCBitsetGenerator(boolean enabled) {
+        if(enabled) throw new UnsupportedOperationException("The persistent AVL tree does not maintain a key bitset.");
+    }
+
+    /**
+     * This method names the backend for the metrics.
+     * @return "persistent".
+     */
+    @Override
+    protected String activeBackendName() {
+        return "persistent";
+    }
+
+    /**
+     * This method returns the height of the current version of the tree.
+     * @return the height, or 0 if the tree is empty.
+     */
+    @Override
+    protected int treeHeight() {
+        return getHeightOfNode(root);
+    }
+
+    /**
+     * This method returns the number of entries in the current version of the tree.
+     * @return the number of entries.
+     */
+    @Override
+    public int size() {
+        return getSizeOfNode(root);
+    }
+
+    /**
+     * This method randomly generates new non-existing keys of 8 digits.
+     * @return the generated key.
+     */
+    @Override
+    public long generate() {
+        long start = startTimer();
+        try {
+            return generateKey();
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE, start);
+        }
+    }
+
+    /**
+     * This method randomly generates a new key of 8 digits that does not exist in the current version of the tree.
+     * @return the generated key.
+     */
+    private long generateKey() {
+        PersistentAvlTreeNode version = root;
+        long newKey = 10000000L + (Math.abs(random.nextLong()) % 90000000L);
+        while(findKeyInPath(version, newKey) != null) {
+            if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
+            newKey = 10000000L + (Math.abs(random.nextLong()) % 90000000L);
+        }
+        return newKey;
+    }
+
+    /**
+     * This method randomly generates the given number of distinct non-existing keys of 8 digits in one call.
+     * @param count the number of keys to generate
+     * @return the generated keys.
+     * @throws IllegalArgumentException if there are not that many unused 8-digit keys left.
+     */
+    @Override
+    public long[] generate(int count) {
+        long start = startTimer();
+        try {
+            if(count < 0 || count > 90000000L - size()) throw new IllegalArgumentException("Cannot generate " + count + " unused 8-digit keys.");
+            long[] newKeys = new long[count];
+            LongIntHashIndex batchKeys = new LongIntHashIndex(count);
+            for(int i = 0; i < count; i++) {
+                long newKey = generateKey();
+                while(batchKeys.containsKey(newKey)) {
+                    if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
+                    newKey = generateKey();
+                }
+                batchKeys.put(newKey, i);
+                newKeys[i] = newKey;
+            }
+            return newKeys;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE_BATCH, start);
+        }
+    }
+
+    /**
+     * This method prints all keys of the current version of the tree as a sorted sequence.
+     * The version is fixed when the call starts, so concurrent writes never show up halfway through.
+     * @param cleverSidc the CleverSIDC object in context
+     */
+    @Override
+    public void allKeys(CleverSIDC cleverSidc) {
+        printSubtree(root);
+    }
+
+    /**
+     * This method prints the key-value pairs of a subtree in key order.
+     * @param node the root node of the current subtree
+     */
+    private void printSubtree(PersistentAvlTreeNode node) {
+        if(node != null) {
+            printSubtree(node.left);
+            System.out.println(node.key + " -- " + node.value);
+            printSubtree(node.right);
+        }
+    }
+
+    /**
+     * This method adds an entry for the given key and value, publishing a new version of the tree.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the new key entry
+     * @param value the value associated with the key entry
+     * @throws UnsupportedOperationException if the tree is a snapshot.
+     */
+    @Override
+    public void add(CleverSIDC cleverSidc, long key, String value) {
+        long start = startTimer();
+        try {
+            checkWritable();
+            synchronized(writeLock) {
+                root = addNodeToPath(root, key, value);
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.ADD, start);
+        }
+    }
+
+    /**
+     * This method copies every entry of the current version, in key order, into the given arrays.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keysOut the array receiving the keys, at least size() long
+     * @param valuesOut the array receiving the values, at least size() long
+     * @return The number of entries copied.
+     */
+    @Override
+    public int copyEntries(CleverSIDC cleverSidc, long[] keysOut, String[] valuesOut) {
+        return copySubtree(root, keysOut, valuesOut, 0);
+    }
+
+    /**
+     * This method adds many entries at once and publishes the result as a single new version of the tree.
+     * The input is sorted, merged with the current entries and built into a balanced tree bottom-up in linear time.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     * @throws UnsupportedOperationException if the tree is a snapshot.
+     */
+    @Override
+    public void bulkLoad(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long start = startTimer();
+        try {
+            checkWritable();
+            SIDCArraySort.parallelSortPairs(keys, values, count);
+            count = SIDCArraySort.removeDuplicates(keys, values, count);
+            synchronized(writeLock) {
+                mergeSortedEntries(keys, values, count);
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.BULK_LOAD, start);
+        }
+    }
+
+    /**
+     * This method merges sorted, duplicate-free entries with the current version and publishes the rebuilt tree.
+     * The caller must hold the write lock.
+     * @param keys the new keys, in ascending order
+     * @param values the values associated with the keys
+     * @param count the number of entries to take from the given arrays
+     */
+    private void mergeSortedEntries(long[] keys, String[] values, int count) {
+        int size = getSizeOfNode(root);
+        long[] currentKeys = new long[size]; String[] currentValues = new String[size];
+        copySubtree(root, currentKeys, currentValues, 0);
+        long[] mergedKeys = new long[size + count]; String[] mergedValues = new String[size + count];
+        int merged = SIDCArraySort.mergeDistinct(currentKeys, currentValues, size, keys, values, count, mergedKeys, mergedValues);
+        if(merged >= SIDCArraySort.PARALLEL_THRESHOLD && SIDCArraySort.isParallel()) {
+            root = new SubtreeBuilder(mergedKeys, mergedValues, 0, merged - 1).invoke();
+        } else {
+            root = buildSubtree(mergedKeys, mergedValues, 0, merged - 1);
+        }
+    }
+
+    /**
+     * A private static inner class building a balanced subtree of immutable nodes from sorted entries in parallel.
+     * Both child subtrees are built as separate tasks until the range is small enough to be built sequentially.
+     */
+    private static class SubtreeBuilder extends RecursiveTask<PersistentAvlTreeNode> {
+        private static final long serialVersionUID = 1L;
+        private final long[] sortedKeys; private final String[] sortedValues; private final int low, high;
+
+        /**
+         * Parameterized constructor.
+         * @param sortedKeys the keys in ascending order
+         * @param sortedValues the values associated with the keys
+         * @param low the index of the first entry of the subtree
+         * @param high the index of the last entry of the subtree
+         */
+        SubtreeBuilder(long[] sortedKeys, String[] sortedValues, int low, int high) {
+            this.sortedKeys = sortedKeys; this.sortedValues = sortedValues; this.low = low; this.high = high;
+        }
+
+        /**
+         * This method builds the subtree, splitting the work between its two children.
+         * @return the root node of the subtree, or null if the range is empty.
+         */
+        @Override
+        protected PersistentAvlTreeNode compute() {
+            if(high - low < SIDCArraySort.PARALLEL_THRESHOLD / 8) return buildSubtree(sortedKeys, sortedValues, low, high);
+            int mid = (low + high) >>> 1;
+            SubtreeBuilder leftBuilder = new SubtreeBuilder(sortedKeys, sortedValues, low, mid - 1);
+            SubtreeBuilder rightBuilder = new SubtreeBuilder(sortedKeys, sortedValues, mid + 1, high);
+            ForkJoinTask.invokeAll(leftBuilder, rightBuilder);
+            return new PersistentAvlTreeNode(sortedKeys[mid], sortedValues[mid], leftBuilder.join(), rightBuilder.join());
+        }
+    }
+
+    /**
+     * This method adds a batch of entries and publishes them as a single new version of the tree.
+     * A batch that is large next to the current size is merged and rebuilt as in bulkLoad; a smaller one is inserted in key order
+     * into a private version that readers only see once the whole batch is in.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     * @return The number of entries added.
+     * @throws UnsupportedOperationException if the tree is a snapshot.
+     */
+    @Override
+    public int addAll(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long start = startTimer();
+        try {
+            checkWritable();
+            SIDCArraySort.sortPairs(keys, values, count);
+            count = SIDCArraySort.removeDuplicates(keys, values, count);
+            synchronized(writeLock) {
+                int sizeBefore = getSizeOfNode(root);
+                if(count >= sizeBefore / BATCH_REBUILD_RATIO) {
+                    mergeSortedEntries(keys, values, count);
+                } else {
+                    PersistentAvlTreeNode version = root;
+                    for(int i = 0; i < count; i++) version = addNodeToPath(version, keys[i], values[i]);
+                    root = version;
+                }
+                return getSizeOfNode(root) - sizeBefore;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.ADD_ALL, start);
+        }
+    }
+
+    /**
+     * This method removes a batch of keys, in key order, and publishes the result as a single new version of the tree.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys to remove, in any order; the array is reordered in place
+     * @param count the number of keys to take from the given array
+     * @return The number of entries removed.
+     * @throws UnsupportedOperationException if the tree is a snapshot.
+     */
+    @Override
+    public int removeAll(CleverSIDC cleverSidc, long[] keys, int count) {
+        long start = startTimer();
+        try {
+            checkWritable();
+            SIDCArraySort.sortPairs(keys, null, count);
+            synchronized(writeLock) {
+                PersistentAvlTreeNode version = root;
+                for(int i = 0; i < count; i++) version = deleteNodeFromPath(version, keys[i]);
+                int removed = getSizeOfNode(root) - getSizeOfNode(version);
+                root = version;
+                return removed;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.REMOVE_ALL, start);
+        }
+    }
+
+    /**
+     * This method copies the entries of a subtree, in key order, into the given arrays starting at the given index.
+     * @param node the root node of the current subtree
+     * @param keysOut the array receiving the keys
+     * @param valuesOut the array receiving the values
+     * @param index the position of the first entry of the subtree
+     * @return the position following the last entry of the subtree.
+     */
+    private static int copySubtree(PersistentAvlTreeNode node, long[] keysOut, String[] valuesOut, int index) {
+        if(node == null) return index;
+        index = copySubtree(node.left, keysOut, valuesOut, index);
+        keysOut[index] = node.key;
+        valuesOut[index] = node.value;
+        return copySubtree(node.right, keysOut, valuesOut, index + 1);
+    }
+
+    /**
+     * This method recursively builds a balanced subtree from the sorted entries between the given indices.
+     * @param sortedKeys the keys in ascending order
+     * @param sortedValues the values associated with the keys
+     * @param low the index of the first entry of the subtree
+     * @param high the index of the last entry of the subtree
+     * @return the root node of the subtree, or null if the range is empty.
+     */
+    private static PersistentAvlTreeNode buildSubtree(long[] sortedKeys, String[] sortedValues, int low, int high) {
+        if(low > high) return null;
+        int mid = (low + high) >>> 1;
+        return new PersistentAvlTreeNode(sortedKeys[mid], sortedValues[mid],
+                buildSubtree(sortedKeys, sortedValues, low, mid - 1), buildSubtree(sortedKeys, sortedValues, mid + 1, high));
+    }
+
+    /**
+     * This method removes the entry for the given key, publishing a new version of the tree.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to be removed
+     * @return The removed key, or NO_KEY if the key does not exist.
+     * @throws UnsupportedOperationException if the tree is a snapshot.
+     */
+    @Override
+    public long remove(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            checkWritable();
+            synchronized(writeLock) {
+                PersistentAvlTreeNode newRoot = deleteNodeFromPath(root, key);
+                if(newRoot == root) return NO_KEY;
+                root = newRoot;
+                return key;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.REMOVE, start);
+        }
+    }
+
+    /**
+     * This method looks up the values of a batch of keys, all in the same version of the tree.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys for which values are to be retrieved, in any order
+     * @param valuesOut the array receiving the values, at least count long
+     * @param count the number of keys to take from the given array
+     * @return The number of keys found.
+     */
+    @Override
+    public int getAll(CleverSIDC cleverSidc, long[] keys, String[] valuesOut, int count) {
+        long start = startTimer();
+        try {
+            PersistentAvlTreeNode version = root;
+            int found = 0;
+            for(int i = 0; i < count; i++) {
+                PersistentAvlTreeNode node = findKeyInPath(version, keys[i]);
+                valuesOut[i] = (node == null) ? "" : node.value;
+                if(node != null) found++;
+            }
+            return found;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GET_ALL, start);
+        }
+    }
+
+    /**
+     * This method returns the values of the given key.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which values are to be retrieved
+     * @return The value of the given key, or NO_VALUE if the key does not exist.
+     */
+    @Override
+    public String getValues(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            PersistentAvlTreeNode node = findKeyInPath(root, key);
+            if(node == null) return NO_VALUE;
+            return node.value;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GET_VALUES, start);
+        }
+    }
+
+    /**
+     * This method returns the predecessor key of the given key, i.e. the greatest key smaller than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the predecessor is to be found
+     * @return The predecessor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long prevKey(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            PersistentAvlTreeNode node = root, predecessor = null;
+            while(node != null) {
+                if(key > node.key) {
+                    predecessor = node;
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            }
+            return (predecessor == null) ? NO_KEY : predecessor.key;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.PREV_KEY, start);
+        }
+    }
+
+    /**
+     * This method returns the successor key of the given key, i.e. the smallest key greater than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the successor is to be found
+     * @return The successor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long nextKey(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            PersistentAvlTreeNode node = root, successor = null;
+            while(node != null) {
+                if(key < node.key) {
+                    successor = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+            return (successor == null) ? NO_KEY : successor.key;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.NEXT_KEY, start);
+        }
+    }
+
+    /**
+     * This method streams the entries of the current version whose keys are between low and high, both included,
+     * to the given consumer in key order. The version is fixed when the call starts, and the nodes are never modified,
+     * so the scan needs no lock even while writers publish new versions.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return The number of entries passed to the consumer.
+     */
+    @Override
+    public int forEachInRange(long low, long high, LongObjConsumer<String> consumer) {
+        long start = startTimer();
+        try {
+            if(low > high) return 0;
+            PersistentAvlTreeNode[] stack = new PersistentAvlTreeNode[MAX_HEIGHT];
+            PersistentAvlTreeNode node = root;
+            int top = 0, delivered = 0;
+            while(node != null) {
+                if(node.key >= low) {
+                    stack[top++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+            while(top > 0) {
+                node = stack[--top];
+                if(node.key > high) break;
+                delivered++;
+                if(!consumer.accept(node.key, node.value)) break;
+                for(node = node.right; node != null; node = node.left) stack[top++] = node;
+            }
+            return delivered;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.FOR_EACH, start);
+        }
+    }
+
+    /**
+     * This method returns the number of keys strictly between key1 and key2, using two rank descents on one version of the tree.
+     * @param key1 the starting key of the range
+     * @param key2 the ending key of the range
+     * @return The number of keys within the specified range.
+     */
+    @Override
+    public int rangeKey(long key1, long key2) {
+        long start = startTimer();
+        try {
+            if(key1 >= key2) return 0;
+            PersistentAvlTreeNode version = root;
+            return rankOfKeyInPath(version, key2) - rankOfKeyInPath(version, key1 + 1);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.RANGE_KEY, start);
+        }
+    }
+
+    /**
+     * This method evaluates many range counts at once on every core of the common fork-join pool.
+     * All the queries are answered from a snapshot of the current version, so writes made during the call are not seen by any of them.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys1 the starting key of each range
+     * @param keys2 the ending key of each range
+     * @param countsOut the array receiving the count of each range
+     * @param count the number of ranges
+     * @return The total number of keys over all the ranges.
+     */
+    @Override
+    public long rangeKeys(CleverSIDC cleverSidc, long[] keys1, long[] keys2, int[] countsOut, int count) {
+        PersistentAvlTree version = frozen ? this : snapshot();
+        return super.rangeKeys(version, keys1, keys2, countsOut, count);
+    }
+
+    /**
+     * This method returns the rank of the given key, i.e. the number of keys smaller than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to rank, which does not need to exist
+     * @return The number of smaller keys.
+     */
+    @Override
+    public int rank(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            return rankOfKeyInPath(root, key);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.RANK, start);
+        }
+    }
+
+    /**
+     * This method returns the key at the given position of the sorted sequence of keys.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param index the zero-based position of the key in sorted order
+     * @return The key at the given position, or NO_KEY if the position is out of bounds.
+     */
+    @Override
+    public long select(CleverSIDC cleverSidc, int index) {
+        long start = startTimer();
+        try {
+            PersistentAvlTreeNode node = root;
+            if(index < 0 || index >= getSizeOfNode(node)) return NO_KEY;
+            while(node != null) {
+                int leftSize = getSizeOfNode(node.left);
+                if(index < leftSize) {
+                    node = node.left;
+                } else if(index > leftSize) {
+                    index -= leftSize + 1;
+                    node = node.right;
+                } else return node.key;
+            }
+            return NO_KEY;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.SELECT, start);
+        }
+    }
+}
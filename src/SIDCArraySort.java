@@ -0,0 +1,415 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * SIDCArraySort class provides the sorting helpers used to prepare bulk input for CleverSIDC.
+ * It sorts parallel arrays of primitive long keys and String values together, without boxing the keys,
+ * and removes duplicate keys from sorted input in place. Large inputs can be sorted on the common fork-join pool.
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCArraySort {
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Private constructor, the class only has static helpers.
+     */
+    private SIDCArraySort() {}
+
+    /**
+     * This method tells whether the first count keys are in non-decreasing order.
+     * @param keys the keys to check
+     * @param count the number of keys to check
+     * @return true if the keys are sorted.
+     */
+    public static boolean isSorted(long[] keys, int count) {
+        for(int i = 1; i < count; i++) {
+            if(keys[i - 1] > keys[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method sorts the first count keys in ascending order, moving each value along with its key.
+     * The sort is a stable merge sort, so among equal keys the one that came first stays first.
+     * @param keys the keys to sort
+     * @param values the values associated with the keys, or null to sort the keys alone
+     * @param count the number of entries to sort
+     */
+    public static void sortPairs(long[] keys, String[] values, int count) {
+        if(isSorted(keys, count)) return;
+        long[] keyBuffer = new long[count];
+        String[] valueBuffer = (values == null) ? null : new String[count];
+        mergeSortPairs(keys, values, keyBuffer, valueBuffer, 0, count);
+    }
+
+    /**
+     * This method sorts the first count keys in ascending order, moving each value along with its key, using every core of the common fork-join pool.
+     * The input is cut into chunks that are sorted in parallel, then merged pairwise, each merge being itself split in parallel
+     * around a median key, so the whole sort scales with the number of cores. The result is the same stable order as sortPairs,
+     * which is used instead for small inputs or when the pool only has one thread.
+     * @param keys the keys to sort
+     * @param values the values associated with the keys, or null to sort the keys alone
+     * @param count the number of entries to sort
+     */
+    public static void parallelSortPairs(long[] keys, String[] values, int count) {
+        if(count < PARALLEL_THRESHOLD || !isParallel()) {
+            sortPairs(keys, values, count);
+            return;
+        }
+        if(isSorted(keys, count)) return;
+        long[] keyBuffer = new long[count];
+        String[] valueBuffer = (values == null) ? null : new String[count];
+        new ParallelSort(keys, values, keyBuffer, valueBuffer, 0, count, false).invoke();
+    }
+
+    /**
+     * This method tells whether the common fork-join pool can run tasks on more than one thread.
+     * @return true if parallel work is worth splitting.
+     */
+    static boolean isParallel() {
+        return ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * A private static inner class sorting a range of entries in parallel.
+     * The two halves are sorted into the other array, so that merging them into the target array needs no extra copy.
+     */
+    private static class ParallelSort extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final long[] keys, keyBuffer; private final String[] values, valueBuffer;
+        private final int from, to; private final boolean intoBuffer;
+
+        /**
+         * Parameterized constructor.
+         * @param keys the keys to sort
+         * @param values the values associated with the keys, or null
+         * @param keyBuffer the second array for the keys
+         * @param valueBuffer the second array for the values, or null
+         * @param from the index of the first entry to sort
+         * @param to the index following the last entry to sort
+         * @param intoBuffer true if the sorted range must end up in the buffers rather than in the input arrays
+         */
+        ParallelSort(long[] keys, String[] values, long[] keyBuffer, String[] valueBuffer, int from, int to, boolean intoBuffer) {
+            this.keys = keys; this.values = values; this.keyBuffer = keyBuffer; this.valueBuffer = valueBuffer;
+            this.from = from; this.to = to; this.intoBuffer = intoBuffer;
+        }
+
+        /**
+         * This method sorts the range, splitting it in two until it is small enough to be sorted sequentially.
+         */
+        @Override
+        protected void compute() {
+            if(to - from <= PARALLEL_THRESHOLD / 8) {
+                mergeSortPairs(keys, values, keyBuffer, valueBuffer, from, to);
+                if(intoBuffer) {
+                    System.arraycopy(keys, from, keyBuffer, from, to - from);
+                    if(values != null) System.arraycopy(values, from, valueBuffer, from, to - from);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            ForkJoinTask.invokeAll(new ParallelSort(keys, values, keyBuffer, valueBuffer, from, mid, !intoBuffer),
+                    new ParallelSort(keys, values, keyBuffer, valueBuffer, mid, to, !intoBuffer));
+            if(intoBuffer) new ParallelMerge(keys, values, keyBuffer, valueBuffer, from, mid, mid, to, from).compute();
+            else new ParallelMerge(keyBuffer, valueBuffer, keys, values, from, mid, mid, to, from).compute();
+        }
+    }
+
+    /**
+     * A private static inner class merging two sorted runs of one array into another array in parallel.
+     * The longer run is cut at its middle key and the shorter one at the matching position, found by binary search,
+     * so both halves of the output can be merged independently. Among equal keys the left run comes first, which keeps the sort stable.
+     */
+    private static class ParallelMerge extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final long[] sourceKeys, targetKeys; private final String[] sourceValues, targetValues;
+        private final int leftFrom, leftTo, rightFrom, rightTo, targetFrom;
+
+        /**
+         * Parameterized constructor.
+         * @param sourceKeys the keys holding both runs
+         * @param sourceValues the values holding both runs, or null
+         * @param targetKeys the array receiving the merged keys
+         * @param targetValues the array receiving the merged values, or null
+         * @param leftFrom the index of the first entry of the left run
+         * @param leftTo the index following the last entry of the left run
+         * @param rightFrom the index of the first entry of the right run
+         * @param rightTo the index following the last entry of the right run
+         * @param targetFrom the index receiving the first merged entry
+         */
+        ParallelMerge(long[] sourceKeys, String[] sourceValues, long[] targetKeys, String[] targetValues,
+                      int leftFrom, int leftTo, int rightFrom, int rightTo, int targetFrom) {
+            this.sourceKeys = sourceKeys; this.sourceValues = sourceValues; this.targetKeys = targetKeys; this.targetValues = targetValues;
+            this.leftFrom = leftFrom; this.leftTo = leftTo; this.rightFrom = rightFrom; this.rightTo = rightTo; this.targetFrom = targetFrom;
+        }
+
+        /**
+         * This method merges the two runs, splitting the work in two until it is small enough to be merged sequentially.
+         */
+        @Override
+        protected void compute() {
+            int leftLength = leftTo - leftFrom, rightLength = rightTo - rightFrom;
+            if(leftLength + rightLength <= PARALLEL_THRESHOLD / 8) {
+                mergeInto();
+                return;
+            }
+            int leftMid, rightMid;
+            if(leftLength >= rightLength) {
+                leftMid = (leftFrom + leftTo) >>> 1;
+                //right entries equal to the middle key go after it
+                rightMid = firstIndexNotBefore(sourceKeys[leftMid], rightFrom, rightTo, false);
+            } else {
+                rightMid = (rightFrom + rightTo) >>> 1;
+                //left entries equal to the middle key go before it
+                leftMid = firstIndexNotBefore(sourceKeys[rightMid], leftFrom, leftTo, true);
+            }
+            int targetMid = targetFrom + (leftMid - leftFrom) + (rightMid - rightFrom);
+            ForkJoinTask.invokeAll(
+                    new ParallelMerge(sourceKeys, sourceValues, targetKeys, targetValues, leftFrom, leftMid, rightFrom, rightMid, targetFrom),
+                    new ParallelMerge(sourceKeys, sourceValues, targetKeys, targetValues, leftMid, leftTo, rightMid, rightTo, targetMid));
+        }
+
+        /**
+         * This method finds, by binary search, the first index of a sorted range whose key is greater than, or not less than, the given key.
+         * @param key the key to search for
+         * @param low the index of the first entry of the range
+         * @param high the index following the last entry of the range
+         * @param skipEqual true to also skip the keys equal to the given key
+         * @return the first index whose key comes after the given key.
+         */
+        private int firstIndexNotBefore(long key, int low, int high, boolean skipEqual) {
+            while(low < high) {
+                int mid = (low + high) >>> 1;
+                if(sourceKeys[mid] < key || (skipEqual && sourceKeys[mid] == key)) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        /**
+         * This method merges the two runs sequentially into the target arrays.
+         */
+        private void mergeInto() {
+            int i = leftFrom, j = rightFrom, k = targetFrom;
+            while(i < leftTo && j < rightTo) {
+                if(sourceKeys[i] <= sourceKeys[j]) {
+                    targetKeys[k] = sourceKeys[i];
+                    if(sourceValues != null) targetValues[k] = sourceValues[i];
+                    i++;
+                } else {
+                    targetKeys[k] = sourceKeys[j];
+                    if(sourceValues != null) targetValues[k] = sourceValues[j];
+                    j++;
+                }
+                k++;
+            }
+            System.arraycopy(sourceKeys, i, targetKeys, k, leftTo - i);
+            if(sourceValues != null) System.arraycopy(sourceValues, i, targetValues, k, leftTo - i);
+            k += leftTo - i;
+            System.arraycopy(sourceKeys, j, targetKeys, k, rightTo - j);
+            if(sourceValues != null) System.arraycopy(sourceValues, j, targetValues, k, rightTo - j);
+        }
+    }
+
+    /**
+     * This method recursively sorts the entries between the given indices, using the buffers as merge space.
+     * @param keys the keys to sort
+     * @param values the values associated with the keys, or null
+     * @param keyBuffer scratch space for the keys
+     * @param valueBuffer scratch space for the values, or null
+     * @param from the index of the first entry to sort
+     * @param to the index following the last entry to sort
+     */
+    static void mergeSortPairs(long[] keys, String[] values, long[] keyBuffer, String[] valueBuffer, int from, int to) {
+        if(to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSortPairs(keys, values, from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSortPairs(keys, values, keyBuffer, valueBuffer, from, mid);
+        mergeSortPairs(keys, values, keyBuffer, valueBuffer, mid, to);
+        mergeRuns(keys, values, keyBuffer, valueBuffer, from, mid, to);
+    }
+
+    /**
+     * This method merges the two adjacent sorted runs [from, mid) and [mid, to) in place, using the buffers as merge space.
+     * @param keys the keys holding both runs
+     * @param values the values associated with the keys, or null
+     * @param keyBuffer scratch space for the keys
+     * @param valueBuffer scratch space for the values, or null
+     * @param from the index of the first entry of the left run
+     * @param mid the index of the first entry of the right run
+     * @param to the index following the last entry of the right run
+     */
+    static void mergeRuns(long[] keys, String[] values, long[] keyBuffer, String[] valueBuffer, int from, int mid, int to) {
+        //already in order, nothing to merge
+        if(keys[mid - 1] <= keys[mid]) return;
+
+        System.arraycopy(keys, from, keyBuffer, from, mid - from);
+        if(values != null) System.arraycopy(values, from, valueBuffer, from, mid - from);
+        int i = from, j = mid, k = from;
+        while(i < mid && j < to) {
+            if(keyBuffer[i] <= keys[j]) {
+                keys[k] = keyBuffer[i];
+                if(values != null) values[k] = valueBuffer[i];
+                i++;
+            } else {
+                keys[k] = keys[j];
+                if(values != null) values[k] = values[j];
+                j++;
+            }
+            k++;
+        }
+        //the remaining right run entries are already in place
+        while(i < mid) {
+            keys[k] = keyBuffer[i];
+            if(values != null) values[k] = valueBuffer[i];
+            i++;
+            k++;
+        }
+    }
+
+    /**
+     * This method sorts a short range of entries by insertion.
+     * @param keys the keys to sort
+     * @param values the values associated with the keys, or null
+     * @param from the index of the first entry to sort
+     * @param to the index following the last entry to sort
+     */
+    private static void insertionSortPairs(long[] keys, String[] values, int from, int to) {
+        for(int i = from + 1; i < to; i++) {
+            long key = keys[i];
+            String value = (values == null) ? null : values[i];
+            int j = i - 1;
+            while(j >= from && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                if(values != null) values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            if(values != null) values[j + 1] = value;
+        }
+    }
+
+    /**
+     * This method sorts the first count keys in ascending order and records, for each sorted key, the position it had before sorting.
+     * The sort is a stable merge sort, so equal keys keep their original order.
+     * @param keys the keys to sort
+     * @param positions the array receiving the original positions, at least count long
+     * @param count the number of keys to sort
+     */
+    public static void sortWithPositions(long[] keys, int[] positions, int count) {
+        for(int i = 0; i < count; i++) positions[i] = i;
+        if(isSorted(keys, count)) return;
+        mergeSortWithPositions(keys, positions, new long[count], new int[count], 0, count);
+    }
+
+    /**
+     * This method recursively sorts the keys between the given indices along with their positions, using the buffers as merge space.
+     * @param keys the keys to sort
+     * @param positions the positions moving along with the keys
+     * @param keyBuffer scratch space for the keys
+     * @param positionBuffer scratch space for the positions
+     * @param from the index of the first key to sort
+     * @param to the index following the last key to sort
+     */
+    private static void mergeSortWithPositions(long[] keys, int[] positions, long[] keyBuffer, int[] positionBuffer, int from, int to) {
+        if(to - from <= INSERTION_SORT_THRESHOLD) {
+            for(int i = from + 1; i < to; i++) {
+                long key = keys[i]; int position = positions[i];
+                int j = i - 1;
+                while(j >= from && keys[j] > key) {
+                    keys[j + 1] = keys[j];
+                    positions[j + 1] = positions[j];
+                    j--;
+                }
+                keys[j + 1] = key;
+                positions[j + 1] = position;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSortWithPositions(keys, positions, keyBuffer, positionBuffer, from, mid);
+        mergeSortWithPositions(keys, positions, keyBuffer, positionBuffer, mid, to);
+        if(keys[mid - 1] <= keys[mid]) return;
+
+        System.arraycopy(keys, from, keyBuffer, from, mid - from);
+        System.arraycopy(positions, from, positionBuffer, from, mid - from);
+        int i = from, j = mid, k = from;
+        while(i < mid && j < to) {
+            if(keyBuffer[i] <= keys[j]) {
+                keys[k] = keyBuffer[i];
+                positions[k++] = positionBuffer[i++];
+            } else {
+                keys[k] = keys[j];
+                positions[k++] = positions[j++];
+            }
+        }
+        while(i < mid) {
+            keys[k] = keyBuffer[i];
+            positions[k++] = positionBuffer[i++];
+        }
+    }
+
+    /**
+     * This method removes repeated keys from sorted entries in place, keeping the first entry of each key.
+     * @param keys the sorted keys
+     * @param values the values associated with the keys, or null
+     * @param count the number of entries
+     * @return the number of distinct entries, now at the start of the arrays.
+     */
+    public static int removeDuplicates(long[] keys, String[] values, int count) {
+        if(count == 0) return 0;
+        int distinct = 1;
+        for(int i = 1; i < count; i++) {
+            if(keys[i] != keys[distinct - 1]) {
+                keys[distinct] = keys[i];
+                if(values != null) values[distinct] = values[i];
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * This method merges two sorted, duplicate-free sets of entries into new arrays.
+     * When a key appears in both, the entry of the first set is kept.
+     * @param firstKeys the keys of the first set
+     * @param firstValues the values of the first set
+     * @param firstCount the number of entries of the first set
+     * @param secondKeys the keys of the second set
+     * @param secondValues the values of the second set
+     * @param secondCount the number of entries of the second set
+     * @param keysOut the array receiving the merged keys, at least firstCount + secondCount long
+     * @param valuesOut the array receiving the merged values, at least firstCount + secondCount long
+     * @return the number of merged entries.
+     */
+    public static int mergeDistinct(long[] firstKeys, String[] firstValues, int firstCount, long[] secondKeys, String[] secondValues,
+                                    int secondCount, long[] keysOut, String[] valuesOut) {
+        int i = 0, j = 0, k = 0;
+        while(i < firstCount && j < secondCount) {
+            if(firstKeys[i] < secondKeys[j]) {
+                keysOut[k] = firstKeys[i];
+                valuesOut[k++] = firstValues[i++];
+            } else if(firstKeys[i] > secondKeys[j]) {
+                keysOut[k] = secondKeys[j];
+                valuesOut[k++] = secondValues[j++];
+            } else {
+                keysOut[k] = firstKeys[i];
+                valuesOut[k++] = firstValues[i++];
+                j++;
+            }
+        }
+        while(i < firstCount) {
+            keysOut[k] = firstKeys[i];
+            valuesOut[k++] = firstValues[i++];
+        }
+        while(j < secondCount) {
+            keysOut[k] = secondKeys[j];
+            valuesOut[k++] = secondValues[j++];
+        }
+        return k;
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * SIDCBulkLoader class reads student ID files and loads them into CleverSIDC in bulk.
+ * The file is streamed through a FileChannel into a reusable direct buffer and parsed byte by byte, so there is
+ * no regex matching and no String allocated per ID. The IDs are then sorted once and the target structure is
+ * built directly from the sorted input, instead of being inserted one record at a time.
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCBulkLoader {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Private constructor, the class only has static helpers.
+     */
+    private SIDCBulkLoader() {}
+
+    /**
+     * This method reads the IDs of the given file, generates a student name for each and bulk loads them into CleverSIDC.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param file the file holding the IDs, separated by whitespace or any other non-digit characters
+     * @param limit the maximum number of IDs to read, or a negative number to read the whole file
+     * @return the number of IDs read from the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static int loadFile(CleverSIDC cleverSidc, Path file, int limit) throws IOException {
+        long[] keys = readKeys(file, limit);
+        String[] values = new String[keys.length];
+        for(int i = 0; i < keys.length; i++) values[i] = cleverSidc.generateValues();
+        cleverSidc.bulkLoad(cleverSidc, keys, values, keys.length);
+        return keys.length;
+    }
+
+    /**
+     * This method reads the IDs of the given file, in file order.
+     * @param file the file holding the IDs, separated by whitespace or any other non-digit characters
+     * @param limit the maximum number of IDs to read, or a negative number to read the whole file
+     * @return the IDs read.
+     * @throws IOException if the file cannot be read.
+     */
+    public static long[] readKeys(Path file, int limit) throws IOException {
+        long[] keys = new long[1024];
+        int count = 0;
+        long number = 0; boolean inNumber = false, negative = false;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while(count != limit && channel.read(buffer) != -1) {
+                buffer.flip();
+                while(buffer.hasRemaining() && count != limit) {
+                    byte character = buffer.get();
+                    if(character >= '0' && character <= '9') {
+                        number = number * 10 + (character - '0');
+                        inNumber = true;
+                    } else {
+                        if(inNumber) {
+                            if(count == keys.length) keys = Arrays.copyOf(keys, count * 2);
+                            keys[count++] = negative ? -number : number;
+                        }
+                        number = 0; inNumber = false;
+                        negative = (character == '-');
+                    }
+                }
+                buffer.clear();
+            }
+        }
+        //the file may end right after the last ID
+        if(inNumber && count != limit) {
+            if(count == keys.length) keys = Arrays.copyOf(keys, count + 1);
+            keys[count++] = negative ? -number : number;
+        }
+        return Arrays.copyOf(keys, count);
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.Random;
+
+/**
+ * SIDCKeyBitset class represents the whole 8-digit student ID space as a bitset, one bit per ID (about 11 MB).
+ * It answers membership in O(1) and hands out free IDs by jumping to a random offset and scanning words for a zero bit,
+ * so the cost of generating an ID does not grow as the ID space fills up.
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCKeyBitset {
+    public static final long MIN_KEY = 10000000L, MAX_KEY = 99999999L;
+    private static final long KEY_SPACE = MAX_KEY - MIN_KEY + 1;
+    private final long[] words = new long[(int) ((KEY_SPACE + 63) >>> 6)];
+    private long cardinality;
+
+    /**
+     * Default constructor.
+     */
+    public SIDCKeyBitset() {
+        //mark the bits past the end of the ID space as used so the scans never return them
+        int usedBitsOfLastWord = (int) (KEY_SPACE & 63);
+        if(usedBitsOfLastWord != 0) words[words.length - 1] = -1L << usedBitsOfLastWord;
+    }
+
+    /**
+     * This method returns the number of IDs marked as used.
+     * @return the number of used IDs
+     */
+    public long getCardinality() {
+        return this.cardinality;
+    }
+
+    /**
+     * This method tells whether the given ID is marked as used.
+     * @param key the ID to check
+     * @return true if the ID is inside the 8-digit space and marked as used.
+     */
+    public boolean contains(long key) {
+        if(key < MIN_KEY || key > MAX_KEY) return false;
+        long bit = key - MIN_KEY;
+        return (words[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * This method marks the given ID as used. IDs outside the 8-digit space can never be generated and are ignored.
+     * @param key the ID to mark
+     */
+    public void set(long key) {
+        if(key < MIN_KEY || key > MAX_KEY) return;
+        long bit = key - MIN_KEY; int word = (int) (bit >>> 6);
+        if((words[word] & (1L << bit)) == 0) {
+            words[word] |= 1L << bit;
+            cardinality++;
+        }
+    }
+
+    /**
+     * This method marks the given ID as free.
+     * @param key the ID to free
+     */
+    public void clear(long key) {
+        if(key < MIN_KEY || key > MAX_KEY) return;
+        long bit = key - MIN_KEY; int word = (int) (bit >>> 6);
+        if((words[word] & (1L << bit)) != 0) {
+            words[word] &= ~(1L << bit);
+            cardinality--;
+        }
+    }
+
+    /**
+     * This method finds the first free ID at or after the given ID, wrapping around to the start of the space once.
+     * @param fromKey the ID to start scanning from
+     * @return the free ID, or -1 if every ID is used.
+     */
+    public long nextFreeKey(long fromKey) {
+        if(cardinality == KEY_SPACE) return -1;
+        long bit = Math.max(0, Math.min(KEY_SPACE - 1, fromKey - MIN_KEY));
+        int word = (int) (bit >>> 6);
+
+        //the first word ignores the bits before the starting ID, the others are scanned whole
+        long freeBits = ~words[word] & (-1L << bit);
+        for(int scanned = 0; scanned <= words.length; scanned++) {
+            if(freeBits != 0) return MIN_KEY + ((long) word << 6) + Long.numberOfTrailingZeros(freeBits);
+            word = (word + 1 == words.length) ? 0 : word + 1;
+            freeBits = ~words[word];
+        }
+        return -1;
+    }
+
+    /**
+     * This method picks a free ID by scanning from a random position of the ID space.
+     * @param random the source of randomness
+     * @return the free ID, or -1 if every ID is used.
+     */
+    public long randomFreeKey(Random random) {
+        return nextFreeKey(MIN_KEY + (long) (random.nextDouble() * KEY_SPACE));
+    }
+}
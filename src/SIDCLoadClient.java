@@ -0,0 +1,201 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SIDCLoadClient class measures the throughput of a SIDCServer. It first loads random keys through one connection, then opens
+ * the given number of connections, each on its own thread, which keep sending batches of pipelined requests and reading the responses
+ * back for the given duration. It reports the requests per second, the round-trip latency percentiles of a batch, and the errors.
+ * The requests cycle through the selected operations; "add" adds an unused key and removes it again, so the population stays the same.
+ * <p>
+ * Usage: java SIDCLoadClient [--host address] [--port n] [--connections n] [--pipeline n] [--duration-ms n] [--preload n]
+ * [--ops get,next,prev,range,add] [--seed n]
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCLoadClient {
+    private static final long MIN_KEY = 10000000L, KEY_SPACE = 90000000L;
+    private String host; private int port = SIDCServer.DEFAULT_PORT, connections = 4, pipeline = 64, durationMillis = 5_000, preload = 100_000;
+    private String[] ops = {"get", "next", "prev", "range", "add"}; private long seed = 42L;
+
+    /**
+     * This method parses the command line options and runs the load.
+     * @param args the command line options
+     * @throws IOException if the server cannot be reached.
+     */
+    public static void main(String[] args) throws IOException {
+        SIDCLoadClient client = new SIDCLoadClient();
+        for(int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for option " + option);
+            String value = args[++i];
+            switch(option) {
+                case "--host": client.host = value; break;
+                case "--port": client.port = Integer.parseInt(value); break;
+                case "--connections": client.connections = Integer.parseInt(value); break;
+                case "--pipeline": client.pipeline = Integer.parseInt(value); break;
+                case "--duration-ms": client.durationMillis = Integer.parseInt(value); break;
+                case "--preload": client.preload = Integer.parseInt(value); break;
+                case "--ops": client.ops = value.split(","); break;
+                case "--seed": client.seed = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        client.run();
+    }
+
+    /**
+     * This method loads the keys, runs the connections for the configured duration and prints the results.
+     * @throws IOException if the server cannot be reached.
+     */
+    private void run() throws IOException {
+        InetAddress address = (host == null) ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+        long[] keys = new long[preload];
+        Random random = new Random(seed);
+        for(int i = 0; i < preload; i++) keys[i] = MIN_KEY + (long) (random.nextDouble() * KEY_SPACE);
+
+        long loadStart = System.nanoTime();
+        try(Socket socket = new Socket(address, port)) {
+            Session session = new Session(socket);
+            for(int from = 0; from < preload; from += 1024) {
+                int to = Math.min(preload, from + 1024);
+                for(int i = from; i < to; i++) session.send("ADD " + keys[i] + " student" + i);
+                session.receive(to - from);
+            }
+            session.send("QUIT");
+            session.receive(1);
+            if(session.errors > 0) System.out.printf("%d errors while loading, the first being: %s%n", session.errors, session.firstError);
+        }
+        System.out.printf("loaded %d keys in %.1f ms%n", preload, (System.nanoTime() - loadStart) / 1e6);
+
+        LatencyHistogram roundTrips = new LatencyHistogram();
+        long[] requests = new long[connections], errors = new long[connections];
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] workers = new Thread[connections];
+        for(int t = 0; t < connections; t++) {
+            final int id = t;
+            workers[t] = new Thread(() -> {
+                try(Socket socket = new Socket(address, port)) {
+                    Session session = new Session(socket);
+                    Random connectionRandom = new Random(seed + id + 1);
+                    long count = 0;
+                    while(running.get()) {
+                        int sent = 0;
+                        while(sent < pipeline) sent += sendRequest(session, keys, connectionRandom, ops[(int) ((count + sent) % ops.length)]);
+                        long start = System.nanoTime();
+                        session.flush();
+                        session.receive(sent);
+                        roundTrips.record(System.nanoTime() - start);
+                        count += sent;
+                    }
+                    requests[id] = count;
+                    errors[id] = session.errors;
+                } catch(IOException exception) {
+                    throw new IllegalStateException("Connection " + id + " failed.", exception);
+                }
+            });
+        }
+        for(Thread worker : workers) worker.start();
+        try {
+            Thread.sleep(durationMillis);
+            running.set(false);
+            for(Thread worker : workers) worker.join();
+        } catch(InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        long totalRequests = 0, totalErrors = 0;
+        for(int t = 0; t < connections; t++) {
+            totalRequests += requests[t];
+            totalErrors += errors[t];
+        }
+        System.out.printf("%d connections, %d pipelined requests each, ops %s%n", connections, pipeline, String.join("+", ops));
+        System.out.printf("%.0f requests/s, %d errors%n", totalRequests * 1000.0 / durationMillis, totalErrors);
+        System.out.printf("batch round trip: p50 %d us, p99 %d us, p99.9 %d us, max %d us%n", roundTrips.getValueAtPercentile(50) / 1000,
+                roundTrips.getValueAtPercentile(99) / 1000, roundTrips.getValueAtPercentile(99.9) / 1000, roundTrips.getMax() / 1000);
+    }
+
+    /**
+     * This method queues the request of one operation.
+     * @param session the session to send on
+     * @param keys the preloaded keys
+     * @param random the source of randomness used to pick keys
+     * @param op the operation name
+     * @return the number of requests queued.
+     * @throws IOException if the socket fails.
+     */
+    private static int sendRequest(Session session, long[] keys, Random random, String op) throws IOException {
+        long key = keys[random.nextInt(keys.length)];
+        switch(op) {
+            case "get": session.send("GET " + key); return 1;
+            case "next": session.send("NEXT " + key); return 1;
+            case "prev": session.send("PREV " + key); return 1;
+            case "range": session.send("RANGE " + key + " " + Math.min(MIN_KEY + KEY_SPACE - 1, key + KEY_SPACE / 100)); return 1;
+            case "add":
+                //a random key is almost never loaded already; when it is, the pair removes it and the population shrinks by one
+                long newKey = MIN_KEY + (long) (random.nextDouble() * KEY_SPACE);
+                session.send("ADD " + newKey + " new student");
+                session.send("REMOVE " + newKey);
+                return 2;
+            default: throw new IllegalArgumentException("Unknown operation " + op);
+        }
+    }
+
+    /**
+     * A private static inner class that sends request lines over a socket through a buffer and reads the response lines back.
+     */
+    private static class Session {
+        private final OutputStream out; private final BufferedReader in;
+        private long errors; private String firstError;
+
+        /**
+         * Parameterized constructor.
+         * @param socket the connected socket
+         * @throws IOException if the socket streams cannot be opened.
+         */
+        private Session(Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 64 * 1024);
+        }
+
+        /**
+         * This method queues one request line.
+         * @param request the request, without the line end
+         * @throws IOException if the socket fails.
+         */
+        private void send(String request) throws IOException {
+            out.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * This method sends the queued requests.
+         * @throws IOException if the socket fails.
+         */
+        private void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * This method sends the queued requests and reads the given number of responses, counting the errors.
+         * @param count the number of responses to read
+         * @throws IOException if the socket fails or the server closed the connection.
+         */
+        private void receive(int count) throws IOException {
+            out.flush();
+            for(int i = 0; i < count; i++) {
+                String response = in.readLine();
+                if(response == null) throw new IOException("The server closed the connection.");
+                if(response.startsWith("ERR")) {
+                    if(errors++ == 0) firstError = response;
+                }
+            }
+        }
+    }
+}
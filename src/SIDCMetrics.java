@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * SIDCMetrics class collects the metrics of one CleverSIDC: a LatencyHistogram for every public operation, counters of the
+ * structural events that cause latency spikes (AVL rotations, BPlusTree splits, CircularArray and slab resizes, value arena
+ * compactions, shard rebalances, backend migrations and generate retries), and gauges of the active backend, its size and
+ * the AVL tree height.
+ * It is created by CleverSIDC.setSIDCMetrics and can be read in-process, written to a file or registered with JMX.
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCMetrics implements SIDCMetricsMBean {
+    /**
+     * The operations of CleverSIDC whose latency is recorded.
+     */
+    public enum Operation {
+        ADD, ADD_ALL, BULK_LOAD, REMOVE, REMOVE_ALL, GET_VALUES, GET_ALL, PREV_KEY, NEXT_KEY, RANGE_KEY, RANGE_KEYS, FOR_EACH,
+        RANK, SELECT, GENERATE, GENERATE_BATCH, REBALANCE
+    }
+
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
+    private final CleverSIDC cleverSidc; private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder rotations = new LongAdder(), splits = new LongAdder(), resizes = new LongAdder(),
+            migrations = new LongAdder(), generateRetries = new LongAdder(), compactions = new LongAdder(), rebalances = new LongAdder();
+    private ObjectName registeredName;
+
+    /**
+     * Parameterized constructor.
+     * @param owner the CleverSIDC whose metrics are collected
+     */
+    SIDCMetrics(CleverSIDC owner) {
+        cleverSidc = owner;
+        for(int i = 0; i < latencies.length; i++) latencies[i] = new LatencyHistogram();
+    }
+
+    /**
+     * This method records the latency of an operation that started at the given time.
+     * @param operation the operation that ran
+     * @param startNanos the System.nanoTime() read when the operation started
+     */
+    void record(Operation operation, long startNanos) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * This method counts one rotation of an AVL tree backend.
+     */
+    void countRotation() {
+        rotations.increment();
+    }
+
+    /**
+     * This method counts one BPlusTree node split.
+     */
+    void countSplit() {
+        splits.increment();
+    }
+
+    /**
+     * This method counts one resize of the CircularArray storage or of the SlabAvlTree slab.
+     */
+    void countResize() {
+        resizes.increment();
+    }
+
+    /**
+     * This method counts one compaction of the value arena of a CompactValueStore.
+     */
+    void countCompaction() {
+        compactions.increment();
+    }
+
+    /**
+     * This method counts one redistribution of the entries of a ShardedCleverSIDC over new shards.
+     */
+    void countRebalance() {
+        rebalances.increment();
+    }
+
+    /**
+     * This method adds the event counters of other metrics to these ones, so that the events of a CleverSIDC that is
+     * discarded, such as a shard replaced by a rebalance, are not lost.
+     * @param other the metrics whose counters are added
+     */
+    void addCounts(SIDCMetrics other) {
+        rotations.add(other.getRotationCount());
+        splits.add(other.getSplitCount());
+        resizes.add(other.getResizeCount());
+        compactions.add(other.getCompactionCount());
+        rebalances.add(other.getRebalanceCount());
+        migrations.add(other.getMigrationCount());
+        generateRetries.add(other.getGenerateRetryCount());
+    }
+
+    /**
+     * This method counts one migration between backends.
+     */
+    void countMigration() {
+        migrations.increment();
+    }
+
+    /**
+     * This method counts one generated key that was already used.
+     */
+    void countGenerateRetry() {
+        generateRetries.increment();
+    }
+
+    /**
+     * This method returns the latency histogram of the given operation.
+     * @param operation the operation
+     * @return the histogram
+     */
+    public LatencyHistogram getLatencies(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    /**
+     * This method names the active backend.
+     * @return "array", "tree", "bplus", "persistent", "slab", "mapped" or "sharded", or "none" before a backend is created.
+     */
+    @Override
+    public String getActiveBackend() {
+        return cleverSidc.activeBackendName();
+    }
+
+    /**
+     * This method returns the number of entries.
+     * @return the size of the CleverSIDC
+     */
+    @Override
+    public int getSize() {
+        return cleverSidc.size();
+    }
+
+    /**
+     * This method returns the height of the AVL tree backend.
+     * @return the height, or 0 if the active backend is not an AVL tree.
+     */
+    @Override
+    public int getTreeHeight() {
+        return cleverSidc.treeHeight();
+    }
+
+    /**
+     * This method returns the number of rotations of the AVL tree backend.
+     * @return the rotation count
+     */
+    @Override
+    public long getRotationCount() {
+        return rotations.sum();
+    }
+
+    /**
+     * This method returns the number of BPlusTree node splits.
+     * @return the split count
+     */
+    @Override
+    public long getSplitCount() {
+        return splits.sum();
+    }
+
+    /**
+     * This method returns the number of times the CircularArray storage or the SlabAvlTree slab was grown or shrunk.
+     * @return the resize count
+     */
+    @Override
+    public long getResizeCount() {
+        return resizes.sum();
+    }
+
+    /**
+     * This method returns the number of times the value arena of a CompactValueStore was compacted.
+     * @return the compaction count
+     */
+    @Override
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    /**
+     * This method returns the number of times the entries of a ShardedCleverSIDC were redistributed over new shards.
+     * @return the rebalance count
+     */
+    @Override
+    public long getRebalanceCount() {
+        return rebalances.sum();
+    }
+
+    /**
+     * This method returns the number of migrations between backends.
+     * @return the migration count
+     */
+    @Override
+    public long getMigrationCount() {
+        return migrations.sum();
+    }
+
+    /**
+     * This method returns the number of generated keys that were already used and had to be drawn again.
+     * @return the retry count
+     */
+    @Override
+    public long getGenerateRetryCount() {
+        return generateRetries.sum();
+    }
+
+    /**
+     * This method returns the number of times the given operation ran.
+     * @param operation the name of the operation, as in Operation
+     * @return the count
+     * @throws IllegalArgumentException if there is no such operation.
+     */
+    @Override
+    public long getOperationCount(String operation) {
+        return getLatencies(Operation.valueOf(operation)).getCount();
+    }
+
+    /**
+     * This method returns a latency percentile of the given operation.
+     * @param operation the name of the operation, as in Operation
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds
+     * @throws IllegalArgumentException if there is no such operation.
+     */
+    @Override
+    public long getLatencyPercentile(String operation, double percentile) {
+        return getLatencies(Operation.valueOf(operation)).getValueAtPercentile(percentile);
+    }
+
+    /**
+     * This method formats every metric as text: the gauges and counters first, then one line per operation that ran.
+     * @return the report
+     */
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("backend %s, size %d, tree height %d%n", getActiveBackend(), getSize(), getTreeHeight()));
+        report.append(String.format("rotations %d, splits %d, resizes %d, compactions %d, rebalances %d, migrations %d, generate retries %d%n",
+                getRotationCount(), getSplitCount(), getResizeCount(), getCompactionCount(), getRebalanceCount(), getMigrationCount(),
+                getGenerateRetryCount()));
+        report.append(String.format("%-15s %12s %12s", "operation", "count", "mean(ns)"));
+        for(double percentile : REPORTED_PERCENTILES) {
+            String label = (percentile == Math.rint(percentile)) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+            report.append(String.format(" %12s", "p" + label + "(ns)"));
+        }
+        report.append(String.format(" %12s%n", "max(ns)"));
+        for(Operation operation : Operation.values()) {
+            LatencyHistogram histogram = getLatencies(operation);
+            if(histogram.getCount() == 0) continue;
+            report.append(String.format("%-15s %12d %12.0f", operation, histogram.getCount(), histogram.getMean()));
+            for(double percentile : REPORTED_PERCENTILES) report.append(String.format(" %12d", histogram.getValueAtPercentile(percentile)));
+            report.append(String.format(" %12d%n", histogram.getMax()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * This method writes the report to the given file, replacing it.
+     * @param file the file to write
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeReport(Path file) throws IOException {
+        Files.write(file, getReport().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This method resets the latency histograms and the event counters. The gauges always show the current state.
+     */
+    @Override
+    public void reset() {
+        for(LatencyHistogram histogram : latencies) histogram.reset();
+        rotations.reset();
+        splits.reset();
+        resizes.reset();
+        compactions.reset();
+        rebalances.reset();
+        migrations.reset();
+        generateRetries.reset();
+    }
+
+    /**
+     * This method registers the metrics with the platform MBean server, under CleverSIDC:type=SIDCMetrics,name= the given name.
+     * @param name the name telling this CleverSIDC apart from others
+     * @throws JMException if the name is malformed or already registered.
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("CleverSIDC:type=SIDCMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    /**
+     * This method removes the metrics from the platform MBean server, if they were registered.
+     * @throws JMException if the MBean server refuses.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if(registeredName == null) return;
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        registeredName = null;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * SIDCMetricsMBean interface is the JMX view of SIDCMetrics: the gauges and event counters as attributes,
+ * the latency percentiles of each operation as operations, and the whole text report.
+ * @author Rania Maoukout & teammate
+ */
+public interface SIDCMetricsMBean {
+    /**
+     * This method returns the name of the active backend.
+     * @return "array", "tree", "bplus", "persistent", "slab", "mapped" or "sharded", or "none" before a backend is created
+     */
+    String getActiveBackend();
+
+    /**
+     * This method returns the number of entries.
+     * @return the size of the CleverSIDC
+     */
+    int getSize();
+
+    /**
+     * This method returns the height of the AVL tree backend.
+     * @return the height, or 0 if the active backend is not an AVL tree
+     */
+    int getTreeHeight();
+
+    /**
+     * This method returns the number of rotations of the AVL tree backend.
+     * @return the rotation count
+     */
+    long getRotationCount();
+
+    /**
+     * This method returns the number of BPlusTree node splits.
+     * @return the split count
+     */
+    long getSplitCount();
+
+    /**
+     * This method returns the number of times the CircularArray storage or the SlabAvlTree slab was grown or shrunk.
+     * @return the resize count
+     */
+    long getResizeCount();
+
+    /**
+     * This method returns the number of times the value arena of a CompactValueStore was compacted.
+     * @return the compaction count
+     */
+    long getCompactionCount();
+
+    /**
+     * This method returns the number of times the entries of a ShardedCleverSIDC were redistributed over new shards.
+     * @return the rebalance count
+     */
+    long getRebalanceCount();
+
+    /**
+     * This method returns the number of migrations between backends.
+     * @return the migration count
+     */
+    long getMigrationCount();
+
+    /**
+     * This method returns the number of generated keys that were already used and had to be drawn again.
+     * @return the retry count
+     */
+    long getGenerateRetryCount();
+
+    /**
+     * This method returns the number of times the given operation ran.
+     * @param operation the name of the operation, as in SIDCMetrics.Operation
+     * @return the count
+     */
+    long getOperationCount(String operation);
+
+    /**
+     * This method returns a latency percentile of the given operation.
+     * @param operation the name of the operation, as in SIDCMetrics.Operation
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds
+     */
+    long getLatencyPercentile(String operation, double percentile);
+
+    /**
+     * This method returns the text report of every metric.
+     * @return the report
+     */
+    String getReport();
+
+    /**
+     * This method resets the latency histograms and the event counters.
+     */
+    void reset();
+}
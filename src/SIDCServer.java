@@ -0,0 +1,362 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * SIDCServer class serves a CleverSIDC over TCP with a line protocol, so that other programs can use it without the interactive driver.
+ * One thread runs a selector over every connection and executes the commands one after the other, so the CleverSIDC needs no locking
+ * unless other threads use it too, in which case it should be a ConcurrentCleverSIDC or a ShardedCleverSIDC.
+ * <p>
+ * Each request is one line of UTF-8 text ending with a line feed, and gets exactly one response line, in order:
+ * <pre>
+ * GENERATE              OK key          a new unused key, not added
+ * ADD key value         OK              an existing key keeps its value
+ * REMOVE key            OK key | NONE
+ * GET key               OK value | NONE
+ * NEXT key              OK key | NONE   the successor key
+ * PREV key              OK key | NONE   the predecessor key
+ * RANGE key1 key2       OK count        the number of keys strictly between key1 and key2
+ * QUIT                  OK              the connection is closed once the responses are sent
+ * </pre>
+ * Commands are case-insensitive, keys have 8 digits, blank lines are ignored, and a malformed request gets ERR followed by the reason.
+ * Clients may pipeline: they can send many requests without waiting, and the server answers every complete line it has read
+ * with a single write. While a client does not read its responses, the server stops reading its requests.
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7878, MAX_LINE_BYTES = 64 * 1024;
+    private static final int READ_BUFFER_BYTES = 16 * 1024;
+    private static final long MIN_KEY = 10000000L, MAX_KEY = 99999999L;
+    private final CleverSIDC cleverSidc; private final ServerSocketChannel serverChannel; private final Selector selector;
+    private final Thread eventLoop; private volatile boolean running = true;
+
+    /**
+     * A private static inner class that holds the state of one client connection: the bytes read but not yet executed,
+     * the responses of the current batch, and the encoded responses not yet written.
+     */
+    private static class Connection {
+        private final SocketChannel channel; private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        private ByteBuffer out = ByteBuffer.allocate(READ_BUFFER_BYTES); private final StringBuilder responses = new StringBuilder();
+        private boolean closing;
+
+        /**
+         * Parameterized constructor.
+         * @param channel the channel of the connection
+         */
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Parameterized constructor. Binds the server socket; start begins serving.
+     * @param cleverSidc the CleverSIDC to serve
+     * @param address the address to listen on, with port 0 for any free port
+     * @throws IOException if the address cannot be bound.
+     */
+    public SIDCServer(CleverSIDC cleverSidc, InetSocketAddress address) throws IOException {
+        this.cleverSidc = cleverSidc;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch(IOException exception) {
+            serverChannel.close();
+            selector.close();
+            throw exception;
+        }
+        eventLoop = new Thread(this::serve, "sidc-server");
+    }
+
+    /**
+     * This method starts serving on a thread of its own.
+     */
+    public void start() {
+        eventLoop.start();
+    }
+
+    /**
+     * This method returns the port the server listens on.
+     * @return the local port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * This method stops the server: it closes every connection and the server socket, and waits for the serving thread to end.
+     * @throws IOException if the selector cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            if(eventLoop.isAlive()) eventLoop.join();
+        } catch(InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        for(SelectionKey key : selector.keys()) key.channel().close();
+        selector.close();
+    }
+
+    /**
+     * This method runs the selector loop until the server is closed.
+     */
+    private void serve() {
+        try {
+            while(running) {
+                selector.select();
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while(selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    if(!key.isValid()) continue;
+                    if(key.isAcceptable()) {
+                        try {
+                            accept();
+                        } catch(IOException exception) {
+                            //the client gave up before it was accepted
+                        }
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if(key.isReadable()) read(key, connection);
+                        if(key.isValid() && key.isWritable()) write(key, connection);
+                    } catch(IOException exception) {
+                        //the client went away; only its connection is affected
+                        closeConnection(key, connection);
+                    }
+                }
+            }
+        } catch(IOException exception) {
+            throw new IllegalStateException("The selector of the CleverSIDC server failed.", exception);
+        }
+    }
+
+    /**
+     * This method accepts a pending connection and starts reading from it.
+     * @throws IOException if the connection cannot be set up.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if(channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    /**
+     * This method closes a connection and forgets it.
+     * @param key the selection key of the connection
+     * @param connection the connection
+     */
+    private static void closeConnection(SelectionKey key, Connection connection) {
+        key.cancel();
+        try {
+            connection.channel.close();
+        } catch(IOException exception) {
+            //nothing left to release
+        }
+    }
+
+    /**
+     * This method reads what the client sent, executes every complete line, and writes the responses of the whole batch at once.
+     * @param key the selection key of the connection
+     * @param connection the connection
+     * @throws IOException if the channel fails.
+     */
+    private void read(SelectionKey key, Connection connection) throws IOException {
+        if(connection.channel.read(connection.in) == -1) {
+            //the client sent its last request: send the remaining responses, then close
+            connection.closing = true;
+            write(key, connection);
+            return;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        byte[] bytes = in.array();
+        int lineStart = in.position();
+        for(int i = lineStart; i < in.limit() && !connection.closing; i++) {
+            if(bytes[i] != '\n') continue;
+            int lineEnd = (i > lineStart && bytes[i - 1] == '\r') ? i - 1 : i;
+            execute(new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8), connection);
+            lineStart = i + 1;
+        }
+        in.position(lineStart);
+        in.compact();
+        if(!in.hasRemaining()) {
+            //a line longer than the buffer: grow it up to the limit, or give up on the client
+            if(in.capacity() >= MAX_LINE_BYTES) {
+                connection.responses.append("ERR the line is longer than ").append(MAX_LINE_BYTES).append(" bytes\n");
+                connection.closing = true;
+            } else {
+                connection.in = ByteBuffer.allocate(Math.min(2 * in.capacity(), MAX_LINE_BYTES)).put(in.flip());
+            }
+        }
+        if(connection.responses.length() > 0) {
+            ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(connection.responses));
+            connection.responses.setLength(0);
+            if(connection.out.remaining() < encoded.remaining()) {
+                connection.out.flip();
+                connection.out = ByteBuffer.allocate(Math.max(2 * connection.out.capacity(), connection.out.remaining() + encoded.remaining()))
+                        .put(connection.out);
+            }
+            connection.out.put(encoded);
+        }
+        write(key, connection);
+    }
+
+    /**
+     * This method writes the pending responses. While some remain, the server waits for the client to read them
+     * instead of reading more requests.
+     * @param key the selection key of the connection
+     * @param connection the connection
+     * @throws IOException if the channel fails.
+     */
+    private void write(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        out.flip();
+        connection.channel.write(out);
+        boolean pending = out.hasRemaining();
+        out.compact();
+        if(pending) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if(connection.closing) {
+            closeConnection(key, connection);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * This method executes one request line and appends its response to the batch of the connection.
+     * @param line the request, without the line end
+     * @param connection the connection that sent it
+     */
+    private void execute(String line, Connection connection) {
+        String request = line.trim();
+        if(request.isEmpty()) return;
+        int space = request.indexOf(' ');
+        String command = ((space == -1) ? request : request.substring(0, space)).toUpperCase(Locale.ROOT);
+        String arguments = (space == -1) ? "" : request.substring(space + 1).trim();
+        StringBuilder response = connection.responses;
+        try {
+            switch(command) {
+                case "GENERATE":
+                    response.append("OK ").append(cleverSidc.generate());
+                    break;
+                case "ADD":
+                    int valueStart = arguments.indexOf(' ');
+                    if(valueStart == -1) throw new IllegalArgumentException("ADD needs a key and a value");
+                    cleverSidc.add(cleverSidc, parseKey(arguments.substring(0, valueStart)), arguments.substring(valueStart + 1).trim());
+                    response.append("OK");
+                    break;
+                case "REMOVE":
+                    appendKey(response, cleverSidc.remove(cleverSidc, parseKey(arguments)));
+                    break;
+                case "GET":
+                    String value = cleverSidc.getValues(cleverSidc, parseKey(arguments));
+                    if(value.equals(CleverSIDC.NO_VALUE)) response.append("NONE");
+                    else response.append("OK ").append(value);
+                    break;
+                case "NEXT":
+                    appendKey(response, cleverSidc.nextKey(cleverSidc, parseKey(arguments)));
+                    break;
+                case "PREV":
+                    appendKey(response, cleverSidc.prevKey(cleverSidc, parseKey(arguments)));
+                    break;
+                case "RANGE":
+                    String[] keys = arguments.split(" +");
+                    if(keys.length != 2) throw new IllegalArgumentException("RANGE needs two keys");
+                    response.append("OK ").append(cleverSidc.rangeKey(parseKey(keys[0]), parseKey(keys[1])));
+                    break;
+                case "QUIT":
+                    response.append("OK");
+                    connection.closing = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown command " + command);
+            }
+        } catch(RuntimeException exception) {
+            //the request is answered with the reason, and the connection carries on with the next one
+            response.append("ERR ").append(String.valueOf(exception.getMessage()).replace('\n', ' '));
+        }
+        response.append('\n');
+    }
+
+    /**
+     * This method parses a key of the protocol.
+     * @param text the key as sent
+     * @return the key.
+     * @throws IllegalArgumentException if the text is not an 8-digit key.
+     */
+    private static long parseKey(String text) {
+        long key;
+        try {
+            key = Long.parseLong(text);
+        } catch(NumberFormatException exception) {
+            throw new IllegalArgumentException("malformed key " + text);
+        }
+        if(key < MIN_KEY || key > MAX_KEY) throw new IllegalArgumentException("the key must have 8 digits: " + text);
+        return key;
+    }
+
+    /**
+     * This method appends the response to a request answered by a key.
+     * @param response the responses of the batch
+     * @param key the key, or NO_KEY if there is none
+     */
+    private static void appendKey(StringBuilder response, long key) {
+        if(key == CleverSIDC.NO_KEY) response.append("NONE");
+        else response.append("OK ").append(key);
+    }
+
+    /**
+     * This method starts a server in the foreground.
+     * Usage: java SIDCServer [--host address] [--port n] [--size n] [--file ids.txt] [--hash-index true|false]
+     * The size selects the backend as in CleverSIDC.setSIDCThreshold, and the IDs of the file are bulk loaded with generated names.
+     * The server listens on the loopback address unless --host says otherwise.
+     * @param args the command line options
+     * @throws IOException if the file cannot be read or the address cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        String host = null; int port = DEFAULT_PORT, size = CleverSIDC.BPLUS_TREE_THRESHOLD; Path file = null; boolean hashIndex = false;
+        for(int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for option " + option);
+            String value = args[++i];
+            switch(option) {
+                case "--host": host = value; break;
+                case "--port": port = Integer.parseInt(value); break;
+                case "--size": size = Integer.parseInt(value); break;
+                case "--file": file = Path.of(value); break;
+                case "--hash-index": hashIndex = Boolean.parseBoolean(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        CleverSIDC cleverSidc = new CleverSIDC();
+        cleverSidc.setSIDCThreshold(size);
+        cleverSidc.setSIDCHashIndex(hashIndex);
+        if(file != null) SIDCBulkLoader.loadFile(cleverSidc, file, size);
+
+        InetAddress address = (host == null) ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+        SIDCServer server = new SIDCServer(cleverSidc, new InetSocketAddress(address, port));
+        System.out.printf("NASTA CleverSIDC serving %d records on %s:%d%n", cleverSidc.size(), address.getHostAddress(), server.getPort());
+        server.start();
+    }
+}
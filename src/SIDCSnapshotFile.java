@@ -0,0 +1,150 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SIDCSnapshotFile class writes the compact binary snapshot format of CleverSIDC, and loads it back.
+ * The format is a 24-byte header (magic, version, entry count, size of the value region), followed by the sorted keys
+ * as 8-byte longs, an offset table of count + 1 4-byte ints into the value region, and the values as UTF-8 bytes.
+ * Every number is big-endian. The layout lets MappedSIDCSnapshot serve lookups straight from the mapped file.
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCSnapshotFile {
+    public static final int MAGIC = 0x53494443, VERSION = 1, HEADER_SIZE = 24;
+
+    /**
+     * Private constructor, the class only has static helpers.
+     */
+    private SIDCSnapshotFile() {}
+
+    /**
+     * This method writes every entry of CleverSIDC to the given file.
+     * The snapshot is written to a temporary file, forced to the disk and then moved into place, and the directory is synced
+     * after the move, so a crash leaves either the previous file or the complete new snapshot behind, never a partial one.
+     * @param cleverSidc the CleverSIDC object to save
+     * @param file the snapshot file to create or replace
+     * @throws IOException if the file cannot be written, or the values do not fit the 2 GB value region.
+     */
+    public static void write(CleverSIDC cleverSidc, Path file) throws IOException {
+        int size = cleverSidc.size();
+        long[] keys = new long[size]; String[] values = new String[size];
+        int count = cleverSidc.copyEntries(cleverSidc, keys, values);
+        write(keys, values, count, file);
+    }
+
+    /**
+     * This method writes the given sorted, duplicate-free entries to the given file, with the same crash guarantee as above.
+     * @param keys the keys in ascending order
+     * @param values the values associated with the keys
+     * @param count the number of entries to write
+     * @param file the snapshot file to create or replace
+     * @throws IOException if the file cannot be written, or the values do not fit the 2 GB value region.
+     */
+    public static void write(long[] keys, String[] values, int count, Path file) throws IOException {
+        byte[][] encodedValues = new byte[count][];
+        long valueBytes = 0;
+        for(int i = 0; i < count; i++) {
+            encodedValues[i] = (values[i] == null ? "" : values[i]).getBytes(StandardCharsets.UTF_8);
+            valueBytes += encodedValues[i].length;
+        }
+        if(valueBytes > Integer.MAX_VALUE) throw new IOException("The values take more than 2 GB and cannot be indexed by the offset table.");
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(count);
+            output.writeLong(valueBytes);
+            for(int i = 0; i < count; i++) output.writeLong(keys[i]);
+            int offset = 0;
+            for(int i = 0; i < count; i++) {
+                output.writeInt(offset);
+                offset += encodedValues[i].length;
+            }
+            output.writeInt(offset);
+            for(byte[] encodedValue : encodedValues) output.write(encodedValue);
+            output.flush();
+            //the content must be on the disk before the rename is, or a crash could leave the new name on an empty file
+            channel.force(true);
+        }
+        try {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException exception) {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(file.toAbsolutePath().getParent());
+    }
+
+    /**
+     * This method forces the entries of the given directory to the disk, so that files created, renamed or deleted in it
+     * survive a crash. Windows cannot open a directory as a file, so there the method does nothing and the rename is as durable
+     * as the file system makes it.
+     * @param directory the directory to sync
+     * @throws IOException if the directory cannot be synced.
+     */
+    public static void syncDirectory(Path directory) throws IOException {
+        if(System.getProperty("os.name", "").startsWith("Windows")) return;
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * This method bulk loads every entry of the given snapshot file into a mutable CleverSIDC.
+     * The file is read through a stream rather than mapped, so nothing keeps it open afterwards and it can be deleted or replaced
+     * at once, which Windows refuses while a mapping of it is alive. The keys are already sorted, so the backend is built in a
+     * single linear pass.
+     * @param cleverSidc the CleverSIDC object to load into
+     * @param file the snapshot file to read
+     * @return the number of entries read from the snapshot.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public static int load(CleverSIDC cleverSidc, Path file) throws IOException {
+        long[] keys; String[] values;
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            int magic, version; long entries, valueBytes;
+            try {
+                magic = input.readInt();
+                version = input.readInt();
+                entries = input.readLong();
+                valueBytes = input.readLong();
+            } catch(EOFException exception) {
+                throw new IOException("Not a CleverSIDC snapshot: " + file);
+            }
+            if(magic != MAGIC) throw new IOException("Not a CleverSIDC snapshot: " + file);
+            if(version != VERSION) throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            if(entries < 0 || entries > Integer.MAX_VALUE / 8 || valueBytes < 0 || valueBytes > Integer.MAX_VALUE
+                    || HEADER_SIZE + entries * 12 + 4 + valueBytes != Files.size(file)) {
+                throw new IOException("Corrupted CleverSIDC snapshot: " + file);
+            }
+            int count = (int) entries;
+            keys = new long[count]; values = new String[count];
+            int[] offsets = new int[count + 1];
+            byte[] valueRegion = new byte[(int) valueBytes];
+            for(int i = 0; i < count; i++) keys[i] = input.readLong();
+            for(int i = 0; i <= count; i++) offsets[i] = input.readInt();
+            input.readFully(valueRegion);
+            for(int i = 0; i < count; i++) {
+                if(offsets[i] < 0 || offsets[i] > offsets[i + 1] || offsets[i + 1] > valueRegion.length) {
+                    throw new IOException("Corrupted CleverSIDC snapshot: " + file);
+                }
+                values[i] = new String(valueRegion, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+            }
+        }
+        cleverSidc.bulkLoad(cleverSidc, keys, values, keys.length);
+        return keys.length;
+    }
+}
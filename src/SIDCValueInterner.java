@@ -0,0 +1,53 @@
+/**
+ * SIDCValueInterner class makes records with equal values share one String in the String-valued backends of CleverSIDC
+ * (CircularArray, AVLTree and BPlusTree), which otherwise keep every value read from a request, a log or a snapshot as a copy
+ * of its own. It is a direct-mapped table of recently stored values: a value equal to the one in its slot is replaced by it,
+ * and any other value takes the slot over. The table never grows, so unique values cost nothing but the lookup, while a roster
+ * of repeated names ends up with one String per name. The interner is not thread-safe.
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCValueInterner {
+    public static final int DEFAULT_BITS = 12;
+    private final String[] values; private final int bits;
+
+    /**
+     * Default constructor, with a table of 2^DEFAULT_BITS slots.
+     */
+    public SIDCValueInterner() {
+        this(DEFAULT_BITS);
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param bits the base two logarithm of the number of slots
+     * @throws IllegalArgumentException if bits is not between 1 and 24.
+     */
+    public SIDCValueInterner(int bits) {
+        if(bits < 1 || bits > 24) throw new IllegalArgumentException("The interner must have between 2^1 and 2^24 slots.");
+        this.bits = bits;
+        this.values = new String[1 << bits];
+    }
+
+    /**
+     * This method returns the String already held for a value equal to the given one, or remembers and returns the given one.
+     * @param value the value to intern, which may be null
+     * @return a String equal to value.
+     */
+    public String intern(String value) {
+        if(value == null) return null;
+        int slot = (value.hashCode() * 0x9E3779B9) >>> (32 - bits);
+        String held = values[slot];
+        if(value.equals(held)) return held;
+        values[slot] = value;
+        return value;
+    }
+
+    /**
+     * This method interns the values of the given array in place.
+     * @param valuesToIntern the values to intern
+     * @param count the number of values to take from the array
+     */
+    public void internAll(String[] valuesToIntern, int count) {
+        for(int i = 0; i < count; i++) valuesToIntern[i] = intern(valuesToIntern[i]);
+    }
+}
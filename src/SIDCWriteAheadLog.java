@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * SIDCWriteAheadLog class is an append-only, checksummed binary log of the additions and removals made to CleverSIDC.
+ * Each record is its body length (4 bytes), the body (an operation byte, the 8-byte key and, for additions, the UTF-8 value)
+ * and a CRC32C of the body (4 bytes). Records are gathered in memory and written with a single fsync once the pending bytes
+ * reach a limit or the sync interval elapses (group commit), so a burst of additions costs one fsync per batch rather than
+ * one per record. The price is that a crash loses at most the records of the last unsynced batch.
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCWriteAheadLog implements AutoCloseable {
+    public static final byte ADD = 1, REMOVE = 2;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 8 + 4;
+    private final FileChannel channel; private final CRC32C checksum = new CRC32C();
+    private final int syncBytes; private ByteBuffer pending; private long appendedBytes;
+    private final ScheduledExecutorService syncer; private IOException syncFailure;
+
+    /**
+     * Parameterized constructor. The file is created if needed, and a torn record left at its end by a crash is cut off.
+     * @param file the log file to append to
+     * @param syncIntervalMillis the longest time a record waits before being synced, or 0 to sync every record on append
+     * @param syncBytes the number of pending bytes that triggers a sync right away
+     * @throws IOException if the file cannot be opened.
+     */
+    public SIDCWriteAheadLog(Path file, long syncIntervalMillis, int syncBytes) throws IOException {
+        if(syncIntervalMillis < 0 || syncBytes <= 0) throw new IllegalArgumentException("Invalid sync interval or sync size.");
+        long validLength = replay(null, file);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        appendedBytes = validLength;
+        this.syncBytes = syncBytes;
+        pending = ByteBuffer.allocate(Math.max(syncBytes, 256) + RECORD_OVERHEAD);
+
+        if(syncIntervalMillis == 0) {
+            syncer = null;
+        } else {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sidc-wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncInBackground, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * This method appends an addition record.
+     * @param key the added key
+     * @param value the value associated with the key
+     */
+    public void logAdd(long key, String value) {
+        byte[] encodedValue = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        append(ADD, key, encodedValue);
+    }
+
+    /**
+     * This method appends a removal record.
+     * @param key the removed key
+     */
+    public void logRemove(long key) {
+        append(REMOVE, key, new byte[0]);
+    }
+
+    /**
+     * This method encodes one record into the pending batch, and syncs the batch if it is full or if every record must be synced.
+     * @param operation ADD or REMOVE
+     * @param key the key of the record
+     * @param encodedValue the UTF-8 value of the record, empty for removals
+     * @throws UncheckedIOException if the record, or a previous background sync, could not be written.
+     */
+    private synchronized void append(byte operation, long key, byte[] encodedValue) {
+        throwSyncFailure();
+        int bodyLength = 1 + 8 + encodedValue.length;
+        if(pending.remaining() < bodyLength + 8) {
+            if(pending.position() > 0) sync();
+            if(pending.capacity() < bodyLength + 8) pending = ByteBuffer.allocate(bodyLength + 8);
+        }
+        int bodyStart = pending.position() + 4;
+        pending.putInt(bodyLength).put(operation).putLong(key).put(encodedValue);
+        checksum.reset();
+        checksum.update(pending.array(), bodyStart, bodyLength);
+        pending.putInt((int) checksum.getValue());
+        appendedBytes += bodyLength + 8;
+        if(syncer == null || pending.position() >= syncBytes) sync();
+    }
+
+    /**
+     * This method writes the pending records to the file and forces them to the disk.
+     * @throws UncheckedIOException if the records cannot be written.
+     */
+    public synchronized void sync() {
+        throwSyncFailure();
+        try {
+            flushPending();
+        } catch(IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * This method writes and forces the pending records, if there are any.
+     * @throws IOException if the records cannot be written.
+     */
+    private void flushPending() throws IOException {
+        if(pending.position() == 0) return;
+        pending.flip();
+        while(pending.hasRemaining()) channel.write(pending);
+        pending.clear();
+        channel.force(false);
+    }
+
+    /**
+     * This method is run by the sync thread on every interval. A failure is kept and reported to the next writer.
+     */
+    private synchronized void syncInBackground() {
+        if(syncFailure != null) return;
+        try {
+            flushPending();
+        } catch(IOException exception) {
+            syncFailure = exception;
+        }
+    }
+
+    /**
+     * This method rethrows the failure of a background sync, since the records it held may be lost.
+     * @throws UncheckedIOException if a background sync failed.
+     */
+    private void throwSyncFailure() {
+        if(syncFailure != null) throw new UncheckedIOException("A background sync of the write-ahead log failed.", syncFailure);
+    }
+
+    /**
+     * This method returns the number of bytes in the log, including the records not synced yet.
+     * @return the length of the log.
+     */
+    public synchronized long length() {
+        return appendedBytes;
+    }
+
+    /**
+     * This method stops the sync thread, then syncs the pending records and closes the file.
+     * The sync thread is shut down rather than interrupted, since interrupting a thread inside channel.force closes the channel
+     * and would lose the records still pending.
+     * @throws IOException if the records cannot be written or the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        //a pending interrupt would make the channel fail the final sync, so it is cleared here and restored at the end
+        boolean interrupted = Thread.interrupted();
+        if(syncer != null) {
+            syncer.shutdown();
+            while(true) {
+                try {
+                    syncer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    break;
+                } catch(InterruptedException exception) {
+                    interrupted = true;
+                }
+            }
+        }
+        try {
+            synchronized(this) {
+                try {
+                    if(syncFailure == null) flushPending();
+                } finally {
+                    channel.close();
+                }
+                if(syncFailure != null) throw syncFailure;
+            }
+        } finally {
+            if(interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method applies every complete record of the given log to CleverSIDC, in log order.
+     * Reading stops at the first record that is cut short or fails its checksum, which is what a crash in the middle
+     * of a write leaves behind; everything after it was never acknowledged as synced.
+     * @param cleverSidc the CleverSIDC object to apply the records to, or null to only validate the log
+     * @param file the log file, which may not exist
+     * @return the length of the valid prefix of the log.
+     * @throws IOException if the file cannot be read.
+     */
+    public static long replay(CleverSIDC cleverSidc, Path file) throws IOException {
+        if(!Files.exists(file)) return 0;
+        CRC32C recordChecksum = new CRC32C();
+        long validLength = 0;
+        try(FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            while(true) {
+                int read = input.read(buffer);
+                buffer.flip();
+                while(buffer.remaining() >= 4) {
+                    int start = buffer.position(), bodyLength = buffer.getInt(start);
+                    if(bodyLength < 9 || bodyLength > (1 << 30)) return validLength;
+                    if(buffer.remaining() < bodyLength + 8) break;
+                    recordChecksum.reset();
+                    recordChecksum.update(buffer.array(), start + 4, bodyLength);
+                    if((int) recordChecksum.getValue() != buffer.getInt(start + 4 + bodyLength)) return validLength;
+
+                    byte operation = buffer.get(start + 4); long key = buffer.getLong(start + 5);
+                    if(operation == ADD) {
+                        String value = new String(buffer.array(), start + 13, bodyLength - 9, StandardCharsets.UTF_8);
+                        if(cleverSidc != null) cleverSidc.add(cleverSidc, key, value);
+                    } else if(operation == REMOVE) {
+                        if(cleverSidc != null) cleverSidc.remove(cleverSidc, key);
+                    } else return validLength;
+                    buffer.position(start + bodyLength + 8);
+                    validLength += bodyLength + 8;
+                }
+                buffer.compact();
+                //whatever is left once the file ends is a record cut short
+                if(read == -1) return validLength;
+                //a record larger than the buffer needs a larger buffer
+                if(!buffer.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    buffer = larger.put(buffer);
+                }
+            }
+        }
+    }
+}
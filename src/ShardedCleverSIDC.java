@@ -0,0 +1,1072 @@
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * ShardedCleverSIDC class is a thread-safe CleverSIDC that splits the 8-digit key space into a fixed number of key ranges, or shards,
+ * each with its own CleverSIDC backend and its own StampedLock. A point operation locks only the shard owning its key, so writers
+ * to different shards never wait for each other, and write throughput grows with the number of cores instead of queuing on a single root.
+ * Queries spanning several shards visit them in key order: rangeKey and rank add up the counts of each shard, select walks the shard sizes,
+ * and allKeys, copyEntries and forEachInRange concatenate the shards, which is already the merged key order since the ranges do not overlap.
+ * <p>
+ * The shards start as equal slices of [10000000, 99999999]. Since new IDs tend to cluster, each shard checks the balance every
+ * REBALANCE_CHECK_INTERVAL insertions, and once the largest shard holds more than SKEW_RATIO times the average, every shard is
+ * locked and the entries are redistributed over new key ranges cut at the quantiles of the current keys.
+ * Each shard is read under its own lock in turn, so a query spanning shards that races with writers sees each shard at a slightly
+ * different moment; copyEntries and bulkLoad lock every shard at once.
+ * <p>
+ * With metrics on, each operation is timed once, around the whole call, so its latency includes the waits for shard locks and
+ * any rebalance it sets off, while the event counters add up those of every shard, including the shards replaced by rebalances.
+ * @author Rania Maoukout & teammate
+ */
+public class ShardedCleverSIDC extends CleverSIDC {
+    public static final int REBALANCE_CHECK_INTERVAL = 1024, SKEW_RATIO = 2;
+    private static final long MIN_KEY = 10000000L, KEY_SPACE = 90000000L;
+    private final int shardCount; private volatile ShardLayout layout;
+    private final EnumMap<Setting, Consumer<CleverSIDC>> shardSettings = new EnumMap<>(Setting.class);
+    private final AtomicBoolean rebalancing = new AtomicBoolean(); private final AtomicLong rebalanceCount = new AtomicLong();
+
+    /**
+     * A private enum naming the settings that every shard gets. Only the latest value of each is kept, and the shards
+     * created by a rebalance get them in this order, so the threshold, which creates the backend, comes first.
+     */
+    private enum Setting { THRESHOLD, ARRAY_GROWTH, ADAPTIVE, HASH_INDEX, VALUE_CACHE, METRICS }
+
+    /**
+     * A private static inner class that holds one key range: its CleverSIDC, the lock guarding it, and whether
+     * a rebalance has replaced it, in which case the operation that locked it starts over on the new layout.
+     */
+    private static class Shard {
+        private final CleverSIDC sidc = new CleverSIDC(); private final StampedLock lock = new StampedLock();
+        private boolean retired; private int addsSinceCheck;
+    }
+
+    /**
+     * A private static inner class presenting the metrics of a ShardedCleverSIDC. The latencies are those recorded around each call
+     * to the ShardedCleverSIDC; each event counter adds the count of the shards replaced by rebalances, kept in this object,
+     * to the counts of the current shards.
+     */
+    private static class ShardedMetrics extends SIDCMetrics {
+        private final ShardedCleverSIDC sharded;
+
+        /**
+         * Parameterized constructor.
+         * @param owner the ShardedCleverSIDC whose metrics are collected
+         */
+        ShardedMetrics(ShardedCleverSIDC owner) {
+            super(owner);
+            sharded = owner;
+        }
+
+        /**
+         * This method adds up a counter over the metrics of the current shards.
+         * @param counter the counter to read from the metrics of a shard
+         * @return the sum
+         */
+        private long sumOfShards(ToLongFunction<SIDCMetrics> counter) {
+            long sum = 0;
+            for(Shard shard : sharded.layout.shards) {
+                SIDCMetrics shardMetrics = shard.sidc.getSIDCMetrics();
+                if(shardMetrics != null) sum += counter.applyAsLong(shardMetrics);
+            }
+            return sum;
+        }
+
+        /**
+         * This method returns the number of AVLTree rotations, over every shard.
+         * @return the rotation count
+         */
+        @Override
+        public long getRotationCount() {
+            return super.getRotationCount() + sumOfShards(SIDCMetrics::getRotationCount);
+        }
+
+        /**
+         * This method returns the number of BPlusTree node splits, over every shard.
+         * @return the split count
+         */
+        @Override
+        public long getSplitCount() {
+            return super.getSplitCount() + sumOfShards(SIDCMetrics::getSplitCount);
+        }
+
+        /**
+         * This method returns the number of CircularArray resizes, over every shard.
+         * @return the resize count
+         */
+        @Override
+        public long getResizeCount() {
+            return super.getResizeCount() + sumOfShards(SIDCMetrics::getResizeCount);
+        }
+
+        /**
+         * This method returns the number of value arena compactions, over every shard.
+         * @return the compaction count
+         */
+        @Override
+        public long getCompactionCount() {
+            return super.getCompactionCount() + sumOfShards(SIDCMetrics::getCompactionCount);
+        }
+
+        /**
+         * This method returns the number of migrations between backends, over every shard.
+         * @return the migration count
+         */
+        @Override
+        public long getMigrationCount() {
+            return super.getMigrationCount() + sumOfShards(SIDCMetrics::getMigrationCount);
+        }
+
+        /**
+         * This method returns the number of generated keys that had to be drawn again, over every shard.
+         * @return the retry count
+         */
+        @Override
+        public long getGenerateRetryCount() {
+            return super.getGenerateRetryCount() + sumOfShards(SIDCMetrics::getGenerateRetryCount);
+        }
+
+        /**
+         * This method resets the latency histograms and the event counters, those of the shards included.
+         */
+        @Override
+        public void reset() {
+            super.reset();
+            for(Shard shard : sharded.layout.shards) {
+                SIDCMetrics shardMetrics = shard.sidc.getSIDCMetrics();
+                if(shardMetrics != null) shardMetrics.reset();
+            }
+        }
+    }
+
+    /**
+     * A private static inner class that maps keys to shards: shard i holds the keys from lowKeys[i] up to, but excluding, lowKeys[i + 1].
+     * A layout never changes once published; a rebalance publishes a new one.
+     */
+    private static class ShardLayout {
+        private final long[] lowKeys; private final Shard[] shards;
+
+        /**
+         * Parameterized constructor.
+         * @param lowKeys the smallest key of each shard, in ascending order, the first being Long.MIN_VALUE
+         */
+        private ShardLayout(long[] lowKeys) {
+            this.lowKeys = lowKeys;
+            shards = new Shard[lowKeys.length];
+            for(int i = 0; i < shards.length; i++) shards[i] = new Shard();
+        }
+
+        /**
+         * This method finds the shard holding the given key.
+         * @param key the key
+         * @return the index of the shard.
+         */
+        private int indexOf(long key) {
+            int index = Arrays.binarySearch(lowKeys, key);
+            return (index >= 0) ? index : -index - 2;
+        }
+    }
+
+    /**
+     * Default constructor. Creates one shard per available core.
+     */
+    public ShardedCleverSIDC() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param shardCount the number of shards
+     * @throws IllegalArgumentException if the number of shards is below 1.
+     */
+    public ShardedCleverSIDC(int shardCount) {
+        if(shardCount < 1) throw new IllegalArgumentException("There must be at least one shard.");
+        this.shardCount = shardCount;
+        long[] lowKeys = new long[shardCount];
+        lowKeys[0] = Long.MIN_VALUE;
+        for(int i = 1; i < shardCount; i++) lowKeys[i] = MIN_KEY + KEY_SPACE * i / shardCount;
+        layout = new ShardLayout(lowKeys);
+    }
+
+    /**
+     * This method returns the number of shards.
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * This method returns the number of entries of each shard, in key order.
+     * @return the shard sizes
+     */
+    public int[] getShardSizes() {
+        ShardLayout current = layout;
+        int[] sizes = new int[shardCount];
+        for(int i = 0; i < shardCount; i++) {
+            Shard shard = current.shards[i];
+            long stamp = shard.lock.readLock();
+            try {
+                sizes[i] = shard.sidc.size();
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * This method returns the number of rebalances so far.
+     * @return the rebalance count
+     */
+    public long getRebalanceCount() {
+        return rebalanceCount.get();
+    }
+
+    /**
+     * This method locks every shard of the current layout in key order, so that no rebalance can replace it until they are unlocked.
+     * @param stamps the array receiving the stamp of each shard
+     * @param write true for the write locks, false for the read locks
+     * @return the locked layout.
+     */
+    private ShardLayout lockAllShards(long[] stamps, boolean write) {
+        while(true) {
+            ShardLayout current = layout;
+            for(int i = 0; i < shardCount; i++) {
+                StampedLock lock = current.shards[i].lock;
+                stamps[i] = write ? lock.writeLock() : lock.readLock();
+            }
+            //a rebalance retires every shard of a layout at once, so checking the first is enough
+            if(!current.shards[0].retired) return current;
+            unlockAllShards(current, stamps);
+        }
+    }
+
+    /**
+     * This method unlocks every shard locked by lockAllShards.
+     * @param locked the locked layout
+     * @param stamps the stamp of each shard
+     */
+    private void unlockAllShards(ShardLayout locked, long[] stamps) {
+        for(int i = shardCount - 1; i >= 0; i--) locked.shards[i].lock.unlock(stamps[i]);
+    }
+
+    /**
+     * This method applies a setting to every shard and records it in place of the previous value of the same setting,
+     * so that the shards created by a rebalance get it too.
+     * @param name the setting
+     * @param setting the setting to apply
+     */
+    private void applyToShards(Setting name, Consumer<CleverSIDC> setting) {
+        long[] stamps = new long[shardCount];
+        ShardLayout current = lockAllShards(stamps, true);
+        try {
+            for(Shard shard : current.shards) setting.accept(shard.sidc);
+            shardSettings.put(name, setting);
+        } finally {
+            unlockAllShards(current, stamps);
+        }
+    }
+
+    /**
+     * This method defines the size of the list. The shards share it, so each one selects its backend for its own part of the size.
+     * Like on a single CleverSIDC, the current entries are dropped.
+     * @param size the size to be set for the CleverSIDC list
+     */
+    @Override
+    public void setSIDCThreshold(int size) {
+        int shardSize = (int) ((size + (long) shardCount - 1) / shardCount);
+        applyToShards(Setting.THRESHOLD, sidc -> sidc.setSIDCThreshold(shardSize));
+    }
+
+    /**
+     * This method sets the factor by which the capacity of the CircularArray of each shard is multiplied when it is full.
+     * @param growthFactor the growth factor, greater than 1
+     */
+    @Override
+    public void setSIDCArrayGrowth(double growthFactor) {
+        if(!(growthFactor > 1.0)) throw new IllegalArgumentException("The growth factor must be greater than 1.");
+        applyToShards(Setting.ARRAY_GROWTH, sidc -> sidc.setSIDCArrayGrowth(growthFactor));
+    }
+
+    /**
+     * This method shrinks the storage of the CircularArray of each shard to its number of entries.
+     */
+    @Override
+    public void trimToSize() {
+        long[] stamps = new long[shardCount];
+        ShardLayout current = lockAllShards(stamps, true);
+        try {
+            for(Shard shard : current.shards) shard.sidc.trimToSize();
+        } finally {
+            unlockAllShards(current, stamps);
+        }
+    }
+
+    /**
+     * This method lets each shard switch between the CircularArray and the AVLTree as its number of records changes.
+     * The watermarks apply to each shard on its own.
+     * @param low the size under which the records of a shard move to the CircularArray
+     * @param high the size over which the records of a shard move to the AVLTree
+     */
+    @Override
+    public void setSIDCAdaptive(int low, int high) {
+        if(low < 0 || low >= high) throw new IllegalArgumentException("The low watermark must be non-negative and below the high watermark.");
+        applyToShards(Setting.ADAPTIVE, sidc -> sidc.setSIDCAdaptive(low, high));
+    }
+
+    /**
+     * This method turns on or off the hash index of each shard.
+     * @param enabled true to build the indexes from the current entries, false to drop them
+     */
+    @Override
+    public void setSIDCHashIndex(boolean enabled) {
+        applyToShards(Setting.HASH_INDEX, sidc -> sidc.setSIDCHashIndex(enabled));
+    }
+
+    /**
+     * This method would turn on the bitset key generator, which a ShardedCleverSIDC does not use:
+     * generate draws keys from the whole key space and checks each one against the shard that would hold it.
+     * @param enabled whether to turn the generator on
+     * @throws UnsupportedOperationException if enabled is true.
+     */
+    @Override
+    public void setSIDCBitsetGenerator(boolean enabled) {
+        if(enabled) throw new UnsupportedOperationException("A ShardedCleverSIDC generates keys without a bitset.");
+    }
+
+    /**
+     * This method turns on or off a read-through value cache in each shard, splitting the given limits evenly between the shards.
+     * @param maxEntries the maximum number of cached values, or 0 to drop the caches
+     * @param maxBytes the maximum estimated size of the cached values in bytes, or 0 for no byte limit
+     */
+    @Override
+    public void setSIDCValueCache(int maxEntries, long maxBytes) {
+        int shardEntries = (maxEntries == 0) ? 0 : Math.max(1, maxEntries / shardCount);
+        long shardBytes = (maxBytes == 0) ? 0 : Math.max(1, maxBytes / shardCount);
+        applyToShards(Setting.VALUE_CACHE, sidc -> sidc.setSIDCValueCache(shardEntries, shardBytes));
+    }
+
+    /**
+     * This method turns on or off the collection of metrics. Each shard gets metrics of its own, which count the events of its backend,
+     * and getSIDCMetrics returns a merged view: the latency of each call to this CleverSIDC, and the event counters of every shard added up.
+     * @param enabled true to start collecting from zero, false to stop and drop the metrics
+     */
+    @Override
+    public void setSIDCMetrics(boolean enabled) {
+        if(!enabled) sidcMetrics = null;
+        applyToShards(Setting.METRICS, sidc -> sidc.setSIDCMetrics(enabled));
+        if(enabled) sidcMetrics = new ShardedMetrics(this);
+    }
+
+    /**
+     * This method names the backend for the metrics.
+     * @return "sharded".
+     */
+    @Override
+    protected String activeBackendName() {
+        return "sharded";
+    }
+
+    /**
+     * This method returns the height of the tallest AVLTree among the shards.
+     * @return the height, or 0 if no shard has an AVLTree backend.
+     */
+    @Override
+    protected int treeHeight() {
+        int height = 0;
+        for(Shard shard : layout.shards) {
+            long stamp = shard.lock.readLock();
+            try {
+                height = Math.max(height, shard.sidc.treeHeight());
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return height;
+    }
+
+    /**
+     * This method returns the number of entries in CleverSIDC.
+     * @return the number of entries.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for(int shardSize : getShardSizes()) size += shardSize;
+        return size;
+    }
+
+    /**
+     * This method randomly generates new non-existing keys of 8 digits. Only the shard that would hold the key is locked to check it.
+     * @return the generated key.
+     */
+    @Override
+    public long generate() {
+        long start = startTimer();
+        try {
+            return generateKey();
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE, start);
+        }
+    }
+
+    /**
+     * This method randomly generates a new non-existing key of 8 digits.
+     * @return the generated key.
+     */
+    private long generateKey() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long newKey = MIN_KEY + random.nextLong(KEY_SPACE);
+        while(containsKey(newKey)) {
+            if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
+            newKey = MIN_KEY + random.nextLong(KEY_SPACE);
+        }
+        return newKey;
+    }
+
+    /**
+     * This method randomly generates the given number of distinct non-existing keys of 8 digits in one call.
+     * None of the keys are added to CleverSIDC.
+     * @param count the number of keys to generate
+     * @return the generated keys.
+     * @throws IllegalArgumentException if there are not that many unused 8-digit keys left.
+     */
+    @Override
+    public long[] generate(int count) {
+        long start = startTimer();
+        try {
+            if(count < 0 || count > KEY_SPACE - size()) throw new IllegalArgumentException("Cannot generate " + count + " unused 8-digit keys.");
+            long[] newKeys = new long[count];
+            LongIntHashIndex batchKeys = new LongIntHashIndex(count);
+            for(int i = 0; i < count; i++) {
+                long newKey = generateKey();
+                while(batchKeys.containsKey(newKey)) {
+                    if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
+                    newKey = generateKey();
+                }
+                batchKeys.put(newKey, i);
+                newKeys[i] = newKey;
+            }
+            return newKeys;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE_BATCH, start);
+        }
+    }
+
+    /**
+     * This method tells whether the given key exists.
+     * @param key the key to look for
+     * @return true if the key exists.
+     */
+    private boolean containsKey(long key) {
+        while(true) {
+            Shard shard = layout.shards[layout.indexOf(key)];
+            long stamp = shard.lock.readLock();
+            try {
+                if(shard.retired) continue;
+                return shard.sidc.rangeKey(key - 1, key + 1) == 1;
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * This method prints all keys in CleverSIDC as a sorted sequence, one shard after the other.
+     * @param cleverSidc the CleverSIDC object in context
+     */
+    @Override
+    public void allKeys(CleverSIDC cleverSidc) {
+        retry:
+        while(true) {
+            ShardLayout current = layout;
+            for(Shard shard : current.shards) {
+                long stamp = shard.lock.readLock();
+                try {
+                    if(shard.retired) continue retry;
+                    if(shard.sidc.size() > 0) shard.sidc.allKeys(shard.sidc);
+                } finally {
+                    shard.lock.unlockRead(stamp);
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * This method adds an entry for the given key and value, locking only the shard that holds the key.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the new key entry
+     * @param value the value associated with the key entry
+     */
+    @Override
+    public void add(CleverSIDC cleverSidc, long key, String value) {
+        long start = startTimer();
+        try {
+            while(true) {
+                Shard shard = layout.shards[layout.indexOf(key)];
+                boolean checkBalance;
+                long stamp = shard.lock.writeLock();
+                try {
+                    if(shard.retired) continue;
+                    shard.sidc.add(shard.sidc, key, value);
+                    checkBalance = ++shard.addsSinceCheck >= REBALANCE_CHECK_INTERVAL;
+                    if(checkBalance) shard.addsSinceCheck = 0;
+                } finally {
+                    shard.lock.unlockWrite(stamp);
+                }
+                if(checkBalance) rebalanceIfSkewed();
+                return;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.ADD, start);
+        }
+    }
+
+    /**
+     * This method copies every entry, in key order, into the given arrays, with every shard locked so the copy is consistent.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keysOut the array receiving the keys, at least size() long
+     * @param valuesOut the array receiving the values, at least size() long
+     * @return The number of entries copied.
+     */
+    @Override
+    public int copyEntries(CleverSIDC cleverSidc, long[] keysOut, String[] valuesOut) {
+        long[] stamps = new long[shardCount];
+        ShardLayout current = lockAllShards(stamps, false);
+        try {
+            return copyShards(current, keysOut, valuesOut);
+        } finally {
+            unlockAllShards(current, stamps);
+        }
+    }
+
+    /**
+     * This method copies the entries of every shard of a locked layout, in key order, into the given arrays.
+     * @param locked the layout whose shards are all locked
+     * @param keysOut the array receiving the keys
+     * @param valuesOut the array receiving the values
+     * @return the number of entries copied.
+     */
+    private int copyShards(ShardLayout locked, long[] keysOut, String[] valuesOut) {
+        int copied = 0;
+        for(Shard shard : locked.shards) {
+            int shardSize = shard.sidc.size();
+            if(shardSize == 0) continue;
+            long[] shardKeys = new long[shardSize]; String[] shardValues = new String[shardSize];
+            shard.sidc.copyEntries(shard.sidc, shardKeys, shardValues);
+            System.arraycopy(shardKeys, 0, keysOut, copied, shardSize);
+            System.arraycopy(shardValues, 0, valuesOut, copied, shardSize);
+            copied += shardSize;
+        }
+        return copied;
+    }
+
+    /**
+     * This method adds many entries at once. Every shard is locked, the new entries are merged with the current ones,
+     * and the shards are rebuilt with key ranges cut at the quantiles of the result, so a bulk load always leaves the shards balanced.
+     * As with add, a key that already exists keeps its value, and the first of repeated keys wins.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     */
+    @Override
+    public void bulkLoad(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long start = startTimer();
+        try {
+            SIDCArraySort.parallelSortPairs(keys, values, count);
+            count = SIDCArraySort.removeDuplicates(keys, values, count);
+            long[] stamps = new long[shardCount];
+            ShardLayout current = lockAllShards(stamps, true);
+            try {
+                int size = 0;
+                for(Shard shard : current.shards) size += shard.sidc.size();
+                long[] currentKeys = new long[size]; String[] currentValues = new String[size];
+                copyShards(current, currentKeys, currentValues);
+                long[] mergedKeys = new long[size + count]; String[] mergedValues = new String[size + count];
+                int mergedCount = SIDCArraySort.mergeDistinct(currentKeys, currentValues, size, keys, values, count, mergedKeys, mergedValues);
+                redistribute(current, mergedKeys, mergedValues, mergedCount);
+            } finally {
+                unlockAllShards(current, stamps);
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.BULK_LOAD, start);
+        }
+    }
+
+    /**
+     * This method removes the entry for the given key, locking only the shard that holds the key.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to be removed
+     * @return The removed key, or NO_KEY if the key does not exist.
+     */
+    @Override
+    public long remove(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            while(true) {
+                Shard shard = layout.shards[layout.indexOf(key)];
+                long stamp = shard.lock.writeLock();
+                try {
+                    if(shard.retired) continue;
+                    return shard.sidc.remove(shard.sidc, key);
+                } finally {
+                    shard.lock.unlockWrite(stamp);
+                }
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.REMOVE, start);
+        }
+    }
+
+    /**
+     * This method groups the first count keys by shard.
+     * @param current the layout mapping keys to shards
+     * @param keys the keys
+     * @param count the number of keys to take from the given array
+     * @param order the array receiving the positions of the keys, grouped by shard in shard order
+     * @return the start of each shard's group in order, followed by count.
+     */
+    private int[] groupByShard(ShardLayout current, long[] keys, int count, int[] order) {
+        int[] shardOf = new int[count], starts = new int[shardCount + 1];
+        for(int i = 0; i < count; i++) {
+            shardOf[i] = current.indexOf(keys[i]);
+            starts[shardOf[i] + 1]++;
+        }
+        for(int s = 0; s < shardCount; s++) starts[s + 1] += starts[s];
+        int[] next = Arrays.copyOf(starts, shardCount);
+        for(int i = 0; i < count; i++) order[next[shardOf[i]]++] = i;
+        return starts;
+    }
+
+    /**
+     * This method adds a batch of entries and returns how many keys were new. The batch is split by shard,
+     * and each shard takes its part under a single write lock.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     * @return The number of entries added.
+     */
+    @Override
+    public int addAll(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long start = startTimer();
+        try {
+            //the first of repeated keys wins, as on a single CleverSIDC
+            SIDCArraySort.sortPairs(keys, values, count);
+            count = SIDCArraySort.removeDuplicates(keys, values, count);
+            int added = 0, from = 0;
+            boolean checkBalance = false;
+            while(from < count) {
+                Shard shard = layout.shards[layout.indexOf(keys[from])];
+                long stamp = shard.lock.writeLock();
+                try {
+                    if(shard.retired) continue;
+                    int to = from;
+                    while(to < count && layout.shards[layout.indexOf(keys[to])] == shard) to++;
+                    added += shard.sidc.addAll(shard.sidc, Arrays.copyOfRange(keys, from, to), Arrays.copyOfRange(values, from, to), to - from);
+                    shard.addsSinceCheck += to - from;
+                    if(shard.addsSinceCheck >= REBALANCE_CHECK_INTERVAL) {
+                        shard.addsSinceCheck = 0;
+                        checkBalance = true;
+                    }
+                    from = to;
+                } finally {
+                    shard.lock.unlockWrite(stamp);
+                }
+            }
+            if(checkBalance) rebalanceIfSkewed();
+            return added;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.ADD_ALL, start);
+        }
+    }
+
+    /**
+     * This method removes a batch of keys and returns how many of them existed. The batch is split by shard,
+     * and each shard removes its part under a single write lock.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys to remove, in any order; the array is reordered in place
+     * @param count the number of keys to take from the given array
+     * @return The number of entries removed.
+     */
+    @Override
+    public int removeAll(CleverSIDC cleverSidc, long[] keys, int count) {
+        long start = startTimer();
+        try {
+            Arrays.sort(keys, 0, count);
+            int removed = 0, from = 0;
+            while(from < count) {
+                Shard shard = layout.shards[layout.indexOf(keys[from])];
+                long stamp = shard.lock.writeLock();
+                try {
+                    if(shard.retired) continue;
+                    int to = from;
+                    while(to < count && layout.shards[layout.indexOf(keys[to])] == shard) to++;
+                    removed += shard.sidc.removeAll(shard.sidc, Arrays.copyOfRange(keys, from, to), to - from);
+                    from = to;
+                } finally {
+                    shard.lock.unlockWrite(stamp);
+                }
+            }
+            return removed;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.REMOVE_ALL, start);
+        }
+    }
+
+    /**
+     * This method looks up the values of a batch of keys. The batch is split by shard, and each shard answers its part under a single read lock.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys for which values are to be retrieved, in any order
+     * @param valuesOut the array receiving the values, at least count long
+     * @param count the number of keys to take from the given array
+     * @return The number of keys found.
+     */
+    @Override
+    public int getAll(CleverSIDC cleverSidc, long[] keys, String[] valuesOut, int count) {
+        long start = startTimer();
+        try {
+            retry:
+            while(true) {
+                ShardLayout current = layout;
+                int[] order = new int[count];
+                int[] starts = groupByShard(current, keys, count, order);
+                int found = 0;
+                for(int s = 0; s < shardCount; s++) {
+                    int groupSize = starts[s + 1] - starts[s];
+                    if(groupSize == 0) continue;
+                    long[] groupKeys = new long[groupSize]; String[] groupValues = new String[groupSize];
+                    for(int i = 0; i < groupSize; i++) groupKeys[i] = keys[order[starts[s] + i]];
+                    Shard shard = current.shards[s];
+                    long stamp = shard.lock.readLock();
+                    try {
+                        if(shard.retired) continue retry;
+                        found += shard.sidc.getAll(shard.sidc, groupKeys, groupValues, groupSize);
+                    } finally {
+                        shard.lock.unlockRead(stamp);
+                    }
+                    for(int i = 0; i < groupSize; i++) valuesOut[order[starts[s] + i]] = groupValues[i];
+                }
+                return found;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GET_ALL, start);
+        }
+    }
+
+    /**
+     * This method returns the values of the given key, locking only the shard that holds the key.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which values are to be retrieved
+     * @return The value of the given key, or NO_VALUE if the key does not exist.
+     */
+    @Override
+    public String getValues(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            while(true) {
+                Shard shard = layout.shards[layout.indexOf(key)];
+                long stamp = shard.lock.readLock();
+                try {
+                    if(shard.retired) continue;
+                    return shard.sidc.getValues(shard.sidc, key);
+                } finally {
+                    shard.lock.unlockRead(stamp);
+                }
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GET_VALUES, start);
+        }
+    }
+
+    /**
+     * This method returns the predecessor key of the given key, looking in the shard of the key and then in the shards below it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the predecessor is to be found
+     * @return The predecessor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long prevKey(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            retry:
+            while(true) {
+                ShardLayout current = layout;
+                for(int s = current.indexOf(key); s >= 0; s--) {
+                    Shard shard = current.shards[s];
+                    long stamp = shard.lock.readLock();
+                    try {
+                        if(shard.retired) continue retry;
+                        long predecessorKey = shard.sidc.prevKey(shard.sidc, key);
+                        if(predecessorKey != NO_KEY) return predecessorKey;
+                    } finally {
+                        shard.lock.unlockRead(stamp);
+                    }
+                }
+                return NO_KEY;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.PREV_KEY, start);
+        }
+    }
+
+    /**
+     * This method returns the successor key of the given key, looking in the shard of the key and then in the shards above it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the successor is to be found
+     * @return The successor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long nextKey(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            retry:
+            while(true) {
+                ShardLayout current = layout;
+                for(int s = current.indexOf(key); s < shardCount; s++) {
+                    Shard shard = current.shards[s];
+                    long stamp = shard.lock.readLock();
+                    try {
+                        if(shard.retired) continue retry;
+                        long successorKey = shard.sidc.nextKey(shard.sidc, key);
+                        if(successorKey != NO_KEY) return successorKey;
+                    } finally {
+                        shard.lock.unlockRead(stamp);
+                    }
+                }
+                return NO_KEY;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.NEXT_KEY, start);
+        }
+    }
+
+    /**
+     * This method returns the number of keys that are within the specified range of key1 and key2,
+     * adding up the counts of the shards the range covers.
+     * @param key1 the starting key of the range
+     * @param key2 the ending key of the range
+     * @return The number of keys strictly between key1 and key2; 0 if key1 is not below key2.
+     */
+    @Override
+    public int rangeKey(long key1, long key2) {
+        long start = startTimer();
+        try {
+            if(key1 >= key2) return 0;
+            retry:
+            while(true) {
+                ShardLayout current = layout;
+                int count = 0;
+                for(int s = current.indexOf(key1), last = current.indexOf(key2); s <= last; s++) {
+                    Shard shard = current.shards[s];
+                    long stamp = shard.lock.readLock();
+                    try {
+                        if(shard.retired) continue retry;
+                        count += shard.sidc.rangeKey(key1, key2);
+                    } finally {
+                        shard.lock.unlockRead(stamp);
+                    }
+                }
+                return count;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.RANGE_KEY, start);
+        }
+    }
+
+    /**
+     * This method streams the entries whose keys are between low and high, both included, to the given consumer in key order,
+     * holding the read lock of one shard at a time. The consumer must not write to this CleverSIDC.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return The number of entries passed to the consumer.
+     */
+    @Override
+    public int forEachInRange(long low, long high, LongObjConsumer<String> consumer) {
+        long start = startTimer();
+        try {
+            if(low > high) return 0;
+            boolean[] stopped = new boolean[1];
+            LongObjConsumer<String> stopTracker = (key, value) -> {
+                if(consumer.accept(key, value)) return true;
+                stopped[0] = true;
+                return false;
+            };
+            ShardLayout current = layout;
+            int passed = 0;
+            long nextLow = low;
+            //after a rebalance, carry on from the key following the last one passed
+            for(int s = current.indexOf(nextLow); s < shardCount && !stopped[0] && nextLow <= high; s++) {
+                Shard shard = current.shards[s];
+                long stamp = shard.lock.readLock();
+                try {
+                    if(shard.retired) {
+                        current = layout;
+                        s = current.indexOf(nextLow) - 1;
+                        continue;
+                    }
+                    passed += shard.sidc.forEachInRange(nextLow, high, stopTracker);
+                } finally {
+                    shard.lock.unlockRead(stamp);
+                }
+                if(s + 1 < shardCount) nextLow = Math.max(nextLow, current.lowKeys[s + 1]);
+            }
+            return passed;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.FOR_EACH, start);
+        }
+    }
+
+    /**
+     * This method returns the rank of the given key, adding the sizes of the shards below the shard of the key to its rank there.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to rank
+     * @return The number of smaller keys.
+     */
+    @Override
+    public int rank(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            retry:
+            while(true) {
+                ShardLayout current = layout;
+                int rank = 0;
+                for(int s = 0, last = current.indexOf(key); s <= last; s++) {
+                    Shard shard = current.shards[s];
+                    long stamp = shard.lock.readLock();
+                    try {
+                        if(shard.retired) continue retry;
+                        rank += (s < last) ? shard.sidc.size() : shard.sidc.rank(shard.sidc, key);
+                    } finally {
+                        shard.lock.unlockRead(stamp);
+                    }
+                }
+                return rank;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.RANK, start);
+        }
+    }
+
+    /**
+     * This method returns the key at the given position of the sorted sequence of keys, skipping whole shards by their sizes.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param index the zero-based position of the key in sorted order
+     * @return The key at the given position, or NO_KEY if the position is out of bounds.
+     */
+    @Override
+    public long select(CleverSIDC cleverSidc, int index) {
+        long start = startTimer();
+        try {
+            if(index < 0) return NO_KEY;
+            retry:
+            while(true) {
+                ShardLayout current = layout;
+                int remaining = index;
+                for(Shard shard : current.shards) {
+                    long stamp = shard.lock.readLock();
+                    try {
+                        if(shard.retired) continue retry;
+                        int shardSize = shard.sidc.size();
+                        if(remaining < shardSize) return shard.sidc.select(shard.sidc, remaining);
+                        remaining -= shardSize;
+                    } finally {
+                        shard.lock.unlockRead(stamp);
+                    }
+                }
+                return NO_KEY;
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.SELECT, start);
+        }
+    }
+
+    /**
+     * This method redistributes the entries over new shards if the largest shard holds more than SKEW_RATIO times the average.
+     * Only one thread rebalances at a time; the others carry on.
+     */
+    private void rebalanceIfSkewed() {
+        if(shardCount == 1 || !rebalancing.compareAndSet(false, true)) return;
+        try {
+            int[] sizes = getShardSizes();
+            long total = 0; int largest = 0;
+            for(int shardSize : sizes) {
+                total += shardSize;
+                largest = Math.max(largest, shardSize);
+            }
+            if(largest > SKEW_RATIO * total / shardCount) rebalance();
+        } finally {
+            rebalancing.set(false);
+        }
+    }
+
+    /**
+     * This method locks every shard and redistributes the entries over new shards with key ranges cut at the quantiles of the current keys,
+     * so each shard ends up with the same number of entries.
+     */
+    public void rebalance() {
+        long start = startTimer();
+        try {
+            long[] stamps = new long[shardCount];
+            ShardLayout current = lockAllShards(stamps, true);
+            try {
+                int size = 0;
+                for(Shard shard : current.shards) size += shard.sidc.size();
+                long[] keys = new long[size]; String[] values = new String[size];
+                copyShards(current, keys, values);
+                redistribute(current, keys, values, size);
+            } finally {
+                unlockAllShards(current, stamps);
+            }
+        } finally {
+            stopTimer(SIDCMetrics.Operation.REBALANCE, start);
+        }
+    }
+
+    /**
+     * This method replaces the given locked layout with new shards holding the given entries, cut at their quantiles,
+     * and retires the old shards so the operations waiting on them start over.
+     * @param locked the current layout, with every shard write-locked
+     * @param keys the entries' keys, in ascending order and without repeats
+     * @param values the values associated with the keys
+     * @param count the number of entries to take from the given arrays
+     */
+    private void redistribute(ShardLayout locked, long[] keys, String[] values, int count) {
+        long[] lowKeys = new long[shardCount];
+        lowKeys[0] = Long.MIN_VALUE;
+        for(int i = 1; i < shardCount; i++) {
+            //too few entries for a quantile each: fall back to equal slices of the key space
+            lowKeys[i] = (count >= shardCount) ? keys[(int) ((long) count * i / shardCount)] : MIN_KEY + KEY_SPACE * i / shardCount;
+        }
+        ShardLayout rebalanced = new ShardLayout(lowKeys);
+        int from = 0;
+        for(int i = 0; i < shardCount; i++) {
+            CleverSIDC sidc = rebalanced.shards[i].sidc;
+            for(Consumer<CleverSIDC> setting : shardSettings.values()) setting.accept(sidc);
+            int to = from;
+            while(to < count && (i + 1 == shardCount || keys[to] < lowKeys[i + 1])) to++;
+            sidc.bulkLoad(sidc, Arrays.copyOfRange(keys, from, to), Arrays.copyOfRange(values, from, to), to - from);
+            from = to;
+        }
+        layout = rebalanced;
+        for(Shard shard : locked.shards) shard.retired = true;
+        rebalanceCount.incrementAndGet();
+        SIDCMetrics metrics = sidcMetrics;
+        if(metrics != null) {
+            //keep the events of the retired shards, whose metrics go with them
+            for(Shard shard : locked.shards) {
+                if(shard.sidc.getSIDCMetrics() != null) metrics.addCounts(shard.sidc.getSIDCMetrics());
+            }
+            metrics.countRebalance();
+        }
+    }
+}
@@ -0,0 +1,804 @@
+import java.util.Arrays;
+
+/**
+ * Implementation of an AVL Tree whose nodes live in a slab of primitive arrays, an extension of the CleverSIDC framework.
+ * A node is an int slot into a few primitive arrays instead of a separate heap object holding references to its children.
+ * The key and the two child slots of a node sit next to each other in one long array, so a descent reads a single cache line
+ * per node, while the subtree sizes and heights, only needed to rebalance and rank, live in arrays of their own.
+ * Values are kept as int codes of a CompactValueStore rather than String references, so repeated names are stored once.
+ * This takes 25 bytes per node, against 40 for an AvlTree node object plus its String, and leaves the garbage
+ * collector only a handful of large arrays to trace. Slot 0 stands for the empty subtree; removed slots are chained in a
+ * free list and reused.
+ * Every operation is iterative, with an explicit path for insertions and deletions, so no call depends on the recursion depth.
+ * With metrics on, every operation is timed, and the rotations, slab resizes and value arena compactions are counted.
+ * @author Rania Maoukout & teammate
+ */
+public class SlabAvlTree extends CleverSIDC {
+    private static final int NIL = 0, INITIAL_CAPACITY = 16, MAX_HEIGHT = 64;
+    //nodes[2 * slot] holds the key, nodes[2 * slot + 1] the left child slot in its high half and the right child slot in its low half
+    private long[] nodes; private int[] valueCodes, size; private byte[] height; private CompactValueStore valueStore;
+    private int root = NIL, nextSlot = 1, freeSlot = NIL;
+    private final int[] pathNodes = new int[MAX_HEIGHT]; private final boolean[] pathLeft = new boolean[MAX_HEIGHT];
+
+    /**
+     * Default constructor.
+     */
+    public SlabAvlTree() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param expectedSize the number of entries the slab should hold without growing
+     */
+    public SlabAvlTree(int expectedSize) {
+        allocateSlab(Math.max(INITIAL_CAPACITY, expectedSize + 1));
+    }
+
+    /**
+     * This method replaces the slab with empty arrays of the given capacity.
+     * @param capacity the number of slots, including the empty subtree slot
+     */
+    private void allocateSlab(int capacity) {
+        nodes = new long[capacity * 2];
+        valueCodes = new int[capacity];
+        valueStore = new CompactValueStore();
+        valueStore.sidcMetrics = sidcMetrics;
+        size = new int[capacity];
+        height = new byte[capacity];
+        root = NIL; nextSlot = 1; freeSlot = NIL;
+    }
+
+    /**
+     * This method grows every array of the slab by half.
+     */
+    private void growSlab() {
+        int capacity = valueCodes.length + (valueCodes.length >> 1);
+        nodes = Arrays.copyOf(nodes, capacity * 2);
+        valueCodes = Arrays.copyOf(valueCodes, capacity);
+        size = Arrays.copyOf(size, capacity);
+        height = Arrays.copyOf(height, capacity);
+        if(sidcMetrics != null) sidcMetrics.countResize();
+    }
+
+    /**
+     * This method returns the key of a node.
+     * @param node the slot of the node
+     * @return the key of the node
+     */
+    private long keyOf(int node) {
+        return nodes[node << 1];
+    }
+
+    /**
+     * This method returns the left child of a node.
+     * @param node the slot of the node
+     * @return the slot of the left child, or NIL if there is none.
+     */
+    private int leftOf(int node) {
+        return (int) (nodes[(node << 1) + 1] >>> 32);
+    }
+
+    /**
+     * This method returns the right child of a node.
+     * @param node the slot of the node
+     * @return the slot of the right child, or NIL if there is none.
+     */
+    private int rightOf(int node) {
+        return (int) nodes[(node << 1) + 1];
+    }
+
+    /**
+     * This method sets the key of a node.
+     * @param node the slot of the node
+     * @param key the new key
+     */
+    private void setKey(int node, long key) {
+        nodes[node << 1] = key;
+    }
+
+    /**
+     * This method sets the left child of a node.
+     * @param node the slot of the node
+     * @param child the slot of the new left child
+     */
+    private void setLeft(int node, int child) {
+        int links = (node << 1) + 1;
+        nodes[links] = ((long) child << 32) | (nodes[links] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * This method sets the right child of a node.
+     * @param node the slot of the node
+     * @param child the slot of the new right child
+     */
+    private void setRight(int node, int child) {
+        int links = (node << 1) + 1;
+        nodes[links] = (nodes[links] & 0xFFFFFFFF00000000L) | (child & 0xFFFFFFFFL);
+    }
+
+    /**
+     * This method takes a slot for a new leaf, from the free list when possible.
+     * @param key the key of the new node
+     * @param value the value associated with the key
+     * @return the slot of the new node.
+     */
+    private int newNode(long key, String value) {
+        int slot;
+        if(freeSlot != NIL) {
+            slot = freeSlot;
+            freeSlot = leftOf(slot);
+        } else {
+            if(nextSlot == valueCodes.length) growSlab();
+            slot = nextSlot++;
+        }
+        setKey(slot, key);
+        valueCodes[slot] = valueStore.encode(value);
+        setLeft(slot, NIL);
+        setRight(slot, NIL);
+        size[slot] = 1;
+        height[slot] = 1;
+        return slot;
+    }
+
+    /**
+     * This method returns a slot to the free list, chained through its left child.
+     * @param slot the slot of the removed node
+     */
+    private void freeNode(int slot) {
+        setLeft(slot, freeSlot);
+        freeSlot = slot;
+    }
+
+    /**
+     * This method recomputes the height and subtree size of a node from its children.
+     * @param node the slot of the node
+     */
+    private void updateNode(int node) {
+        height[node] = (byte) (1 + Math.max(height[leftOf(node)], height[rightOf(node)]));
+        size[node] = 1 + size[leftOf(node)] + size[rightOf(node)];
+    }
+
+    /**
+     * This method performs a left rotation around the given node.
+     * @param node the slot of the node to rotate
+     * @return the slot of the new root of the subtree.
+     */
+    private int leftRotation(int node) {
+        if(sidcMetrics != null) sidcMetrics.countRotation();
+        int newRoot = rightOf(node);
+        setRight(node, leftOf(newRoot));
+        setLeft(newRoot, node);
+        updateNode(node);
+        updateNode(newRoot);
+        return newRoot;
+    }
+
+    /**
+     * This method performs a right rotation around the given node.
+     * @param node the slot of the node to rotate
+     * @return the slot of the new root of the subtree.
+     */
+    private int rightRotation(int node) {
+        if(sidcMetrics != null) sidcMetrics.countRotation();
+        int newRoot = leftOf(node);
+        setLeft(node, rightOf(newRoot));
+        setRight(newRoot, node);
+        updateNode(node);
+        updateNode(newRoot);
+        return newRoot;
+    }
+
+    /**
+     * This method updates a node whose subtree changed, and rotates it if it is out of balance.
+     * @param node the slot of the node
+     * @return the slot of the root of the balanced subtree.
+     */
+    private int rebalanceNode(int node) {
+        updateNode(node);
+        int balanceFactor = height[leftOf(node)] - height[rightOf(node)];
+        if(balanceFactor > 1) {
+            if(height[leftOf(leftOf(node))] < height[rightOf(leftOf(node))]) setLeft(node, leftRotation(leftOf(node)));
+            return rightRotation(node);
+        }
+        if(balanceFactor < -1) {
+            if(height[rightOf(rightOf(node))] < height[leftOf(rightOf(node))]) setRight(node, rightRotation(rightOf(node)));
+            return leftRotation(node);
+        }
+        return node;
+    }
+
+    /**
+     * This method walks back up the recorded path, reattaching each changed subtree to its parent and rebalancing the parent.
+     * @param depth the number of nodes on the path
+     * @param subtree the slot of the new root of the subtree below the last node of the path
+     */
+    private void rebalancePath(int depth, int subtree) {
+        for(int i = depth - 1; i >= 0; i--) {
+            int node = pathNodes[i];
+            if(pathLeft[i]) setLeft(node, subtree);
+            else setRight(node, subtree);
+            subtree = rebalanceNode(node);
+        }
+        root = subtree;
+    }
+
+    /**
+     * This method finds the slot holding the given key.
+     * @param key the key to search for
+     * @return the slot of the key, or NIL if the key does not exist.
+     */
+    private int findSlot(long key) {
+        int node = root;
+        while(node != NIL && keyOf(node) != key) {
+            node = (key < keyOf(node)) ? leftOf(node) : rightOf(node);
+        }
+        return node;
+    }
+
+    /**
+     * This method counts the keys strictly smaller than the given key.
+     * @param key the key to rank
+     * @return the number of smaller keys.
+     */
+    private int rankOfKey(long key) {
+        int node = root, rank = 0;
+        while(node != NIL) {
+            if(key <= keyOf(node)) {
+                node = leftOf(node);
+            } else {
+                rank += size[leftOf(node)] + 1;
+                node = rightOf(node);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * This method builds a balanced subtree from the sorted entries between the given indices.
+     * @param sortedKeys the keys in ascending order
+     * @param sortedValues the values associated with the keys
+     * @param low the index of the first entry of the subtree
+     * @param high the index of the last entry of the subtree
+     * @return the slot of the root of the subtree, or NIL if the range is empty.
+     */
+    private int buildSubtree(long[] sortedKeys, String[] sortedValues, int low, int high) {
+        if(low > high) return NIL;
+        int mid = (low + high) >>> 1;
+        int node = newNode(sortedKeys[mid], sortedValues[mid]);
+        setLeft(node, buildSubtree(sortedKeys, sortedValues, low, mid - 1));
+        setRight(node, buildSubtree(sortedKeys, sortedValues, mid + 1, high));
+        updateNode(node);
+        return node;
+    }
+
+    // ---------------------------------------------------------------- //
+    //                        OVERRIDDEN METHODS                        //
+    // ---------------------------------------------------------------- //
+    /**
+     * This method keeps the slab AVL tree as the backend, whatever the size; the threshold has no effect here.
+     * @param size the size to be set for the CleverSIDC list
+     */
+    @Override
+    public void setSIDCThreshold(int size) {}
+
+    /**
+     * The slab AVL tree is its own backend and cannot migrate.
+     * @param low the size under which the records move to the CircularArray
+     * @param high the size over which the records move to the AVLTree
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void setSIDCAdaptive(int low, int high) {
+        throw new UnsupportedOperationException("The slab AVL tree does not migrate between backends.");
+    }
+
+    /**
+     * The slab AVL tree does not maintain a hash index.
+     * @param enabled true to build the index from the current entries, false to drop it
+     * @throws UnsupportedOperationException if enabled is true.
+     */
+    @Override
+    public void setSIDCHashIndex(boolean enabled) {
+        if(enabled) throw new UnsupportedOperationException("The slab AVL tree does not maintain a hash index.");
+    }
+
+    /**
+     * The slab AVL tree does not maintain a key bitset.
+     * @param enabled true to build the bitset from the current entries, false to drop it
+     * @throws UnsupportedOperationException if enabled is true.
+     */
+    @Override
+    public void setSIDCBitsetGenerator(boolean enabled) {
+        if(enabled) throw new UnsupportedOperationException("The slab AVL tree does not maintain a key bitset.");
+    }
+
+    /**
+     * This method turns on or off the collection of metrics, including the compactions of the value arena.
+     * @param enabled true to start collecting from zero, false to stop and drop the metrics
+     */
+    @Override
+    public void setSIDCMetrics(boolean enabled) {
+        super.setSIDCMetrics(enabled);
+        valueStore.sidcMetrics = sidcMetrics;
+    }
+
+    /**
+     * This method names the backend for the metrics.
+     * @return "slab".
+     */
+    @Override
+    protected String activeBackendName() {
+        return "slab";
+    }
+
+    /**
+     * This method returns the height of the tree.
+     * @return the height, or 0 if the tree is empty.
+     */
+    @Override
+    protected int treeHeight() {
+        return height[root];
+    }
+
+    /**
+     * This method returns the number of entries in the tree.
+     * @return the number of entries.
+     */
+    @Override
+    public int size() {
+        return size[root];
+    }
+
+    /**
+     * This method randomly generates new non-existing keys of 8 digits.
+     * @return the generated key.
+     */
+    @Override
+    public long generate() {
+        long start = startTimer();
+        try {
+            return generateKey();
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE, start);
+        }
+    }
+
+    /**
+     * This method randomly generates a new key of 8 digits that does not exist in the tree.
+     * @return the generated key.
+     */
+    private long generateKey() {
+        long newKey = 10000000L + (Math.abs(random.nextLong()) % 90000000L);
+        while(findSlot(newKey) != NIL) {
+            if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
+            newKey = 10000000L + (Math.abs(random.nextLong()) % 90000000L);
+        }
+        return newKey;
+    }
+
+    /**
+     * This method randomly generates the given number of distinct non-existing keys of 8 digits in one call.
+     * @param count the number of keys to generate
+     * @return the generated keys.
+     * @throws IllegalArgumentException if there are not that many unused 8-digit keys left.
+     */
+    @Override
+    public long[] generate(int count) {
+        long start = startTimer();
+        try {
+            if(count < 0 || count > 90000000L - size()) throw new IllegalArgumentException("Cannot generate " + count + " unused 8-digit keys.");
+            long[] newKeys = new long[count];
+            LongIntHashIndex batchKeys = new LongIntHashIndex(count);
+            for(int i = 0; i < count; i++) {
+                long newKey = generateKey();
+                while(batchKeys.containsKey(newKey)) {
+                    if(sidcMetrics != null) sidcMetrics.countGenerateRetry();
+                    newKey = generateKey();
+                }
+                batchKeys.put(newKey, i);
+                newKeys[i] = newKey;
+            }
+            return newKeys;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GENERATE_BATCH, start);
+        }
+    }
+
+    /**
+     * This method prints all keys of the tree as a sorted sequence.
+     * @param cleverSidc the CleverSIDC object in context
+     */
+    @Override
+    public void allKeys(CleverSIDC cleverSidc) {
+        int count = size();
+        long[] sortedKeys = new long[count]; String[] sortedValues = new String[count];
+        copyEntries(cleverSidc, sortedKeys, sortedValues);
+        for(int i = 0; i < count; i++) {
+            System.out.println(sortedKeys[i] + " -- " + sortedValues[i]);
+        }
+    }
+
+    /**
+     * This method adds an entry for the given key and value. An existing key keeps its value.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the new key entry
+     * @param value the value associated with the key entry
+     */
+    @Override
+    public void add(CleverSIDC cleverSidc, long key, String value) {
+        long start = startTimer();
+        try {
+            addEntry(key, value);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.ADD, start);
+        }
+    }
+
+    /**
+     * This method adds an entry for the given key and value, unless the key already exists.
+     * @param key the new key entry
+     * @param value the value associated with the key entry
+     */
+    private void addEntry(long key, String value) {
+        int node = root, depth = 0;
+        while(node != NIL) {
+            if(key == keyOf(node)) return;
+            pathNodes[depth] = node;
+            pathLeft[depth] = key < keyOf(node);
+            node = pathLeft[depth++] ? leftOf(node) : rightOf(node);
+        }
+        rebalancePath(depth, newNode(key, value));
+    }
+
+    /**
+     * This method copies every entry, in key order, into the given arrays, walking the tree with an explicit stack.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keysOut the array receiving the keys, at least size() long
+     * @param valuesOut the array receiving the values, at least size() long
+     * @return The number of entries copied.
+     */
+    @Override
+    public int copyEntries(CleverSIDC cleverSidc, long[] keysOut, String[] valuesOut) {
+        int[] stack = new int[MAX_HEIGHT];
+        int top = 0, node = root, index = 0;
+        while(node != NIL || top > 0) {
+            while(node != NIL) {
+                stack[top++] = node;
+                node = leftOf(node);
+            }
+            node = stack[--top];
+            keysOut[index] = keyOf(node);
+            valuesOut[index++] = valueStore.decode(valueCodes[node]);
+            node = rightOf(node);
+        }
+        return index;
+    }
+
+    /**
+     * This method adds many entries at once. The input is sorted and merged with the current entries,
+     * and the slab is then rebuilt as a balanced tree in linear time, with the nodes laid out in key order.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     */
+    @Override
+    public void bulkLoad(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long start = startTimer();
+        try {
+            SIDCArraySort.parallelSortPairs(keys, values, count);
+            count = SIDCArraySort.removeDuplicates(keys, values, count);
+            mergeSortedEntries(keys, values, count);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.BULK_LOAD, start);
+        }
+    }
+
+    /**
+     * This method merges sorted, duplicate-free entries with the current entries and rebuilds the slab from the result.
+     * @param keys the new keys, in ascending order
+     * @param values the values associated with the keys
+     * @param count the number of entries to take from the given arrays
+     */
+    private void mergeSortedEntries(long[] keys, String[] values, int count) {
+        int currentSize = size();
+        long[] currentKeys = new long[currentSize]; String[] currentValues = new String[currentSize];
+        copyEntries(this, currentKeys, currentValues);
+        long[] mergedKeys = new long[currentSize + count]; String[] mergedValues = new String[currentSize + count];
+        int merged = SIDCArraySort.mergeDistinct(currentKeys, currentValues, currentSize, keys, values, count, mergedKeys, mergedValues);
+
+        allocateSlab(Math.max(INITIAL_CAPACITY, merged + 1));
+        root = buildSubtree(mergedKeys, mergedValues, 0, merged - 1);
+    }
+
+    /**
+     * This method removes the entry for the given key. A node with two children takes the entry of its successor,
+     * and the successor's slot is the one unlinked and freed.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to be removed
+     * @return The removed key, or NO_KEY if the key does not exist.
+     */
+    @Override
+    public long remove(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            return removeEntry(key);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.REMOVE, start);
+        }
+    }
+
+    /**
+     * This method removes the entry for the given key.
+     * @param key the key to be removed
+     * @return The removed key, or NO_KEY if the key does not exist.
+     */
+    private long removeEntry(long key) {
+        int node = root, depth = 0;
+        while(node != NIL && keyOf(node) != key) {
+            pathNodes[depth] = node;
+            pathLeft[depth] = key < keyOf(node);
+            node = pathLeft[depth++] ? leftOf(node) : rightOf(node);
+        }
+        if(node == NIL) return NO_KEY;
+
+        if(leftOf(node) != NIL && rightOf(node) != NIL) {
+            //descend to the successor, the smallest key of the right subtree, and move its entry up
+            int target = node;
+            pathNodes[depth] = node;
+            pathLeft[depth++] = false;
+            node = rightOf(node);
+            while(leftOf(node) != NIL) {
+                pathNodes[depth] = node;
+                pathLeft[depth++] = true;
+                node = leftOf(node);
+            }
+            setKey(target, keyOf(node));
+            valueStore.release(valueCodes[target]);
+            valueCodes[target] = valueCodes[node];
+        } else {
+            valueStore.release(valueCodes[node]);
+        }
+        int child = (leftOf(node) != NIL) ? leftOf(node) : rightOf(node);
+        freeNode(node);
+        rebalancePath(depth, child);
+        return key;
+    }
+
+    /**
+     * This method adds a batch of entries and returns how many keys were new. A batch that is large next to the current size
+     * is merged and rebuilt as in bulkLoad; a smaller one is inserted in key order, so consecutive descents share their cached path.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the new keys, in any order; the array is reordered in place
+     * @param values the values associated with the keys; the array is reordered in place
+     * @param count the number of entries to take from the given arrays
+     * @return The number of entries added.
+     */
+    @Override
+    public int addAll(CleverSIDC cleverSidc, long[] keys, String[] values, int count) {
+        long start = startTimer();
+        try {
+            SIDCArraySort.sortPairs(keys, values, count);
+            count = SIDCArraySort.removeDuplicates(keys, values, count);
+            int sizeBefore = size[root];
+            if(count >= sizeBefore / BATCH_REBUILD_RATIO) {
+                mergeSortedEntries(keys, values, count);
+            } else {
+                for(int i = 0; i < count; i++) addEntry(keys[i], values[i]);
+            }
+            return size[root] - sizeBefore;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.ADD_ALL, start);
+        }
+    }
+
+    /**
+     * This method removes a batch of keys, in key order, and returns how many of them existed.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys to remove, in any order; the array is reordered in place
+     * @param count the number of keys to take from the given array
+     * @return The number of entries removed.
+     */
+    @Override
+    public int removeAll(CleverSIDC cleverSidc, long[] keys, int count) {
+        long start = startTimer();
+        try {
+            SIDCArraySort.sortPairs(keys, null, count);
+            int sizeBefore = size[root];
+            for(int i = 0; i < count; i++) removeEntry(keys[i]);
+            return sizeBefore - size[root];
+        } finally {
+            stopTimer(SIDCMetrics.Operation.REMOVE_ALL, start);
+        }
+    }
+
+    /**
+     * This method looks up the values of a batch of keys.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param keys the keys for which values are to be retrieved, in any order
+     * @param valuesOut the array receiving the values, at least count long
+     * @param count the number of keys to take from the given array
+     * @return The number of keys found.
+     */
+    @Override
+    public int getAll(CleverSIDC cleverSidc, long[] keys, String[] valuesOut, int count) {
+        long start = startTimer();
+        try {
+            int found = 0;
+            for(int i = 0; i < count; i++) {
+                int node = findSlot(keys[i]);
+                valuesOut[i] = (node == NIL) ? "" : valueStore.decode(valueCodes[node]);
+                if(node != NIL) found++;
+            }
+            return found;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GET_ALL, start);
+        }
+    }
+
+    /**
+     * This method returns the values of the given key.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which values are to be retrieved
+     * @return The value of the given key, or NO_VALUE if the key does not exist.
+     */
+    @Override
+    public String getValues(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            int node = findSlot(key);
+            if(node == NIL) return NO_VALUE;
+            return valueStore.decode(valueCodes[node]);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.GET_VALUES, start);
+        }
+    }
+
+    /**
+     * This method returns the predecessor key of the given key, i.e. the greatest key smaller than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the predecessor is to be found
+     * @return The predecessor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long prevKey(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            int node = root, predecessor = NIL;
+            while(node != NIL) {
+                if(key > keyOf(node)) {
+                    predecessor = node;
+                    node = rightOf(node);
+                } else {
+                    node = leftOf(node);
+                }
+            }
+            return (predecessor == NIL) ? NO_KEY : keyOf(predecessor);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.PREV_KEY, start);
+        }
+    }
+
+    /**
+     * This method returns the successor key of the given key, i.e. the smallest key greater than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key for which the successor is to be found
+     * @return The successor key, or NO_KEY if there is none.
+     */
+    @Override
+    public long nextKey(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            int node = root, successor = NIL;
+            while(node != NIL) {
+                if(key < keyOf(node)) {
+                    successor = node;
+                    node = leftOf(node);
+                } else {
+                    node = rightOf(node);
+                }
+            }
+            return (successor == NIL) ? NO_KEY : keyOf(successor);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.NEXT_KEY, start);
+        }
+    }
+
+    /**
+     * This method streams the entries whose keys are between low and high, both included, to the given consumer in key order,
+     * walking the slab with an explicit stack. Values stored as token pairs are decoded through the name cache of the value store.
+     * @param low the smallest key of the range
+     * @param high the greatest key of the range
+     * @param consumer the consumer receiving each entry, which returns false to stop
+     * @return The number of entries passed to the consumer.
+     */
+    @Override
+    public int forEachInRange(long low, long high, LongObjConsumer<String> consumer) {
+        long start = startTimer();
+        try {
+            if(low > high) return 0;
+            int[] stack = new int[MAX_HEIGHT];
+            int top = 0, delivered = 0, node = root;
+            while(node != NIL) {
+                if(keyOf(node) >= low) {
+                    stack[top++] = node;
+                    node = leftOf(node);
+                } else {
+                    node = rightOf(node);
+                }
+            }
+            while(top > 0) {
+                node = stack[--top];
+                long key = keyOf(node);
+                if(key > high) break;
+                delivered++;
+                if(!consumer.accept(key, valueStore.decode(valueCodes[node]))) break;
+                for(node = rightOf(node); node != NIL; node = leftOf(node)) stack[top++] = node;
+            }
+            return delivered;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.FOR_EACH, start);
+        }
+    }
+
+    /**
+     * This method returns the number of keys strictly between key1 and key2, using two rank descents.
+     * @param key1 the starting key of the range
+     * @param key2 the ending key of the range
+     * @return The number of keys within the specified range.
+     */
+    @Override
+    public int rangeKey(long key1, long key2) {
+        long start = startTimer();
+        try {
+            if(key1 >= key2) return 0;
+            return rankOfKey(key2) - rankOfKey(key1 + 1);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.RANGE_KEY, start);
+        }
+    }
+
+    /**
+     * This method returns the rank of the given key, i.e. the number of keys smaller than it.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param key the key to rank, which does not need to exist
+     * @return The number of smaller keys.
+     */
+    @Override
+    public int rank(CleverSIDC cleverSidc, long key) {
+        long start = startTimer();
+        try {
+            return rankOfKey(key);
+        } finally {
+            stopTimer(SIDCMetrics.Operation.RANK, start);
+        }
+    }
+
+    /**
+     * This method returns the key at the given position of the sorted sequence of keys.
+     * @param cleverSidc the CleverSIDC object in context
+     * @param index the zero-based position of the key in sorted order
+     * @return The key at the given position, or NO_KEY if the position is out of bounds.
+     */
+    @Override
+    public long select(CleverSIDC cleverSidc, int index) {
+        long start = startTimer();
+        try {
+            int node = root;
+            if(index < 0 || index >= size[node]) return NO_KEY;
+            while(node != NIL) {
+                int leftSize = size[leftOf(node)];
+                if(index < leftSize) {
+                    node = leftOf(node);
+                } else if(index > leftSize) {
+                    index -= leftSize + 1;
+                    node = rightOf(node);
+                } else return keyOf(node);
+            }
+            return NO_KEY;
+        } finally {
+            stopTimer(SIDCMetrics.Operation.SELECT, start);
+        }
+    }
+}
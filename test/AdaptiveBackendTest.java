@@ -0,0 +1,123 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * AdaptiveBackendTest class walks an adaptive CleverSIDC through every backend migration and checks, after each one,
+ * the active backend and that the entries still match a TreeMap. It grows from the CircularArray to the AVLTree and on to the
+ * BPlusTree, shrinks back through the hysteresis gap of the BPlusTree to the AVLTree and to the CircularArray, and bulk loads
+ * an empty CircularArray past the BPlusTree threshold in one step.
+ * <p>
+ * Usage: java AdaptiveBackendTest
+ * @author Rania Maoukout & teammate
+ */
+public class AdaptiveBackendTest {
+    private static final long FIRST_KEY = 10000000L;
+
+    /**
+     * This method runs the checks.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        CleverSIDC sidc = new CleverSIDC();
+        sidc.setSIDCThreshold(0);
+        sidc.setSIDCMetrics(true);
+        sidc.setSIDCAdaptive(250, 1000);
+        TreeMap<Long, String> reference = new TreeMap<>();
+
+        grow(sidc, reference, 1000);
+        checkBackend(sidc, reference, "array", 0);
+        grow(sidc, reference, 1001);
+        checkBackend(sidc, reference, "tree", 1);
+        grow(sidc, reference, CleverSIDC.BPLUS_TREE_THRESHOLD);
+        checkBackend(sidc, reference, "tree", 1);
+        grow(sidc, reference, CleverSIDC.BPLUS_TREE_THRESHOLD + 1);
+        checkBackend(sidc, reference, "bplus", 2);
+
+        //the BPlusTree stays until the size falls below its own low watermark
+        shrink(sidc, reference, CleverSIDC.BPLUS_TREE_LOW_WATERMARK);
+        checkBackend(sidc, reference, "bplus", 2);
+        grow(sidc, reference, CleverSIDC.BPLUS_TREE_THRESHOLD);
+        checkBackend(sidc, reference, "bplus", 2);
+        shrink(sidc, reference, CleverSIDC.BPLUS_TREE_LOW_WATERMARK - 1);
+        checkBackend(sidc, reference, "tree", 3);
+        shrink(sidc, reference, 250);
+        checkBackend(sidc, reference, "tree", 3);
+        shrink(sidc, reference, 249);
+        checkBackend(sidc, reference, "array", 4);
+
+        //a batch that takes the CircularArray past the BPlusTree threshold goes straight to the BPlusTree
+        int count = CleverSIDC.BPLUS_TREE_THRESHOLD + 10;
+        long[] keys = new long[count]; String[] values = new String[count];
+        for(int i = 0; i < count; i++) {
+            keys[i] = FIRST_KEY + 500_000 + i;
+            values[i] = "bulk " + i;
+            reference.put(keys[i], values[i]);
+        }
+        sidc.bulkLoad(sidc, keys, values, count);
+        checkBackend(sidc, reference, "bplus", 5);
+        System.out.println("AdaptiveBackendTest passed");
+    }
+
+    /**
+     * This method adds entries with the smallest unused keys until CleverSIDC holds the given number of entries.
+     * @param sidc the CleverSIDC under test
+     * @param reference the expected entries
+     * @param size the size to grow to
+     */
+    private static void grow(CleverSIDC sidc, TreeMap<Long, String> reference, int size) {
+        for(long key = FIRST_KEY; reference.size() < size; key++) {
+            if(reference.containsKey(key)) continue;
+            sidc.add(sidc, key, "v" + key);
+            reference.put(key, "v" + key);
+        }
+    }
+
+    /**
+     * This method removes the greatest keys until CleverSIDC holds the given number of entries.
+     * @param sidc the CleverSIDC under test
+     * @param reference the expected entries
+     * @param size the size to shrink to
+     */
+    private static void shrink(CleverSIDC sidc, TreeMap<Long, String> reference, int size) {
+        while(reference.size() > size) {
+            long key = reference.lastKey();
+            check(sidc.remove(sidc, key) == key, "remove misses " + key);
+            reference.remove(key);
+        }
+    }
+
+    /**
+     * This method fails the test unless the given backend is active after the given number of migrations,
+     * and the entries match the reference.
+     * @param sidc the CleverSIDC under test
+     * @param reference the expected entries
+     * @param backend the expected backend name
+     * @param migrations the expected number of migrations so far
+     */
+    private static void checkBackend(CleverSIDC sidc, TreeMap<Long, String> reference, String backend, long migrations) {
+        SIDCMetrics metrics = sidc.getSIDCMetrics();
+        String where = "at size " + reference.size();
+        check(metrics.getActiveBackend().equals(backend), where + ": backend " + metrics.getActiveBackend() + " instead of " + backend);
+        check(metrics.getMigrationCount() == migrations, where + ": " + metrics.getMigrationCount() + " migrations instead of " + migrations);
+        check(sidc.size() == reference.size(), where + ": size " + sidc.size());
+        long[] keys = new long[reference.size()]; String[] values = new String[reference.size()];
+        sidc.copyEntries(sidc, keys, values);
+        int i = 0;
+        for(Map.Entry<Long, String> entry : reference.entrySet()) {
+            check(keys[i] == entry.getKey() && values[i].equals(entry.getValue()), where + ": entry " + i + " differs");
+            i++;
+        }
+        long middle = keys[keys.length / 2];
+        check(sidc.nextKey(sidc, middle) == keys[keys.length / 2 + 1], where + ": nextKey differs");
+        check(sidc.rank(sidc, middle) == keys.length / 2, where + ": rank differs");
+    }
+
+    /**
+     * This method fails the test if the condition does not hold.
+     * @param condition the condition to check
+     * @param message the failure message
+     */
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+}
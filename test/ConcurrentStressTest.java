@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ConcurrentStressTest class runs several threads against each thread-safe CleverSIDC and checks the results exactly.
+ * Every writer thread owns its own slice of consecutive keys and keeps a TreeMap of the entries it stored, so the lookups,
+ * range counts and neighbour queries inside its slice have a single right answer however the other threads interleave.
+ * ConcurrentCleverSIDC runs adaptive with a low watermark, so its backend keeps migrating under the writers, and the slices of
+ * ShardedCleverSIDC are clustered in the first shard so that it rebalances while the writers run. At the end, the entries of
+ * every implementation must be the union of the maps of its writers. PersistentAvlTree is checked with one writer and readers
+ * scanning snapshots, which must keep the same size, rank and contents however many writes happen during the scan.
+ * <p>
+ * Usage: java ConcurrentStressTest [operations per thread]
+ * @author Rania Maoukout & teammate
+ */
+public class ConcurrentStressTest {
+    private static final long FIRST_KEY = 10000000L; private static final int THREADS = 6, SLICE = 1500;
+
+    /**
+     * This method runs the stress test of each thread-safe implementation.
+     * @param args the number of operations of each thread, 200000 by default
+     * @throws InterruptedException if the test thread is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int operations = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+
+        ConcurrentCleverSIDC concurrent = new ConcurrentCleverSIDC();
+        concurrent.setSIDCThreshold(1);
+        concurrent.setSIDCAdaptive(500, 2000);
+        concurrent.setSIDCHashIndex(true);
+        concurrent.setSIDCBitsetGenerator(true);
+        concurrent.setSIDCValueCache(1000, 0);
+        concurrent.setSIDCMetrics(true);
+        stressSlices("concurrent", concurrent, operations);
+        check(concurrent.getSIDCMetrics().getMigrationCount() > 0, "concurrent: the backend never migrated");
+
+        ShardedCleverSIDC sharded = new ShardedCleverSIDC(8);
+        sharded.setSIDCThreshold(1000);
+        sharded.setSIDCHashIndex(true);
+        stressSlices("sharded", sharded, operations);
+        check(sharded.getRebalanceCount() > 0, "sharded: the clustered keys never caused a rebalance");
+
+        stressSnapshots(operations);
+        System.out.println("ConcurrentStressTest passed");
+    }
+
+    /**
+     * This method runs THREADS writers, each on its own slice of keys, then compares the entries with the union of their maps.
+     * @param name the name of the implementation, used in failure messages
+     * @param sidc the implementation to stress
+     * @param operations the number of operations of each thread
+     * @throws InterruptedException if the test thread is interrupted.
+     */
+    private static void stressSlices(String name, CleverSIDC sidc, int operations) throws InterruptedException {
+        List<TreeMap<Long, String>> models = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] writers = new Thread[THREADS];
+        for(int t = 0; t < THREADS; t++) {
+            final int id = t;
+            TreeMap<Long, String> model = new TreeMap<>();
+            models.add(model);
+            writers[t] = new Thread(() -> {
+                try {
+                    runSlice(name + " thread " + id, sidc, model, FIRST_KEY + (long) id * SLICE, new Random(id), operations);
+                } catch(Throwable throwable) {
+                    failure.compareAndSet(null, throwable);
+                }
+            });
+            writers[t].start();
+        }
+        for(Thread writer : writers) writer.join();
+        if(failure.get() != null) throw new AssertionError(name + ": a writer failed.", failure.get());
+
+        TreeMap<Long, String> expected = new TreeMap<>();
+        for(TreeMap<Long, String> model : models) expected.putAll(model);
+        check(sidc.size() == expected.size(), name + ": size is " + sidc.size() + " instead of " + expected.size());
+        long[] keys = new long[expected.size()]; String[] values = new String[expected.size()];
+        check(sidc.copyEntries(sidc, keys, values) == expected.size(), name + ": copyEntries returned the wrong count");
+        int i = 0;
+        for(Map.Entry<Long, String> entry : expected.entrySet()) {
+            check(keys[i] == entry.getKey() && values[i].equals(entry.getValue()), name + ": entry " + i + " is " + keys[i] + " instead of " + entry.getKey());
+            i++;
+        }
+    }
+
+    /**
+     * This method runs the operations of one writer on its slice of keys, checking every answer against its own map.
+     * @param name the name of the thread, used in failure messages
+     * @param sidc the implementation to stress
+     * @param model the entries stored by this thread
+     * @param low the first key of the slice
+     * @param random the random number generator of this thread
+     * @param operations the number of operations to run
+     */
+    private static void runSlice(String name, CleverSIDC sidc, TreeMap<Long, String> model, long low, Random random, int operations) {
+        long end = low + SLICE;
+        for(int op = 0; op < operations; op++) {
+            long key = low + random.nextInt(SLICE);
+            switch(random.nextInt(6)) {
+                case 0:
+                case 1:
+                    String value = "v" + key + "-" + op;
+                    sidc.add(sidc, key, value);
+                    model.putIfAbsent(key, value);
+                    break;
+                case 2:
+                    long removed = sidc.remove(sidc, key);
+                    check((model.remove(key) != null) == (removed == key), name + ": remove of " + key + " returned " + removed);
+                    break;
+                case 3:
+                    String found = sidc.getValues(sidc, key);
+                    check(found.equals(model.getOrDefault(key, CleverSIDC.NO_VALUE)), name + ": key " + key + " has " + found);
+                    break;
+                case 4:
+                    long high = Math.min(end, key + random.nextInt(200));
+                    int count = sidc.rangeKey(key, high);
+                    check(count == model.subMap(key, false, high, false).size(), name + ": rangeKey(" + key + ", " + high + ") is " + count);
+                    break;
+                default:
+                    Long higher = model.higherKey(key), lower = model.lowerKey(key);
+                    long next = sidc.nextKey(sidc, key), prev = sidc.prevKey(sidc, key);
+                    check((higher != null) ? next == higher : (next == CleverSIDC.NO_KEY || next >= end), name + ": nextKey(" + key + ") is " + next);
+                    check((lower != null) ? prev == lower : (prev == CleverSIDC.NO_KEY || prev < low), name + ": prevKey(" + key + ") is " + prev);
+                    sidc.generate();
+            }
+        }
+    }
+
+    /**
+     * This method runs one writer on a PersistentAvlTree while readers check that every snapshot they take stays the same.
+     * @param operations the number of writes
+     * @throws InterruptedException if the test thread is interrupted.
+     */
+    private static void stressSnapshots(int operations) throws InterruptedException {
+        PersistentAvlTree tree = new PersistentAvlTree();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[THREADS - 1];
+        for(int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                try {
+                    while(running.get()) checkSnapshot(tree.snapshot());
+                } catch(Throwable throwable) {
+                    failure.compareAndSet(null, throwable);
+                }
+            });
+            readers[t].start();
+        }
+
+        TreeMap<Long, String> model = new TreeMap<>();
+        Random random = new Random(42);
+        try {
+            for(int op = 0; op < operations && failure.get() == null; op++) {
+                long key = FIRST_KEY + random.nextInt(SLICE);
+                if(random.nextBoolean()) {
+                    tree.add(tree, key, "v" + key);
+                    model.putIfAbsent(key, "v" + key);
+                } else {
+                    long removed = tree.remove(tree, key);
+                    check((model.remove(key) != null) == (removed == key), "persistent: remove of " + key + " returned " + removed);
+                }
+            }
+        } finally {
+            running.set(false);
+            for(Thread reader : readers) reader.join();
+        }
+        if(failure.get() != null) throw new AssertionError("persistent: a reader failed.", failure.get());
+        check(tree.size() == model.size(), "persistent: size is " + tree.size() + " instead of " + model.size());
+        checkSnapshot(tree.snapshot());
+    }
+
+    /**
+     * This method scans a snapshot twice and checks that its size, ranks and values agree with each other.
+     * @param snapshot the snapshot to check
+     */
+    private static void checkSnapshot(PersistentAvlTree snapshot) {
+        int size = snapshot.size();
+        long[] previous = {CleverSIDC.NO_KEY}; int[] index = {0};
+        int scanned = snapshot.forEachInRange(FIRST_KEY, FIRST_KEY + SLICE, (key, value) -> {
+            check(key > previous[0], "persistent: the snapshot scan went from " + previous[0] + " to " + key);
+            check(value.equals("v" + key), "persistent: key " + key + " has " + value);
+            check(snapshot.rank(snapshot, key) == index[0] && snapshot.select(snapshot, index[0]) == key, "persistent: rank and select disagree on " + key);
+            previous[0] = key;
+            index[0]++;
+            return true;
+        });
+        check(scanned == size && snapshot.size() == size, "persistent: the snapshot of " + size + " entries changed to " + scanned);
+        check(snapshot.rangeKey(FIRST_KEY - 1, FIRST_KEY + SLICE) == size, "persistent: rangeKey disagrees with the snapshot size");
+    }
+
+    /**
+     * This method fails the test if the condition does not hold.
+     * @param condition the condition to check
+     * @param message the failure message
+     */
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ConcurrentValueCacheTest class checks that a ConcurrentCleverSIDC with the hash index and the value cache on never returns
+ * the value of a removed key. Reader threads keep looking up a small set of keys, filling the cache on every miss, while a writer
+ * removes each key, checks that it is gone, and adds it back with a new value. After every round the writer looks up all the keys,
+ * so a reader that cached a value the writer had already replaced is caught before the key is removed again.
+ * <p>
+ * Usage: java ConcurrentValueCacheTest [rounds]
+ * @author Rania Maoukout & teammate
+ */
+public class ConcurrentValueCacheTest {
+    private static final long FIRST_KEY = 10000000L; private static final int KEYS = 16, READERS = 3;
+
+    /**
+     * This method runs the readers and the writer and fails on the first stale lookup.
+     * @param args the number of writer rounds, 500000 by default
+     * @throws InterruptedException if the test thread is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : 500_000;
+        ConcurrentCleverSIDC sidc = new ConcurrentCleverSIDC();
+        sidc.setSIDCThreshold(1000);
+        sidc.setSIDCHashIndex(true);
+        sidc.setSIDCValueCache(100_000, 0);
+        String[] expected = new String[KEYS];
+        for(int i = 0; i < KEYS; i++) {
+            expected[i] = "v0";
+            sidc.add(sidc, FIRST_KEY + i, expected[i]);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[READERS];
+        for(int t = 0; t < READERS; t++) {
+            final int id = t;
+            readers[t] = new Thread(() -> {
+                Random random = new Random(id);
+                try {
+                    while(running.get()) sidc.getValues(sidc, FIRST_KEY + random.nextInt(KEYS));
+                } catch(Throwable throwable) {
+                    failure.compareAndSet(null, throwable);
+                }
+            });
+            readers[t].start();
+        }
+
+        try {
+            for(int round = 1; round <= rounds && failure.get() == null; round++) {
+                int slot = round % KEYS;
+                long key = FIRST_KEY + slot;
+                sidc.remove(sidc, key);
+                check(sidc.getValues(sidc, key).equals(CleverSIDC.NO_VALUE), "removed key " + key + " still has a value in round " + round);
+                expected[slot] = "v" + round;
+                sidc.add(sidc, key, expected[slot]);
+                for(int i = 0; i < KEYS; i++) {
+                    String value = sidc.getValues(sidc, FIRST_KEY + i);
+                    check(value.equals(expected[i]), "key " + (FIRST_KEY + i) + " has " + value + " instead of " + expected[i] + " in round " + round);
+                }
+            }
+        } finally {
+            running.set(false);
+            for(Thread reader : readers) reader.join();
+        }
+        if(failure.get() != null) throw new AssertionError("A reader failed.", failure.get());
+        System.out.println("ConcurrentValueCacheTest passed");
+    }
+
+    /**
+     * This method fails the test if the condition does not hold.
+     * @param condition the condition to check
+     * @param message the failure message
+     */
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+}
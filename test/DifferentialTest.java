@@ -0,0 +1,301 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * DifferentialTest class runs the same random mix of operations on every backend and wrapper of CleverSIDC and on a TreeMap,
+ * and fails on the first answer that differs. The mix covers single and batch additions and removals, value lookups, the neighbour,
+ * range, rank and select queries and range scans, with most keys drawn from a dense cohort so that the queries hit, and the rest
+ * from the whole 8-digit space so that they miss and spread over the shards. The whole content is compared every few hundred steps,
+ * through copyEntries and through a KeyCursor.
+ * MappedSIDCSnapshot is read-only, so it gets the queries only, on a snapshot of the reference.
+ * <p>
+ * Usage: java DifferentialTest [steps] [seed]
+ * @author Rania Maoukout & teammate
+ */
+public class DifferentialTest {
+    private static final long FIRST_KEY = 10000000L, KEY_SPACE = 90000000L; private static final int COHORT = 3_000;
+    //values are never empty, since an empty value cannot be told apart from NO_VALUE
+    private static final String[] NAMES = {"Alice Smith", "Bob Jones", "Eva Gill", "Harry Davis", "Grace Miller"};
+
+    /**
+     * This method runs the operation mix on every implementation.
+     * @param args the number of steps per implementation, 20000 by default, and the seed, 1 by default
+     * @throws IOException if a durable directory or a snapshot cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int steps = (args.length > 0) ? Integer.parseInt(args[0]) : 20_000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1L;
+        Map<String, Supplier<CleverSIDC>> implementations = new TreeMap<>();
+        implementations.put("array", () -> configured(new CleverSIDC(), 100));
+        implementations.put("array-indexed", () -> indexed(configured(new CleverSIDC(), 100)));
+        implementations.put("tree", () -> configured(new CleverSIDC(), 1000));
+        implementations.put("tree-indexed-cached", () -> cached(indexed(configured(new CleverSIDC(), 1000))));
+        implementations.put("bplus", () -> configured(new CleverSIDC(), CleverSIDC.BPLUS_TREE_THRESHOLD + 1));
+        implementations.put("bplus-cached", () -> cached(configured(new CleverSIDC(), CleverSIDC.BPLUS_TREE_THRESHOLD + 1)));
+        implementations.put("adaptive", () -> {
+            CleverSIDC cleverSidc = configured(new CleverSIDC(), 0);
+            cleverSidc.setSIDCAdaptive(100, 400);
+            return cleverSidc;
+        });
+        implementations.put("persistent", PersistentAvlTree::new);
+        implementations.put("slab", SlabAvlTree::new);
+        implementations.put("concurrent", () -> configured(new ConcurrentCleverSIDC(), 1000));
+        implementations.put("concurrent-indexed-cached", () -> cached(indexed(configured(new ConcurrentCleverSIDC(), 1000))));
+        implementations.put("sharded", () -> configured(new ShardedCleverSIDC(4), 1000));
+        implementations.put("durable", DifferentialTest::durable);
+
+        for(Map.Entry<String, Supplier<CleverSIDC>> implementation : implementations.entrySet()) {
+            CleverSIDC cleverSidc = implementation.getValue().get();
+            TreeMap<Long, String> reference = new TreeMap<>();
+            run(implementation.getKey(), cleverSidc, reference, new Random(seed), steps, true);
+            if(cleverSidc instanceof DurableCleverSIDC) {
+                DurableCleverSIDC durable = (DurableCleverSIDC) cleverSidc;
+                durable.close();
+                DurableCleverSIDC recovered = new DurableCleverSIDC(durable.getDirectory());
+                recovered.setSIDCThreshold(1000);
+                recovered.recover();
+                checkContent("durable after recovery", recovered, reference);
+                recovered.close();
+            }
+        }
+
+        //the read-only snapshot is checked against a reference built the same way
+        TreeMap<Long, String> reference = new TreeMap<>();
+        Random random = new Random(seed);
+        for(int i = 0; i < COHORT; i++) {
+            long key = nextKey(random);
+            reference.putIfAbsent(key, NAMES[random.nextInt(NAMES.length)]);
+        }
+        Path file = Files.createTempDirectory("sidc-differential").resolve("reference.snapshot");
+        long[] keys = new long[reference.size()]; String[] values = new String[reference.size()];
+        int count = 0;
+        for(Map.Entry<Long, String> entry : reference.entrySet()) {
+            keys[count] = entry.getKey();
+            values[count++] = entry.getValue();
+        }
+        SIDCSnapshotFile.write(keys, values, count, file);
+        run("mapped", MappedSIDCSnapshot.open(file), reference, random, steps, false);
+        System.out.println("DifferentialTest passed");
+    }
+
+    /**
+     * This method sets the size threshold of a CleverSIDC.
+     * @param cleverSidc the CleverSIDC to configure
+     * @param threshold the size threshold selecting its backend
+     * @return the same CleverSIDC.
+     */
+    private static CleverSIDC configured(CleverSIDC cleverSidc, int threshold) {
+        cleverSidc.setSIDCThreshold(threshold);
+        return cleverSidc;
+    }
+
+    /**
+     * This method turns on the hash index and the bitset key generator of a CleverSIDC.
+     * @param cleverSidc the CleverSIDC to configure
+     * @return the same CleverSIDC.
+     */
+    private static CleverSIDC indexed(CleverSIDC cleverSidc) {
+        cleverSidc.setSIDCHashIndex(true);
+        cleverSidc.setSIDCBitsetGenerator(true);
+        return cleverSidc;
+    }
+
+    /**
+     * This method gives a CleverSIDC a value cache smaller than the cohort, so that entries are evicted.
+     * @param cleverSidc the CleverSIDC to configure
+     * @return the same CleverSIDC.
+     */
+    private static CleverSIDC cached(CleverSIDC cleverSidc) {
+        cleverSidc.setSIDCValueCache(500, 0);
+        return cleverSidc;
+    }
+
+    /**
+     * This method creates a recovered DurableCleverSIDC in a new directory, with a compaction size that forces a few checkpoints.
+     * @return the DurableCleverSIDC.
+     */
+    private static CleverSIDC durable() {
+        try {
+            DurableCleverSIDC durable = new DurableCleverSIDC(Files.createTempDirectory("sidc-differential"), 2, 4096, 64 * 1024);
+            durable.setSIDCThreshold(1000);
+            durable.recover();
+            return durable;
+        } catch(IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * This method draws a key, from the cohort nine times out of ten and from the whole key space otherwise.
+     * @param random the source of randomness
+     * @return the key.
+     */
+    private static long nextKey(Random random) {
+        return (random.nextInt(10) == 0) ? FIRST_KEY + (long) (random.nextDouble() * KEY_SPACE) : FIRST_KEY + random.nextInt(COHORT);
+    }
+
+    /**
+     * This method runs the operation mix on one implementation and the reference, checking every answer.
+     * @param name the name of the implementation, for the failure messages
+     * @param cleverSidc the implementation under test
+     * @param reference the reference holding the same entries
+     * @param random the source of randomness
+     * @param steps the number of operations
+     * @param mutable true to include the additions and removals
+     */
+    private static void run(String name, CleverSIDC cleverSidc, TreeMap<Long, String> reference, Random random, int steps, boolean mutable) {
+        for(int step = 0; step < steps; step++) {
+            String where = name + ", step " + step;
+            long key = nextKey(random);
+            int op = random.nextInt(mutable ? 14 : 9);
+            switch(op) {
+                case 0: {
+                    String expected = reference.getOrDefault(key, CleverSIDC.NO_VALUE);
+                    check(cleverSidc.getValues(cleverSidc, key).equals(expected), where + ": getValues(" + key + ")");
+                    break;
+                }
+                case 1:
+                    check(cleverSidc.nextKey(cleverSidc, key) == orNoKey(reference.higherKey(key)), where + ": nextKey(" + key + ")");
+                    break;
+                case 2:
+                    check(cleverSidc.prevKey(cleverSidc, key) == orNoKey(reference.lowerKey(key)), where + ": prevKey(" + key + ")");
+                    break;
+                case 3: {
+                    long key2 = key + random.nextInt(2 * COHORT) - COHORT / 2;
+                    int expected = (key < key2) ? reference.subMap(key, false, key2, false).size() : 0;
+                    check(cleverSidc.rangeKey(key, key2) == expected, where + ": rangeKey(" + key + ", " + key2 + ")");
+                    break;
+                }
+                case 4:
+                    check(cleverSidc.rank(cleverSidc, key) == reference.headMap(key, false).size(), where + ": rank(" + key + ")");
+                    break;
+                case 5: {
+                    int index = random.nextInt(reference.size() + 4) - 2;
+                    long expected = CleverSIDC.NO_KEY;
+                    if(index >= 0 && index < reference.size()) expected = new ArrayList<>(reference.keySet()).get(index);
+                    check(cleverSidc.select(cleverSidc, index) == expected, where + ": select(" + index + ")");
+                    break;
+                }
+                case 6: {
+                    long high = key + random.nextInt(COHORT / 4);
+                    List<Long> expected = new ArrayList<>(reference.subMap(key, true, high, true).keySet());
+                    List<Long> seen = new ArrayList<>();
+                    int limit = random.nextBoolean() ? Integer.MAX_VALUE : 1 + random.nextInt(10);
+                    int delivered = cleverSidc.forEachInRange(key, high, (entryKey, value) -> {
+                        check(value.equals(reference.get(entryKey)), where + ": forEachInRange value of " + entryKey);
+                        seen.add(entryKey);
+                        return seen.size() < limit;
+                    });
+                    if(limit < expected.size()) expected = expected.subList(0, limit);
+                    check(seen.equals(expected) && delivered == expected.size(), where + ": forEachInRange(" + key + ", " + high + ")");
+                    break;
+                }
+                case 7: {
+                    int count = 1 + random.nextInt(64);
+                    long[] keys = new long[count]; String[] values = new String[count];
+                    int found = 0;
+                    for(int i = 0; i < count; i++) {
+                        keys[i] = nextKey(random);
+                        if(reference.containsKey(keys[i])) found++;
+                    }
+                    int gotten = cleverSidc.getAll(cleverSidc, keys, values, count);
+                    check(gotten == found, where + ": getAll count " + gotten + " instead of " + found + " for " + count + " keys");
+                    for(int i = 0; i < count; i++) {
+                        check(values[i].equals(reference.getOrDefault(keys[i], CleverSIDC.NO_VALUE)), where + ": getAll(" + keys[i] + ")");
+                    }
+                    break;
+                }
+                case 8:
+                    check(cleverSidc.size() == reference.size(), where + ": size " + cleverSidc.size() + " instead of " + reference.size());
+                    break;
+                case 9: case 10: {
+                    String value = NAMES[random.nextInt(NAMES.length)] + ((random.nextInt(4) == 0) ? " " + step : "");
+                    cleverSidc.add(cleverSidc, key, value);
+                    reference.putIfAbsent(key, value);
+                    break;
+                }
+                case 11: {
+                    long expected = (reference.remove(key) != null) ? key : CleverSIDC.NO_KEY;
+                    check(cleverSidc.remove(cleverSidc, key) == expected, where + ": remove(" + key + ")");
+                    break;
+                }
+                case 12: {
+                    int count = 1 + random.nextInt(random.nextInt(10) == 0 ? 2_000 : 32);
+                    long[] keys = new long[count]; String[] values = new String[count];
+                    int added = 0;
+                    for(int i = 0; i < count; i++) {
+                        keys[i] = nextKey(random);
+                        values[i] = "batch " + step + " " + i;
+                        if(reference.putIfAbsent(keys[i], values[i]) == null) added++;
+                    }
+                    check(cleverSidc.addAll(cleverSidc, keys, values, count) == added, where + ": addAll count");
+                    break;
+                }
+                default: {
+                    int count = 1 + random.nextInt(random.nextInt(10) == 0 ? 1_000 : 32);
+                    long[] keys = new long[count];
+                    int removed = 0;
+                    for(int i = 0; i < count; i++) {
+                        keys[i] = nextKey(random);
+                        if(reference.remove(keys[i]) != null) removed++;
+                    }
+                    check(cleverSidc.removeAll(cleverSidc, keys, count) == removed, where + ": removeAll count");
+                    break;
+                }
+            }
+            if(step % 500 == 0) checkContent(where, cleverSidc, reference);
+        }
+        checkContent(name + " at the end", cleverSidc, reference);
+    }
+
+    /**
+     * This method maps a missing TreeMap key to NO_KEY.
+     * @param key the key returned by the TreeMap, or null
+     * @return the key, or NO_KEY for null.
+     */
+    private static long orNoKey(Long key) {
+        return (key == null) ? CleverSIDC.NO_KEY : key;
+    }
+
+    /**
+     * This method fails the test unless the CleverSIDC holds exactly the entries of the reference, in key order, both through
+     * copyEntries and through a KeyCursor.
+     * @param where the name of the check, for the failure message
+     * @param cleverSidc the CleverSIDC to check
+     * @param reference the expected entries
+     */
+    private static void checkContent(String where, CleverSIDC cleverSidc, TreeMap<Long, String> reference) {
+        check(cleverSidc.size() == reference.size(), where + ": size " + cleverSidc.size() + " instead of " + reference.size());
+        long[] keys = new long[reference.size()]; String[] values = new String[reference.size()];
+        check(cleverSidc.copyEntries(cleverSidc, keys, values) == reference.size(), where + ": copyEntries count");
+        int i = 0;
+        for(Map.Entry<Long, String> entry : reference.entrySet()) {
+            check(keys[i] == entry.getKey() && values[i].equals(entry.getValue()), where + ": entry " + i + " differs");
+            i++;
+        }
+        //a small batch makes the cursor resume after its last key many times
+        KeyCursor cursor = new KeyCursor(7).open(cleverSidc, 0, Long.MAX_VALUE);
+        for(Map.Entry<Long, String> entry : reference.entrySet()) {
+            check(cursor.next() && cursor.getKey() == entry.getKey() && cursor.getValue().equals(entry.getValue()), where + ": KeyCursor differs at " + entry.getKey());
+        }
+        check(!cursor.next(), where + ": KeyCursor returned more entries than stored");
+        cursor.close();
+    }
+
+    /**
+     * This method fails the test if the condition does not hold.
+     * @param condition the condition to check
+     * @param message the failure message
+     */
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * DurableRecoveryTest class checks the crash recovery of DurableCleverSIDC and SIDCWriteAheadLog against a TreeMap.
+ * A crash is simulated by abandoning an instance without closing it and recovering a new one from the same directory.
+ * It covers a log whose last record is torn at every possible length, checkpoints and the deletion of the previous generation,
+ * files left by an interrupted checkpoint, and closing a log with a background sync thread from an interrupted thread.
+ * <p>
+ * Usage: java DurableRecoveryTest
+ * @author Rania Maoukout & teammate
+ */
+public class DurableRecoveryTest {
+    private static final long FIRST_KEY = 10000000L;
+
+    /**
+     * This method runs the checks.
+     * @param args unused
+     * @throws IOException if a file cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        tornTail();
+        checkpointAndCrash();
+        interruptedCheckpointLeftovers();
+        closeWhileInterrupted();
+        System.out.println("DurableRecoveryTest passed");
+    }
+
+    /**
+     * This method cuts the last record of a log at every length and checks that replay keeps exactly the complete records,
+     * and that a log reopened on the torn file cuts it off and appends after the last complete record.
+     * @throws IOException if the log cannot be written or read.
+     */
+    private static void tornTail() throws IOException {
+        Path directory = Files.createTempDirectory("sidc-wal-test");
+        Path file = directory.resolve("torn.wal");
+        try(SIDCWriteAheadLog log = new SIDCWriteAheadLog(file, 0, 4096)) {
+            log.logAdd(FIRST_KEY, "first");
+            log.logAdd(FIRST_KEY + 1, "second \u00e9");
+            log.logRemove(FIRST_KEY);
+        }
+        long completeLength = Files.size(file);
+        try(SIDCWriteAheadLog log = new SIDCWriteAheadLog(file, 0, 4096)) {
+            log.logAdd(FIRST_KEY + 2, "the torn one");
+        }
+        byte[] fullLog = Files.readAllBytes(file);
+
+        for(int length = (int) completeLength; length < fullLog.length; length++) {
+            Files.write(file, Arrays.copyOf(fullLog, length));
+            CleverSIDC replayed = newSidc();
+            check(SIDCWriteAheadLog.replay(replayed, file) == completeLength, "replay does not stop at the torn record, length " + length);
+            TreeMap<Long, String> reference = new TreeMap<>();
+            reference.put(FIRST_KEY + 1, "second \u00e9");
+            checkSame(replayed, reference);
+
+            try(SIDCWriteAheadLog log = new SIDCWriteAheadLog(file, 0, 4096)) {
+                check(log.length() == completeLength, "the reopened log keeps the torn record, length " + length);
+                log.logAdd(FIRST_KEY + 3, "after");
+            }
+            replayed = newSidc();
+            SIDCWriteAheadLog.replay(replayed, file);
+            reference.put(FIRST_KEY + 3, "after");
+            checkSame(replayed, reference);
+        }
+
+        //a record whose checksum fails ends the log as well
+        byte[] corrupted = fullLog.clone();
+        corrupted[corrupted.length - 6] ^= 1;
+        Files.write(file, corrupted);
+        check(SIDCWriteAheadLog.replay(null, file) == completeLength, "replay accepts a corrupted record");
+    }
+
+    /**
+     * This method applies random changes with automatic and explicit checkpoints, crashes, recovers, and checks the recovered
+     * entries and that only the current generation is left in the directory.
+     * @throws IOException if the directory cannot be written or read.
+     */
+    private static void checkpointAndCrash() throws IOException {
+        Path directory = Files.createTempDirectory("sidc-durable-test");
+        Random random = new Random(3);
+        TreeMap<Long, String> reference = new TreeMap<>();
+        for(int crash = 0; crash < 4; crash++) {
+            DurableCleverSIDC durable = new DurableCleverSIDC(directory, (crash % 2 == 0) ? 0 : 2, 1024, 64 * 1024);
+            durable.setSIDCThreshold((crash < 2) ? 100 : 1000);
+            check(durable.recover() == reference.size(), "recovery " + crash + " lost entries");
+            checkSame(durable, reference);
+            for(int i = 0; i < 20_000; i++) {
+                long key = FIRST_KEY + random.nextInt(5_000);
+                if(random.nextInt(3) == 0) {
+                    durable.remove(durable, key);
+                    reference.remove(key);
+                } else {
+                    String value = "c" + crash + " n" + i;
+                    durable.add(durable, key, value);
+                    reference.putIfAbsent(key, value);
+                }
+                if(i == 10_000) durable.checkpoint();
+            }
+            long[] keys = new long[100]; String[] values = new String[100];
+            for(int i = 0; i < 100; i++) {
+                keys[i] = FIRST_KEY + 10_000 + random.nextInt(200);
+                values[i] = "bulk " + i;
+            }
+            for(int i = 0; i < 100; i++) reference.putIfAbsent(keys[i], values[i]);
+            durable.addAll(durable, keys, values, 100);
+            //the crash: the synced changes must survive without close
+            durable.sync();
+            check(generationFiles(directory).size() == 2, "more than one generation is left: " + generationFiles(directory));
+        }
+        DurableCleverSIDC durable = new DurableCleverSIDC(directory);
+        durable.setSIDCThreshold(1000);
+        durable.recover();
+        checkSame(durable, reference);
+        durable.close();
+    }
+
+    /**
+     * This method leaves the files of a checkpoint that crashed at each of its steps and checks that recovery ignores them.
+     * @throws IOException if the directory cannot be written or read.
+     */
+    private static void interruptedCheckpointLeftovers() throws IOException {
+        Path directory = Files.createTempDirectory("sidc-leftover-test");
+        TreeMap<Long, String> reference = new TreeMap<>();
+        DurableCleverSIDC durable = new DurableCleverSIDC(directory, 0, 1024, Long.MAX_VALUE);
+        durable.setSIDCThreshold(1000);
+        durable.recover();
+        for(int i = 0; i < 500; i++) {
+            durable.add(durable, FIRST_KEY + i, "v" + i);
+            reference.put(FIRST_KEY + i, "v" + i);
+        }
+        durable.checkpoint();
+        durable.remove(durable, FIRST_KEY);
+        reference.remove(FIRST_KEY);
+        durable.close();
+
+        //a crash while writing the next snapshot leaves its temporary file, which must be ignored and deleted
+        Files.write(directory.resolve("sidc-2.snapshot.tmp"), new byte[] {0, 1, 2});
+        durable = new DurableCleverSIDC(directory);
+        durable.setSIDCThreshold(1000);
+        durable.recover();
+        checkSame(durable, reference);
+        check(!Files.exists(directory.resolve("sidc-2.snapshot.tmp")), "the unfinished snapshot is not deleted");
+        durable.close();
+    }
+
+    /**
+     * This method closes a log with a background sync thread from an interrupted thread and checks that no record is lost
+     * and that the interrupt is kept.
+     * @throws IOException if the log cannot be written or read.
+     */
+    private static void closeWhileInterrupted() throws IOException {
+        Path file = Files.createTempDirectory("sidc-close-test").resolve("close.wal");
+        TreeMap<Long, String> reference = new TreeMap<>();
+        SIDCWriteAheadLog log = new SIDCWriteAheadLog(file, 1, 1 << 20);
+        for(int i = 0; i < 50_000; i++) {
+            log.logAdd(FIRST_KEY + i, "v" + i);
+            reference.put(FIRST_KEY + i, "v" + i);
+        }
+        Thread.currentThread().interrupt();
+        log.close();
+        check(Thread.interrupted(), "close drops the interrupt");
+        CleverSIDC replayed = newSidc();
+        SIDCWriteAheadLog.replay(replayed, file);
+        checkSame(replayed, reference);
+    }
+
+    /**
+     * This method creates an empty CleverSIDC with an AVL tree backend to replay logs into.
+     * @return the new CleverSIDC.
+     */
+    private static CleverSIDC newSidc() {
+        CleverSIDC cleverSidc = new CleverSIDC();
+        cleverSidc.setSIDCThreshold(1000);
+        return cleverSidc;
+    }
+
+    /**
+     * This method lists the snapshot and log files of the directory.
+     * @param directory the directory of DurableCleverSIDC
+     * @return the names of the files.
+     * @throws IOException if the directory cannot be read.
+     */
+    private static List<String> generationFiles(Path directory) throws IOException {
+        List<String> names = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "sidc-*")) {
+            for(Path file : files) names.add(file.getFileName().toString());
+        }
+        return names;
+    }
+
+    /**
+     * This method fails the test unless the CleverSIDC holds exactly the entries of the reference.
+     * @param cleverSidc the CleverSIDC to check
+     * @param reference the expected entries
+     */
+    private static void checkSame(CleverSIDC cleverSidc, TreeMap<Long, String> reference) {
+        check(cleverSidc.size() == reference.size(), "size " + cleverSidc.size() + " instead of " + reference.size());
+        long[] keys = new long[reference.size()]; String[] values = new String[reference.size()];
+        cleverSidc.copyEntries(cleverSidc, keys, values);
+        int i = 0;
+        for(Map.Entry<Long, String> entry : reference.entrySet()) {
+            check(keys[i] == entry.getKey() && values[i].equals(entry.getValue()), "entry " + i + " differs");
+            i++;
+        }
+    }
+
+    /**
+     * This method fails the test if the condition does not hold.
+     * @param condition the condition to check
+     * @param message the failure message
+     */
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+}
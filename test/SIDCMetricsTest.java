@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * SIDCMetricsTest class checks that the metrics of the CleverSIDC subclasses that are their own backend count what really happens.
+ * PersistentAvlTree and SlabAvlTree must time every operation, count their rotations and report their name and tree height,
+ * SlabAvlTree must also count the compactions of its value arena, and MappedSIDCSnapshot must time its queries.
+ * ShardedCleverSIDC must time each call once, even when it spans several shards, and add up the events of its shards,
+ * those replaced by rebalances included.
+ * <p>
+ * Usage: java SIDCMetricsTest
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCMetricsTest {
+    private static final long FIRST_KEY = 10000000L; private static final int ENTRIES = 20_000;
+
+    /**
+     * This method runs the checks.
+     * @param args unused
+     * @throws IOException if the snapshot cannot be written or mapped.
+     */
+    public static void main(String[] args) throws IOException {
+        checkTree("persistent", new PersistentAvlTree());
+        SlabAvlTree slab = checkTree("slab", new SlabAvlTree());
+        check(slab.getSIDCMetrics().getCompactionCount() > 0, "slab: the value arena was never compacted");
+
+        Path directory = Files.createTempDirectory("sidc-metrics-test");
+        Path file = directory.resolve("ids.snapshot");
+        long[] keys = new long[ENTRIES]; String[] values = new String[ENTRIES];
+        for(int i = 0; i < ENTRIES; i++) {
+            keys[i] = FIRST_KEY + 2L * i;
+            values[i] = "value-" + i;
+        }
+        SIDCSnapshotFile.write(keys, values, ENTRIES, file);
+        MappedSIDCSnapshot mapped = MappedSIDCSnapshot.open(file);
+        mapped.setSIDCMetrics(true);
+        for(int i = 0; i < 1000; i++) {
+            mapped.getValues(mapped, keys[i]);
+            mapped.nextKey(mapped, keys[i]);
+        }
+        mapped.rangeKey(FIRST_KEY, FIRST_KEY + 1000);
+        mapped.generate();
+        SIDCMetrics metrics = mapped.getSIDCMetrics();
+        check(metrics.getActiveBackend().equals("mapped"), "mapped: the backend is reported as " + metrics.getActiveBackend());
+        check(metrics.getSize() == ENTRIES, "mapped: the size is reported as " + metrics.getSize());
+        check(metrics.getOperationCount("GET_VALUES") == 1000 && metrics.getOperationCount("NEXT_KEY") == 1000,
+                "mapped: the lookups were not all counted");
+        check(metrics.getOperationCount("RANGE_KEY") == 1 && metrics.getOperationCount("GENERATE") == 1, "mapped: a query was not counted");
+        Files.delete(file);
+        Files.delete(directory);
+
+        checkSharded();
+        System.out.println("SIDCMetricsTest passed");
+    }
+
+    /**
+     * This method fills an AVL tree subclass with ascending keys, which forces rotations, then removes most of them and
+     * checks the metrics. The values are single words, so a SlabAvlTree keeps them in its arena and compacts it as they go.
+     * @param name the name the backend must report
+     * @param tree the empty tree to check
+     * @param <T> the type of the tree
+     * @return the tree, for further checks.
+     */
+    private static <T extends CleverSIDC> T checkTree(String name, T tree) {
+        tree.setSIDCMetrics(true);
+        for(int i = 0; i < ENTRIES; i++) tree.add(tree, FIRST_KEY + i, "value-" + i);
+        SIDCMetrics metrics = tree.getSIDCMetrics();
+        int height = metrics.getTreeHeight();
+        check(metrics.getActiveBackend().equals(name), name + ": the backend is reported as " + metrics.getActiveBackend());
+        check(metrics.getSize() == ENTRIES, name + ": the size is reported as " + metrics.getSize());
+        //an AVL tree of n entries is at most about 1.44 log2(n) high, and at least log2(n)
+        check(height >= 15 && height <= 21, name + ": the tree height is reported as " + height);
+        check(metrics.getRotationCount() > ENTRIES / 2, name + ": only " + metrics.getRotationCount() + " rotations were counted");
+
+        for(int i = 0; i < ENTRIES; i++) tree.getValues(tree, FIRST_KEY + i);
+        for(int i = 0; i < ENTRIES - 100; i++) tree.remove(tree, FIRST_KEY + i);
+        tree.rangeKey(FIRST_KEY, FIRST_KEY + ENTRIES);
+        tree.rank(tree, FIRST_KEY + ENTRIES / 2);
+        tree.select(tree, 10);
+        tree.addAll(tree, new long[] {FIRST_KEY, FIRST_KEY + 1}, new String[] {"a", "b"}, 2);
+        tree.generate(5);
+        check(metrics.getOperationCount("ADD") == ENTRIES, name + ": " + metrics.getOperationCount("ADD") + " additions were counted");
+        check(metrics.getOperationCount("GET_VALUES") == ENTRIES, name + ": the lookups were not all counted");
+        check(metrics.getOperationCount("REMOVE") == ENTRIES - 100, name + ": the removals were not all counted");
+        for(String operation : new String[] {"RANGE_KEY", "RANK", "SELECT", "ADD_ALL", "GENERATE_BATCH"}) {
+            check(metrics.getOperationCount(operation) == 1, name + ": " + operation + " ran once but was counted " + metrics.getOperationCount(operation) + " times");
+        }
+        check(metrics.getOperationCount("GENERATE") == 0, name + ": the keys of a batch were also counted as single generations");
+        check(metrics.getReport().contains("backend " + name), name + ": the report does not name the backend");
+        return tree;
+    }
+
+    /**
+     * This method fills a ShardedCleverSIDC with clustered keys, which sets off rebalances, and checks the merged metrics.
+     */
+    private static void checkSharded() {
+        ShardedCleverSIDC sharded = new ShardedCleverSIDC(4);
+        sharded.setSIDCThreshold(1000);
+        sharded.setSIDCMetrics(true);
+        for(int i = 0; i < ENTRIES; i++) sharded.add(sharded, FIRST_KEY + i, "value-" + i);
+        SIDCMetrics metrics = sharded.getSIDCMetrics();
+        long resizesBefore = metrics.getResizeCount();
+        check(sharded.getRebalanceCount() > 0, "sharded: the clustered keys never caused a rebalance");
+        check(metrics.getRebalanceCount() == sharded.getRebalanceCount(), "sharded: " + metrics.getRebalanceCount()
+                + " rebalances were counted instead of " + sharded.getRebalanceCount());
+        check(metrics.getOperationCount("REBALANCE") == sharded.getRebalanceCount(), "sharded: the rebalances were not all timed");
+        check(metrics.getOperationCount("ADD") == ENTRIES, "sharded: " + metrics.getOperationCount("ADD") + " additions were counted");
+        check(resizesBefore > 0, "sharded: the resizes of the shard arrays were not counted");
+        check(metrics.getActiveBackend().equals("sharded") && metrics.getSize() == ENTRIES, "sharded: the gauges are wrong");
+
+        //spanning every shard must still count as one call, and the key checks of generate must not count as range queries
+        check(sharded.rangeKey(FIRST_KEY - 1, FIRST_KEY + ENTRIES) == ENTRIES, "sharded: the range count is wrong");
+        sharded.generate(10);
+        sharded.rebalance();
+        check(metrics.getOperationCount("RANGE_KEY") == 1, "sharded: a range over every shard was counted "
+                + metrics.getOperationCount("RANGE_KEY") + " times");
+        check(metrics.getOperationCount("GENERATE_BATCH") == 1 && metrics.getOperationCount("GENERATE") == 0, "sharded: generate was miscounted");
+        check(metrics.getResizeCount() >= resizesBefore, "sharded: the events of the shards replaced by a rebalance were lost");
+        for(int i = 0; i < 2000; i++) sharded.add(sharded, FIRST_KEY + ENTRIES + i, "value-" + i);
+        check(metrics.getResizeCount() > resizesBefore, "sharded: the shards created by a rebalance do not collect metrics");
+        check(metrics.getReport().contains("rebalances " + sharded.getRebalanceCount()), "sharded: the report has no rebalance count");
+
+        metrics.reset();
+        check(metrics.getResizeCount() == 0 && metrics.getRebalanceCount() == 0 && metrics.getOperationCount("ADD") == 0,
+                "sharded: reset left counts behind");
+        sharded.setSIDCMetrics(false);
+        check(sharded.getSIDCMetrics() == null, "sharded: the metrics are still on");
+    }
+
+    /**
+     * This method fails the test if the condition does not hold.
+     * @param condition the condition to check
+     * @param message the failure message
+     */
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+}
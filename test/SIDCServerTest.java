@@ -0,0 +1,203 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * SIDCServerTest class checks the line protocol of SIDCServer against a TreeMap. Several clients connect at once, each on its own
+ * slice of keys, and pipeline thousands of requests written in 777-byte chunks, so that lines arrive split across reads and the
+ * selector interleaves the connections; every response must match the one computed from the map of its client, in order.
+ * The requests mix upper and lower case commands, CRLF line ends, repeated spaces, non-ASCII values and malformed lines.
+ * It then checks that responses still arrive after the client half-closes, that QUIT closes the connection, and that an
+ * overlong line is answered with an error.
+ * <p>
+ * Usage: java SIDCServerTest
+ * @author Rania Maoukout & teammate
+ */
+public class SIDCServerTest {
+    private static final long FIRST_KEY = 10000000L; private static final int CLIENTS = 4, SLICE = 200_000, REQUESTS = 10_000, CHUNK = 777;
+
+    /**
+     * This method starts a server on a free loopback port and runs every check against it.
+     * @param args unused
+     * @throws Exception if a connection fails or a client thread is interrupted.
+     */
+    public static void main(String[] args) throws Exception {
+        CleverSIDC sidc = new CleverSIDC();
+        sidc.setSIDCThreshold(1000);
+        SIDCServer server = new SIDCServer(sidc, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        try {
+            List<TreeMap<Long, String>> models = new ArrayList<>();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread[] clients = new Thread[CLIENTS];
+            for(int t = 0; t < CLIENTS; t++) {
+                final int id = t;
+                TreeMap<Long, String> model = new TreeMap<>();
+                models.add(model);
+                clients[t] = new Thread(() -> {
+                    try {
+                        runClient(server.getPort(), model, FIRST_KEY + (long) id * SLICE, new Random(id));
+                    } catch(Throwable throwable) {
+                        failure.compareAndSet(null, throwable);
+                    }
+                });
+                clients[t].start();
+            }
+            for(Thread client : clients) client.join();
+            if(failure.get() != null) throw new AssertionError("A client failed.", failure.get());
+            int expectedSize = 0;
+            for(TreeMap<Long, String> model : models) expectedSize += model.size();
+            check(sidc.size() == expectedSize, "the server stored " + sidc.size() + " keys instead of " + expectedSize);
+
+            checkHalfClose(server.getPort(), models.get(0));
+            checkOverlongLine(server.getPort());
+        } finally {
+            server.close();
+        }
+        System.out.println("SIDCServerTest passed");
+    }
+
+    /**
+     * This method pipelines the requests of one client on its slice of keys and checks every response in order.
+     * @param port the port of the server
+     * @param model the entries stored by this client
+     * @param low the first key of the slice
+     * @param random the random number generator of this client
+     * @throws IOException if the connection fails.
+     * @throws InterruptedException if the client thread is interrupted.
+     */
+    private static void runClient(int port, TreeMap<Long, String> model, long low, Random random) throws IOException, InterruptedException {
+        StringBuilder requests = new StringBuilder(); List<String> expected = new ArrayList<>();
+        for(int i = 0; i < REQUESTS; i++) {
+            long key = low + random.nextInt(SLICE);
+            switch(random.nextInt(6)) {
+                case 0:
+                    requests.append("add ").append(key).append(" Zo\u00eb ").append(i).append("\r\n");
+                    model.putIfAbsent(key, "Zo\u00eb " + i);
+                    expected.add("OK");
+                    break;
+                case 1:
+                    requests.append("REMOVE ").append(key).append('\n');
+                    expected.add((model.remove(key) != null) ? "OK " + key : "NONE");
+                    break;
+                case 2:
+                    requests.append("GET ").append(key).append('\n');
+                    expected.add(model.containsKey(key) ? "OK " + model.get(key) : "NONE");
+                    break;
+                case 3:
+                    //the neighbour queries stay inside the slice, where the other clients never write
+                    Long higher = model.higherKey(key);
+                    if(higher == null) break;
+                    requests.append("NEXT ").append(key).append('\n');
+                    expected.add("OK " + higher);
+                    break;
+                case 4:
+                    Long lower = model.lowerKey(key);
+                    if(lower == null) break;
+                    requests.append("prev ").append(key).append('\n');
+                    expected.add("OK " + lower);
+                    break;
+                default:
+                    long high = Math.min(low + SLICE, key + random.nextInt(10_000));
+                    requests.append("RANGE ").append(key).append("  ").append(high).append('\n');
+                    expected.add("OK " + model.subMap(key, false, high, false).size());
+            }
+            if(i % 1000 == 0) {
+                requests.append("\nBOGUS 1\nGET 123\nADD 12345678\n");
+                expected.add("ERR unknown command BOGUS");
+                expected.add("ERR the key must have 8 digits: 123");
+                expected.add("ERR ADD needs a key and a value");
+            }
+        }
+        requests.append("GENERATE\n");
+
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            byte[] bytes = requests.toString().getBytes(StandardCharsets.UTF_8);
+            //write from another thread so that the responses are read while the requests are still being sent
+            Thread writer = new Thread(() -> {
+                try {
+                    for(int offset = 0; offset < bytes.length; offset += CHUNK) out.write(bytes, offset, Math.min(CHUNK, bytes.length - offset));
+                    out.flush();
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.start();
+            for(int i = 0; i < expected.size(); i++) {
+                String line = in.readLine();
+                check(expected.get(i).equals(line), "response " + i + " is " + line + " instead of " + expected.get(i));
+            }
+            String generated = in.readLine();
+            check(generated != null && generated.startsWith("OK "), "GENERATE answered " + generated);
+            long key = Long.parseLong(generated.substring(3));
+            check(key >= FIRST_KEY && key <= 99999999L && !model.containsKey(key), "GENERATE returned the used or invalid key " + key);
+            writer.join();
+        }
+    }
+
+    /**
+     * This method checks that a client which half-closes its connection still gets its responses, and that QUIT ends the connection.
+     * @param port the port of the server
+     * @param model the entries stored by the first client
+     * @throws IOException if the connection fails.
+     */
+    private static void checkHalfClose(int port, TreeMap<Long, String> model) throws IOException {
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            long key = model.firstKey();
+            out.write(("GET " + key + "\nQUIT\nGET " + key + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            socket.shutdownOutput();
+            String line = in.readLine();
+            check(("OK " + model.get(key)).equals(line), "GET after the half-close answered " + line);
+            line = in.readLine();
+            check("OK".equals(line), "QUIT answered " + line);
+            check(in.readLine() == null, "the connection stayed open after QUIT");
+        }
+    }
+
+    /**
+     * This method checks that a line longer than MAX_LINE_BYTES is answered with an error.
+     * @param port the port of the server
+     * @throws IOException if the connection fails.
+     */
+    private static void checkOverlongLine(int port) throws IOException {
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            byte[] junk = new byte[SIDCServer.MAX_LINE_BYTES * 3];
+            Arrays.fill(junk, (byte) 'x');
+            try {
+                socket.getOutputStream().write(junk);
+                socket.getOutputStream().flush();
+            } catch(IOException e) {
+                //the server may close the connection before the whole line is sent
+            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line = in.readLine();
+            check(line != null && line.startsWith("ERR the line"), "the overlong line was answered with " + line);
+        }
+    }
+
+    /**
+     * This method fails the test if the condition does not hold.
+     * @param condition the condition to check
+     * @param message the failure message
+     */
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * SnapshotFileTest class writes snapshots with SIDCSnapshotFile and checks that they load back, mapped or into a CleverSIDC,
+ * with exactly the entries of a TreeMap. It also checks that replacing a snapshot leaves no temporary file behind and that
+ * a stale temporary file from an interrupted write does not get in the way.
+ * <p>
+ * Usage: java SnapshotFileTest
+ * @author Rania Maoukout & teammate
+ */
+public class SnapshotFileTest {
+
+    /**
+     * This method runs the checks.
+     * @param args unused
+     * @throws IOException if a snapshot cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("sidc-snapshot-test");
+        Path file = directory.resolve("ids.snapshot");
+        Random random = new Random(11);
+        TreeMap<Long, String> reference = new TreeMap<>();
+        CleverSIDC source = new CleverSIDC();
+        source.setSIDCThreshold(1000);
+        for(int i = 0; i < 20_000; i++) {
+            long key = 10000000L + random.nextInt(50_000);
+            String value = (i % 7 == 0) ? "" : "student " + i + " \u00e9";
+            source.add(source, key, value);
+            reference.putIfAbsent(key, value);
+        }
+
+        //an interrupted earlier write leaves its temporary file, which the next write must replace
+        Files.write(directory.resolve("ids.snapshot.tmp"), new byte[] {1, 2, 3});
+        SIDCSnapshotFile.write(source, file);
+        check(!Files.exists(directory.resolve("ids.snapshot.tmp")), "the temporary file is left behind");
+        checkSame(MappedSIDCSnapshot.open(file), reference);
+
+        CleverSIDC loaded = new CleverSIDC();
+        loaded.setSIDCThreshold(1000);
+        check(SIDCSnapshotFile.load(loaded, file) == reference.size(), "load returns the wrong count");
+        checkSame(loaded, reference);
+
+        //a second write replaces the first snapshot
+        for(int i = 0; i < 5_000; i++) {
+            long key = reference.firstKey();
+            source.remove(source, key);
+            reference.remove(key);
+        }
+        SIDCSnapshotFile.write(source, file);
+        checkSame(MappedSIDCSnapshot.open(file), reference);
+        try(Stream<Path> files = Files.list(directory)) {
+            check(files.count() == 1, "the directory should only hold the snapshot");
+        }
+
+        SIDCSnapshotFile.write(new long[0], new String[0], 0, file);
+        check(MappedSIDCSnapshot.open(file).size() == 0, "an empty snapshot is not empty");
+        System.out.println("SnapshotFileTest passed");
+    }
+
+    /**
+     * This method fails the test unless the CleverSIDC holds exactly the entries of the reference, in the same order.
+     * @param cleverSidc the CleverSIDC to check
+     * @param reference the expected entries
+     */
+    private static void checkSame(CleverSIDC cleverSidc, TreeMap<Long, String> reference) {
+        check(cleverSidc.size() == reference.size(), "size " + cleverSidc.size() + " instead of " + reference.size());
+        long[] keys = new long[reference.size()]; String[] values = new String[reference.size()];
+        check(cleverSidc.copyEntries(cleverSidc, keys, values) == reference.size(), "copyEntries returns the wrong count");
+        int i = 0;
+        for(Map.Entry<Long, String> entry : reference.entrySet()) {
+            check(keys[i] == entry.getKey() && values[i].equals(entry.getValue()), "entry " + i + " differs");
+            check(cleverSidc.getValues(cleverSidc, entry.getKey()).equals(entry.getValue()), "getValues differs for " + entry.getKey());
+            i++;
+        }
+    }
+
+    /**
+     * This method fails the test if the condition does not hold.
+     * @param condition the condition to check
+     * @param message the failure message
+     */
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+}
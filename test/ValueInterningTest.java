@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * ValueInterningTest class checks that the String-valued backends of CleverSIDC keep one String for a repeated value,
+ * whether the value was added one entry at a time, in a batch, replayed from a write-ahead log or loaded from a snapshot.
+ * Every value is built as a new String, so two records can only share one if CleverSIDC interned it.
+ * <p>
+ * Usage: java ValueInterningTest
+ * @author Rania Maoukout & teammate
+ */
+public class ValueInterningTest {
+    private static final long FIRST_KEY = 10000000L;
+
+    /**
+     * This method runs the checks on the CircularArray, the AVLTree and the BPlusTree, and on a recovered DurableCleverSIDC.
+     * @param args unused
+     * @throws IOException if the durable directory cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        for(int threshold : new int[] {100, 1000, CleverSIDC.BPLUS_TREE_THRESHOLD + 1}) {
+            CleverSIDC added = new CleverSIDC();
+            added.setSIDCThreshold(threshold);
+            for(int i = 0; i < 400; i++) added.add(added, FIRST_KEY + i, newValue(i % 4));
+            checkShared(added, 400, "add on threshold " + threshold);
+
+            CleverSIDC batched = new CleverSIDC();
+            batched.setSIDCThreshold(threshold);
+            long[] keys = new long[400]; String[] values = new String[400];
+            for(int i = 0; i < 400; i++) {
+                keys[i] = FIRST_KEY + 399 - i;
+                values[i] = newValue((399 - i) % 4);
+            }
+            batched.bulkLoad(batched, keys, values, 200);
+            for(int i = 200; i < 400; i++) {
+                keys[i - 200] = keys[i];
+                values[i - 200] = values[i];
+            }
+            batched.addAll(batched, keys, values, 200);
+            checkShared(batched, 400, "bulkLoad and addAll on threshold " + threshold);
+        }
+
+        Path directory = Files.createTempDirectory("sidc-intern-test");
+        DurableCleverSIDC durable = new DurableCleverSIDC(directory, 0, 1024, Long.MAX_VALUE);
+        durable.setSIDCThreshold(1000);
+        durable.recover();
+        for(int i = 0; i < 200; i++) durable.add(durable, FIRST_KEY + i, newValue(i % 4));
+        durable.checkpoint();
+        for(int i = 200; i < 400; i++) durable.add(durable, FIRST_KEY + i, newValue(i % 4));
+        durable.close();
+        DurableCleverSIDC recovered = new DurableCleverSIDC(directory);
+        recovered.setSIDCThreshold(1000);
+        recovered.recover();
+        checkShared(recovered, 400, "snapshot load and log replay");
+        recovered.close();
+        System.out.println("ValueInterningTest passed");
+    }
+
+    /**
+     * This method builds a value as a String of its own.
+     * @param name the number of the name
+     * @return a new String holding the name.
+     */
+    private static String newValue(int name) {
+        return new String(("student " + name).toCharArray());
+    }
+
+    /**
+     * This method fails the test unless the given CleverSIDC holds the given number of records, each with the value of its
+     * name number, and every record with the same name holds the same String.
+     * @param cleverSidc the CleverSIDC to check
+     * @param count the number of records, keyed from FIRST_KEY, with name key % 4
+     * @param what the name of the case
+     */
+    private static void checkShared(CleverSIDC cleverSidc, int count, String what) {
+        if(cleverSidc.size() != count) throw new AssertionError(what + ": size " + cleverSidc.size());
+        long[] keys = new long[count]; String[] values = new String[count];
+        cleverSidc.copyEntries(cleverSidc, keys, values);
+        for(int i = 0; i < count; i++) {
+            if(!values[i].equals("student " + (keys[i] - FIRST_KEY) % 4)) throw new AssertionError(what + ": wrong value " + values[i]);
+            if(values[i] != values[i % 4]) throw new AssertionError(what + ": record " + i + " holds a String of its own");
+        }
+    }
+}